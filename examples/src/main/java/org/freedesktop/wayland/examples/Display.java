@@ -18,6 +18,7 @@
 package org.freedesktop.wayland.examples;
 
 import org.freedesktop.wayland.client.*;
+import org.freedesktop.wayland.client.presentation.FrameScheduler;
 import org.freedesktop.wayland.shared.WlSeatCapability;
 import org.freedesktop.wayland.util.EnumUtil;
 import org.freedesktop.wayland.util.WlArray;
@@ -36,6 +37,8 @@ public class Display {
     private WlShmProxy shmProxy;
     private WlSeatProxy seatProxy;
     private XdgWmBaseProxy xdgWmBaseProxy;
+    private WpPresentationProxy presentationProxy;
+    private int presentationClockId = FrameScheduler.CLOCK_MONOTONIC;
 
 
     public Display() {
@@ -141,6 +144,17 @@ public class Display {
                             emitter.pong(serial);
                         }
                     });
+        } else if (WpPresentationProxy.INTERFACE_NAME.equals(interfaceName)) {
+            this.presentationProxy = this.registryProxy.bind(name,
+                    WpPresentationProxy.class,
+                    WpPresentationEvents.VERSION,
+                    new WpPresentationEvents() {
+                        @Override
+                        public void clockId(final WpPresentationProxy emitter,
+                                            final int clkId) {
+                            Display.this.presentationClockId = clkId;
+                        }
+                    });
         } else if (WlSeatProxy.INTERFACE_NAME.equals(interfaceName)) {
             this.seatProxy = this.registryProxy.<WlSeatEvents, WlSeatProxy>bind(name,
                     WlSeatProxy.class,
@@ -206,6 +220,9 @@ public class Display {
         if (this.xdgWmBaseProxy != null) {
             this.xdgWmBaseProxy.destroy();
         }
+        if (this.presentationProxy != null) {
+            this.presentationProxy.destroy();
+        }
 
         this.compositorProxy.destroy();
         this.registryProxy.destroy();
@@ -232,5 +249,13 @@ public class Display {
     public XdgWmBaseProxy getXdgWmBaseProxy() {
         return this.xdgWmBaseProxy;
     }
+
+    public WpPresentationProxy getPresentationProxy() {
+        return this.presentationProxy;
+    }
+
+    public int getPresentationClockId() {
+        return this.presentationClockId;
+    }
 }
 
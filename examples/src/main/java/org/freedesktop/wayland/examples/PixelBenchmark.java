@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.examples;
+
+import org.freedesktop.wayland.util.pixels.PixelConverter;
+import org.freedesktop.wayland.util.pixels.PixelFormat;
+import org.freedesktop.wayland.util.pixels.Pixels;
+import org.freedesktop.wayland.util.pixels.TileRenderer;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Compares the pixel helpers against the plain scalar loops clients usually write, on a 1920x1080 buffer.
+ * <p>
+ * Run with {@code --add-modules jdk.incubator.vector} to measure the Vector API loops, without it the scalar fallback
+ * is measured.
+ */
+public class PixelBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int STRIDE = WIDTH * 4;
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 500;
+
+    public static void main(final String[] args) {
+        System.out.printf("Vector API: %s, %d processors%n",
+                Pixels.isVectorized(),
+                Runtime.getRuntime()
+                        .availableProcessors());
+        try (final Arena arena = Arena.ofShared()) {
+            final MemorySegment src = arena.allocate((long) STRIDE * HEIGHT,
+                    64);
+            final MemorySegment dst = arena.allocate((long) STRIDE * HEIGHT,
+                    64);
+            final IntBuffer dstInts = dst.asByteBuffer()
+                    .order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+            Pixels.fill(src,
+                    STRIDE,
+                    0,
+                    0,
+                    WIDTH,
+                    HEIGHT,
+                    0x80402010);
+            final TileRenderer tileRenderer = new TileRenderer();
+            final int[] image = new int[WIDTH * HEIGHT];
+            for (int i = 0; i < image.length; i++) {
+                image[i] = i * 0x01030507;
+            }
+
+            compare("fill",
+                    () -> {
+                        dstInts.clear();
+                        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+                            dstInts.put(0xff336699);
+                        }
+                    },
+                    () -> Pixels.fill(dst,
+                            STRIDE,
+                            0,
+                            0,
+                            WIDTH,
+                            HEIGHT,
+                            0xff336699));
+            compare("blend",
+                    () -> {
+                        for (int offset = 0; offset < STRIDE * HEIGHT; offset += 4) {
+                            final int s = src.get(ValueLayout.JAVA_INT,
+                                    offset);
+                            final int d = dst.get(ValueLayout.JAVA_INT,
+                                    offset);
+                            dst.set(ValueLayout.JAVA_INT,
+                                    offset,
+                                    blendScalar(s,
+                                            d));
+                        }
+                    },
+                    () -> Pixels.blend(src,
+                            STRIDE,
+                            0,
+                            0,
+                            dst,
+                            STRIDE,
+                            0,
+                            0,
+                            WIDTH,
+                            HEIGHT));
+            compare("blend, tiled",
+                    () -> Pixels.blend(src,
+                            STRIDE,
+                            0,
+                            0,
+                            dst,
+                            STRIDE,
+                            0,
+                            0,
+                            WIDTH,
+                            HEIGHT),
+                    () -> tileRenderer.render(dst,
+                            STRIDE,
+                            0,
+                            0,
+                            WIDTH,
+                            HEIGHT,
+                            (pixels, stride, x, y, width, height) -> Pixels.blend(src,
+                                    STRIDE,
+                                    x,
+                                    y,
+                                    pixels,
+                                    stride,
+                                    x,
+                                    y,
+                                    width,
+                                    height)));
+            compare("upload int[]",
+                    () -> {
+                        // straight alpha ARGB, as in a BufferedImage, to premultiplied ARGB8888
+                        for (int i = 0; i < image.length; i++) {
+                            final int pixel = image[i];
+                            final int alpha = pixel >>> 24;
+                            final int r = ((pixel >>> 16) & 0xff) * alpha / 255;
+                            final int g = ((pixel >>> 8) & 0xff) * alpha / 255;
+                            final int b = (pixel & 0xff) * alpha / 255;
+                            dst.set(ValueLayout.JAVA_INT,
+                                    i * 4L,
+                                    alpha << 24 | r << 16 | g << 8 | b);
+                        }
+                    },
+                    () -> PixelConverter.convert(image,
+                            0,
+                            WIDTH,
+                            PixelFormat.ARGB8888,
+                            dst,
+                            STRIDE,
+                            PixelFormat.ARGB8888,
+                            PixelConverter.Alpha.PREMULTIPLY,
+                            WIDTH,
+                            HEIGHT));
+            compare("xbgr to argb",
+                    () -> {
+                        for (int offset = 0; offset < STRIDE * HEIGHT; offset += 4) {
+                            final int pixel = src.get(ValueLayout.JAVA_INT,
+                                    offset);
+                            dst.set(ValueLayout.JAVA_INT,
+                                    offset,
+                                    0xff000000 | (pixel & 0x0000ff00) | ((pixel >>> 16) & 0xff) | ((pixel & 0xff) << 16));
+                        }
+                    },
+                    () -> PixelConverter.convert(src,
+                            STRIDE,
+                            PixelFormat.XBGR8888,
+                            dst,
+                            STRIDE,
+                            PixelFormat.ARGB8888,
+                            WIDTH,
+                            HEIGHT));
+            compare("shader, tiled",
+                    () -> shade(dst,
+                            STRIDE,
+                            0,
+                            0,
+                            WIDTH,
+                            HEIGHT),
+                    () -> tileRenderer.render(dst,
+                            STRIDE,
+                            0,
+                            0,
+                            WIDTH,
+                            HEIGHT,
+                            PixelBenchmark::shade));
+        }
+    }
+
+    private static void compare(final String name,
+                                final Runnable baseline,
+                                final Runnable candidate) {
+        final double baselineMillis = measure(baseline);
+        final double candidateMillis = measure(candidate);
+        System.out.printf("%-14s baseline %7.3fms  helper %7.3fms  speedup %5.2fx%n",
+                name,
+                baselineMillis,
+                candidateMillis,
+                baselineMillis / candidateMillis);
+    }
+
+    private static double measure(final Runnable runnable) {
+        for (int i = 0; i < WARMUP; i++) {
+            runnable.run();
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            runnable.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / ITERATIONS;
+    }
+
+    private static int blendScalar(final int src,
+                                   final int dst) {
+        final int inverseAlpha = 255 - (src >>> 24);
+        int result = src & 0xff000000;
+        result += ((dst >>> 24) * inverseAlpha / 255) << 24;
+        for (int shift = 0; shift < 24; shift += 8) {
+            final int channel = ((src >>> shift) & 0xff) + ((dst >>> shift) & 0xff) * inverseAlpha / 255;
+            result |= channel << shift;
+        }
+        return result;
+    }
+
+    // a per pixel shader that does a bit of arithmetic, like the one in Window
+    private static void shade(final MemorySegment pixels,
+                              final int stride,
+                              final int tileX,
+                              final int tileY,
+                              final int tileWidth,
+                              final int tileHeight) {
+        for (int y = tileY; y < tileY + tileHeight; y++) {
+            final int y2 = (y - HEIGHT / 2) * (y - HEIGHT / 2);
+            final long row = (long) y * stride;
+            for (int x = tileX; x < tileX + tileWidth; x++) {
+                final int r2 = (x - WIDTH / 2) * (x - WIDTH / 2) + y2;
+                pixels.set(ValueLayout.JAVA_INT,
+                        row + x * 4L,
+                        ((r2 / 32) * 0x0080401) | 0xff000000);
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.examples;
+
+import org.freedesktop.wayland.client.EventQueue;
+import org.freedesktop.wayland.client.WlCallbackEvents;
+import org.freedesktop.wayland.client.WlCallbackProxy;
+import org.freedesktop.wayland.client.WlDisplayProxy;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how long an "input" event waits before it is dispatched while a "render" subsystem keeps its dispatch
+ * thread busy.
+ * <p>
+ * An in-process compositor is started and a client connects to it. The render subsystem keeps a number of
+ * {@code wl_display.sync} requests in flight and burns CPU in every {@code done} handler, like a software renderer
+ * would. The input subsystem sends a {@code wl_display.sync} every millisecond and records the time until its
+ * {@code done} handler runs.
+ * <p>
+ * This is done twice: once with both subsystems sharing a single event queue, and once with an event queue, a
+ * dispatch thread and proxy wrappers per subsystem. With a shared queue the input latency grows with the render
+ * cost, with separate queues it stays at the cost of a compositor round-trip.
+ */
+public class QueueLatencyBenchmark {
+
+    private static final int SAMPLES = 2000;
+    private static final int RENDER_REQUESTS_IN_FLIGHT = 4;
+    private static final long RENDER_COST_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    public static void main(final String[] args) throws Exception {
+        final org.freedesktop.wayland.server.Display server = org.freedesktop.wayland.server.Display.create();
+        final String socketName = server.addSocketAuto();
+        final Thread serverThread = Thread.ofPlatform()
+                .name("compositor")
+                .start(server::run);
+
+        try {
+            final WlDisplayProxy display = WlDisplayProxy.connect(socketName);
+            try {
+                report("shared queue",
+                        run(display,
+                                false));
+                report("queue per subsystem",
+                        run(display,
+                                true));
+            } finally {
+                display.disconnect();
+            }
+        } finally {
+            server.terminate();
+            serverThread.join();
+            server.destroy();
+        }
+    }
+
+    private static long[] run(final WlDisplayProxy display,
+                              final boolean queuePerSubsystem) throws InterruptedException {
+        final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        final EventQueue renderQueue = display.createQueue(executor);
+        final EventQueue inputQueue = queuePerSubsystem ? display.createQueue(executor) : renderQueue;
+
+        final WlDisplayProxy renderDisplay = display.createWrapper(renderQueue);
+        final WlDisplayProxy inputDisplay = display.createWrapper(inputQueue);
+
+        final Render render = new Render(display,
+                renderDisplay);
+        for (int i = 0; i < RENDER_REQUESTS_IN_FLIGHT; i++) {
+            render.requestFrame();
+        }
+        display.flush();
+
+        final long[] latencies = new long[SAMPLES];
+        final AtomicInteger received = new AtomicInteger();
+        for (int i = 0; i < SAMPLES; i++) {
+            final int sample = i;
+            final long sent = System.nanoTime();
+            inputDisplay.sync(new WlCallbackEvents() {
+                @Override
+                public void done(final WlCallbackProxy emitter,
+                                 final int callbackData) {
+                    latencies[sample] = System.nanoTime() - sent;
+                    received.incrementAndGet();
+                    emitter.destroy();
+                }
+            });
+            display.flush();
+            Thread.sleep(1);
+        }
+        while (received.get() < SAMPLES) {
+            Thread.sleep(1);
+        }
+
+        render.stop();
+        // make sure no render callback is still in flight before the queues go away
+        while (render.inFlight.get() > 0) {
+            Thread.sleep(1);
+        }
+
+        inputDisplay.destroy();
+        renderDisplay.destroy();
+        if (queuePerSubsystem) {
+            inputQueue.destroy();
+        }
+        renderQueue.destroy();
+        executor.shutdown();
+        return latencies;
+    }
+
+    private static void report(final String name,
+                               final long[] latencies) {
+        final long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-20s input latency p50=%6.2fms p99=%6.2fms max=%6.2fms (render cost %dms per frame)%n",
+                name,
+                sorted[sorted.length / 2] / 1e6,
+                sorted[(int) (sorted.length * 0.99)] / 1e6,
+                sorted[sorted.length - 1] / 1e6,
+                TimeUnit.NANOSECONDS.toMillis(RENDER_COST_NANOS));
+    }
+
+    private static final class Render implements WlCallbackEvents {
+        private final WlDisplayProxy display;
+        private final WlDisplayProxy renderDisplay;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile boolean stopped;
+
+        private Render(final WlDisplayProxy display,
+                       final WlDisplayProxy renderDisplay) {
+            this.display = display;
+            this.renderDisplay = renderDisplay;
+        }
+
+        void requestFrame() {
+            this.inFlight.incrementAndGet();
+            this.renderDisplay.sync(this);
+        }
+
+        void stop() {
+            this.stopped = true;
+        }
+
+        @Override
+        public void done(final WlCallbackProxy emitter,
+                         final int callbackData) {
+            emitter.destroy();
+            if (!this.stopped) {
+                final long end = System.nanoTime() + RENDER_COST_NANOS;
+                while (System.nanoTime() < end) {
+                    Thread.onSpinWait();
+                }
+                requestFrame();
+                this.display.flush();
+            }
+            this.inFlight.decrementAndGet();
+        }
+    }
+}
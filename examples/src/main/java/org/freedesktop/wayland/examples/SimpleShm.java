@@ -31,7 +31,7 @@ public class SimpleShm {
         Window window = new Window(display, 250, 250);
 
         if (!window.isWaitForConfigure())
-            window.redraw(0);
+            window.requestFrame();
 
         try {
             while (true) {
@@ -20,24 +20,33 @@
 package org.freedesktop.wayland.examples;
 
 import org.freedesktop.wayland.client.*;
+import org.freedesktop.wayland.client.presentation.FrameListener;
+import org.freedesktop.wayland.client.presentation.FrameScheduler;
+import org.freedesktop.wayland.client.shm.ShmSwapchain;
 import org.freedesktop.wayland.shared.WlPointerButtonState;
 import org.freedesktop.wayland.shared.WlShellSurfaceResize;
 import org.freedesktop.wayland.shared.XdgToplevelWmCapabilities;
 import org.freedesktop.wayland.util.Fixed;
 import org.freedesktop.wayland.util.WlArray;
+import org.freedesktop.wayland.util.pixels.TileRenderer;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
-import java.nio.IntBuffer;
+import java.lang.foreign.ValueLayout;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static org.freedesktop.wayland.shared.WlShmFormat.XRGB8888;
 
 public class Window implements WlSurfaceEventsV3,
         XdgSurfaceEventsV6,
         WlPointerEventsV3,
-        WlRegionEvents, XdgToplevelEventsV5 {
+        WlRegionEvents, XdgToplevelEventsV5,
+        FrameListener {
 
     private static final int BTN_LEFT = 0x110;
     private static final int BTN_RIGHT = 0x111;
@@ -49,10 +58,16 @@ public class Window implements WlSurfaceEventsV3,
     private final WlPointerProxy pointerProxy;
     private final XdgToplevelProxy xdgToplevelProxy;
 
-    private WlCallbackProxy callbackProxy;
-    private BufferPool bufferPool;
+    private final ScheduledExecutorService renderExecutor;
+    private final ExecutorService frameQueueExecutor;
+    private final EventQueue frameQueue;
+    private final FrameScheduler frameScheduler;
+    private final ShmSwapchain swapchain;
+    private final RectSet damage = new RectSet();
+    private final TileRenderer tileRenderer = new TileRenderer();
+    private RequestTemplate frameRequests;
 
-    private boolean needsBufferPoolUpdate;
+    private boolean needsResize;
 
     private boolean waitForConfigure = false;
 
@@ -76,7 +91,10 @@ public class Window implements WlSurfaceEventsV3,
         this.height = height;
 
         this.display = display;
-        this.bufferPool = createBufferPool(this.display, 2);
+        this.swapchain = new ShmSwapchain(this.display.getShmProxy(),
+                XRGB8888.value,
+                2,
+                3);
         this.surfaceProxy = this.display
                 .getCompositorProxy()
                 .createSurface(this);
@@ -99,14 +117,17 @@ public class Window implements WlSurfaceEventsV3,
         this.xdgToplevelProxy.setAppId("org.freedesktop.wayland.examples.simple-shm");
         this.surfaceProxy.commit();
         this.waitForConfigure = true;
-    }
 
-    private BufferPool createBufferPool(final Display display,
-                                        final int size) throws IOException {
-        return new BufferPoolFactory(display).create(this.width,
-                this.height,
-                size,
-                XRGB8888);
+        this.renderExecutor = Executors.newSingleThreadScheduledExecutor();
+        this.frameQueueExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.frameQueue = this.display.getDisplayProxy()
+                .createQueue(this.frameQueueExecutor);
+        this.frameScheduler = new FrameScheduler(this.surfaceProxy,
+                this.frameQueue,
+                this.display.getPresentationProxy(),
+                this.display.getPresentationClockId(),
+                this.renderExecutor,
+                this);
     }
 
     @Override
@@ -191,10 +212,10 @@ public class Window implements WlSurfaceEventsV3,
     }
 
     @Override
-    public void configure(XdgSurfaceProxy emitter, int serial) {
+    public synchronized void configure(XdgSurfaceProxy emitter, int serial) {
         emitter.ackConfigure(serial);
         if(this.waitForConfigure) {
-            this.redraw(0);
+            this.frameScheduler.requestFrame();
             this.waitForConfigure = false;
         }
     }
@@ -219,7 +240,7 @@ public class Window implements WlSurfaceEventsV3,
 //        this.edges = edges;
 //        this.pendingWidth = width;
 //        this.pendingHeight = height;
-//        this.needsBufferPoolUpdate = true;
+//        this.needsResize = true;
 //    }
 
 //    @Override
@@ -239,70 +260,111 @@ public class Window implements WlSurfaceEventsV3,
     }
 
     public void destroy() {
+        this.frameScheduler.stop();
+        this.renderExecutor.shutdown();
+        try {
+            this.renderExecutor.awaitTermination(1,
+                    TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         this.xdgSurfaceProxy.destroy();
         this.surfaceProxy.destroy();
         this.pointerProxy.destroy();
-        if (callbackProxy != null) {
-            this.callbackProxy.destroy();
+        this.swapchain.destroy();
+        this.frameQueue.destroy();
+        //the dispatch task has returned once the queue is destroyed
+        this.frameQueueExecutor.close();
+    }
+
+    public void requestFrame() {
+        this.frameScheduler.requestFrame();
+    }
+
+    @Override
+    public void render(final FrameScheduler.Frame frame) {
+        // animate to the time the frame will be shown, if we know it
+        final long frameTime = frame.getTargetNanos() != 0 ? frame.getTargetNanos() : frame.getStartNanos();
+        if (!redraw((int) TimeUnit.NANOSECONDS.toMillis(frameTime))) {
+            frame.skip();
         }
-        this.bufferPool.destroy();
+        this.frameScheduler.requestFrame();
     }
 
-    private int abs(final int i) {
+    @Override
+    public void late(final FrameScheduler.Frame frame,
+                     final int missedVblanks) {
+        System.out.printf("Frame %d missed %d vblank(s)%n",
+                frame.getNumber(),
+                missedVblanks);
+    }
+
+    @Override
+    public void dropped(final FrameScheduler.Frame frame) {
+        System.out.printf("Frame %d dropped%n",
+                frame.getNumber());
+    }
+
+    private static int abs(final int i) {
         return i < 0 ? -i : i;
     }
 
-    private void paintPixels(final Buffer buffer,
+    private void paintPixels(final ShmSwapchain.Buffer buffer,
                              final int time) {
-        final int halfh = buffer.getHeight() / 2;
-        final int halfw = buffer.getWidth() / 2;
-        int ir;
-        int or;
-        final IntBuffer image = buffer.getByteBuffer()
-                .asIntBuffer();
+        final int width = buffer.getWidth();
+        final int height = buffer.getHeight();
+        final int halfh = height / 2;
+        final int halfw = width / 2;
 
         /* squared radii thresholds */
-        or = (halfw < halfh ? halfw : halfh) - 8;
-        ir = or - 32;
-        or = or * or;
-        ir = ir * ir;
-
-        image.clear();
-        image.position(0);
-        for (int y = 0; y < buffer.getHeight(); y++) {
-            final int y2 = (y - halfh) * (y - halfh);
-
-            for (int x = 0; x < buffer.getWidth(); x++) {
-                int v;
-
-                final int r2 = (x - halfw) * (x - halfw) + y2;
-
-                if (r2 < ir) {
-                    v = (r2 / 32 + time / 64) * 0x0080401;
-                } else if (r2 < or) {
-                    v = (y + time / 32) * 0x0080401;
-                } else {
-                    v = (x + time / 16) * 0x0080401;
-                }
-                v &= 0x00ffffff;
-
-                if (abs(x - y) > 6 && abs(x + y - buffer.getHeight()) > 6) {
-                    v |= 0xff000000;
-                }
-
-                image.put(v);
-            }
-        }
+        int or = (halfw < halfh ? halfw : halfh) - 8;
+        int ir = or - 32;
+        final int outerRadius = or * or;
+        final int innerRadius = ir * ir;
+
+        this.tileRenderer.render(buffer.getSegment(),
+                buffer.getStride(),
+                0,
+                0,
+                width,
+                height,
+                (pixels, stride, tileX, tileY, tileWidth, tileHeight) -> {
+                    for (int y = tileY; y < tileY + tileHeight; y++) {
+                        final int y2 = (y - halfh) * (y - halfh);
+                        final long row = (long) y * stride;
+
+                        for (int x = tileX; x < tileX + tileWidth; x++) {
+                            int v;
+
+                            final int r2 = (x - halfw) * (x - halfw) + y2;
+
+                            if (r2 < innerRadius) {
+                                v = (r2 / 32 + time / 64) * 0x0080401;
+                            } else if (r2 < outerRadius) {
+                                v = (y + time / 32) * 0x0080401;
+                            } else {
+                                v = (x + time / 16) * 0x0080401;
+                            }
+                            v &= 0x00ffffff;
+
+                            if (abs(x - y) > 6 && abs(x + y - height) > 6) {
+                                v |= 0xff000000;
+                            }
+
+                            pixels.set(ValueLayout.JAVA_INT,
+                                    row + x * 4L,
+                                    v);
+                        }
+                    }
+                });
     }
 
-    public void redraw(final int time) {
+    public synchronized boolean redraw(final int time) {
 
-        WlBufferProxy wlBufferProxy = this.bufferPool.popBuffer();
-        Buffer buffer = (Buffer) wlBufferProxy.getImplementation();
         int dx = 0;
         int dy = 0;
 
-        if (this.needsBufferPoolUpdate) {
+        if (this.needsResize) {
             if (this.edges == WlShellSurfaceResize.NONE.value ||
                     this.edges == WlShellSurfaceResize.BOTTOM_RIGHT.value ||
                     this.edges == WlShellSurfaceResize.BOTTOM.value ||
@@ -322,54 +384,81 @@ public class Window implements WlSurfaceEventsV3,
                 dy = this.height - this.pendingHeight;
             }
 
-            try {
+            //a size of 0 means we can pick our own size
+            if (this.pendingWidth > 0 && this.pendingHeight > 0) {
                 this.width = this.pendingWidth;
                 this.height = this.pendingHeight;
-                this.needsBufferPoolUpdate = false;
-
-                //FIXME properly implement bufferpool destruction.
-                BufferPool oldBufferPool = bufferPool;
-                this.bufferPool = createBufferPool(display,
-                        2);
-                wlBufferProxy = this.bufferPool.popBuffer();
-                buffer = (Buffer) wlBufferProxy.getImplementation();
-            } catch (IOException e) {
-                e.printStackTrace();
             }
+            this.needsResize = false;
         }
 
-        paintPixels(buffer, time);
-
-        this.surfaceProxy.attach(wlBufferProxy,
-                dx,
-                dy);
-        this.surfaceProxy.damage(0,
-                0,
-                buffer.getWidth(),
-                buffer.getHeight());
-        //cleanup the previous frame callback
-        if (this.callbackProxy != null) {
-            this.callbackProxy.destroy();
+        final ShmSwapchain.Buffer buffer;
+        try {
+            buffer = this.swapchain.acquire(this.width,
+                    this.height);
+        } catch (final InterruptedException e) {
+            Thread.currentThread()
+                    .interrupt();
+            return false;
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return false;
         }
-        //allocate a new frame callback
-        this.callbackProxy = this.surfaceProxy.frame(new WlCallbackEvents() {
-            @Override
-            public void done(final WlCallbackProxy emitter,
-                             final int time) {
-                redraw(time);
-            }
-        });
+        final WlBufferProxy wlBufferProxy = buffer.getProxy();
 
-        this.surfaceProxy.commit();
+        //the whole surface is animated, so every frame damages everything
+        paintPixels(buffer, time);
+        this.damage.clear()
+                .add(0,
+                        0,
+                        buffer.getWidth(),
+                        buffer.getHeight());
+
+        if (this.frameRequests == null) {
+            final WlBufferProxy firstBuffer = wlBufferProxy;
+            this.frameRequests = RequestTemplate.record(() -> {
+                this.surfaceProxy.attach(firstBuffer,
+                        0,
+                        0);
+                this.surfaceProxy.damage(0,
+                        0,
+                        0,
+                        0);
+                //the frame callback is requested by the frame scheduler
+                this.surfaceProxy.commit();
+            });
+        }
+        //attach, damage and commit
+        this.frameRequests.setObject(0,
+                        0,
+                        wlBufferProxy)
+                .setInt(0,
+                        1,
+                        dx)
+                .setInt(0,
+                        2,
+                        dy)
+                .setInt(1,
+                        2,
+                        buffer.getWidth())
+                .setInt(1,
+                        3,
+                        buffer.getHeight())
+                .replay();
+        this.swapchain.submit(buffer,
+                this.damage);
+        //we render outside of the dispatch thread, so make sure the commit is sent right away
+        this.display.getDisplayProxy().flush();
+        return true;
     }
 
     @Override
-    public void configure(XdgToplevelProxy emitter, int width, int height, @Nonnull WlArray states) {
+    public synchronized void configure(XdgToplevelProxy emitter, int width, int height, @Nonnull WlArray states) {
         this.fullscreen = false;
         this.maximized = false;
         this.pendingWidth = width;
         this.pendingHeight = height;
-        this.needsBufferPoolUpdate = true;
+        this.needsResize = true;
 
     }
 
@@ -20,9 +20,15 @@ package org.freedesktop.wayland.client;
 
 import org.freedesktop.wayland.raw.C;
 import org.freedesktop.wayland.raw.LibWayland;
+import org.freedesktop.wayland.util.IdTable;
 import org.freedesktop.wayland.util.Memory;
 
 import java.lang.foreign.MemorySegment;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
 
 /**
  * Represents a connection to the compositor and acts as a proxy to
@@ -112,6 +118,7 @@ public abstract class Display extends Proxy<Void> {
         super(pointer,
                 null,
                 1);
+        track(new IdTable<>());
     }
 
     /**
@@ -235,6 +242,87 @@ public abstract class Display extends Proxy<Void> {
                 queue.pointer);
     }
 
+    /**
+     * Process incoming events without blocking the calling thread in native code
+     * <p>
+     * Behaves like {@link #dispatch()}, but waits for the display fd to become readable using the
+     * {@link DisplayPoller#shared() shared poller} instead of blocking in {@code poll(2)}. The calling thread parks
+     * while it waits, which makes this the method of choice when dispatching from a virtual thread.
+     * <p>
+     * The sequence is the one described in {@link #prepareRead()}: events already queued are dispatched right
+     * away, otherwise buffered requests are flushed, the thread waits until the fd is readable, reads the events
+     * and dispatches them.
+     *
+     * @return The number of dispatched events on success or -1 on failure
+     * @throws InterruptedException if the calling thread was interrupted while waiting. The read intention is
+     *                              cancelled before the exception is thrown.
+     * @see #dispatch()
+     */
+    public int dispatchNonBlocking() throws InterruptedException {
+        return dispatchNonBlocking(null,
+                DisplayPoller.shared());
+    }
+
+    /**
+     * Dispatch events in an event queue without blocking the calling thread in native code
+     * <p>
+     * The non-blocking counterpart of {@link #dispatchQueue(EventQueue)}, see {@link #dispatchNonBlocking()}.
+     *
+     * @param queue The event queue to dispatch
+     * @return The number of dispatched events on success or -1 on failure
+     * @throws InterruptedException if the calling thread was interrupted while waiting.
+     */
+    public int dispatchQueueNonBlocking(final EventQueue queue) throws InterruptedException {
+        return dispatchQueueNonBlocking(queue,
+                DisplayPoller.shared());
+    }
+
+    /**
+     * Dispatch events in an event queue without blocking the calling thread in native code
+     * <p>
+     * The non-blocking counterpart of {@link #dispatchQueue(EventQueue)}, see {@link #dispatchNonBlocking()}.
+     *
+     * @param queue  The event queue to dispatch
+     * @param poller The poller used to wait for the display fd
+     * @return The number of dispatched events on success or -1 on failure
+     * @throws InterruptedException if the calling thread was interrupted while waiting.
+     */
+    public int dispatchQueueNonBlocking(final EventQueue queue,
+                                        final DisplayPoller poller) throws InterruptedException {
+        return dispatchNonBlocking(Objects.requireNonNull(queue),
+                poller);
+    }
+
+    private int dispatchNonBlocking(final EventQueue queue,
+                                    final DisplayPoller poller) throws InterruptedException {
+        final int prepared = queue == null ? prepareRead() : prepareReadQueue(queue);
+        if (prepared != 0) {
+            // there are events queued already
+            return queue == null ? dispatchPending() : dispatchQueuePending(queue);
+        }
+
+        final int fd = getFD();
+        try {
+            // flush can fail with EAGAIN when the socket buffer is full, wait until the compositor drained it
+            while (flush() < 0) {
+                final int events = poller.awaitWritable(fd);
+                if (getError() != 0 || (events & (C.EPOLLERR() | C.EPOLLHUP())) != 0) {
+                    cancelRead();
+                    return -1;
+                }
+            }
+            poller.awaitReadable(fd);
+        } catch (final InterruptedException | RuntimeException e) {
+            cancelRead();
+            throw e;
+        }
+
+        if (readEvents() < 0) {
+            return -1;
+        }
+        return queue == null ? dispatchPending() : dispatchQueuePending(queue);
+    }
+
     /**
      * Send all buffered requests on the display to the server
      * <p>
@@ -266,6 +354,99 @@ public abstract class Display extends Proxy<Void> {
         return LibWayland.wl_display_roundtrip(this.pointer);
     }
 
+    /**
+     * Block until all pending request are processed by the server, without blocking the calling thread in native
+     * code
+     * <p>
+     * The non-blocking counterpart of {@link #roundtrip()}. The main queue is dispatched with
+     * {@link #dispatchNonBlocking()} until the server answered a {@code wl_display.sync} request.
+     *
+     * @return The number of dispatched events on success or -1 on failure
+     * @throws InterruptedException if the calling thread was interrupted while waiting.
+     * @see #syncAsync()
+     */
+    public int roundtripNonBlocking() throws InterruptedException {
+        final CompletableFuture<Void> done = syncAsync();
+        int dispatched = 0;
+        while (!done.isDone()) {
+            final int ret = dispatchNonBlocking();
+            if (ret < 0) {
+                return -1;
+            }
+            dispatched += ret;
+        }
+        return dispatched;
+    }
+
+    /**
+     * Asynchronous roundtrip
+     * <p>
+     * Sends a {@code wl_display.sync} request and returns a future that completes when the server answered it.
+     * As the server handles requests in order, all requests issued before this call have been processed and their
+     * events sent by then. Unlike {@link #roundtrip()} this does not block, so independent initialization steps,
+     * e.g. binding globals and waiting for their initial events, can share a single round-trip:
+     * <pre>
+     *   {@code
+     *   CompletableFuture<Void> globals = display.syncAsync();
+     *   // ... issue more requests, and sync again for their replies
+     *   display.flush();
+     *   }
+     * </pre>
+     * <p>
+     * The request is buffered like any other request and sent with the next {@link #flush()}. The future is
+     * completed on the thread that dispatches the main queue, when it dispatches the reply.
+     *
+     * @return a future that completes once all previous requests were processed by the server.
+     */
+    public CompletableFuture<Void> syncAsync() {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        requestSync(null,
+                callbackData -> future.complete(null));
+        return future;
+    }
+
+    /**
+     * Asynchronous roundtrip with a timeout
+     * <p>
+     * Like {@link #syncAsync()}, but the future completes exceptionally with a
+     * {@link java.util.concurrent.TimeoutException} if the server did not answer in time.
+     *
+     * @param timeout how long to wait before giving up, in units of {@code unit}
+     * @param unit    the unit of {@code timeout}
+     * @return a future that completes once all previous requests were processed by the server.
+     */
+    public CompletableFuture<Void> syncAsync(final long timeout,
+                                             final TimeUnit unit) {
+        return syncAsync().orTimeout(timeout,
+                unit);
+    }
+
+    /**
+     * Asynchronous roundtrip on an event queue
+     * <p>
+     * Like {@link #syncAsync()}, but the reply is dispatched on the given queue instead of the main queue. The
+     * request is sent through a proxy wrapper so it can safely be issued while another thread dispatches the queue.
+     *
+     * @param queue the queue that dispatches the reply
+     * @return a future that completes once all previous requests were processed by the server.
+     */
+    public CompletableFuture<Void> syncAsync(final EventQueue queue) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        requestSync(Objects.requireNonNull(queue),
+                callbackData -> future.complete(null));
+        return future;
+    }
+
+    /**
+     * Send a {@code wl_display.sync} request. Implemented by the generated display proxy, as only it knows the
+     * generated {@code wl_callback} types.
+     *
+     * @param queue the queue that dispatches the reply, or null for the main queue.
+     * @param done  called with the callback data when the reply is dispatched.
+     */
+    protected abstract void requestSync(EventQueue queue,
+                                        IntConsumer done);
+
     /**
      * Create a new event queue for this display
      * <p>
@@ -277,6 +458,40 @@ public abstract class Display extends Proxy<Void> {
         return new EventQueue(LibWayland.wl_display_create_queue(this.pointer));
     }
 
+    /**
+     * Create a new event queue for this display that is dispatched on the given executor
+     * <p>
+     * The executor runs a task that keeps dispatching the queue with
+     * {@link #dispatchQueueNonBlocking(EventQueue)} until the queue is destroyed. The task
+     * occupies a thread of the executor for the lifetime of the queue; a virtual thread
+     * per task executor or a single thread executor are good choices.
+     *
+     * @param executor The executor that runs the dispatch task of the queue.
+     * @return A new event queue associated with this display.
+     * @see Proxy#createWrapper(EventQueue)
+     */
+    public EventQueue createQueue(final Executor executor) {
+        return createQueue(executor,
+                DisplayPoller.shared());
+    }
+
+    /**
+     * Create a new event queue for this display that is dispatched on the given executor
+     *
+     * @param executor The executor that runs the dispatch task of the queue.
+     * @param poller   The poller used to wait for the display fd.
+     * @return A new event queue associated with this display.
+     * @see #createQueue(Executor)
+     */
+    public EventQueue createQueue(final Executor executor,
+                                  final DisplayPoller poller) {
+        final EventQueue queue = createQueue();
+        queue.dispatchOn(this,
+                executor,
+                poller);
+        return queue;
+    }
+
     /**
      * Retrieve the last error that occurred on a display
      * <p>
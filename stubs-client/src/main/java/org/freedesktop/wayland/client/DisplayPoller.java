@@ -0,0 +1,355 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.client;
+
+import org.freedesktop.wayland.raw.C;
+import org.freedesktop.wayland.raw.epoll_data;
+import org.freedesktop.wayland.raw.epoll_event;
+import org.freedesktop.wayland.util.Memory;
+import org.slf4j.LoggerFactory;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Waits for readiness of file descriptors without blocking the calling thread in native code.
+ * <p>
+ * A single platform thread blocks in {@code epoll_wait(2)} on behalf of all waiters. Threads that want to wait for a
+ * file descriptor register their interest with the poller and park. When the descriptor becomes ready, the poller
+ * thread unparks them. Parking does not pin the carrier of a virtual thread, so thousands of display connections,
+ * each dispatched by its own virtual thread, can share a handful of carrier threads.
+ * <p>
+ * Descriptors are registered with {@code EPOLLONESHOT} and re-armed on every wait, so no explicit unregistration is
+ * needed: closing a descriptor removes it from the epoll set.
+ *
+ * @see Display#dispatchNonBlocking()
+ */
+public final class DisplayPoller implements AutoCloseable {
+
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(DisplayPoller.class);
+
+    private static final int MAX_EVENTS = 64;
+
+    private static volatile DisplayPoller shared;
+
+    private final Map<Integer, FdState> fdStates = new ConcurrentHashMap<>();
+    private final int epollFd;
+    private final int wakeupFd;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * Create a new poller with its own epoll instance and poller thread.
+     *
+     * @param name the name of the poller thread.
+     */
+    public DisplayPoller(final String name) {
+        this.epollFd = C.epoll_create1(C.EPOLL_CLOEXEC());
+        if (this.epollFd < 0) {
+            throw new RuntimeException("epoll_create1 failed.");
+        }
+        this.wakeupFd = C.eventfd(0,
+                C.EFD_CLOEXEC() | C.EFD_NONBLOCK());
+        if (this.wakeupFd < 0) {
+            C.close(this.epollFd);
+            throw new RuntimeException("eventfd failed.");
+        }
+        final MemorySegment event = Memory.ARENA_AUTO.allocate(epoll_event.layout());
+        epoll_event.events(event,
+                C.EPOLLIN());
+        epoll_data.fd(epoll_event.data(event),
+                this.wakeupFd);
+        C.epoll_ctl(this.epollFd,
+                C.EPOLL_CTL_ADD(),
+                this.wakeupFd,
+                event);
+
+        this.thread = Thread.ofPlatform()
+                .name(name)
+                .daemon(true)
+                .unstarted(this::poll);
+        this.thread.start();
+    }
+
+    /**
+     * The process wide poller, started on first use.
+     *
+     * @return a shared poller.
+     */
+    public static DisplayPoller shared() {
+        DisplayPoller poller = shared;
+        if (poller == null) {
+            synchronized (DisplayPoller.class) {
+                poller = shared;
+                if (poller == null) {
+                    poller = new DisplayPoller("wayland-display-poller");
+                    shared = poller;
+                }
+            }
+        }
+        return poller;
+    }
+
+    /**
+     * Park the calling thread until the file descriptor is readable, or in an error or hang-up state.
+     *
+     * @param fd the file descriptor to wait for.
+     * @return the {@code epoll} event mask that ended the wait.
+     * @throws InterruptedException if the calling thread was interrupted while waiting.
+     */
+    public int awaitReadable(final int fd) throws InterruptedException {
+        return await(fd,
+                C.EPOLLIN());
+    }
+
+    /**
+     * Park the calling thread until the file descriptor is writable, or in an error or hang-up state.
+     *
+     * @param fd the file descriptor to wait for.
+     * @return the {@code epoll} event mask that ended the wait.
+     * @throws InterruptedException if the calling thread was interrupted while waiting.
+     */
+    public int awaitWritable(final int fd) throws InterruptedException {
+        return await(fd,
+                C.EPOLLOUT());
+    }
+
+    private int await(final int fd,
+                      final int events) throws InterruptedException {
+        if (this.closed) {
+            throw new IllegalStateException("Poller is closed.");
+        }
+        final Waiter waiter = new Waiter(Thread.currentThread(),
+                events);
+        final FdState fdState = register(fd,
+                waiter);
+
+        try {
+            while (waiter.readyEvents == 0) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (this.closed) {
+                    throw new IllegalStateException("Poller is closed.");
+                }
+            }
+            return waiter.readyEvents;
+        } finally {
+            fdState.lock.lock();
+            try {
+                fdState.waiters.remove(waiter);
+                forgetIfUnused(fdState);
+            } finally {
+                fdState.lock.unlock();
+            }
+        }
+    }
+
+    private FdState register(final int fd,
+                             final Waiter waiter) {
+        while (true) {
+            final FdState fdState = this.fdStates.computeIfAbsent(fd,
+                    FdState::new);
+            fdState.lock.lock();
+            try {
+                // the state was forgotten by its last waiter after we looked it up, use a fresh one
+                if (this.fdStates.get(fd) != fdState) {
+                    continue;
+                }
+                fdState.waiters.add(waiter);
+                try {
+                    arm(fdState);
+                } catch (final RuntimeException e) {
+                    fdState.waiters.remove(waiter);
+                    forgetIfUnused(fdState);
+                    throw e;
+                }
+                return fdState;
+            } finally {
+                fdState.lock.unlock();
+            }
+        }
+    }
+
+    // must be called while holding the fd state lock
+    private void forgetIfUnused(final FdState fdState) {
+        // a closed display leaves no state behind, the fd number can be reused by anything
+        if (fdState.waiters.isEmpty()) {
+            this.fdStates.remove(fdState.fd,
+                    fdState);
+        }
+    }
+
+    // must be called while holding the fd state lock
+    private void arm(final FdState fdState) {
+        int events = 0;
+        for (final Waiter waiter : fdState.waiters) {
+            events |= waiter.events;
+        }
+        epoll_event.events(fdState.event,
+                events | C.EPOLLONESHOT());
+        epoll_data.fd(epoll_event.data(fdState.event),
+                fdState.fd);
+
+        // the fd might have been closed and reused since we last saw it, so fall back to ADD if MOD fails
+        int ret = C.epoll_ctl(this.epollFd,
+                C.EPOLL_CTL_MOD(),
+                fdState.fd,
+                fdState.event);
+        if (ret < 0) {
+            ret = C.epoll_ctl(this.epollFd,
+                    C.EPOLL_CTL_ADD(),
+                    fdState.fd,
+                    fdState.event);
+        }
+        if (ret < 0) {
+            throw new IllegalArgumentException("Can not poll file descriptor " + fdState.fd);
+        }
+    }
+
+    private void poll() {
+        try (final Arena arena = Arena.ofConfined()) {
+            final MemorySegment events = epoll_event.allocateArray(MAX_EVENTS,
+                    arena);
+            final MemorySegment counter = arena.allocate(ValueLayout.JAVA_LONG);
+            final List<Waiter> ready = new ArrayList<>();
+            while (!this.closed) {
+                final int nroEvents = C.epoll_wait(this.epollFd,
+                        events,
+                        MAX_EVENTS,
+                        -1);
+                // negative means EINTR or a closed poller, both handled by the loop condition
+                for (int i = 0; i < nroEvents; i++) {
+                    final MemorySegment event = epoll_event.asSlice(events,
+                            i);
+                    final int fd = epoll_data.fd(epoll_event.data(event));
+                    if (fd == this.wakeupFd) {
+                        C.read(this.wakeupFd,
+                                counter,
+                                counter.byteSize());
+                        continue;
+                    }
+                    final FdState fdState = this.fdStates.get(fd);
+                    if (fdState != null) {
+                        wake(fdState,
+                                epoll_event.events(event),
+                                ready);
+                    }
+                }
+            }
+        } catch (final Throwable t) {
+            LOG.error("display poller stopped unexpectedly",
+                    t);
+        } finally {
+            this.fdStates.values()
+                    .forEach(fdState -> fdState.waiters.forEach(waiter -> LockSupport.unpark(waiter.thread)));
+        }
+    }
+
+    private void wake(final FdState fdState,
+                      final int readyEvents,
+                      final List<Waiter> ready) {
+        final int failure = C.EPOLLERR() | C.EPOLLHUP();
+        fdState.lock.lock();
+        try {
+            for (final Waiter waiter : fdState.waiters) {
+                if ((readyEvents & (waiter.events | failure)) != 0) {
+                    waiter.readyEvents = readyEvents;
+                    ready.add(waiter);
+                }
+            }
+            fdState.waiters.removeAll(ready);
+            if (!fdState.waiters.isEmpty()) {
+                arm(fdState);
+            }
+        } finally {
+            fdState.lock.unlock();
+        }
+        for (final Waiter waiter : ready) {
+            LockSupport.unpark(waiter.thread);
+        }
+        ready.clear();
+    }
+
+    /**
+     * Stop the poller thread. Threads still waiting are woken up with an {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        try (final Arena arena = Arena.ofConfined()) {
+            final MemorySegment value = arena.allocate(ValueLayout.JAVA_LONG);
+            value.set(ValueLayout.JAVA_LONG,
+                    0,
+                    1L);
+            C.write(this.wakeupFd,
+                    value,
+                    value.byteSize());
+        }
+        try {
+            this.thread.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread()
+                    .interrupt();
+        }
+        C.close(this.wakeupFd);
+        C.close(this.epollFd);
+        synchronized (DisplayPoller.class) {
+            if (shared == this) {
+                shared = null;
+            }
+        }
+    }
+
+    private static final class Waiter {
+        final Thread thread;
+        final int events;
+        volatile int readyEvents;
+
+        Waiter(final Thread thread,
+               final int events) {
+            this.thread = thread;
+            this.events = events;
+        }
+    }
+
+    private static final class FdState {
+        final int fd;
+        final ReentrantLock lock = new ReentrantLock();
+        final List<Waiter> waiters = new ArrayList<>(2);
+        final MemorySegment event = Memory.ARENA_AUTO.allocate(epoll_event.layout());
+
+        FdState(final int fd) {
+            this.fd = fd;
+        }
+    }
+}
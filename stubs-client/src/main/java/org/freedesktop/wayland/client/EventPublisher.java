@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.client;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Base class of the generated event publishers.
+ * <p>
+ * For every interface with events, the scanner generates a sealed event type with a record per event, e.g.
+ * {@code WlPointerEvent.Motion}, and a {@code Publisher} that implements the event listener of the interface by
+ * publishing those records. Used as the implementation of a proxy, the dispatch thread only creates a record and
+ * hands it off. Subscribers process the events on the executor of the publisher, at their own pace:
+ * <pre>
+ *   {@code
+ *   WlPointerEvent.Publisher pointerEvents = new WlPointerEvent.Publisher(executor, 256);
+ *   pointerEvents.subscribe(subscriber);
+ *   seatProxy.getPointer(pointerEvents);
+ *   }
+ * </pre>
+ * Every subscriber has a buffer of at most {@code maxBufferCapacity} events. When a subscriber falls that far behind,
+ * publishing blocks the dispatch thread until the subscriber catches up. No more events are read from the display
+ * connection during that time, so backpressure extends to the compositor.
+ * <p>
+ * Records only hold java objects: string and array arguments are copied, so they stay valid after dispatch.
+ *
+ * @param <E> the sealed event type of the interface.
+ */
+public class EventPublisher<E> extends SubmissionPublisher<E> {
+
+    /**
+     * Create a publisher that delivers to subscribers on the common pool, with the default buffer capacity.
+     */
+    public EventPublisher() {
+        super();
+    }
+
+    /**
+     * @param executor          the executor that delivers events to subscribers.
+     * @param maxBufferCapacity the maximum number of events buffered for each subscriber.
+     */
+    public EventPublisher(final Executor executor,
+                          final int maxBufferCapacity) {
+        super(executor,
+                maxBufferCapacity);
+    }
+
+    /**
+     * Publish an event to all subscribers, blocking while a subscriber's buffer is full.
+     *
+     * @param event the event to publish.
+     * @see SubmissionPublisher#submit(Object)
+     */
+    protected void publish(final E event) {
+        if (!isClosed()) {
+            submit(event);
+        }
+    }
+}
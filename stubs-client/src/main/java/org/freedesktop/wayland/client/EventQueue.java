@@ -21,20 +21,36 @@ package org.freedesktop.wayland.client;
 import org.freedesktop.wayland.raw.C;
 import org.freedesktop.wayland.raw.LibWayland;
 import org.freedesktop.wayland.util.ObjectCache;
+import org.slf4j.LoggerFactory;
 
 import java.lang.foreign.MemorySegment;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 
 /**
  * A queue for {@link Proxy} object events.
  * <p>
  * Event queues allows the events on a display to be handled in a thread-safe
  * manner.
+ * <p>
+ * A queue created with {@link Display#createQueue(Executor)} is dispatched by a
+ * task running on the given {@link Executor}. This way each subsystem of an
+ * application (input, rendering, clipboard, ...) can own a queue, the thread
+ * dispatching it, and the proxies assigned to it. Use
+ * {@link Proxy#createWrapper(EventQueue)} to create objects on such a queue from
+ * another thread.
  *
  * @see Display
  */
 public class EventQueue {
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(EventQueue.class);
+
     public final MemorySegment pointer;
 
+    private final CountDownLatch dispatchStopped = new CountDownLatch(1);
+    private volatile Thread dispatchThread;
+    private volatile boolean stopped;
+
     protected EventQueue(final MemorySegment pointer) {
         this.pointer = pointer;
         ObjectCache.store(this.pointer, this);
@@ -48,6 +64,41 @@ public class EventQueue {
         return eventQueue;
     }
 
+    void dispatchOn(final Display display,
+                    final Executor executor,
+                    final DisplayPoller poller) {
+        executor.execute(() -> dispatchLoop(display,
+                poller));
+    }
+
+    private void dispatchLoop(final Display display,
+                              final DisplayPoller poller) {
+        this.dispatchThread = Thread.currentThread();
+        try {
+            while (!this.stopped) {
+                if (display.dispatchQueueNonBlocking(this,
+                        poller) < 0) {
+                    LOG.error("Dispatching event queue {} failed, display error={}",
+                            this,
+                            display.getError());
+                    break;
+                }
+            }
+        } catch (final InterruptedException e) {
+            // destroyed while waiting for events
+        } finally {
+            this.dispatchThread = null;
+            this.dispatchStopped.countDown();
+        }
+    }
+
+    /**
+     * @return true if the calling thread is the thread dispatching this queue through its executor.
+     */
+    public boolean isDispatchThread() {
+        return this.dispatchThread == Thread.currentThread();
+    }
+
     @Override
     public int hashCode() {
         return this.pointer.hashCode();
@@ -76,8 +127,21 @@ public class EventQueue {
      * The {@link Display} object used to create the queue should not be
      * destroyed until all event queues created with it are destroyed with
      * this function.
+     * <p>
+     * If the queue is dispatched by an executor, the dispatch task is stopped first.
      */
     public void destroy() {
+        this.stopped = true;
+        final Thread thread = this.dispatchThread;
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.interrupt();
+            try {
+                this.dispatchStopped.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread()
+                        .interrupt();
+            }
+        }
         LibWayland.wl_event_queue_destroy(this.pointer);
         ObjectCache.remove(this.pointer);
     }
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.freedesktop.wayland.client;
+
+import org.freedesktop.wayland.raw.LibWayland;
+import org.freedesktop.wayland.raw.wl_argument;
+import org.freedesktop.wayland.raw.wl_dispatcher_func_t;
+import org.freedesktop.wayland.util.Memory;
+import org.slf4j.LoggerFactory;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Fast path for {@code wl_callback} objects that fire once and are destroyed, like frame callbacks.
+ * <p>
+ * Regular proxies are registered in the object cache, get a global reference and go through the reflective
+ * {@link org.freedesktop.wayland.util.Dispatcher}. A one-shot callback needs none of that: the native proxy gets a
+ * static dispatcher and the index of a pooled slot holding the Java handler as its implementation pointer. When the
+ * {@code done} event arrives the slot is freed, the native proxy is destroyed and the handler is called.
+ */
+final class OneShotCallback {
+
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(OneShotCallback.class);
+
+    private static final MemorySegment DISPATCHER = wl_dispatcher_func_t.allocate(OneShotCallback::dispatch,
+            Memory.ARENA_AUTO);
+    //a single new_id argument, left zero. libwayland fills in the id.
+    private static final ThreadLocal<MemorySegment> NEW_ID_ARGUMENT = ThreadLocal.withInitial(() -> wl_argument.allocateArray(1,
+            Memory.ARENA_AUTO));
+
+    //guarded by OneShotCallback.class
+    private static IntConsumer[] handlers = new IntConsumer[16];
+    private static int[] freeSlots = new int[16];
+    private static int freeCount;
+    private static int slotCount;
+
+    private OneShotCallback() {
+    }
+
+    /**
+     * Send a request that creates a {@code wl_callback} object.
+     *
+     * @param proxyPointer the proxy to send the request on.
+     * @param opcode       the request opcode. The request must have the callback new_id as its only argument.
+     * @param done         called with the callback data when the callback is done.
+     */
+    static void marshal(final MemorySegment proxyPointer,
+                        final int opcode,
+                        final IntConsumer done) {
+        final int slot = acquire(done);
+        final MemorySegment callbackPointer = LibWayland.wl_proxy_marshal_array_constructor(proxyPointer,
+                opcode,
+                NEW_ID_ARGUMENT.get(),
+                LibWayland.wl_callback_interface());
+        if (MemorySegment.NULL.equals(callbackPointer)) {
+            release(slot);
+            throw new RuntimeException("Unable to create a callback.");
+        }
+        LibWayland.wl_proxy_add_dispatcher(callbackPointer,
+                DISPATCHER,
+                MemorySegment.ofAddress(slot),
+                MemorySegment.NULL);
+    }
+
+    private static int dispatch(final MemorySegment implementation,
+                                final MemorySegment callbackPointer,
+                                final int opcode,
+                                final MemorySegment wlMessage,
+                                final MemorySegment wlArguments) {
+        //wl_callback has a single event: done(uint callback_data)
+        final IntConsumer done = release((int) implementation.address());
+        final int callbackData = wl_argument.u(wlArguments);
+        LibWayland.wl_proxy_destroy(callbackPointer);
+        try {
+            done.accept(callbackData);
+        } catch (final Exception e) {
+            LOG.error("Callback handler failed.",
+                    e);
+        }
+        return 0;
+    }
+
+    private static synchronized int acquire(final IntConsumer done) {
+        final int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == handlers.length) {
+                handlers = Arrays.copyOf(handlers,
+                        slotCount * 2);
+                freeSlots = Arrays.copyOf(freeSlots,
+                        slotCount * 2);
+            }
+            slot = slotCount++;
+        }
+        handlers[slot] = done;
+        return slot;
+    }
+
+    private static synchronized IntConsumer release(final int slot) {
+        final IntConsumer done = handlers[slot];
+        handlers[slot] = null;
+        freeSlots[freeCount++] = slot;
+        return done;
+    }
+}
@@ -26,8 +26,9 @@ import org.freedesktop.wayland.util.*;
 import java.lang.foreign.MemorySegment;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
 
 /**
  * Represents a protocol object on the client side.
@@ -48,13 +49,17 @@ import java.util.Map;
  */
 public abstract class Proxy<I> implements WaylandObject {
 
-    private static final Map<Class<? extends Proxy<?>>, Constructor<? extends Proxy<?>>> PROXY_CONSTRUCTORS = new HashMap<>();
+    private static final Map<Class<? extends Proxy<?>>, Constructor<? extends Proxy<?>>> PROXY_CONSTRUCTORS = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Constructor<?>> WRAPPER_CONSTRUCTORS = new ConcurrentHashMap<>();
 
     public final MemorySegment pointer;
 
     private final int version;
     private final I implementation;
     private final MemorySegment jObjectRef;
+    private boolean wrapper;
+    private int id;
+    private volatile IdTable<Proxy<?>> idTable;
 
     protected Proxy(final MemorySegment pointer) {
         this(pointer,
@@ -104,6 +109,14 @@ public abstract class Proxy<I> implements WaylandObject {
      */
     protected void marshal(final int opcode,
                            final Arguments args) {
+        final RequestTemplate template = RequestTemplate.recording();
+        if (template != null) {
+            template.add(this,
+                    opcode,
+                    args,
+                    null);
+            return;
+        }
         LibWayland.wl_proxy_marshal_array(this.pointer,
                 opcode,
                 args.pointer);
@@ -116,6 +129,14 @@ public abstract class Proxy<I> implements WaylandObject {
      * see {link #marshal(int, Arguments)}
      */
     protected void marshal(final int opcode) {
+        final RequestTemplate template = RequestTemplate.recording();
+        if (template != null) {
+            template.add(this,
+                    opcode,
+                    null,
+                    null);
+            return;
+        }
         LibWayland.wl_proxy_marshal_array(this.pointer,
                 opcode,
                 MemorySegment.NULL
@@ -124,6 +145,34 @@ public abstract class Proxy<I> implements WaylandObject {
 
     // called from generated proxies
 
+    /**
+     * Prepare a request that creates a one-shot {@code wl_callback} object
+     * <p>
+     * Unlike {@link #marshalConstructor(int, Object, int, Class, Arguments)}, no {@code Proxy} is created for the
+     * callback. The native callback object is destroyed as soon as its {@code done} event is dispatched.
+     * <p>
+     * This should not normally be used by non-generated code.
+     *
+     * @param opcode Opcode of the request to be sent, its only argument must be the new callback
+     * @param done   Called with the callback data when the callback is done
+     */
+    protected void marshalCallback(final int opcode,
+                                   final IntConsumer done) {
+        final RequestTemplate template = RequestTemplate.recording();
+        if (template != null) {
+            template.add(this,
+                    opcode,
+                    null,
+                    done);
+            return;
+        }
+        OneShotCallback.marshal(this.pointer,
+                opcode,
+                done);
+    }
+
+    // called from generated proxies
+
     /**
      * Prepare a request to be sent to the compositor
      * <p>
@@ -168,6 +217,9 @@ public abstract class Proxy<I> implements WaylandObject {
                                                          final int version,
                                                          final Class<T> newProxyCls,
                                                          final MemorySegment argsPointer) {
+        if (RequestTemplate.recording() != null) {
+            throw new IllegalStateException("Requests that create a proxy can not be recorded in a request template.");
+        }
         try {
             final var wlProxy = LibWayland.wl_proxy_marshal_array_constructor(this.pointer,
                     opcode,
@@ -202,9 +254,22 @@ public abstract class Proxy<I> implements WaylandObject {
             PROXY_CONSTRUCTORS.put(newProxyCls,
                     proxyConstructor);
         }
-        return (T) proxyConstructor.newInstance(pointer,
+        final T proxy = (T) proxyConstructor.newInstance(pointer,
                 implementation,
                 version);
+        final IdTable<Proxy<?>> idTable = this.idTable;
+        if (idTable != null) {
+            proxy.track(idTable);
+        }
+        return proxy;
+    }
+
+    // put this proxy in the id table of its connection
+    void track(final IdTable<Proxy<?>> idTable) {
+        this.id = LibWayland.wl_proxy_get_id(this.pointer);
+        this.idTable = idTable;
+        idTable.put(this.id,
+                this);
     }
 
     private <J, T extends Proxy<J>> Constructor<T> findMatchingConstructor(final Class<T> newProxyCls,
@@ -225,6 +290,111 @@ public abstract class Proxy<I> implements WaylandObject {
         throw new NoSuchMethodException();
     }
 
+    /**
+     * Create a proxy wrapper for making queue assignments thread-safe
+     * <p>
+     * A proxy wrapper is type of {@code Proxy} which acts as a wrapper object for
+     * another proxy. It is used for sending requests from a thread other than the
+     * one dispatching the queue of the wrapped proxy, or for assigning new objects
+     * to a queue without racing against the dispatching thread.
+     * <p>
+     * A proxy wrapper has its own queue, and any new object created by sending a
+     * request through the wrapper is assigned to that queue. Creating such an object
+     * through the wrapped proxy instead could mean its first events are dispatched on
+     * the wrong queue before {@link #setQueue(EventQueue)} could be called, as
+     * another thread may be reading and dispatching at any time.
+     * <p>
+     * A proxy wrapper has no listener of its own. Events are still dispatched to the
+     * implementation of the wrapped proxy. A proxy wrapper must be destroyed with
+     * {@link #destroy()} before the wrapped proxy is destroyed.
+     * <p>
+     * A wrapper of a {@link Display} can only be used to send requests. Connection
+     * methods like {@link Display#flush()} or {@link Display#dispatch()} must be
+     * called on the wrapped display.
+     * <p>
+     * Creating a wrapper is thread-safe, so a thread that wants to use a proxy of
+     * another thread should create its own wrapper:
+     * <pre>
+     *   {@code
+     *   WlDisplayProxy wrappedDisplay = display.createWrapper(queue);
+     *   WlRegistryProxy registry = wrappedDisplay.getRegistry(registryEvents);
+     *   wrappedDisplay.destroy();
+     *   }
+     * </pre>
+     *
+     * @param queue The event queue assigned to the wrapper and to any object created through it.
+     * @param <P>   the proxy type of the wrapper, this is always the type of this proxy.
+     * @return A proxy wrapper for this proxy.
+     */
+    public <P extends Proxy<I>> P createWrapper(final EventQueue queue) {
+        final P proxyWrapper = createWrapper();
+        proxyWrapper.setQueue(queue);
+        return proxyWrapper;
+    }
+
+    /**
+     * Create a proxy wrapper that shares the queue of this proxy
+     *
+     * @param <P> the proxy type of the wrapper, this is always the type of this proxy.
+     * @return A proxy wrapper for this proxy.
+     * @see #createWrapper(EventQueue)
+     */
+    public <P extends Proxy<I>> P createWrapper() {
+        final MemorySegment wrapperPointer = LibWayland.wl_proxy_create_wrapper(this.pointer);
+        if (MemorySegment.NULL.equals(wrapperPointer)) {
+            throw new RuntimeException("Unable to create a proxy wrapper for " + this);
+        }
+        try {
+            final Constructor<?> wrapperConstructor = WRAPPER_CONSTRUCTORS.computeIfAbsent(getClass(),
+                    Proxy::findWrapperConstructor);
+            final P proxyWrapper;
+            if (wrapperConstructor.getParameterCount() == 3) {
+                proxyWrapper = (P) wrapperConstructor.newInstance(wrapperPointer,
+                        null,
+                        this.version);
+            } else {
+                proxyWrapper = (P) wrapperConstructor.newInstance(wrapperPointer);
+            }
+            ((Proxy<?>) proxyWrapper).wrapper = true;
+            //objects created through the wrapper belong to the same connection, the wrapper itself is not tracked
+            ((Proxy<?>) proxyWrapper).idTable = this.idTable;
+            return proxyWrapper;
+        } catch (final IllegalAccessException |
+                       InstantiationException |
+                       InvocationTargetException e) {
+            LibWayland.wl_proxy_wrapper_destroy(wrapperPointer);
+            throw new RuntimeException("Uh oh, this is a bug!",
+                    e);
+        }
+    }
+
+    private static Constructor<?> findWrapperConstructor(final Class<?> proxyCls) {
+        Constructor<?> pointerConstructor = null;
+        for (final Constructor<?> constructor : proxyCls.getConstructors()) {
+            final Class<?>[] parameterTypes = constructor.getParameterTypes();
+            if (parameterTypes.length == 3 &&
+                    parameterTypes[0].isAssignableFrom(MemorySegment.class) &&
+                    parameterTypes[2].isAssignableFrom(int.class)) {
+                return constructor;
+            }
+            if (parameterTypes.length == 1 &&
+                    parameterTypes[0].isAssignableFrom(MemorySegment.class)) {
+                pointerConstructor = constructor;
+            }
+        }
+        if (pointerConstructor == null) {
+            throw new IllegalArgumentException("No suitable proxy constructor found on " + proxyCls);
+        }
+        return pointerConstructor;
+    }
+
+    /**
+     * @return true if this proxy was created with {@link #createWrapper(EventQueue)}.
+     */
+    public boolean isWrapper() {
+        return this.wrapper;
+    }
+
     /**
      * Get a proxy's listener
      * <p>
@@ -252,6 +422,17 @@ public abstract class Proxy<I> implements WaylandObject {
         return this.version;
     }
 
+    /**
+     * The proxies of the connection of this proxy by object id, kept up to date as proxies are created and destroyed.
+     * Only proxies created by sending a request from java code are tracked.
+     *
+     * @return the id table of the connection, or null if this proxy was not created from java code.
+     */
+    @Override
+    public IdTable<Proxy<?>> getIdTable() {
+        return this.idTable;
+    }
+
     /**
      * Assign a proxy to an event queue
      * <p>
@@ -285,10 +466,19 @@ public abstract class Proxy<I> implements WaylandObject {
     }
 
     /**
-     * Destroy a proxy object
+     * Destroy a proxy object, or a proxy wrapper if this proxy was created with {@link #createWrapper(EventQueue)}.
      */
     public void destroy() {
-        LibWayland.wl_proxy_destroy(this.pointer);
+        if (this.wrapper) {
+            LibWayland.wl_proxy_wrapper_destroy(this.pointer);
+        } else {
+            final IdTable<Proxy<?>> idTable = this.idTable;
+            if (idTable != null) {
+                idTable.remove(this.id,
+                        this);
+            }
+            LibWayland.wl_proxy_destroy(this.pointer);
+        }
         ObjectCache.remove(this.pointer);
         GlobalRef.remove(jObjectRef);
     }
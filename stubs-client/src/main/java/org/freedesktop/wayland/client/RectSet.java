@@ -0,0 +1,581 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.client;
+
+import java.util.Arrays;
+
+/**
+ * A set of pixels, stored as a list of non-overlapping rectangles in y-x banded form.
+ * <p>
+ * The rectangles are grouped in horizontal bands. All rectangles of a band have the same top and bottom, bands do not
+ * overlap and are sorted from top to bottom, and rectangles within a band are sorted from left to right and never
+ * touch. Vertically adjacent bands with the same horizontal spans are merged. This is the representation pixman, and
+ * therefore most compositors, use for regions, so it is usually also the smallest set of rectangles that describes
+ * the area.
+ * <p>
+ * A set is backed by {@code int} arrays that are reused between operations, so accumulating damage every frame does
+ * not allocate once the arrays are large enough. Use {@link #forEach(RectConsumer)} to turn a set into requests:
+ * <pre>
+ *   {@code
+ *   damage.forEach(surfaceProxy::damageBuffer);
+ *   opaque.forEach(regionProxy::add);
+ *   }
+ * </pre>
+ * A set is not thread-safe.
+ */
+public final class RectSet {
+
+    private static final int STRIDE = 4;
+    private static final int X1 = 0;
+    private static final int Y1 = 1;
+    private static final int X2 = 2;
+    private static final int Y2 = 3;
+
+    private static final int UNION = 0;
+    private static final int INTERSECT = 1;
+    private static final int SUBTRACT = 2;
+
+    //x1, y1, x2, y2 of every rectangle, x2 and y2 exclusive
+    private int[] rects;
+    private int count;
+
+    //result of the current operation, swapped with rects afterwards
+    private int[] scratch;
+    //a single rectangle operand
+    private final int[] single = new int[STRIDE];
+    //spans of a band from both operands, as x1, x2 pairs
+    private int[] spansA = new int[8];
+    private int[] spansB = new int[8];
+
+    public RectSet() {
+        this.rects = new int[8 * STRIDE];
+        this.scratch = new int[8 * STRIDE];
+    }
+
+    /**
+     * @param x      the left edge of the rectangle.
+     * @param y      the top edge of the rectangle.
+     * @param width  the width of the rectangle.
+     * @param height the height of the rectangle.
+     * @return a set containing a single rectangle.
+     */
+    public static RectSet of(final int x,
+                             final int y,
+                             final int width,
+                             final int height) {
+        return new RectSet().add(x,
+                y,
+                width,
+                height);
+    }
+
+    /**
+     * Remove all rectangles.
+     *
+     * @return this set.
+     */
+    public RectSet clear() {
+        this.count = 0;
+        return this;
+    }
+
+    /**
+     * Replace the contents of this set with those of another set.
+     *
+     * @param other the set to copy.
+     * @return this set.
+     */
+    public RectSet set(final RectSet other) {
+        if (this.rects.length < other.count * STRIDE) {
+            this.rects = new int[other.rects.length];
+        }
+        System.arraycopy(other.rects,
+                0,
+                this.rects,
+                0,
+                other.count * STRIDE);
+        this.count = other.count;
+        return this;
+    }
+
+    /**
+     * @return true if this set contains no pixels.
+     */
+    public boolean isEmpty() {
+        return this.count == 0;
+    }
+
+    /**
+     * @return the number of rectangles in this set.
+     */
+    public int size() {
+        return this.count;
+    }
+
+    public int getX(final int index) {
+        return rect(index)[index * STRIDE + X1];
+    }
+
+    public int getY(final int index) {
+        return rect(index)[index * STRIDE + Y1];
+    }
+
+    public int getWidth(final int index) {
+        final int offset = index * STRIDE;
+        return rect(index)[offset + X2] - this.rects[offset + X1];
+    }
+
+    public int getHeight(final int index) {
+        final int offset = index * STRIDE;
+        return rect(index)[offset + Y2] - this.rects[offset + Y1];
+    }
+
+    /**
+     * @param x the x coordinate of the pixel.
+     * @param y the y coordinate of the pixel.
+     * @return true if the pixel is part of this set.
+     */
+    public boolean contains(final int x,
+                            final int y) {
+        for (int offset = 0; offset < this.count * STRIDE; offset += STRIDE) {
+            if (y < this.rects[offset + Y1]) {
+                //bands are sorted, so no later rectangle can contain the pixel
+                return false;
+            }
+            if (y < this.rects[offset + Y2] && x >= this.rects[offset + X1] && x < this.rects[offset + X2]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of pixels in this set.
+     */
+    public long area() {
+        long area = 0;
+        for (int offset = 0; offset < this.count * STRIDE; offset += STRIDE) {
+            area += (long) (this.rects[offset + X2] - this.rects[offset + X1]) * (this.rects[offset + Y2] - this.rects[offset + Y1]);
+        }
+        return area;
+    }
+
+    /**
+     * Add a rectangle to this set.
+     *
+     * @param x      the left edge of the rectangle.
+     * @param y      the top edge of the rectangle.
+     * @param width  the width of the rectangle.
+     * @param height the height of the rectangle.
+     * @return this set.
+     */
+    public RectSet add(final int x,
+                       final int y,
+                       final int width,
+                       final int height) {
+        return op(single(x,
+                        y,
+                        width,
+                        height),
+                UNION);
+    }
+
+    /**
+     * Add all pixels of another set to this set.
+     *
+     * @param other the set to add.
+     * @return this set.
+     */
+    public RectSet add(final RectSet other) {
+        return op(other.rects,
+                other.count,
+                UNION);
+    }
+
+    /**
+     * Keep only the pixels of this set that are also inside the rectangle.
+     *
+     * @param x      the left edge of the rectangle.
+     * @param y      the top edge of the rectangle.
+     * @param width  the width of the rectangle.
+     * @param height the height of the rectangle.
+     * @return this set.
+     */
+    public RectSet intersect(final int x,
+                             final int y,
+                             final int width,
+                             final int height) {
+        return op(single(x,
+                        y,
+                        width,
+                        height),
+                INTERSECT);
+    }
+
+    /**
+     * Keep only the pixels of this set that are also in another set.
+     *
+     * @param other the set to intersect with.
+     * @return this set.
+     */
+    public RectSet intersect(final RectSet other) {
+        return op(other.rects,
+                other.count,
+                INTERSECT);
+    }
+
+    /**
+     * Remove the pixels of a rectangle from this set.
+     *
+     * @param x      the left edge of the rectangle.
+     * @param y      the top edge of the rectangle.
+     * @param width  the width of the rectangle.
+     * @param height the height of the rectangle.
+     * @return this set.
+     */
+    public RectSet subtract(final int x,
+                            final int y,
+                            final int width,
+                            final int height) {
+        return op(single(x,
+                        y,
+                        width,
+                        height),
+                SUBTRACT);
+    }
+
+    /**
+     * Remove the pixels of another set from this set.
+     *
+     * @param other the set to subtract.
+     * @return this set.
+     */
+    public RectSet subtract(final RectSet other) {
+        return op(other.rects,
+                other.count,
+                SUBTRACT);
+    }
+
+    /**
+     * Replace this set by its bounding box if it has more than {@code maxRects} rectangles. A handful of requests for a
+     * slightly larger area is often cheaper than many requests for the exact area.
+     *
+     * @param maxRects the maximum number of rectangles to keep.
+     * @return this set.
+     */
+    public RectSet simplify(final int maxRects) {
+        if (this.count <= maxRects || this.count == 0) {
+            return this;
+        }
+        int x1 = Integer.MAX_VALUE;
+        int x2 = Integer.MIN_VALUE;
+        for (int offset = 0; offset < this.count * STRIDE; offset += STRIDE) {
+            x1 = Math.min(x1,
+                    this.rects[offset + X1]);
+            x2 = Math.max(x2,
+                    this.rects[offset + X2]);
+        }
+        final int y1 = this.rects[Y1];
+        final int y2 = this.rects[(this.count - 1) * STRIDE + Y2];
+        this.count = 1;
+        this.rects[X1] = x1;
+        this.rects[Y1] = y1;
+        this.rects[X2] = x2;
+        this.rects[Y2] = y2;
+        return this;
+    }
+
+    /**
+     * Call the consumer for every rectangle, from top to bottom and left to right.
+     *
+     * @param consumer receives the rectangles, e.g. {@code surfaceProxy::damageBuffer} or {@code regionProxy::add}.
+     */
+    public void forEach(final RectConsumer consumer) {
+        for (int offset = 0; offset < this.count * STRIDE; offset += STRIDE) {
+            consumer.accept(this.rects[offset + X1],
+                    this.rects[offset + Y1],
+                    this.rects[offset + X2] - this.rects[offset + X1],
+                    this.rects[offset + Y2] - this.rects[offset + Y1]);
+        }
+    }
+
+    private int[] rect(final int index) {
+        if (index < 0 || index >= this.count) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return this.rects;
+    }
+
+    private int[] single(final int x,
+                         final int y,
+                         final int width,
+                         final int height) {
+        if (width <= 0 || height <= 0) {
+            this.single[X1] = 0;
+            this.single[Y1] = 0;
+            this.single[X2] = 0;
+            this.single[Y2] = 0;
+        } else {
+            this.single[X1] = x;
+            this.single[Y1] = y;
+            this.single[X2] = x + width;
+            this.single[Y2] = y + height;
+        }
+        return this.single;
+    }
+
+    private RectSet op(final int[] single,
+                       final int op) {
+        return op(single,
+                single[X2] > single[X1] ? 1 : 0,
+                op);
+    }
+
+    // sweeps over the y coordinates where a band of either operand starts or ends, and combines the spans of both
+    // operands between those coordinates
+    private RectSet op(final int[] other,
+                       final int otherCount,
+                       final int op) {
+        final int[] a = this.rects;
+        final int aCount = this.count;
+        int ia = 0;
+        int ib = 0;
+        int y = Integer.MIN_VALUE;
+
+        int outCount = 0;
+        int previousBand = -1;
+
+        while (ia < aCount || ib < otherCount) {
+            final int aTop = ia < aCount ? a[ia * STRIDE + Y1] : Integer.MAX_VALUE;
+            final int bTop = ib < otherCount ? other[ib * STRIDE + Y1] : Integer.MAX_VALUE;
+            final int top = Math.max(y,
+                    Math.min(aTop,
+                            bTop));
+            final boolean aActive = aTop <= top;
+            final boolean bActive = bTop <= top;
+            final int aBottom = aActive ? a[ia * STRIDE + Y2] : aTop;
+            final int bBottom = bActive ? other[ib * STRIDE + Y2] : bTop;
+            final int bottom = Math.min(aBottom,
+                    bBottom);
+
+            final int aBandEnd = aActive ? bandEnd(a,
+                    aCount,
+                    ia) : ia;
+            final int bBandEnd = bActive ? bandEnd(other,
+                    otherCount,
+                    ib) : ib;
+
+            final int spanCount = combine(a,
+                    ia,
+                    aBandEnd,
+                    other,
+                    ib,
+                    bBandEnd,
+                    op);
+            if (spanCount > 0) {
+                if (previousBand >= 0 && this.scratch[previousBand * STRIDE + Y2] == top &&
+                        outCount - previousBand == spanCount && sameSpans(previousBand,
+                        spanCount)) {
+                    //extend the previous band down instead of starting an identical one
+                    for (int i = previousBand; i < outCount; i++) {
+                        this.scratch[i * STRIDE + Y2] = bottom;
+                    }
+                } else {
+                    ensureScratch(outCount + spanCount);
+                    previousBand = outCount;
+                    for (int i = 0; i < spanCount; i++) {
+                        final int offset = (outCount + i) * STRIDE;
+                        this.scratch[offset + X1] = this.spansA[i * 2];
+                        this.scratch[offset + Y1] = top;
+                        this.scratch[offset + X2] = this.spansA[i * 2 + 1];
+                        this.scratch[offset + Y2] = bottom;
+                    }
+                    outCount += spanCount;
+                }
+            }
+
+            y = bottom;
+            if (aActive && aBottom == bottom) {
+                ia = aBandEnd;
+            }
+            if (bActive && bBottom == bottom) {
+                ib = bBandEnd;
+            }
+        }
+
+        final int[] result = this.scratch;
+        this.scratch = this.rects;
+        this.rects = result;
+        this.count = outCount;
+        return this;
+    }
+
+    private static int bandEnd(final int[] rects,
+                               final int count,
+                               final int start) {
+        final int top = rects[start * STRIDE + Y1];
+        int end = start + 1;
+        while (end < count && rects[end * STRIDE + Y1] == top) {
+            end++;
+        }
+        return end;
+    }
+
+    // combines the spans of two bands, the result is left in spansA
+    private int combine(final int[] a,
+                        final int aStart,
+                        final int aEnd,
+                        final int[] b,
+                        final int bStart,
+                        final int bEnd,
+                        final int op) {
+        final int aEdges = (aEnd - aStart) * 2;
+        final int bEdges = (bEnd - bStart) * 2;
+        if (this.spansB.length < aEdges + bEdges) {
+            this.spansA = new int[(aEdges + bEdges) * 2];
+            this.spansB = new int[(aEdges + bEdges) * 2];
+        }
+        final int[] out = this.spansB;
+
+        int ea = 0;
+        int eb = 0;
+        boolean inA = false;
+        boolean inB = false;
+        boolean in = false;
+        int start = 0;
+        int spanCount = 0;
+        while (ea < aEdges || eb < bEdges) {
+            final int xa = ea < aEdges ? edge(a,
+                    aStart,
+                    ea) : Integer.MAX_VALUE;
+            final int xb = eb < bEdges ? edge(b,
+                    bStart,
+                    eb) : Integer.MAX_VALUE;
+            final int x = Math.min(xa,
+                    xb);
+            if (xa == x) {
+                inA = !inA;
+                ea++;
+            }
+            if (xb == x) {
+                inB = !inB;
+                eb++;
+            }
+            final boolean nowIn = switch (op) {
+                case UNION -> inA || inB;
+                case INTERSECT -> inA && inB;
+                default -> inA && !inB;
+            };
+            if (nowIn && !in) {
+                start = x;
+            } else if (!nowIn && in && x > start) {
+                out[spanCount * 2] = start;
+                out[spanCount * 2 + 1] = x;
+                spanCount++;
+            }
+            in = nowIn;
+        }
+        //swap so the result ends up in spansA
+        this.spansB = this.spansA;
+        this.spansA = out;
+        return spanCount;
+    }
+
+    // the x coordinate of the n-th edge of a band, even edges are left edges and odd edges right edges
+    private static int edge(final int[] rects,
+                            final int bandStart,
+                            final int edge) {
+        return rects[(bandStart + edge / 2) * STRIDE + (edge % 2 == 0 ? X1 : X2)];
+    }
+
+    private boolean sameSpans(final int band,
+                              final int spanCount) {
+        for (int i = 0; i < spanCount; i++) {
+            final int offset = (band + i) * STRIDE;
+            if (this.scratch[offset + X1] != this.spansA[i * 2] || this.scratch[offset + X2] != this.spansA[i * 2 + 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureScratch(final int rectCount) {
+        if (this.scratch.length < rectCount * STRIDE) {
+            this.scratch = Arrays.copyOf(this.scratch,
+                    Math.max(rectCount * STRIDE,
+                            this.scratch.length * 2));
+        }
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RectSet)) {
+            return false;
+        }
+        final RectSet other = (RectSet) o;
+        return this.count == other.count && Arrays.equals(this.rects,
+                0,
+                this.count * STRIDE,
+                other.rects,
+                0,
+                other.count * STRIDE);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = this.count;
+        for (int i = 0; i < this.count * STRIDE; i++) {
+            hash = 31 * hash + this.rects[i];
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("RectSet{");
+        for (int i = 0; i < this.count; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(getX(i))
+                    .append(',')
+                    .append(getY(i))
+                    .append(' ')
+                    .append(getWidth(i))
+                    .append('x')
+                    .append(getHeight(i));
+        }
+        return builder.append('}')
+                .toString();
+    }
+
+    /**
+     * Receives the rectangles of a set.
+     */
+    @FunctionalInterface
+    public interface RectConsumer {
+        void accept(int x,
+                    int y,
+                    int width,
+                    int height);
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.client;
+
+import org.freedesktop.wayland.raw.LibWayland;
+import org.freedesktop.wayland.raw.wl_argument;
+import org.freedesktop.wayland.util.Arguments;
+import org.freedesktop.wayland.util.Fixed;
+import org.freedesktop.wayland.util.WaylandObject;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+/**
+ * A recorded sequence of requests that can be sent again and again with new argument values.
+ * <p>
+ * Many requests are sent every frame in the same order, with only a few arguments that change. A template records
+ * such a sequence once. Replaying it writes the changed arguments into the recorded argument arrays and sends every
+ * request with a single downcall, without creating new {@code Arguments} or doing any version checks:
+ * <pre>
+ *   {@code
+ *   RequestTemplate frame = RequestTemplate.record(() -> {
+ *       surface.attach(buffer, 0, 0);            // request 0
+ *       surface.damageBuffer(0, 0, width, height); // request 1
+ *       surface.frame(frameDone);                // request 2
+ *       surface.commit();                        // request 3
+ *   });
+ *   ...
+ *   frame.setObject(0, 0, nextBuffer)
+ *        .replay();
+ *   }
+ * </pre>
+ * Requests are addressed by the order in which they were recorded, arguments by their position in the request. Nothing
+ * is sent while recording.
+ * <p>
+ * Only requests that do not create objects, and requests that create a {@code wl_callback} through their
+ * {@code IntConsumer} overload, can be recorded. A template is not thread-safe, but it can be replayed from any thread
+ * that may send requests on the recorded proxies.
+ */
+public final class RequestTemplate {
+
+    private static final long ARGUMENT_SIZE = wl_argument.layout()
+            .byteSize();
+    private static final ThreadLocal<RequestTemplate> RECORDING = new ThreadLocal<>();
+    //number of threads that are recording, so sending requests normally only costs a volatile read
+    private static volatile int recordings;
+
+    private final List<Request> recorded = new ArrayList<>();
+    private Request[] requests;
+
+    private RequestTemplate() {
+    }
+
+    /**
+     * Record the requests that are sent by the calling thread while running {@code requests}.
+     *
+     * @param requests sends the requests to record.
+     * @return a template of the recorded requests.
+     */
+    public static RequestTemplate record(final Runnable requests) {
+        if (RECORDING.get() != null) {
+            throw new IllegalStateException("Already recording a request template.");
+        }
+        final RequestTemplate template = new RequestTemplate();
+        synchronized (RequestTemplate.class) {
+            recordings++;
+        }
+        RECORDING.set(template);
+        try {
+            requests.run();
+        } finally {
+            RECORDING.remove();
+            synchronized (RequestTemplate.class) {
+                recordings--;
+            }
+        }
+        template.requests = template.recorded.toArray(new Request[0]);
+        return template;
+    }
+
+    /**
+     * @return the template that the calling thread is recording, or null.
+     */
+    static RequestTemplate recording() {
+        return recordings == 0 ? null : RECORDING.get();
+    }
+
+    void add(final Proxy<?> proxy,
+             final int opcode,
+             final Arguments arguments,
+             final IntConsumer callback) {
+        this.recorded.add(new Request(proxy,
+                opcode,
+                arguments,
+                callback));
+    }
+
+    /**
+     * @return the number of recorded requests.
+     */
+    public int size() {
+        return this.requests.length;
+    }
+
+    /**
+     * Send the request to another proxy of the same interface.
+     *
+     * @param request the index of the request.
+     * @param proxy   the new target of the request.
+     * @return this template.
+     */
+    public RequestTemplate setProxy(final int request,
+                                    final Proxy<?> proxy) {
+        final Request target = this.requests[request];
+        if (proxy.getClass() != target.proxy.getClass()) {
+            throw new IllegalArgumentException("Expected a " + target.proxy.getClass()
+                    .getSimpleName() + " but got a " + proxy.getClass()
+                    .getSimpleName());
+        }
+        target.proxy = proxy;
+        return this;
+    }
+
+    /**
+     * Set an {@code int}, {@code uint} or {@code fd} argument.
+     *
+     * @param request  the index of the request.
+     * @param argument the index of the argument.
+     * @param value    the new value.
+     * @return this template.
+     */
+    public RequestTemplate setInt(final int request,
+                                  final int argument,
+                                  final int value) {
+        argumentSegment(request,
+                argument).set(ValueLayout.JAVA_INT,
+                argument * ARGUMENT_SIZE,
+                value);
+        return this;
+    }
+
+    /**
+     * Set a {@code fixed} argument.
+     *
+     * @param request  the index of the request.
+     * @param argument the index of the argument.
+     * @param value    the new value.
+     * @return this template.
+     */
+    public RequestTemplate setFixed(final int request,
+                                    final int argument,
+                                    final Fixed value) {
+        return setInt(request,
+                argument,
+                value.getRaw());
+    }
+
+    /**
+     * Set an {@code object} argument.
+     *
+     * @param request  the index of the request.
+     * @param argument the index of the argument.
+     * @param value    the new value, null is only allowed if the argument is nullable.
+     * @return this template.
+     */
+    public RequestTemplate setObject(final int request,
+                                     final int argument,
+                                     final WaylandObject value) {
+        argumentSegment(request,
+                argument).set(ValueLayout.ADDRESS,
+                argument * ARGUMENT_SIZE,
+                value == null ? MemorySegment.NULL : value.getPointer());
+        //keep the object reachable for as long as the template refers to it
+        this.requests[request].references[argument] = value;
+        return this;
+    }
+
+    /**
+     * Set the handler of a recorded {@code wl_callback} request.
+     *
+     * @param request the index of the request.
+     * @param done    called with the callback data when the callback is done.
+     * @return this template.
+     */
+    public RequestTemplate setCallback(final int request,
+                                       final IntConsumer done) {
+        final Request target = this.requests[request];
+        if (target.callback == null) {
+            throw new IllegalArgumentException("Request " + request + " does not create a callback.");
+        }
+        target.callback = Objects.requireNonNull(done);
+        return this;
+    }
+
+    /**
+     * Send all recorded requests, in order, with their current argument values.
+     */
+    public void replay() {
+        for (final Request request : this.requests) {
+            if (request.callback != null) {
+                OneShotCallback.marshal(request.proxy.pointer,
+                        request.opcode,
+                        request.callback);
+            } else {
+                LibWayland.wl_proxy_marshal_array(request.proxy.pointer,
+                        request.opcode,
+                        request.arguments == null ? MemorySegment.NULL : request.arguments.pointer);
+            }
+        }
+    }
+
+    private MemorySegment argumentSegment(final int request,
+                                          final int argument) {
+        final Request target = this.requests[request];
+        if (target.arguments == null || argument < 0 || argument >= target.references.length) {
+            throw new IndexOutOfBoundsException("Request " + request + " has no argument " + argument);
+        }
+        return target.arguments.pointer.reinterpret(target.references.length * ARGUMENT_SIZE);
+    }
+
+    private static final class Request {
+        final int opcode;
+        //keeps the recorded argument array, and anything it points to, alive
+        final Arguments arguments;
+        final Object[] references;
+        Proxy<?> proxy;
+        IntConsumer callback;
+
+        Request(final Proxy<?> proxy,
+                final int opcode,
+                final Arguments arguments,
+                final IntConsumer callback) {
+            this.proxy = proxy;
+            this.opcode = opcode;
+            this.arguments = arguments;
+            this.callback = callback;
+            this.references = new Object[arguments == null ? 0 : (int) (arguments.pointer.byteSize() / ARGUMENT_SIZE)];
+        }
+    }
+}
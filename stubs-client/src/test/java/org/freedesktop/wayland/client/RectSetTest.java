@@ -0,0 +1,270 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.client;
+
+import org.junit.jupiter.api.Assertions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+class RectSetTest {
+
+    @org.junit.jupiter.api.Test
+    void addMergesAdjacentRectangles() {
+        final RectSet rects = new RectSet().add(0,
+                        0,
+                        10,
+                        10)
+                .add(10,
+                        0,
+                        10,
+                        10)
+                .add(0,
+                        10,
+                        20,
+                        10);
+
+        Assertions.assertEquals(RectSet.of(0,
+                        0,
+                        20,
+                        20),
+                rects);
+    }
+
+    @org.junit.jupiter.api.Test
+    void addOverlappingRectanglesIsBanded() {
+        final RectSet rects = RectSet.of(0,
+                        0,
+                        10,
+                        10)
+                .add(5,
+                        5,
+                        10,
+                        10);
+
+        // a top band, a wider middle band and a bottom band
+        Assertions.assertEquals(3,
+                rects.size());
+        Assertions.assertEquals(175,
+                rects.area());
+        Assertions.assertEquals(0,
+                rects.getX(1));
+        Assertions.assertEquals(5,
+                rects.getY(1));
+        Assertions.assertEquals(15,
+                rects.getWidth(1));
+        Assertions.assertEquals(5,
+                rects.getHeight(1));
+    }
+
+    @org.junit.jupiter.api.Test
+    void subtractPunchesHole() {
+        final RectSet rects = RectSet.of(0,
+                        0,
+                        30,
+                        30)
+                .subtract(10,
+                        10,
+                        10,
+                        10);
+
+        Assertions.assertEquals(4,
+                rects.size());
+        Assertions.assertEquals(800,
+                rects.area());
+        Assertions.assertFalse(rects.contains(15,
+                15));
+        Assertions.assertTrue(rects.contains(5,
+                15));
+        Assertions.assertTrue(rects.contains(25,
+                15));
+
+        rects.add(10,
+                10,
+                10,
+                10);
+        Assertions.assertEquals(RectSet.of(0,
+                        0,
+                        30,
+                        30),
+                rects);
+    }
+
+    @org.junit.jupiter.api.Test
+    void intersect() {
+        final RectSet rects = RectSet.of(0,
+                        0,
+                        10,
+                        10)
+                .add(20,
+                        0,
+                        10,
+                        10)
+                .intersect(5,
+                        5,
+                        20,
+                        20);
+
+        final List<String> visited = new ArrayList<>();
+        rects.forEach((x, y, width, height) -> visited.add(x + "," + y + " " + width + "x" + height));
+        Assertions.assertEquals(List.of("5,5 5x5",
+                        "20,5 5x5"),
+                visited);
+
+        rects.intersect(100,
+                100,
+                1,
+                1);
+        Assertions.assertTrue(rects.isEmpty());
+    }
+
+    @org.junit.jupiter.api.Test
+    void emptyRectanglesAreIgnored() {
+        final RectSet rects = new RectSet().add(0,
+                        0,
+                        0,
+                        10)
+                .add(0,
+                        0,
+                        10,
+                        -1);
+
+        Assertions.assertTrue(rects.isEmpty());
+    }
+
+    @org.junit.jupiter.api.Test
+    void simplify() {
+        final RectSet rects = RectSet.of(0,
+                        0,
+                        1,
+                        1)
+                .add(9,
+                        9,
+                        1,
+                        1);
+
+        Assertions.assertEquals(2,
+                rects.simplify(2)
+                        .size());
+        Assertions.assertEquals(RectSet.of(0,
+                        0,
+                        10,
+                        10),
+                rects.simplify(1));
+    }
+
+    @org.junit.jupiter.api.Test
+    void matchesBitmap() {
+        // compare random operations against a plain bitmap
+        final int size = 32;
+        final Random random = new Random(42);
+        final RectSet rects = new RectSet();
+        final RectSet other = new RectSet();
+        final boolean[] bitmap = new boolean[size * size];
+        final boolean[] otherBitmap = new boolean[size * size];
+
+        for (int i = 0; i < 500; i++) {
+            other.clear();
+            java.util.Arrays.fill(otherBitmap,
+                    false);
+            for (int j = random.nextInt(3) + 1; j > 0; j--) {
+                final int x = random.nextInt(size);
+                final int y = random.nextInt(size);
+                final int width = random.nextInt(size - x) + 1;
+                final int height = random.nextInt(size - y) + 1;
+                other.add(x,
+                        y,
+                        width,
+                        height);
+                fill(otherBitmap,
+                        size,
+                        x,
+                        y,
+                        width,
+                        height);
+            }
+
+            final int op = random.nextInt(3);
+            for (int p = 0; p < bitmap.length; p++) {
+                bitmap[p] = switch (op) {
+                    case 0 -> bitmap[p] || otherBitmap[p];
+                    case 1 -> bitmap[p] && otherBitmap[p];
+                    default -> bitmap[p] && !otherBitmap[p];
+                };
+            }
+            switch (op) {
+                case 0 -> rects.add(other);
+                case 1 -> rects.intersect(other);
+                default -> rects.subtract(other);
+            }
+            if (op != 0 && rects.isEmpty()) {
+                rects.add(other);
+                System.arraycopy(otherBitmap,
+                        0,
+                        bitmap,
+                        0,
+                        bitmap.length);
+            }
+
+            int area = 0;
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    Assertions.assertEquals(bitmap[y * size + x],
+                            rects.contains(x,
+                                    y),
+                            "pixel " + x + "," + y + " after step " + i);
+                    if (bitmap[y * size + x]) {
+                        area++;
+                    }
+                }
+            }
+            Assertions.assertEquals(area,
+                    rects.area());
+            assertBanded(rects);
+        }
+    }
+
+    private static void fill(final boolean[] bitmap,
+                             final int size,
+                             final int x,
+                             final int y,
+                             final int width,
+                             final int height) {
+        for (int row = y; row < y + height; row++) {
+            for (int column = x; column < x + width; column++) {
+                bitmap[row * size + column] = true;
+            }
+        }
+    }
+
+    private static void assertBanded(final RectSet rects) {
+        for (int i = 1; i < rects.size(); i++) {
+            if (rects.getY(i) == rects.getY(i - 1)) {
+                Assertions.assertEquals(rects.getHeight(i - 1),
+                        rects.getHeight(i));
+                Assertions.assertTrue(rects.getX(i) > rects.getX(i - 1) + rects.getWidth(i - 1),
+                        "rectangles in a band must not touch");
+            } else {
+                Assertions.assertTrue(rects.getY(i) >= rects.getY(i - 1) + rects.getHeight(i - 1),
+                        "bands must not overlap");
+            }
+        }
+    }
+}
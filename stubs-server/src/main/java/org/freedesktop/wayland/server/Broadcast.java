@@ -0,0 +1,279 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.server;
+
+import org.freedesktop.wayland.raw.LibWayland;
+import org.freedesktop.wayland.raw.wl_client_for_each_resource_iterator_func_t;
+import org.freedesktop.wayland.raw.wl_interface;
+import org.freedesktop.wayland.raw.wl_list;
+import org.freedesktop.wayland.util.Arguments;
+import org.freedesktop.wayland.util.GlobalRef;
+import org.freedesktop.wayland.util.InterfaceMeta;
+import org.freedesktop.wayland.util.Memory;
+import org.slf4j.LoggerFactory;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Sends the same event to every resource of an interface, like {@code wl_output.mode} to all bound outputs or
+ * {@code wl_seat.capabilities} to all bound seats.
+ * <p>
+ * The arguments are marshalled once by the caller and the same native argument array is posted to every resource.
+ * Clients are walked through the client list of the display and their resources with
+ * {@code wl_client_for_each_resource}, so no Java {@link Client} or {@link Resource} objects are looked up or
+ * created. Resources bound with a version lower than the version an event was introduced in are skipped.
+ * <p>
+ * This class is not thread safe and must only be used on the event loop thread. It must be closed when it is not used
+ * anymore.
+ */
+public final class Broadcast implements AutoCloseable {
+
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(Broadcast.class);
+
+    private static final MemorySegment ITERATOR = wl_client_for_each_resource_iterator_func_t.allocate(
+            Broadcast::visit,
+            Memory.ARENA_AUTO);
+
+    private static final MemorySegment ALL_MEMORY = MemorySegment.NULL.reinterpret(Long.MAX_VALUE);
+    private static final long NEXT_OFFSET = wl_list.next$offset();
+
+    private final Class<? extends Resource<?>> resourceClass;
+    private final MemorySegment wlInterface;
+    private final MemorySegment interfaceName;
+    private final MemorySegment ref;
+    private final MemorySegment clientList;
+
+    //the clients of the display by their position in the client list, so walking them allocates nothing
+    private long[] clientLinks = new long[8];
+    private MemorySegment[] clients = new MemorySegment[8];
+    private boolean closed;
+
+    //state of the broadcast that is running
+    private int opcode;
+    private MemorySegment args;
+    private int sinceVersion;
+    private boolean queue;
+    private int bytes;
+    private int count;
+
+    /**
+     * Create a broadcast to the resources of an interface.
+     *
+     * @param display       the display whose clients receive the events.
+     * @param resourceClass the generated resource class of the interface.
+     */
+    public Broadcast(final Display display,
+                     final Class<? extends Resource<?>> resourceClass) {
+        this.resourceClass = Objects.requireNonNull(resourceClass);
+        this.wlInterface = InterfaceMeta.get(resourceClass)
+                .getNativeWlInterface();
+        this.interfaceName = wl_interface.name(this.wlInterface)
+                .reinterpret(Long.MAX_VALUE);
+        this.clientList = LibWayland.wl_display_get_client_list(Objects.requireNonNull(display).pointer);
+        this.ref = GlobalRef.from(this);
+    }
+
+    /**
+     * Post an event to every resource of the interface.
+     *
+     * @param opcode       the protocol opcode.
+     * @param sinceVersion the version of the interface the event was introduced in.
+     * @param args         the protocol arguments, or null if the event has none.
+     * @return the number of resources the event was posted to.
+     */
+    public int post(final int opcode,
+                    final int sinceVersion,
+                    final Arguments args) {
+        return send(null,
+                opcode,
+                sinceVersion,
+                args,
+                false);
+    }
+
+    /**
+     * Post an event to every resource of the interface that belongs to a client.
+     *
+     * @param client       the client.
+     * @param opcode       the protocol opcode.
+     * @param sinceVersion the version of the interface the event was introduced in.
+     * @param args         the protocol arguments, or null if the event has none.
+     * @return the number of resources the event was posted to.
+     */
+    public int post(final Client client,
+                    final int opcode,
+                    final int sinceVersion,
+                    final Arguments args) {
+        return send(Objects.requireNonNull(client),
+                opcode,
+                sinceVersion,
+                args,
+                false);
+    }
+
+    /**
+     * Like {@link #post(int, int, Arguments)}, but queues the event, see {@link Resource#queueEvent(int, Arguments)}.
+     *
+     * @param opcode       the protocol opcode.
+     * @param sinceVersion the version of the interface the event was introduced in.
+     * @param args         the protocol arguments, or null if the event has none.
+     * @return the number of resources the event was queued to.
+     */
+    public int queue(final int opcode,
+                     final int sinceVersion,
+                     final Arguments args) {
+        return send(null,
+                opcode,
+                sinceVersion,
+                args,
+                true);
+    }
+
+    private int send(final Client client,
+                     final int opcode,
+                     final int sinceVersion,
+                     final Arguments args,
+                     final boolean queue) {
+        if (this.closed) {
+            throw new IllegalStateException("Broadcast is closed.");
+        }
+        if (this.args != null) {
+            throw new IllegalStateException("Broadcast is already running.");
+        }
+        this.opcode = opcode;
+        this.args = args == null ? MemorySegment.NULL : args.pointer;
+        this.sinceVersion = sinceVersion;
+        this.queue = queue;
+        this.bytes = EventFlusher.isCounting() ? EventFlusher.wireSize(this.resourceClass,
+                opcode,
+                this.args) : 0;
+        this.count = 0;
+        try {
+            if (client != null) {
+                LibWayland.wl_client_for_each_resource(client.pointer,
+                        ITERATOR,
+                        this.ref);
+            } else {
+                final long head = this.clientList.address();
+                long link = ALL_MEMORY.get(ValueLayout.JAVA_LONG,
+                        head + NEXT_OFFSET);
+                int index = 0;
+                while (link != head) {
+                    final long next = ALL_MEMORY.get(ValueLayout.JAVA_LONG,
+                            link + NEXT_OFFSET);
+                    LibWayland.wl_client_for_each_resource(client(index++,
+                                    link),
+                            ITERATOR,
+                            this.ref);
+                    link = next;
+                }
+            }
+            return this.count;
+        } finally {
+            this.args = null;
+        }
+    }
+
+    private MemorySegment client(final int index,
+                                 final long link) {
+        if (index == this.clientLinks.length) {
+            this.clientLinks = Arrays.copyOf(this.clientLinks,
+                    index * 2);
+            this.clients = Arrays.copyOf(this.clients,
+                    index * 2);
+        }
+        //the link is embedded in the client, the same link is the same client
+        if (this.clientLinks[index] != link) {
+            this.clientLinks[index] = link;
+            this.clients[index] = LibWayland.wl_client_from_link(MemorySegment.ofAddress(link));
+        }
+        return this.clients[index];
+    }
+
+    private static int visit(final MemorySegment resource,
+                             final MemorySegment data) {
+        try {
+            final Broadcast broadcast = (Broadcast) GlobalRef.reify(data)
+                    .get();
+            broadcast.visitResource(resource);
+        } catch (final Throwable t) {
+            // this is mandatory otherwise the JVM will crash
+            LOG.error("broadcast iterator threw exception",
+                    t);
+        }
+        return LibWayland.WL_ITERATOR_CONTINUE();
+    }
+
+    private void visitResource(final MemorySegment resource) {
+        if (!isInstance(resource) || LibWayland.wl_resource_get_version(resource) < this.sinceVersion) {
+            return;
+        }
+        if (this.queue) {
+            LibWayland.wl_resource_queue_event_array(resource,
+                    this.opcode,
+                    this.args);
+        } else {
+            LibWayland.wl_resource_post_event_array(resource,
+                    this.opcode,
+                    this.args);
+        }
+        if (this.bytes != 0) {
+            EventFlusher.eventSent(resource,
+                    this.bytes);
+        }
+        this.count++;
+    }
+
+    private boolean isInstance(final MemorySegment resource) {
+        final MemorySegment name = LibWayland.wl_resource_get_class(resource);
+        if (name.address() == this.interfaceName.address()) {
+            return true;
+        }
+        //resources created by libwayland itself use its own interface structs, compare the names
+        final MemorySegment other = name.reinterpret(Long.MAX_VALUE);
+        for (long i = 0; ; i++) {
+            final byte b = this.interfaceName.get(ValueLayout.JAVA_BYTE,
+                    i);
+            if (b != other.get(ValueLayout.JAVA_BYTE,
+                    i)) {
+                return false;
+            }
+            if (b == 0) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release the native reference to this broadcast. It can not be used anymore afterwards.
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        GlobalRef.remove(this.ref);
+        Arrays.fill(this.clients,
+                null);
+    }
+}
@@ -20,18 +20,59 @@ package org.freedesktop.wayland.server;
 
 import org.freedesktop.wayland.raw.C;
 import org.freedesktop.wayland.raw.LibWayland;
+import org.freedesktop.wayland.util.IdTable;
 import org.freedesktop.wayland.util.ObjectCache;
 
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
+/**
+ * A client connection of a {@link Display}.
+ * <p>
+ * There is a single {@code Client} per native client, so clients can be compared by identity and per client state
+ * can be attached to them with an {@link AttachmentKey}. Clients must only be used on the event loop thread.
+ */
 public class Client {
 
+    private static final Object[] NO_ATTACHMENTS = new Object[0];
+
     public final MemorySegment pointer;
+    private final Set<DestroyListener> destroyListeners = new HashSet<>();
+    private final IdTable<Resource<?>> resources = new IdTable<>();
+    private Object[] attachments = NO_ATTACHMENTS;
+    private ClientCredentials credentials;
+    private boolean destroyed;
 
     Client(final MemorySegment pointer) {
         this.pointer = pointer;
+        addDestroyListener(Listener.create(this::destroyed));
+        ObjectCache.store(this.pointer,
+                this);
+    }
+
+    private void destroyed() {
+        for (final DestroyListener listener : new HashSet<>(this.destroyListeners)) {
+            listener.handle();
+        }
+        this.destroyListeners.clear();
+        this.destroyed = true;
+        ObjectCache.remove(this.pointer);
+
+        final Display display = getDisplay();
+        final Map<MemorySegment, Client> destroyedClients = display.destroyedClients;
+        if (destroyedClients.isEmpty()) {
+            display.getEventLoop()
+                    .addIdle(destroyedClients::clear);
+        }
+        destroyedClients.put(this.pointer,
+                this);
     }
 
     /**
@@ -60,8 +101,24 @@ public class Client {
         return Client.get(LibWayland.wl_client_create(display.pointer, fd));
     }
 
+    /**
+     * Get the client for a native client pointer.
+     *
+     * @param pointer a {@code wl_client} pointer.
+     * @return the client, the same object for every call with the same pointer. Null if the pointer is NULL.
+     */
     public static Client get(final MemorySegment pointer) {
-        return new Client(pointer);
+        if (MemorySegment.NULL.equals(pointer)) {
+            return null;
+        }
+        Client client = ObjectCache.from(pointer);
+        if (client == null) {
+            client = Display.get(LibWayland.wl_client_get_display(pointer)).destroyedClients.get(pointer);
+            if (client == null) {
+                client = new Client(pointer);
+            }
+        }
+        return client;
     }
 
     /**
@@ -80,9 +137,76 @@ public class Client {
         LibWayland.wl_client_add_destroy_listener(this.pointer, listener.wlListenerPointer);
     }
 
-    //TODO wl_client_get_object
-    //TODO wl_client_post_no_memory
-    //TODO wl_client_get_credentials
+    public void register(final DestroyListener destroyListener) {
+        this.destroyListeners.add(destroyListener);
+    }
+
+    public void unregister(final DestroyListener destroyListener) {
+        this.destroyListeners.remove(destroyListener);
+    }
+
+    /**
+     * @return true once the client destroy signal was emitted. The client must not be used anymore.
+     */
+    public boolean isDestroyed() {
+        return this.destroyed;
+    }
+
+    /**
+     * Get per client state.
+     *
+     * @param key the key of the state.
+     * @param <T> the type of the state.
+     * @return the state, or null if none was set.
+     */
+    public <T> T getAttachment(final AttachmentKey<T> key) {
+        final int index = key.index;
+        return index < this.attachments.length ? key.type.cast(this.attachments[index]) : null;
+    }
+
+    /**
+     * Set per client state. The state stays reachable while the resources of a destroyed client are destroyed, and
+     * is dropped with the client after that.
+     *
+     * @param key   the key of the state.
+     * @param value the state, or null to remove it.
+     * @param <T>   the type of the state.
+     * @return the previous state, or null if none was set.
+     */
+    public <T> T setAttachment(final AttachmentKey<T> key,
+                               final T value) {
+        final int index = key.index;
+        if (index >= this.attachments.length) {
+            if (value == null) {
+                return null;
+            }
+            this.attachments = Arrays.copyOf(this.attachments,
+                    Math.max(index + 1,
+                            AttachmentKey.COUNT.get()));
+        }
+        final T previous = key.type.cast(this.attachments[index]);
+        this.attachments[index] = value;
+        return previous;
+    }
+
+    /**
+     * Get per client state, creating it if none was set.
+     *
+     * @param key     the key of the state.
+     * @param factory creates the state.
+     * @param <T>     the type of the state.
+     * @return the state.
+     */
+    public <T> T computeAttachmentIfAbsent(final AttachmentKey<T> key,
+                                           final Function<? super Client, ? extends T> factory) {
+        T value = getAttachment(key);
+        if (value == null) {
+            value = factory.apply(this);
+            setAttachment(key,
+                    value);
+        }
+        return value;
+    }
 
     /**
      * Get the display object for the given client
@@ -102,9 +226,24 @@ public class Client {
      * @return The object or null if there is not object for the given ID
      */
     public Resource<?> getObject(final int id) {
+        final Resource<?> resource = this.resources.get(id);
+        if (resource != null) {
+            return resource;
+        }
+        //resources created by libwayland itself only have a java object once they were seen by java code
         return ObjectCache.from(LibWayland.wl_client_get_object(this.pointer, id));
     }
 
+    /**
+     * The resources of this client by object id, kept up to date as resources are created and destroyed. Meant for
+     * protocol debugging.
+     *
+     * @return the id table of this client.
+     */
+    public IdTable<Resource<?>> getIdTable() {
+        return this.resources;
+    }
+
     /**
      * Return Unix credentials for the client
      * <p>
@@ -116,20 +255,25 @@ public class Client {
      * then connects using socketpair(), this function will return the
      * credentials for the compositor.  The credentials for the socketpair
      * are set at creation time in the compositor.
+     * <p>
+     * The credentials of a client do not change, they are only queried on the first call.
      */
     public ClientCredentials getCredentials() {
-        try (Arena a = Arena.ofAuto()) {
-            MemorySegment pid = a.allocate(C.pid_t);
-            MemorySegment uid = a.allocate(C.pid_t);
-            MemorySegment gid = a.allocate(C.pid_t);
-            LibWayland.wl_client_get_credentials(this.pointer, pid, uid, gid);
-
-            return new ClientCredentials(
-                    pid.get(C.pid_t, 0),
-                    uid.get(C.pid_t, 0),
-                    gid.get(C.pid_t, 0)
-            );
+        if (this.credentials == null) {
+            try (Arena a = Arena.ofConfined()) {
+                MemorySegment pid = a.allocate(C.pid_t);
+                MemorySegment uid = a.allocate(C.uid_t);
+                MemorySegment gid = a.allocate(C.gid_t);
+                LibWayland.wl_client_get_credentials(this.pointer, pid, uid, gid);
+
+                this.credentials = new ClientCredentials(
+                        pid.get(C.pid_t, 0),
+                        uid.get(C.uid_t, 0),
+                        gid.get(C.gid_t, 0)
+                );
+            }
         }
+        return this.credentials;
     }
 
     public void destroy() {
@@ -147,5 +291,44 @@ public class Client {
         if (!(o instanceof Client client)) return false;
         return Objects.equals(pointer, client.pointer);
     }
-}
 
+    /**
+     * Identifies a kind of per client state, see {@link #getAttachment(AttachmentKey)}. Keys are meant to be created
+     * once and kept in a static field: every key takes a slot in every client.
+     *
+     * @param <T> the type of the state.
+     */
+    public static final class AttachmentKey<T> {
+        private static final AtomicInteger COUNT = new AtomicInteger();
+
+        private final Class<T> type;
+        private final String name;
+        private final int index;
+
+        private AttachmentKey(final Class<T> type,
+                              final String name) {
+            this.type = type;
+            this.name = name;
+            this.index = COUNT.getAndIncrement();
+        }
+
+        /**
+         * Create a key.
+         *
+         * @param type the type of the state.
+         * @param name a name for debugging.
+         * @param <T>  the type of the state.
+         * @return a new key.
+         */
+        public static <T> AttachmentKey<T> create(final Class<T> type,
+                                                  final String name) {
+            return new AttachmentKey<>(Objects.requireNonNull(type),
+                    Objects.requireNonNull(name));
+        }
+
+        @Override
+        public String toString() {
+            return "AttachmentKey{" + this.name + "}";
+        }
+    }
+}
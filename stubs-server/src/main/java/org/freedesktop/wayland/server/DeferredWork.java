@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.server;
+
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Coalesces work that is requested many times per event loop iteration, like sending configure events or scheduling
+ * an output repaint.
+ * <p>
+ * Each subsystem registers its work once and gets a {@link Task}. Marking a task dirty is cheap and can be done any
+ * number of times; the work of all dirty tasks runs once, from an idle source, the next time the event loop is about
+ * to wait for events. The clients are flushed right after, so the events posted by the work go out in the same
+ * iteration.
+ * <p>
+ * This class is not thread safe and must only be used on the event loop thread. Other threads can mark a task dirty
+ * through an {@link EventLoopExecutor}.
+ */
+public final class DeferredWork {
+
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(DeferredWork.class);
+
+    private final Display display;
+    private final EventLoop eventLoop;
+    private List<Task> dirty = new ArrayList<>();
+    private List<Task> running = new ArrayList<>();
+    private boolean scheduled;
+
+    /**
+     * Create deferred work for the event loop of a display.
+     *
+     * @param display the display whose clients are flushed after the work ran.
+     */
+    public DeferredWork(final Display display) {
+        this.display = Objects.requireNonNull(display);
+        this.eventLoop = display.getEventLoop();
+    }
+
+    /**
+     * Register work that can be marked dirty.
+     *
+     * @param work the work to run once per loop iteration in which the task was marked dirty.
+     * @return a task to mark dirty.
+     */
+    public Task register(final Runnable work) {
+        return new Task(Objects.requireNonNull(work));
+    }
+
+    private void schedule(final Task task) {
+        this.dirty.add(task);
+        if (!this.scheduled) {
+            this.scheduled = true;
+            this.eventLoop.addIdle(this::run);
+        }
+    }
+
+    private void run() {
+        this.scheduled = false;
+        //tasks marked dirty by the work below go in a fresh list and get their own pass
+        final List<Task> tasks = this.dirty;
+        this.dirty = this.running;
+        this.running = tasks;
+        for (final Task task : tasks) {
+            task.dirty = false;
+            if (task.cancelled) {
+                continue;
+            }
+            try {
+                task.work.run();
+            } catch (final Throwable t) {
+                LOG.error("deferred work threw exception",
+                        t);
+            }
+        }
+        tasks.clear();
+        this.display.flushClients();
+    }
+
+    /**
+     * Work registered with a {@link DeferredWork}.
+     */
+    public final class Task {
+        private final Runnable work;
+        private boolean dirty;
+        private boolean cancelled;
+
+        private Task(final Runnable work) {
+            this.work = work;
+        }
+
+        /**
+         * Run the work the next time the event loop is idle. Does nothing if the task is already dirty.
+         */
+        public void markDirty() {
+            if (this.dirty || this.cancelled) {
+                return;
+            }
+            this.dirty = true;
+            schedule(this);
+        }
+
+        public boolean isDirty() {
+            return this.dirty;
+        }
+
+        /**
+         * Never run the work again, even if the task is dirty.
+         */
+        public void cancel() {
+            this.cancelled = true;
+        }
+    }
+}
@@ -24,7 +24,9 @@ import org.freedesktop.wayland.util.Memory;
 import org.freedesktop.wayland.util.ObjectCache;
 
 import java.lang.foreign.MemorySegment;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 public class Display {
@@ -32,6 +34,13 @@ public class Display {
 
     public final MemorySegment pointer;
     private final Set<DestroyListener> destroyListeners = new HashSet<>();
+    EventFlusher eventFlusher;
+    ResourceQuotas resourceQuotas;
+    RequestLimiter requestLimiter;
+    // libwayland emits the client destroy signal before it destroys the resources of the client. Clients that are
+    // being destroyed are kept here until the next idle dispatch, so the destroy handlers of those resources find
+    // the same client, see Client#get.
+    final Map<MemorySegment, Client> destroyedClients = new HashMap<>();
 
     protected Display(final MemorySegment pointer) {
         this.pointer = pointer;
@@ -44,6 +53,18 @@ public class Display {
                 destroy();
             }
         });
+        LibWayland.wl_display_add_client_created_listener(this.pointer,
+                new Listener() {
+                    @Override
+                    public void handle() {
+                    }
+
+                    @Override
+                    public void handle(final MemorySegment client) {
+                        //the new client can have the address of one that was destroyed in this iteration
+                        Display.this.destroyedClients.remove(client);
+                    }
+                }.wlListenerPointer);
         ObjectCache.store(this.pointer,
                 this);
     }
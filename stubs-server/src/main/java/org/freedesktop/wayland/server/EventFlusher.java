@@ -0,0 +1,352 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.server;
+
+import org.freedesktop.wayland.raw.C;
+import org.freedesktop.wayland.raw.LibWayland;
+import org.freedesktop.wayland.raw.wl_argument;
+import org.freedesktop.wayland.raw.wl_array;
+import org.freedesktop.wayland.util.Arguments;
+import org.freedesktop.wayland.util.Interface;
+import org.freedesktop.wayland.util.Message;
+import org.freedesktop.wayland.util.ObjectCache;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Controls when the events sent to clients are written to their sockets, and counts what is written.
+ * <p>
+ * Events sent with {@link Resource#postEvent(int, Arguments)} or {@link Resource#queueEvent(int, Arguments)} are
+ * buffered by libwayland and only written when the buffer is full or the client is flushed. Flushing every client
+ * whenever anything happens costs a {@code sendmsg(2)} per client per wakeup. This flusher keeps track of the clients
+ * that were sent events and flushes each of them once, according to its {@link FlushPolicy}. Per client it counts the
+ * messages and bytes of every flush, see {@link #getCounters(Client)}.
+ * <p>
+ * There can be one flusher per display. This class is not thread safe and must only be used on the event loop thread.
+ */
+public final class EventFlusher implements AutoCloseable {
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final ClassValue<String[]> EVENT_SIGNATURES = new ClassValue<>() {
+        @Override
+        protected String[] computeValue(final Class<?> type) {
+            final Interface anInterface = type.getAnnotation(Interface.class);
+            if (anInterface == null) {
+                return new String[0];
+            }
+            final Message[] events = anInterface.events();
+            final String[] signatures = new String[events.length];
+            for (int i = 0; i < events.length; i++) {
+                signatures[i] = events[i].signature();
+            }
+            return signatures;
+        }
+    };
+
+    //number of open flushers, so sending events costs nothing extra when there are none
+    private static volatile int instances;
+
+    private final Display display;
+    private final EventLoop eventLoop;
+    private final FlushPolicy policy;
+    private final Map<MemorySegment, Counters> counters = new HashMap<>();
+    private final List<Counters> dirty = new ArrayList<>();
+    private boolean flushScheduled;
+    private boolean closed;
+
+    /**
+     * Create a flusher for a display.
+     *
+     * @param display the display whose clients are flushed.
+     * @param policy  when to flush.
+     * @throws IllegalStateException if the display already has a flusher.
+     */
+    public EventFlusher(final Display display,
+                        final FlushPolicy policy) {
+        this.display = Objects.requireNonNull(display);
+        this.eventLoop = display.getEventLoop();
+        this.policy = Objects.requireNonNull(policy);
+        if (display.eventFlusher != null) {
+            throw new IllegalStateException("Display already has an event flusher.");
+        }
+        display.eventFlusher = this;
+        synchronized (EventFlusher.class) {
+            instances++;
+        }
+    }
+
+    public FlushPolicy getPolicy() {
+        return this.policy;
+    }
+
+    static boolean isCounting() {
+        return instances != 0;
+    }
+
+    // called by Resource for every event it sends
+    static void eventSent(final Resource<?> resource,
+                          final int opcode,
+                          final MemorySegment args) {
+        if (instances == 0) {
+            return;
+        }
+        eventSent(resource.wlResourcePtr,
+                wireSize(resource.getClass(),
+                        opcode,
+                        args));
+    }
+
+    static void eventSent(final MemorySegment resource,
+                          final int bytes) {
+        final MemorySegment client = LibWayland.wl_resource_get_client(resource);
+        final Display display = ObjectCache.from(LibWayland.wl_client_get_display(client));
+        if (display != null && display.eventFlusher != null) {
+            display.eventFlusher.count(client,
+                    bytes);
+        }
+    }
+
+    private void count(final MemorySegment client,
+                       final int bytes) {
+        Counters counters = this.counters.get(client);
+        if (counters == null) {
+            counters = new Counters(client);
+            this.counters.put(client,
+                    counters);
+            final Counters forgotten = counters;
+            Client.get(client)
+                    .register(() -> forget(forgotten));
+        }
+        if (counters.pendingMessages == 0) {
+            this.dirty.add(counters);
+            if (this.policy == FlushPolicy.PER_ITERATION && !this.flushScheduled) {
+                this.flushScheduled = true;
+                this.eventLoop.addIdle(this::iterationDone);
+            }
+        }
+        counters.pendingMessages++;
+        counters.pendingBytes += bytes;
+    }
+
+    private void forget(final Counters counters) {
+        this.counters.remove(counters.client);
+        //a destroyed client must never be flushed
+        if (counters.pendingMessages != 0) {
+            this.dirty.remove(counters);
+        }
+    }
+
+    private void iterationDone() {
+        this.flushScheduled = false;
+        if (!this.closed) {
+            flush();
+        }
+    }
+
+    /**
+     * Mark the end of a frame. With {@link FlushPolicy#FRAME} this flushes every client that was sent events since
+     * the previous frame boundary, with {@link FlushPolicy#PER_ITERATION} it does nothing.
+     */
+    public void frameBoundary() {
+        if (this.policy == FlushPolicy.FRAME) {
+            flush();
+        }
+    }
+
+    /**
+     * Flush every client that was sent events since its last flush, regardless of the policy.
+     */
+    public void flush() {
+        for (final Counters counters : this.dirty) {
+            LibWayland.wl_client_flush(counters.client);
+            counters.flushed();
+        }
+        this.dirty.clear();
+    }
+
+    /**
+     * The counters of a client. They are reset when the client is destroyed.
+     *
+     * @param client a client.
+     * @return the counters of the client, all 0 if it was never sent an event.
+     */
+    public Counters getCounters(final Client client) {
+        final Counters counters = this.counters.get(client.pointer);
+        return counters == null ? new Counters(client.pointer) : counters;
+    }
+
+    static int wireSize(final Class<?> resourceClass,
+                        final int opcode,
+                        final MemorySegment args) {
+        final String[] signatures = EVENT_SIGNATURES.get(resourceClass);
+        if (opcode >= signatures.length) {
+            return HEADER_SIZE;
+        }
+        final String signature = signatures[opcode];
+        int size = HEADER_SIZE;
+        int index = 0;
+        for (int i = 0; i < signature.length(); i++) {
+            final char type = signature.charAt(i);
+            switch (type) {
+                case 'i', 'u', 'f', 'o', 'n' -> size += 4;
+                case 's' -> {
+                    final MemorySegment string = wl_argument.s(wl_argument.asSlice(args,
+                            index));
+                    size += 4;
+                    if (!MemorySegment.NULL.equals(string)) {
+                        //the length in bytes, including the terminating 0
+                        size += pad((int) C.strlen(string) + 1);
+                    }
+                }
+                case 'a' -> {
+                    final MemorySegment array = wl_argument.a(wl_argument.asSlice(args,
+                            index));
+                    size += 4;
+                    if (!MemorySegment.NULL.equals(array)) {
+                        size += pad((int) wl_array.size(array));
+                    }
+                }
+                //file descriptors travel out of band
+                case 'h' -> {
+                }
+                default -> {
+                    //nullability marker or version number, not an argument
+                    continue;
+                }
+            }
+            index++;
+        }
+        return size;
+    }
+
+    private static int pad(final int size) {
+        return (size + 3) & ~3;
+    }
+
+    /**
+     * Stop tracking clients. Clients that were sent events are flushed one last time.
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        flush();
+        this.display.eventFlusher = null;
+        synchronized (EventFlusher.class) {
+            instances--;
+        }
+    }
+
+    /**
+     * What was sent to a client. The byte counts are those of the wire format, without the file descriptors.
+     */
+    public static final class Counters {
+        private final MemorySegment client;
+        private int pendingMessages;
+        private long pendingBytes;
+        private long flushes;
+        private int lastFlushMessages;
+        private long lastFlushBytes;
+        private long totalMessages;
+        private long totalBytes;
+
+        private Counters(final MemorySegment client) {
+            this.client = client;
+        }
+
+        private void flushed() {
+            this.flushes++;
+            this.lastFlushMessages = this.pendingMessages;
+            this.lastFlushBytes = this.pendingBytes;
+            this.totalMessages += this.pendingMessages;
+            this.totalBytes += this.pendingBytes;
+            this.pendingMessages = 0;
+            this.pendingBytes = 0;
+        }
+
+        /**
+         * @return the number of messages sent since the last flush.
+         */
+        public int getPendingMessages() {
+            return this.pendingMessages;
+        }
+
+        /**
+         * @return the number of bytes sent since the last flush.
+         */
+        public long getPendingBytes() {
+            return this.pendingBytes;
+        }
+
+        /**
+         * @return the number of flushes of the client.
+         */
+        public long getFlushes() {
+            return this.flushes;
+        }
+
+        public int getLastFlushMessages() {
+            return this.lastFlushMessages;
+        }
+
+        public long getLastFlushBytes() {
+            return this.lastFlushBytes;
+        }
+
+        /**
+         * @return the number of flushed messages.
+         */
+        public long getTotalMessages() {
+            return this.totalMessages;
+        }
+
+        /**
+         * @return the number of flushed bytes.
+         */
+        public long getTotalBytes() {
+            return this.totalBytes;
+        }
+
+        /**
+         * @return the average number of messages per flush, 0 if the client was never flushed.
+         */
+        public double getMessagesPerFlush() {
+            return this.flushes == 0 ? 0 : (double) this.totalMessages / this.flushes;
+        }
+
+        @Override
+        public String toString() {
+            return "Counters{" +
+                   "pendingMessages=" + this.pendingMessages +
+                   ", pendingBytes=" + this.pendingBytes +
+                   ", flushes=" + this.flushes +
+                   ", totalMessages=" + this.totalMessages +
+                   ", totalBytes=" + this.totalBytes +
+                   '}';
+        }
+    }
+}
@@ -39,7 +39,7 @@ public class EventLoop {
     private static final MemorySegment WL_EVENT_LOOP_FD_FUNC;
     private static final MemorySegment WL_EVENT_LOOP_TIMER_FUNC;
     private static final MemorySegment WL_EVENT_LOOP_SIGNAL_FUNC;
-    private static MemorySegment WL_EVENT_LOOP_IDLE_FUNC;
+    private static final MemorySegment WL_EVENT_LOOP_IDLE_FUNC;
 
     static {
         try {
@@ -75,6 +75,16 @@ public class EventLoop {
                     Memory.ARENA_AUTO
             );
 
+            WL_EVENT_LOOP_IDLE_FUNC = Linker.nativeLinker().upcallStub(
+                    MethodHandles
+                            .lookup()
+                            .findStatic(EventLoop.class,
+                                    "eventLoopIdleCallback",
+                                    MethodType.methodType(void.class, MemorySegment.class)),
+                    FunctionDescriptor.ofVoid(C.C_POINTER),
+                    Memory.ARENA_AUTO
+            );
+
         } catch (NoSuchMethodException | IllegalAccessException e) {
             throw new RuntimeException(e);
         }
@@ -114,8 +124,20 @@ public class EventLoop {
         }
     }
 
+    public static void eventLoopIdleCallback(MemorySegment nativeData) {
+        try {
+            var handler = (IdleSource) GlobalRef.reify(nativeData).get();
+            handler.handle();
+        } catch (Throwable t) {
+            // this is mandatory otherwise the JVM will crash
+            LOG.error("event loop idle callback threw exception", t);
+        }
+    }
+
     public final MemorySegment pointer;
     private final Set<DestroyListener> destroyListeners = new HashSet<>();
+    // the global refs to the handlers are weak, keep the handlers alive as long as their source
+    private final Set<EventSource> eventSources = new HashSet<>();
 
     private EventLoop(final MemorySegment pointer) {
         this.pointer = pointer;
@@ -123,6 +145,7 @@ public class EventLoop {
                 Listener.create(() -> {
                     notifyDestroyListeners();
                     EventLoop.this.destroyListeners.clear();
+                    new HashSet<>(EventLoop.this.eventSources).forEach(EventSource::released);
                     ObjectCache.remove(EventLoop.this.pointer);
                 }).wlListenerPointer);
         ObjectCache.store(this.pointer, this);
@@ -160,9 +183,9 @@ public class EventLoop {
                 WL_EVENT_LOOP_FD_FUNC,
                 jObjectRef
         );
-        var eventSource = new EventSource(jObjectRef, eventSourcePtr);
-//        eventSources.add(eventSource);
-        return eventSource;
+        return addEventSource(handler,
+                jObjectRef,
+                eventSourcePtr);
     }
 
     public EventSource addTimer(final TimerEventHandler handler) {
@@ -172,9 +195,9 @@ public class EventLoop {
                 WL_EVENT_LOOP_TIMER_FUNC,
                 jObjectRef
         );
-        var eventSource = new EventSource(jObjectRef, eventSourcePtr);
-//        eventSources.add(eventSource);
-        return eventSource;
+        return addEventSource(handler,
+                jObjectRef,
+                eventSourcePtr);
     }
 
     public EventSource addSignal(final int signalNumber, final SignalEventHandler handler) {
@@ -186,24 +209,49 @@ public class EventLoop {
                 jObjectRef
         );
 
-        var eventSource = new EventSource(jObjectRef, eventSourcePtr);
-//        eventSources.add(eventSource);
-        return eventSource;
+        return addEventSource(handler,
+                jObjectRef,
+                eventSourcePtr);
     }
 
+    /**
+     * Run a handler once, the next time the event loop is idle. Idle handlers run at the start of
+     * {@link #dispatch(int)}, before it waits for events, or from {@link #dispatchIdle()}. The source is removed
+     * automatically once the handler ran.
+     *
+     * @param handler the handler to run.
+     * @return the source, which can be removed to keep the handler from running.
+     */
     public EventSource addIdle(final IdleHandler handler) {
-        MemorySegment jObjectRef = GlobalRef.from(handler);
+        final IdleSource idleSource = new IdleSource(handler);
+        MemorySegment jObjectRef = GlobalRef.from(idleSource);
         MemorySegment eventSourcePtr = LibWayland.wl_event_loop_add_idle(
                 this.pointer,
                 WL_EVENT_LOOP_IDLE_FUNC,
                 jObjectRef
         );
 
-        var eventSource = new EventSource(jObjectRef, eventSourcePtr);
-//        eventSources.add(eventSource);
+        idleSource.eventSource = addEventSource(idleSource,
+                jObjectRef,
+                eventSourcePtr);
+        return idleSource.eventSource;
+    }
+
+    private EventSource addEventSource(final Object handler,
+                                       final MemorySegment jObjectRef,
+                                       final MemorySegment eventSourcePtr) {
+        final EventSource eventSource = new EventSource(this,
+                handler,
+                jObjectRef,
+                eventSourcePtr);
+        this.eventSources.add(eventSource);
         return eventSource;
     }
 
+    void removed(final EventSource eventSource) {
+        this.eventSources.remove(eventSource);
+    }
+
     public int dispatch(final int timeout) {
         return LibWayland.wl_event_loop_dispatch(this.pointer, timeout);
     }
@@ -263,5 +311,20 @@ public class EventLoop {
     public interface IdleHandler {
         void handle();
     }
+
+    // libwayland frees an idle source after dispatching it
+    private static final class IdleSource {
+        private final IdleHandler handler;
+        private EventSource eventSource;
+
+        IdleSource(final IdleHandler handler) {
+            this.handler = handler;
+        }
+
+        void handle() {
+            this.eventSource.released();
+            this.handler.handle();
+        }
+    }
 }
 
@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.server;
+
+import org.freedesktop.wayland.raw.C;
+import org.freedesktop.wayland.raw.LibWayland;
+import org.freedesktop.wayland.util.Memory;
+import org.slf4j.LoggerFactory;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs tasks on the thread that dispatches an {@link EventLoop}, usually the thread in {@link Display#run()}.
+ * <p>
+ * libwayland is not thread safe: resources can only be used, and events only be posted, from the event loop thread.
+ * This executor lets other threads hand work back to that thread. A worker can do expensive request handling off the
+ * loop and then execute a small task that posts the result to the client.
+ * <p>
+ * Tasks are put in a lock-free queue. Only the task that makes the queue non-empty writes to an {@code eventfd} that
+ * is registered with the event loop, so a burst of tasks costs a single wakeup. On every wakeup the loop runs at most
+ * {@link #getBatchSize()} tasks, and wakes itself up again if more are left, so other event sources are not starved.
+ * Events posted by the tasks are flushed to the clients by {@link Display#run()} before it waits again.
+ */
+public final class EventLoopExecutor implements Executor, AutoCloseable {
+
+    /**
+     * The default maximum number of tasks run per wakeup.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(EventLoopExecutor.class);
+
+    private final int batchSize;
+    private final int wakeupFd;
+    private final EventSource wakeupSource;
+    private final MemorySegment counter = Memory.ARENA_AUTO.allocate(ValueLayout.JAVA_LONG);
+    //always 1, written to the eventfd
+    private final MemorySegment increment = Memory.ARENA_AUTO.allocate(ValueLayout.JAVA_LONG);
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    //multiple producer single consumer queue, the head is only used on the event loop thread
+    private final AtomicReference<Node> tail;
+    private Node head;
+
+    //only written while holding the lock
+    private volatile boolean closed;
+
+    /**
+     * Create an executor for the event loop of a display.
+     *
+     * @param display the display to run tasks for.
+     */
+    public EventLoopExecutor(final Display display) {
+        this(display.getEventLoop(),
+                DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Create an executor for an event loop. Must be called on the event loop thread.
+     *
+     * @param eventLoop the event loop to run tasks on.
+     * @param batchSize the maximum number of tasks run per wakeup.
+     */
+    public EventLoopExecutor(final EventLoop eventLoop,
+                             final int batchSize) {
+        Objects.requireNonNull(eventLoop);
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+        this.batchSize = batchSize;
+        this.increment.set(ValueLayout.JAVA_LONG,
+                0,
+                1L);
+        this.head = new Node(null);
+        this.tail = new AtomicReference<>(this.head);
+        this.wakeupFd = C.eventfd(0,
+                C.EFD_CLOEXEC() | C.EFD_NONBLOCK());
+        if (this.wakeupFd < 0) {
+            throw new RuntimeException("eventfd failed.");
+        }
+        this.wakeupSource = eventLoop.addFileDescriptor(this.wakeupFd,
+                LibWayland.WL_EVENT_READABLE(),
+                (fd, mask) -> {
+                    C.read(this.wakeupFd,
+                            this.counter,
+                            this.counter.byteSize());
+                    runBatch();
+                    return 0;
+                });
+    }
+
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * Run a task on the event loop thread. Can be called from any thread.
+     *
+     * @param task the task to run.
+     * @throws RejectedExecutionException if this executor is closed.
+     */
+    @Override
+    public void execute(final Runnable task) {
+        Objects.requireNonNull(task);
+        if (this.closed) {
+            throw new RejectedExecutionException("Executor is closed.");
+        }
+        final Node node = new Node(task);
+        this.tail.getAndSet(node).next = node;
+        if (this.wakeupPending.compareAndSet(false,
+                true)) {
+            wakeup();
+        }
+    }
+
+    private synchronized void wakeup() {
+        if (this.closed) {
+            return;
+        }
+        C.write(this.wakeupFd,
+                this.increment,
+                this.increment.byteSize());
+    }
+
+    private void runBatch() {
+        //tasks queued from here on wake us up again
+        this.wakeupPending.set(false);
+        for (int i = 0; i < this.batchSize; i++) {
+            final Runnable task = poll();
+            if (task == null) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (final Throwable t) {
+                LOG.error("event loop task threw exception",
+                        t);
+            }
+        }
+        if (this.head.next != null && this.wakeupPending.compareAndSet(false,
+                true)) {
+            wakeup();
+        }
+    }
+
+    // must be called on the event loop thread
+    private Runnable poll() {
+        final Node next = this.head.next;
+        if (next == null) {
+            return null;
+        }
+        this.head = next;
+        final Runnable task = next.task;
+        next.task = null;
+        return task;
+    }
+
+    /**
+     * Stop running tasks. Tasks that did not run yet are discarded. Must be called on the event loop thread.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        this.wakeupSource.remove();
+        C.close(this.wakeupFd);
+        while (poll() != null) {
+            //discard
+        }
+    }
+
+    private static final class Node {
+        private Runnable task;
+        private volatile Node next;
+
+        Node(final Runnable task) {
+            this.task = task;
+        }
+    }
+}
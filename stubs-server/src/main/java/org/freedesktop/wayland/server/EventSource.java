@@ -20,19 +20,39 @@ package org.freedesktop.wayland.server;
 
 import org.freedesktop.wayland.raw.C;
 import org.freedesktop.wayland.raw.LibWayland;
+import org.freedesktop.wayland.util.GlobalRef;
 
 import java.lang.foreign.MemorySegment;
 
 public final class EventSource {
 
+    private final EventLoop eventLoop;
+    // strong reference to the handler, the global ref only has a weak one
+    private final Object handler;
     private final MemorySegment handlerRef;
     private final MemorySegment wlEventSource;
+    private boolean released;
 
-    EventSource(final MemorySegment handlerRef, final MemorySegment wlEventSource) {
+    EventSource(final EventLoop eventLoop,
+                final Object handler,
+                final MemorySegment handlerRef,
+                final MemorySegment wlEventSource) {
+        this.eventLoop = eventLoop;
+        this.handler = handler;
         this.wlEventSource = wlEventSource;
         this.handlerRef = handlerRef;
     }
 
+    // the native source is gone, drop the handler
+    void released() {
+        if (this.released) {
+            return;
+        }
+        this.released = true;
+        this.eventLoop.removed(this);
+        GlobalRef.remove(this.handlerRef);
+    }
+
     public int updateFileDescriptor(final int mask) {
         return LibWayland.wl_event_source_fd_update(this.wlEventSource, mask);
     }
@@ -66,6 +86,10 @@ public final class EventSource {
     }
 
     public int remove() {
+        if (this.released) {
+            return 0;
+        }
+        released();
         return LibWayland.wl_event_source_remove(this.wlEventSource);
     }
 }
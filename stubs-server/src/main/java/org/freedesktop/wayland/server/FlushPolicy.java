@@ -0,0 +1,36 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.server;
+
+/**
+ * When an {@link EventFlusher} writes the events sent to a client to its socket.
+ */
+public enum FlushPolicy {
+    /**
+     * Flush every client that was sent events once per event loop iteration, when the loop is about to wait for
+     * events.
+     */
+    PER_ITERATION,
+    /**
+     * Only flush on {@link EventFlusher#frameBoundary()}, so all events of a frame go out in one write per client.
+     * {@link Display#run()} flushes all clients on every iteration, so this needs a compositor that dispatches the
+     * {@link EventLoop} itself.
+     */
+    FRAME
+}
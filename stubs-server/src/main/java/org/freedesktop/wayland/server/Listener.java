@@ -71,7 +71,7 @@ abstract class Listener {
     public static void listenerNativeCallback(MemorySegment listenerPointer, MemorySegment data) {
         try {
             final Listener listener = ObjectCache.from(listenerPointer);
-            listener.handle();
+            listener.handle(data);
         } catch (Throwable t) {
             LOG.error("Exception in wayland Listener callback", t);
         }
@@ -118,6 +118,16 @@ abstract class Listener {
 
     public abstract void handle();
 
+    /**
+     * Called with the data of the signal, like the new client of {@code wl_display_add_client_created_listener}.
+     * Listeners that need the data override this, by default it calls {@link #handle()}.
+     *
+     * @param data the data the signal was emitted with.
+     */
+    public void handle(final MemorySegment data) {
+        handle();
+    }
+
     @Override
     public int hashCode() {
         return this.wlListenerPointer.hashCode();
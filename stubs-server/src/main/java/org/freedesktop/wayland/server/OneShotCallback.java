@@ -0,0 +1,187 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.freedesktop.wayland.server;
+
+import org.freedesktop.wayland.raw.LibWayland;
+import org.freedesktop.wayland.raw.wl_argument;
+import org.freedesktop.wayland.raw.wl_resource_destroy_func_t;
+import org.freedesktop.wayland.util.Memory;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+
+/**
+ * Fast path for {@code wl_callback} resources that fire once and are destroyed, like frame callbacks or
+ * {@code wl_display.sync}.
+ * <p>
+ * A regular {@code WlCallbackResource} is registered in the object cache, gets a global reference, a set of destroy
+ * listeners and a destructor upcall. A one-shot callback is only a native resource and a slot in a table, identified
+ * by a handle:
+ * <pre>
+ *   {@code
+ *   public void frame(WlSurfaceResource requester, int callback) {
+ *       this.frameCallbacks.add(OneShotCallback.create(requester.getClient(), 1, callback));
+ *   }
+ *   ...
+ *   for (long frameCallback : this.frameCallbacks) {
+ *       OneShotCallback.done(frameCallback, time);
+ *   }
+ *   }
+ * </pre>
+ * The handle stays safe to use after the client destroyed the callback or disconnected: {@link #done(long, int)} then
+ * simply returns false.
+ * <p>
+ * Like all server side objects, one-shot callbacks must only be used from the thread that runs the display's event
+ * loop. The slot table is shared by all displays, it is guarded by a lock so displays can run on different threads.
+ */
+public final class OneShotCallback {
+
+    private static final MemorySegment DESTROY_FUNC = wl_resource_destroy_func_t.allocate(OneShotCallback::destroyed,
+            Memory.ARENA_AUTO);
+    //the argument of wl_callback.done
+    private static final MemorySegment DONE_ARGUMENT = wl_argument.allocateArray(1,
+            Memory.ARENA_AUTO);
+
+    //all fields below are guarded by OneShotCallback.class
+    private static MemorySegment[] resources = new MemorySegment[16];
+    //incremented every time a slot is freed, so stale handles can be detected
+    private static int[] generations = new int[16];
+    private static int[] freeSlots = new int[16];
+    private static int freeCount;
+    private static int slotCount;
+
+    private OneShotCallback() {
+    }
+
+    /**
+     * Create a callback resource for a {@code new_id} received from a client.
+     *
+     * @param client  the client that sent the request.
+     * @param version the version of the callback, usually 1.
+     * @param id      the new_id argument of the request.
+     * @return a handle to the callback, or -1 if it could not be created.
+     */
+    public static synchronized long create(final Client client,
+                              final int version,
+                              final int id) {
+        final MemorySegment resourcePointer = LibWayland.wl_resource_create(client.pointer,
+                LibWayland.wl_callback_interface(),
+                version,
+                id);
+        if (MemorySegment.NULL.equals(resourcePointer)) {
+            LibWayland.wl_client_post_no_memory(client.pointer);
+            return -1;
+        }
+        final int slot = acquire(resourcePointer);
+        //wl_callback has no requests, so no dispatcher is needed
+        LibWayland.wl_resource_set_dispatcher(resourcePointer,
+                MemorySegment.NULL,
+                MemorySegment.NULL,
+                MemorySegment.ofAddress(slot),
+                DESTROY_FUNC);
+        return handle(slot);
+    }
+
+    /**
+     * Send the {@code done} event and destroy the callback.
+     *
+     * @param handle       a handle returned by {@link #create(Client, int, int)}.
+     * @param callbackData the callback data, eg the frame time in milliseconds.
+     * @return true if the event was sent, false if the callback no longer exists.
+     */
+    public static synchronized boolean done(final long handle,
+                               final int callbackData) {
+        final MemorySegment resourcePointer = resolve(handle);
+        if (resourcePointer == null) {
+            return false;
+        }
+        wl_argument.u(DONE_ARGUMENT,
+                callbackData);
+        LibWayland.wl_resource_post_event_array(resourcePointer,
+                0,
+                DONE_ARGUMENT);
+        //frees the slot through the destroy function
+        LibWayland.wl_resource_destroy(resourcePointer);
+        return true;
+    }
+
+    /**
+     * Destroy the callback without sending the {@code done} event.
+     *
+     * @param handle a handle returned by {@link #create(Client, int, int)}.
+     */
+    public static synchronized void destroy(final long handle) {
+        final MemorySegment resourcePointer = resolve(handle);
+        if (resourcePointer != null) {
+            LibWayland.wl_resource_destroy(resourcePointer);
+        }
+    }
+
+    /**
+     * @param handle a handle returned by {@link #create(Client, int, int)}.
+     * @return true if the callback still exists.
+     */
+    public static synchronized boolean isAlive(final long handle) {
+        return resolve(handle) != null;
+    }
+
+    // must be called while holding the lock
+    private static long handle(final int slot) {
+        return ((long) generations[slot] << 32) | slot;
+    }
+
+    // must be called while holding the lock
+    private static MemorySegment resolve(final long handle) {
+        final int slot = (int) handle;
+        if (slot < 0 || slot >= slotCount || generations[slot] != (int) (handle >>> 32)) {
+            return null;
+        }
+        return resources[slot];
+    }
+
+    private static synchronized void destroyed(final MemorySegment resourcePointer) {
+        release((int) LibWayland.wl_resource_get_user_data(resourcePointer)
+                .address());
+    }
+
+    // must be called while holding the lock
+    private static int acquire(final MemorySegment resourcePointer) {
+        final int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == resources.length) {
+                resources = Arrays.copyOf(resources,
+                        slotCount * 2);
+                generations = Arrays.copyOf(generations,
+                        slotCount * 2);
+                freeSlots = Arrays.copyOf(freeSlots,
+                        slotCount * 2);
+            }
+            slot = slotCount++;
+        }
+        resources[slot] = resourcePointer;
+        return slot;
+    }
+
+    // must be called while holding the lock
+    private static void release(final int slot) {
+        resources[slot] = null;
+        generations[slot]++;
+        freeSlots[freeCount++] = slot;
+    }
+}
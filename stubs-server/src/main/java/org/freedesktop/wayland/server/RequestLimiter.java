@@ -0,0 +1,532 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.server;
+
+import org.freedesktop.wayland.raw.LibWayland;
+import org.freedesktop.wayland.util.Dispatcher;
+import org.freedesktop.wayland.util.Interface;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Limits the rate at which clients can send requests.
+ * <p>
+ * libwayland dispatches every request it reads from a client right away, so a client that sends requests in a loop
+ * keeps the event loop busy and delays all other clients. A limiter gives every client token buckets: one for all its
+ * requests, and one per interface or per request that has a limit of its own. Every request takes a token from each
+ * bucket it falls under. A client that runs out of tokens is not disconnected, its socket is no longer polled until
+ * its buckets have refilled, so the requests it sends in the meantime wait in the kernel and other clients are served.
+ * <p>
+ * Requests to objects implemented in java are counted when they are dispatched. Objects implemented by libwayland
+ * itself have no dispatcher, their requests are counted through the objects they create: {@code wl_display.sync},
+ * {@code wl_display.get_registry}, {@code wl_shm.create_pool} and {@code wl_shm_pool.create_buffer}. Their other
+ * requests, like {@code wl_shm_pool.resize}, are not counted. Requests that were already read from the socket when a
+ * client is throttled are still dispatched, they are paid for by refilling the buckets of the client later. libwayland
+ * polls the socket again when it could not write all events to it, the next request of the client stops that again.
+ * <p>
+ * libwayland has no api to reach the event source that polls a client socket, it is read from the start of the private
+ * {@code struct wl_client}. That is only done if the loaded {@code libwayland-server} is a version known to have that
+ * layout, 1.0 up to 1.24, and the source is only used if it polls the socket of the client on
+ * the event loop of the display. Otherwise, see {@link #isThrottlingSupported()}, the socket of a client is never
+ * masked and a client that exceeds a limit is disconnected instead.
+ * <p>
+ * There can be one limiter per display. This class is not thread safe and must only be used on the event loop thread.
+ * It must be closed before its display is destroyed.
+ */
+public final class RequestLimiter implements AutoCloseable {
+
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(RequestLimiter.class);
+
+    //the last libwayland 1.x release whose struct layouts below were checked
+    static final int LAST_KNOWN_MINOR = 24;
+    //the file name of libwayland-server 1.<minor>.<micro> is libwayland-server.so.0.<minor>.<micro>, releases built
+    //with autotools, all older than 1.20, are named libwayland-server.so.0.1.0
+    private static final Pattern SERVER_LIBRARY = Pattern.compile("libwayland-server\\.so\\.0\\.(\\d+)\\.\\d+");
+
+    //struct wl_client starts with { struct wl_connection *connection; struct wl_event_source *source; }
+    private static final long CLIENT_SOURCE_OFFSET = ValueLayout.ADDRESS.byteSize();
+    //struct wl_event_source starts with { interface; struct wl_event_loop *loop; struct wl_list link; void *data; int fd; }
+    private static final long SOURCE_LOOP_OFFSET = ValueLayout.ADDRESS.byteSize();
+    private static final long SOURCE_FD_OFFSET = 5 * ValueLayout.ADDRESS.byteSize();
+
+    //the requests of objects implemented by libwayland, by the interface of the object they create
+    private static final Map<String, CreatingRequest> CREATING_REQUESTS = Map.of(
+            "wl_callback",
+            new CreatingRequest("wl_display",
+                    0),
+            "wl_registry",
+            new CreatingRequest("wl_display",
+                    1),
+            "wl_shm_pool",
+            new CreatingRequest("wl_shm",
+                    0),
+            "wl_buffer",
+            new CreatingRequest("wl_shm_pool",
+                    0));
+
+    //number of open limiters, so dispatching requests costs nothing extra when there are none
+    private static volatile int instances;
+
+    private final Display display;
+    private final MemorySegment eventLoop;
+    private final boolean throttlingSupported;
+    private final TimerWheel timerWheel;
+    private final Listener resourceCreated;
+    private final Client.AttachmentKey<ClientState> stateKey = Client.AttachmentKey.create(ClientState.class,
+            "request limiter");
+    private final List<Rule> rules = new ArrayList<>();
+    private final Map<String, InterfaceRules> rulesByName = new HashMap<>();
+    //interface name pointer to rules, interface structs are never freed
+    private final Map<Long, InterfaceRules> rulesByNamePointer = new HashMap<>();
+    //interface name pointer to the request that created an object of the interface, null if not created by libwayland
+    private final Map<Long, CreatingRequest> creatingRequestsByNamePointer = new HashMap<>();
+    private final Set<ClientState> throttled = new HashSet<>();
+    private Rule clientRule;
+    //requests of java objects being dispatched, the resources they create were paid for by the request
+    private int dispatching;
+    private boolean closed;
+
+    /**
+     * Create a limiter for the clients of a display. No limits are set.
+     *
+     * @param display the display whose clients are limited.
+     * @throws IllegalStateException if the display already has a limiter.
+     */
+    public RequestLimiter(final Display display) {
+        if (display.requestLimiter != null) {
+            throw new IllegalStateException("Display already has a request limiter.");
+        }
+        this.display = display;
+        this.eventLoop = display.getEventLoop().pointer;
+        this.throttlingSupported = isClientLayoutKnown();
+        if (!this.throttlingSupported) {
+            LOG.warn("Unknown libwayland-server version, clients that exceed a request limit are disconnected instead of throttled.");
+        }
+        this.timerWheel = new TimerWheel(display.getEventLoop());
+        this.resourceCreated = new Listener() {
+            @Override
+            public void handle() {
+            }
+
+            @Override
+            public void handle(final MemorySegment resource) {
+                created(resource);
+            }
+        };
+        LibWayland.wl_display_add_resource_created_listener(display.pointer,
+                this.resourceCreated.wlListenerPointer);
+        display.requestLimiter = this;
+        synchronized (RequestLimiter.class) {
+            instances++;
+        }
+    }
+
+    /**
+     * Limit the requests of each client, for all objects together.
+     *
+     * @param requestsPerSecond the sustained rate.
+     * @param burst             the number of requests that can be sent at once after a quiet period.
+     */
+    public void limitClient(final double requestsPerSecond,
+                            final int burst) {
+        this.clientRule = rule(this.clientRule,
+                requestsPerSecond,
+                burst);
+    }
+
+    /**
+     * Limit the requests of each client to all objects of an interface together.
+     *
+     * @param resourceClass     the generated resource class of the interface.
+     * @param requestsPerSecond the sustained rate.
+     * @param burst             the number of requests that can be sent at once after a quiet period.
+     */
+    public void limit(final Class<? extends Resource<?>> resourceClass,
+                      final double requestsPerSecond,
+                      final int burst) {
+        final InterfaceRules interfaceRules = interfaceRules(resourceClass);
+        interfaceRules.rule = rule(interfaceRules.rule,
+                requestsPerSecond,
+                burst);
+    }
+
+    /**
+     * Limit the requests of each client of a single request type, eg {@code wl_surface.damage}.
+     *
+     * @param resourceClass     the generated resource class of the interface.
+     * @param opcode            the opcode of the request.
+     * @param requestsPerSecond the sustained rate.
+     * @param burst             the number of requests that can be sent at once after a quiet period.
+     */
+    public void limit(final Class<? extends Resource<?>> resourceClass,
+                      final int opcode,
+                      final double requestsPerSecond,
+                      final int burst) {
+        if (opcode < 0) {
+            throw new IllegalArgumentException("Invalid opcode " + opcode);
+        }
+        final InterfaceRules interfaceRules = interfaceRules(resourceClass);
+        if (opcode >= interfaceRules.opcodes.length) {
+            interfaceRules.opcodes = Arrays.copyOf(interfaceRules.opcodes,
+                    opcode + 1);
+        }
+        interfaceRules.opcodes[opcode] = rule(interfaceRules.opcodes[opcode],
+                requestsPerSecond,
+                burst);
+    }
+
+    /**
+     * @param client a client of the display.
+     * @return true if the socket of the client is currently not polled because it exceeded a limit.
+     */
+    public boolean isThrottled(final Client client) {
+        final ClientState state = client.getAttachment(this.stateKey);
+        return state != null && state.timer != 0;
+    }
+
+    private InterfaceRules interfaceRules(final Class<? extends Resource<?>> resourceClass) {
+        final Interface anInterface = resourceClass.getAnnotation(Interface.class);
+        if (anInterface == null) {
+            throw new IllegalArgumentException(resourceClass + " is not a generated resource class.");
+        }
+        //rules are looked up by name pointer on first use
+        this.rulesByNamePointer.clear();
+        return this.rulesByName.computeIfAbsent(anInterface.name(),
+                name -> new InterfaceRules());
+    }
+
+    private Rule rule(final Rule rule,
+                      final double requestsPerSecond,
+                      final int burst) {
+        if (requestsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive.");
+        }
+        final Rule updated = rule == null ? new Rule(this.rules.size()) : rule;
+        if (rule == null) {
+            this.rules.add(updated);
+        }
+        updated.tokensPerNano = requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        updated.burst = burst;
+        return updated;
+    }
+
+    /**
+     * @return true if clients that exceed a limit are throttled, false if they are disconnected because the loaded
+     * libwayland is not known to have the private struct layout needed to stop polling a client.
+     */
+    public boolean isThrottlingSupported() {
+        return this.throttlingSupported;
+    }
+
+    // checks the version of the libwayland-server that is mapped into the process, before anything is read from it
+    private static boolean isClientLayoutKnown() {
+        try (final Stream<String> maps = Files.lines(Path.of("/proc/self/maps"))) {
+            return maps.map(SERVER_LIBRARY::matcher)
+                    .filter(Matcher::find)
+                    .findFirst()
+                    .map(matcher -> Integer.parseInt(matcher.group(1)) <= LAST_KNOWN_MINOR)
+                    .orElse(false);
+        } catch (final IOException | RuntimeException e) {
+            LOG.warn("Could not determine the libwayland-server version.",
+                    e);
+            return false;
+        }
+    }
+
+    static boolean isLimiting() {
+        return instances != 0;
+    }
+
+    // called by Resource for every request to an object implemented in java
+    static int dispatch(final MemorySegment implementation,
+                        final MemorySegment resource,
+                        final int opcode,
+                        final MemorySegment message,
+                        final MemorySegment arguments) {
+        RequestLimiter limiter = null;
+        try {
+            final MemorySegment client = LibWayland.wl_resource_get_client(resource);
+            limiter = Display.get(LibWayland.wl_client_get_display(client)).requestLimiter;
+            if (limiter != null) {
+                limiter.charge(limiter.state(client),
+                        limiter.rulesByName.isEmpty() ? InterfaceRules.NONE : limiter.lookup(resource),
+                        opcode);
+            }
+        } catch (final Throwable t) {
+            // this is mandatory otherwise the JVM will crash
+            LOG.error("request limiter threw exception",
+                    t);
+        }
+        if (limiter == null) {
+            return Dispatcher.invoke(implementation,
+                    resource,
+                    opcode,
+                    message,
+                    arguments);
+        }
+        limiter.dispatching++;
+        try {
+            return Dispatcher.invoke(implementation,
+                    resource,
+                    opcode,
+                    message,
+                    arguments);
+        } finally {
+            limiter.dispatching--;
+        }
+    }
+
+    private ClientState state(final MemorySegment client) {
+        return Client.get(client)
+                .computeAttachmentIfAbsent(this.stateKey,
+                        ClientState::new);
+    }
+
+    private void created(final MemorySegment resource) {
+        if (this.dispatching != 0) {
+            return;
+        }
+        final MemorySegment name = LibWayland.wl_resource_get_class(resource);
+        CreatingRequest request = this.creatingRequestsByNamePointer.get(name.address());
+        if (request == null) {
+            request = CREATING_REQUESTS.getOrDefault(name.reinterpret(Long.MAX_VALUE)
+                            .getString(0),
+                    CreatingRequest.NONE);
+            this.creatingRequestsByNamePointer.put(name.address(),
+                    request);
+        }
+        if (request == CreatingRequest.NONE) {
+            return;
+        }
+        final MemorySegment client = LibWayland.wl_resource_get_client(resource);
+        charge(state(client),
+                this.rulesByName.getOrDefault(request.interfaceName,
+                        InterfaceRules.NONE),
+                request.opcode);
+    }
+
+    private void charge(final ClientState state,
+                        final InterfaceRules interfaceRules,
+                        final int opcode) {
+        final long now = System.nanoTime();
+        long waitNanos = 0;
+        if (this.clientRule != null) {
+            waitNanos = state.take(this.clientRule,
+                    now);
+        }
+        if (interfaceRules.rule != null) {
+            waitNanos = Math.max(waitNanos,
+                    state.take(interfaceRules.rule,
+                            now));
+        }
+        if (opcode < interfaceRules.opcodes.length && interfaceRules.opcodes[opcode] != null) {
+            waitNanos = Math.max(waitNanos,
+                    state.take(interfaceRules.opcodes[opcode],
+                            now));
+        }
+        if (waitNanos <= 0) {
+            return;
+        }
+        if (state.timer == 0) {
+            throttle(state,
+                    waitNanos);
+        } else {
+            //libwayland polls the socket again when it could not flush, stop it again
+            LibWayland.wl_event_source_fd_update(state.source,
+                    0);
+        }
+    }
+
+    private InterfaceRules lookup(final MemorySegment resource) {
+        final MemorySegment name = LibWayland.wl_resource_get_class(resource);
+        InterfaceRules interfaceRules = this.rulesByNamePointer.get(name.address());
+        if (interfaceRules == null) {
+            interfaceRules = this.rulesByName.getOrDefault(name.reinterpret(Long.MAX_VALUE)
+                            .getString(0),
+                    InterfaceRules.NONE);
+            this.rulesByNamePointer.put(name.address(),
+                    interfaceRules);
+        }
+        return interfaceRules;
+    }
+
+    private void throttle(final ClientState state,
+                          final long waitNanos) {
+        if (state.source == null) {
+            state.source = source(state.client);
+        }
+        if (MemorySegment.NULL.equals(state.source)) {
+            LOG.warn("Client {} exceeds its request rate and can not be throttled, disconnecting it.",
+                    state.client.pointer);
+            LibWayland.wl_client_post_no_memory(state.client.pointer);
+            return;
+        }
+        LibWayland.wl_event_source_fd_update(state.source,
+                0);
+        state.timer = this.timerWheel.schedule(waitNanos,
+                TimeUnit.NANOSECONDS,
+                state::resume);
+        this.throttled.add(state);
+    }
+
+    // the event source that polls the socket of a client, NULL if struct wl_client does not have the expected layout
+    private MemorySegment source(final Client client) {
+        if (!this.throttlingSupported) {
+            return MemorySegment.NULL;
+        }
+        final MemorySegment source = client.pointer.reinterpret(CLIENT_SOURCE_OFFSET + ValueLayout.ADDRESS.byteSize())
+                .get(ValueLayout.ADDRESS,
+                        CLIENT_SOURCE_OFFSET);
+        if (MemorySegment.NULL.equals(source)) {
+            LOG.error("Client {} has no event source, clients can not be throttled.",
+                    client.pointer);
+            return MemorySegment.NULL;
+        }
+        final MemorySegment fields = source.reinterpret(SOURCE_FD_OFFSET + ValueLayout.JAVA_INT.byteSize());
+        if (fields.get(ValueLayout.ADDRESS,
+                SOURCE_LOOP_OFFSET)
+                    .address() != this.eventLoop.address() || fields.get(ValueLayout.JAVA_INT,
+                SOURCE_FD_OFFSET) != LibWayland.wl_client_get_fd(client.pointer)) {
+            LOG.error("The event source of client {} does not poll its socket, clients can not be throttled.",
+                    client.pointer);
+            return MemorySegment.NULL;
+        }
+        return source;
+    }
+
+    /**
+     * Stop limiting. Throttled clients are polled again right away.
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.resourceCreated.remove();
+        this.resourceCreated.destroy();
+        this.display.requestLimiter = null;
+        synchronized (RequestLimiter.class) {
+            instances--;
+        }
+        for (final ClientState state : new ArrayList<>(this.throttled)) {
+            this.timerWheel.cancel(state.timer);
+            state.resume();
+        }
+        this.timerWheel.close();
+    }
+
+    private record CreatingRequest(String interfaceName,
+                                   int opcode) {
+        static final CreatingRequest NONE = new CreatingRequest("",
+                -1);
+    }
+
+    private static final class Rule {
+        final int index;
+        double tokensPerNano;
+        int burst;
+
+        Rule(final int index) {
+            this.index = index;
+        }
+    }
+
+    private static final class InterfaceRules {
+        static final InterfaceRules NONE = new InterfaceRules();
+
+        Rule rule;
+        Rule[] opcodes = new Rule[0];
+    }
+
+    private final class ClientState {
+        final Client client;
+        //tokens and last refill time per rule index, NaN if the bucket was never used
+        double[] tokens = new double[0];
+        long[] refilled = new long[0];
+        MemorySegment source;
+        long timer;
+
+        ClientState(final Client client) {
+            this.client = client;
+            client.register(this::destroyed);
+        }
+
+        // take a token, returns how long the client should wait for the bucket to be out of debt
+        long take(final Rule rule,
+                  final long now) {
+            final int index = rule.index;
+            if (index >= this.tokens.length) {
+                final int length = this.tokens.length;
+                this.tokens = Arrays.copyOf(this.tokens,
+                        index + 1);
+                this.refilled = Arrays.copyOf(this.refilled,
+                        index + 1);
+                Arrays.fill(this.tokens,
+                        length,
+                        index + 1,
+                        Double.NaN);
+            }
+            double tokens = this.tokens[index];
+            if (Double.isNaN(tokens)) {
+                tokens = rule.burst;
+            } else {
+                tokens = Math.min(rule.burst,
+                        tokens + (now - this.refilled[index]) * rule.tokensPerNano);
+            }
+            tokens -= 1;
+            this.tokens[index] = tokens;
+            this.refilled[index] = now;
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / rule.tokensPerNano);
+        }
+
+        void resume() {
+            this.timer = 0;
+            RequestLimiter.this.throttled.remove(this);
+            //writable too, in case libwayland was waiting to flush, it goes back to readable by itself
+            LibWayland.wl_event_source_fd_update(this.source,
+                    LibWayland.WL_EVENT_READABLE() | LibWayland.WL_EVENT_WRITABLE());
+        }
+
+        void destroyed() {
+            //the event source of the client is destroyed with it
+            if (this.timer != 0 && !RequestLimiter.this.closed) {
+                RequestLimiter.this.timerWheel.cancel(this.timer);
+                RequestLimiter.this.throttled.remove(this);
+            }
+            this.timer = 0;
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.freedesktop.wayland.server;
 import org.freedesktop.wayland.raw.C;
 import org.freedesktop.wayland.raw.LibWayland;
 import org.freedesktop.wayland.util.*;
+import org.freedesktop.wayland.raw.wl_dispatcher_func_t;
 import org.freedesktop.wayland.raw.wl_resource_destroy_func_t;
 
 import java.lang.foreign.MemorySegment;
@@ -35,12 +36,28 @@ import java.util.Set;
 public abstract class Resource<I> implements WaylandObject {
 
     private static final MemorySegment RESOURCE_DESTROY_FUNC;
+    private static final MemorySegment DISPATCHER;
 
     static {
+        //requests only go through the request limiter while one is open
+        DISPATCHER = wl_dispatcher_func_t.allocate((implementation, resourcePointer, opcode, message, arguments) ->
+                        RequestLimiter.isLimiting() ? RequestLimiter.dispatch(implementation,
+                                resourcePointer,
+                                opcode,
+                                message,
+                                arguments) : Dispatcher.invoke(implementation,
+                                resourcePointer,
+                                opcode,
+                                message,
+                                arguments),
+                Memory.ARENA_AUTO
+        );
         RESOURCE_DESTROY_FUNC = wl_resource_destroy_func_t.allocate((resourcePointer) -> {
                     final Resource<?> resource = ObjectCache.from(resourcePointer);
                     resource.notifyDestroyListeners();
                     resource.destroyListeners.clear();
+                    resource.idTable.remove(resource.id,
+                            resource);
                     ObjectCache.remove(resourcePointer);
                     GlobalRef.remove(resource.jObjectRef);
                 },
@@ -52,6 +69,8 @@ public abstract class Resource<I> implements WaylandObject {
     private final I implementation;
     private final Set<DestroyListener> destroyListeners = new HashSet<>();
     private final MemorySegment jObjectRef;
+    private final IdTable<Resource<?>> idTable;
+    private final int id;
 
     protected Resource(final Client client,
                        final int version,
@@ -65,10 +84,14 @@ public abstract class Resource<I> implements WaylandObject {
                 id);
         ObjectCache.store(this.wlResourcePtr, this);
         this.jObjectRef = GlobalRef.from(this);
+        this.id = LibWayland.wl_resource_get_id(this.wlResourcePtr);
+        this.idTable = client.getIdTable();
+        this.idTable.put(this.id,
+                this);
 
         LibWayland.wl_resource_set_dispatcher(
                 this.wlResourcePtr,
-                Dispatcher.INSTANCE,
+                DISPATCHER,
                 jObjectRef,
                 MemorySegment.NULL,
                 RESOURCE_DESTROY_FUNC
@@ -77,18 +100,23 @@ public abstract class Resource<I> implements WaylandObject {
 
     // TODO add static get(Pointer) method for each generated resource
     // TODO wl_resource_post_no_memory
-    // TODO wl_resource_queue_event_array
-    // TODO wl_resource_queue_event
 
     protected Resource(final MemorySegment pointer) {
         this.jObjectRef = GlobalRef.from(this);
         this.wlResourcePtr = pointer;
         this.implementation = null;
+        this.id = LibWayland.wl_resource_get_id(pointer);
+        this.idTable = Client.get(LibWayland.wl_resource_get_client(pointer))
+                .getIdTable();
+        this.idTable.put(this.id,
+                this);
         addDestroyListener(new Listener() {
             @Override
             public void handle() {
                 notifyDestroyListeners();
                 Resource.this.destroyListeners.clear();
+                Resource.this.idTable.remove(Resource.this.id,
+                        Resource.this);
                 ObjectCache.remove(Resource.this.wlResourcePtr);
                 GlobalRef.remove(Resource.this.jObjectRef);
 //                destroy(); // TODO double free?
@@ -119,7 +147,12 @@ public abstract class Resource<I> implements WaylandObject {
     }
 
     public int getId() {
-        return LibWayland.wl_resource_get_id(this.wlResourcePtr);
+        return this.id;
+    }
+
+    @Override
+    public IdTable<Resource<?>> getIdTable() {
+        return this.idTable;
     }
 
     public int getVersion() {
@@ -158,6 +191,7 @@ public abstract class Resource<I> implements WaylandObject {
     public void postEvent(final int opcode,
                           final Arguments args) {
         LibWayland.wl_resource_post_event_array(this.wlResourcePtr, opcode, args.pointer);
+        EventFlusher.eventSent(this, opcode, args.pointer);
         // TODO deallocate the arguments array here
 //        args.pointer.close();
     }
@@ -168,6 +202,33 @@ public abstract class Resource<I> implements WaylandObject {
      */
     public void postEvent(final int opcode) {
         LibWayland.wl_resource_post_event_array(this.wlResourcePtr, opcode, MemorySegment.NULL);
+        EventFlusher.eventSent(this, opcode, MemorySegment.NULL);
+    }
+
+    /**
+     * Queue an event to the client's object referred to by 'resource'.
+     * <p>
+     * The event is buffered like a posted one, but it does not need to reach the client right away: it goes out with
+     * the next flush of the client, for example by an {@link EventFlusher}. Use this for events that are only useful
+     * together with a later one, like the parts of a configure sequence.
+     *
+     * @param opcode the protocol opcode
+     * @param args   the protocol arguments
+     * @see #postEvent(int, Arguments)
+     */
+    public void queueEvent(final int opcode,
+                           final Arguments args) {
+        LibWayland.wl_resource_queue_event_array(this.wlResourcePtr, opcode, args.pointer);
+        EventFlusher.eventSent(this, opcode, args.pointer);
+    }
+
+    /**
+     * @param opcode the protocol opcode
+     * @see #queueEvent(int, org.freedesktop.wayland.util.Arguments)
+     */
+    public void queueEvent(final int opcode) {
+        LibWayland.wl_resource_queue_event_array(this.wlResourcePtr, opcode, MemorySegment.NULL);
+        EventFlusher.eventSent(this, opcode, MemorySegment.NULL);
     }
 
     public void postError(final int code,
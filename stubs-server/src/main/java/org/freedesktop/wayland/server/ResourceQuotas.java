@@ -0,0 +1,349 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.server;
+
+import org.freedesktop.wayland.raw.C;
+import org.freedesktop.wayland.raw.LibWayland;
+import org.freedesktop.wayland.raw.wl_listener;
+import org.freedesktop.wayland.raw.wl_notify_func_t;
+import org.freedesktop.wayland.util.Interface;
+import org.freedesktop.wayland.util.Memory;
+import org.slf4j.LoggerFactory;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the resources a single client can hold.
+ * <p>
+ * Nothing stops a client from creating surfaces, regions or pools until the compositor runs out of memory. Once a
+ * display has quotas, every resource created for a client is counted per client and per interface, and counted down
+ * again when it is destroyed. This includes the resources libwayland creates itself, like {@code wl_shm_pool}, as the
+ * resources are counted through {@code wl_display_add_resource_created_listener}. A client that goes over a limit
+ * gets a {@code no_memory} error, which disconnects it.
+ * <p>
+ * Shared memory is mapped by libwayland itself, which does not report the size of a pool. Compositors call
+ * {@link #chargeShm(Client, long)} and {@link #releaseShm(Client, long)} when they map and unmap client memory.
+ * <p>
+ * There can be one set of quotas per display. This class is not thread safe and must only be used on the event loop
+ * thread.
+ */
+public final class ResourceQuotas implements AutoCloseable {
+
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(ResourceQuotas.class);
+
+    private static final Client.AttachmentKey<Usage> USAGE = Client.AttachmentKey.create(Usage.class,
+            "resource usage");
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    private static final Map<String, Integer> INDICES_BY_NAME = new ConcurrentHashMap<>();
+    //by the address of the interface name, the same name can be in several interface structs
+    private static final Map<MemorySegment, Integer> INDICES_BY_NAME_POINTER = new ConcurrentHashMap<>();
+    private static final ClassValue<Integer> INDICES = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(final Class<?> type) {
+            final Interface anInterface = type.getAnnotation(Interface.class);
+            if (anInterface == null) {
+                throw new IllegalArgumentException(type.getName() + " is not a wayland resource.");
+            }
+            return index(anInterface.name());
+        }
+    };
+
+    private static final MemorySegment RESOURCE_DESTROYED = wl_notify_func_t.allocate(ResourceQuotas::destroyed,
+            Memory.ARENA_AUTO);
+
+    private final Display display;
+    private final Listener resourceCreated;
+    private int[] limits = new int[0];
+    private int totalLimit;
+    private long shmLimit;
+    private boolean closed;
+
+    /**
+     * Create quotas for the clients of a display. No limits are set.
+     *
+     * @param display the display whose clients are limited.
+     * @throws IllegalStateException if the display already has quotas.
+     */
+    public ResourceQuotas(final Display display) {
+        this.display = Objects.requireNonNull(display);
+        if (display.resourceQuotas != null) {
+            throw new IllegalStateException("Display already has resource quotas.");
+        }
+        display.resourceQuotas = this;
+        this.resourceCreated = new Listener() {
+            @Override
+            public void handle() {
+            }
+
+            @Override
+            public void handle(final MemorySegment resource) {
+                count(resource);
+            }
+        };
+        LibWayland.wl_display_add_resource_created_listener(display.pointer,
+                this.resourceCreated.wlListenerPointer);
+    }
+
+    /**
+     * Limit the number of live resources of a class a single client can have.
+     *
+     * @param resourceClass the resource class, eg {@code WlSurfaceResource.class}.
+     * @param limit         the maximum number of resources, or 0 for no limit.
+     * @throws IllegalArgumentException if the class has no wayland {@link Interface}.
+     */
+    public void setLimit(final Class<? extends Resource<?>> resourceClass,
+                         final int limit) {
+        final int index = INDICES.get(resourceClass);
+        if (index >= this.limits.length) {
+            this.limits = Arrays.copyOf(this.limits,
+                    index + 1);
+        }
+        this.limits[index] = limit;
+    }
+
+    /**
+     * @param resourceClass the resource class.
+     * @return the maximum number of resources of the class per client, or 0 if there is no limit.
+     */
+    public int getLimit(final Class<? extends Resource<?>> resourceClass) {
+        final int index = INDICES.get(resourceClass);
+        return index < this.limits.length ? this.limits[index] : 0;
+    }
+
+    /**
+     * Limit the number of live resources of all classes together a single client can have.
+     *
+     * @param limit the maximum number of resources, or 0 for no limit.
+     */
+    public void setTotalLimit(final int limit) {
+        this.totalLimit = limit;
+    }
+
+    public int getTotalLimit() {
+        return this.totalLimit;
+    }
+
+    /**
+     * Limit the shared memory a single client can have mapped.
+     *
+     * @param bytes the maximum number of bytes, or 0 for no limit.
+     */
+    public void setShmLimit(final long bytes) {
+        this.shmLimit = bytes;
+    }
+
+    public long getShmLimit() {
+        return this.shmLimit;
+    }
+
+    /**
+     * The resources a client holds.
+     *
+     * @param client a client of the display.
+     * @return the usage of the client, updated as it creates and destroys resources.
+     */
+    public Usage getUsage(final Client client) {
+        return client.computeAttachmentIfAbsent(USAGE,
+                c -> new Usage());
+    }
+
+    /**
+     * Account for shared memory mapped for a client. If this takes the client over its limit, the client is sent a
+     * {@code no_memory} error and the memory is not charged.
+     *
+     * @param client the client that owns the memory.
+     * @param bytes  the size of the mapping.
+     * @return true if the memory was charged, false if the client is over its limit and should not be served.
+     */
+    public boolean chargeShm(final Client client,
+                             final long bytes) {
+        final Usage usage = getUsage(client);
+        if (this.shmLimit != 0 && usage.shmBytes + bytes > this.shmLimit) {
+            LOG.warn("Client {} exceeds its shared memory quota of {} bytes.",
+                    client.pointer,
+                    this.shmLimit);
+            LibWayland.wl_client_post_no_memory(client.pointer);
+            return false;
+        }
+        usage.shmBytes += bytes;
+        return true;
+    }
+
+    /**
+     * Account for shared memory of a client that was unmapped.
+     *
+     * @param client the client that owns the memory.
+     * @param bytes  the size of the mapping, as given to {@link #chargeShm(Client, long)}.
+     */
+    public void releaseShm(final Client client,
+                           final long bytes) {
+        final Usage usage = getUsage(client);
+        usage.shmBytes = Math.max(0,
+                usage.shmBytes - bytes);
+    }
+
+    private static int index(final String interfaceName) {
+        return INDICES_BY_NAME.computeIfAbsent(interfaceName,
+                name -> COUNT.getAndIncrement());
+    }
+
+    private static int index(final MemorySegment interfaceName) {
+        Integer index = INDICES_BY_NAME_POINTER.get(interfaceName);
+        if (index == null) {
+            index = index(interfaceName.reinterpret(Long.MAX_VALUE)
+                                  .getString(0));
+            INDICES_BY_NAME_POINTER.put(interfaceName,
+                    index);
+        }
+        return index;
+    }
+
+    private void count(final MemorySegment resource) {
+        final MemorySegment clientPointer = LibWayland.wl_resource_get_client(resource);
+        Client client = Client.get(clientPointer);
+        if (client.isDestroyed()) {
+            //the wl_display resource is created before the client created signal, the address belongs to a new client
+            this.display.destroyedClients.remove(clientPointer);
+            client = Client.get(clientPointer);
+        }
+
+        //counted down by a listener that frees itself
+        final MemorySegment listener = C.malloc(wl_listener.sizeof());
+        if (MemorySegment.NULL.equals(listener)) {
+            LibWayland.wl_resource_post_no_memory(resource);
+            return;
+        }
+        wl_listener.notify(listener.reinterpret(wl_listener.sizeof()),
+                RESOURCE_DESTROYED);
+        LibWayland.wl_resource_add_destroy_listener(resource,
+                listener);
+
+        final Usage usage = getUsage(client);
+        final int index = index(LibWayland.wl_resource_get_class(resource));
+        final int live = usage.created(index);
+        final int limit = index < this.limits.length ? this.limits[index] : 0;
+        if ((limit != 0 && live > limit) || (this.totalLimit != 0 && usage.total > this.totalLimit)) {
+            LOG.warn("Client {} exceeds its quota for {}: {} live, {} in total.",
+                    client.pointer,
+                    LibWayland.wl_resource_get_class(resource)
+                            .reinterpret(Long.MAX_VALUE)
+                            .getString(0),
+                    live,
+                    usage.total);
+            //libwayland only sends the first error, after which the client is disconnected
+            LibWayland.wl_resource_post_no_memory(resource);
+        }
+    }
+
+    private static void destroyed(final MemorySegment listener,
+                                  final MemorySegment resource) {
+        try {
+            LibWayland.wl_list_remove(wl_listener.link(listener.reinterpret(wl_listener.sizeof())));
+            C.free(listener);
+            final Usage usage = Client.get(LibWayland.wl_resource_get_client(resource))
+                    .getAttachment(USAGE);
+            if (usage != null) {
+                usage.destroyed(index(LibWayland.wl_resource_get_class(resource)));
+            }
+        } catch (final Throwable t) {
+            // this is mandatory otherwise the JVM will crash
+            LOG.error("Exception in resource quota destroy listener",
+                    t);
+        }
+    }
+
+    /**
+     * Stop counting. Limits are no longer enforced, but usage that was counted stays available and is still counted
+     * down as resources are destroyed.
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.resourceCreated.remove();
+        this.resourceCreated.destroy();
+        this.display.resourceQuotas = null;
+    }
+
+    /**
+     * The resources held by a client.
+     */
+    public static final class Usage {
+        private int[] live = new int[0];
+        private int total;
+        private long shmBytes;
+
+        Usage() {
+        }
+
+        /**
+         * @param resourceClass a resource class.
+         * @return the number of live resources of the class.
+         */
+        public int getLive(final Class<? extends Resource<?>> resourceClass) {
+            final int index = INDICES.get(resourceClass);
+            return index < this.live.length ? this.live[index] : 0;
+        }
+
+        /**
+         * @return the number of live resources of all classes together.
+         */
+        public int getTotal() {
+            return this.total;
+        }
+
+        /**
+         * @return the number of bytes of shared memory charged.
+         */
+        public long getShmBytes() {
+            return this.shmBytes;
+        }
+
+        private int created(final int index) {
+            if (index >= this.live.length) {
+                this.live = Arrays.copyOf(this.live,
+                        index + 1);
+            }
+            this.total++;
+            return ++this.live[index];
+        }
+
+        private void destroyed(final int index) {
+            if (index < this.live.length && this.live[index] > 0) {
+                this.live[index]--;
+                this.total--;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Usage{" +
+                   "total=" + this.total +
+                   ", shmBytes=" + this.shmBytes +
+                   '}';
+        }
+    }
+}
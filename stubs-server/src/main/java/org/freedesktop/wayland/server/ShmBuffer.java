@@ -21,6 +21,7 @@ package org.freedesktop.wayland.server;
 import org.freedesktop.wayland.raw.C;
 import org.freedesktop.wayland.raw.LibWayland;
 
+import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.nio.ByteBuffer;
 
@@ -121,6 +122,25 @@ public class ShmBuffer {
         LibWayland.wl_shm_buffer_end_access(this.pointer);
     }
 
+    /**
+     * Start reading the pixels of this buffer, see {@link #beginAccess()}.
+     * <pre>
+     *   {@code
+     *   try (ShmBuffer.Access access = shmBuffer.access()) {
+     *       upload(access.getSegment(), access.getStride(), access.getWidth(), access.getHeight());
+     *   }
+     *   }
+     * </pre>
+     * The SIGBUS protection of libwayland is per thread, so the access is confined to the calling thread: its segment
+     * can only be read by the thread that called this method, and it can not be read anymore once the access is
+     * closed.
+     *
+     * @return an access that must be closed when done.
+     */
+    public Access access() {
+        return new Access(this);
+    }
+
     /**
      * Get a pointer to the memory for the SHM buffer
      * <p>
@@ -132,13 +152,14 @@ public class ShmBuffer {
      * buffer is larger than it is or if something truncates the
      * underlying file. To prevent this signal from causing the compositor
      * to crash you should call wl_shm_buffer_begin_access and
-     * wl_shm_buffer_end_access around code that reads from the memory.
+     * wl_shm_buffer_end_access around code that reads from the memory, or use {@link #access()}.
      *
-     * @return a direct ByteBuffer.
+     * @return a direct ByteBuffer of {@link #getStride()} times {@link #getHeight()} bytes.
      */
     public ByteBuffer getData() {
         MemorySegment data = LibWayland.wl_shm_buffer_get_data(this.pointer);
-        return data.asByteBuffer();
+        return data.reinterpret((long) getStride() * getHeight())
+                .asByteBuffer();
     }
 
     public int getHeight() {
@@ -174,4 +195,72 @@ public class ShmBuffer {
         return this.pointer.equals(shmBuffer.pointer);
 
     }
+
+    /**
+     * Access to the pixels of a {@link ShmBuffer}, between {@code wl_shm_buffer_begin_access} and
+     * {@code wl_shm_buffer_end_access}.
+     */
+    public static final class Access implements AutoCloseable {
+
+        private final ShmBuffer buffer;
+        private final Arena arena;
+        private final MemorySegment segment;
+        private final int width;
+        private final int height;
+        private final int stride;
+        private final int format;
+
+        private Access(final ShmBuffer buffer) {
+            this.buffer = buffer;
+            this.width = buffer.getWidth();
+            this.height = buffer.getHeight();
+            this.stride = buffer.getStride();
+            this.format = buffer.getFormat();
+            this.arena = Arena.ofConfined();
+            buffer.beginAccess();
+            this.segment = LibWayland.wl_shm_buffer_get_data(buffer.pointer)
+                    .reinterpret((long) this.stride * this.height,
+                            this.arena,
+                            null);
+        }
+
+        /**
+         * The pixels of the buffer, without copying. The segment can not be used after this access is closed.
+         *
+         * @return a segment of {@link #getStride()} times {@link #getHeight()} bytes.
+         */
+        public MemorySegment getSegment() {
+            return this.segment;
+        }
+
+        public int getWidth() {
+            return this.width;
+        }
+
+        public int getHeight() {
+            return this.height;
+        }
+
+        public int getStride() {
+            return this.stride;
+        }
+
+        public int getFormat() {
+            return this.format;
+        }
+
+        /**
+         * Invalidate the segment and end the access. If the client truncated its pool while it was read, the client
+         * is sent an error now.
+         */
+        @Override
+        public void close() {
+            if (!this.arena.scope()
+                    .isAlive()) {
+                return;
+            }
+            this.arena.close();
+            this.buffer.endAccess();
+        }
+    }
 }
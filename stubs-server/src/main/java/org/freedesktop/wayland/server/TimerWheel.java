@@ -0,0 +1,508 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.server;
+
+import org.freedesktop.wayland.raw.C;
+import org.freedesktop.wayland.raw.LibWayland;
+import org.freedesktop.wayland.raw.itimerspec;
+import org.freedesktop.wayland.raw.timespec;
+import org.freedesktop.wayland.util.Memory;
+import org.slf4j.LoggerFactory;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs large numbers of timeouts, like ping timeouts, key repeat or idle timeouts for every client, from a single
+ * event source.
+ * <p>
+ * Every {@link EventLoop#addTimer(EventLoop.TimerEventHandler)} creates its own kernel timer, global ref and upcall, and
+ * has a resolution of a millisecond. This wheel keeps the timers of the next revolution in a ring of buckets of one
+ * tick each, and timers further away in a heap ordered by deadline. Those move into the ring once they are less than a
+ * revolution away. A single {@code timerfd} is armed for the earliest deadline, so thousands of far away timeouts do
+ * not wake up the event loop before one of them is due. Scheduling and cancelling a timer within a revolution take
+ * constant time, further timers take logarithmic time. Timer entries are reused, so a scheduled timer does not
+ * allocate.
+ * <p>
+ * Timers fire at the end of the tick their deadline falls in, so the tick is the resolution of the wheel. The default
+ * tick is a millisecond, wheels that need sub-millisecond deadlines can be created with a shorter tick.
+ * <p>
+ * This class is not thread safe and must only be used on the event loop thread.
+ */
+public final class TimerWheel implements AutoCloseable {
+
+    public static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(TimerWheel.class);
+
+    //bucket of an entry in the heap
+    private static final int IN_HEAP = -1;
+    //bucket of a due entry that is about to run
+    private static final int DUE = -2;
+
+    private final long tickNanos;
+    private final int mask;
+    private final long startNanos;
+    private final Entry[] buckets;
+    //one bit per bucket that is not empty
+    private final long[] occupied;
+    private final int timerFd;
+    private final EventSource timerSource;
+    private final MemorySegment timerSpec = Memory.ARENA_AUTO.allocate(itimerspec.layout());
+    private final MemorySegment expirations = Memory.ARENA_AUTO.allocate(ValueLayout.JAVA_LONG);
+
+    //entry pool, free entries are chained through their next field
+    private Entry[] entries = new Entry[64];
+    private int nroEntries;
+    private Entry free;
+
+    //timers more than a revolution away, a binary heap ordered by tick
+    private Entry[] heap = new Entry[16];
+    private int heapSize;
+
+    private long currentTick;
+    private long armedTick = Long.MAX_VALUE;
+    private int size;
+    //number of times the timer woke up the event loop
+    private long wakeups;
+    private long[] due = new long[64];
+
+    /**
+     * Create a wheel with a tick of a millisecond.
+     *
+     * @param eventLoop the event loop to run the timers on.
+     */
+    public TimerWheel(final EventLoop eventLoop) {
+        this(eventLoop,
+                DEFAULT_TICK_NANOS,
+                TimeUnit.NANOSECONDS,
+                DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Create a wheel.
+     *
+     * @param eventLoop the event loop to run the timers on.
+     * @param tick      the resolution of the wheel, in units of {@code unit}.
+     * @param unit      the unit of {@code tick}.
+     * @param wheelSize the number of buckets, rounded up to a power of 2. Timers further than this many ticks away
+     *                  are kept in a heap until they are less than a revolution away.
+     */
+    public TimerWheel(final EventLoop eventLoop,
+                      final long tick,
+                      final TimeUnit unit,
+                      final int wheelSize) {
+        Objects.requireNonNull(eventLoop);
+        this.tickNanos = unit.toNanos(tick);
+        if (this.tickNanos <= 0) {
+            throw new IllegalArgumentException("Tick must be positive.");
+        }
+        if (wheelSize <= 0 || wheelSize > 1 << 30) {
+            throw new IllegalArgumentException("Wheel size out of range.");
+        }
+        final int nroBuckets = wheelSize == 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+        this.mask = nroBuckets - 1;
+        this.buckets = new Entry[nroBuckets];
+        this.occupied = new long[(nroBuckets + 63) >>> 6];
+        this.startNanos = System.nanoTime();
+
+        this.timerFd = C.timerfd_create(C.CLOCK_MONOTONIC(),
+                C.TFD_CLOEXEC() | C.TFD_NONBLOCK());
+        if (this.timerFd < 0) {
+            throw new RuntimeException("timerfd_create failed.");
+        }
+        this.timerSource = eventLoop.addFileDescriptor(this.timerFd,
+                LibWayland.WL_EVENT_READABLE(),
+                (fd, mask) -> {
+                    C.read(this.timerFd,
+                            this.expirations,
+                            this.expirations.byteSize());
+                    this.wakeups++;
+                    expire();
+                    return 0;
+                });
+    }
+
+    public long getTickNanos() {
+        return this.tickNanos;
+    }
+
+    /**
+     * @return the number of scheduled timers.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    // the number of times the timer woke up the event loop, for tests
+    long getWakeups() {
+        return this.wakeups;
+    }
+
+    /**
+     * Run a task once, after a delay.
+     *
+     * @param delay the delay, in units of {@code unit}.
+     * @param unit  the unit of {@code delay}.
+     * @param task  the task to run.
+     * @return a handle to cancel the timer with, never 0.
+     */
+    public long schedule(final long delay,
+                         final TimeUnit unit,
+                         final Runnable task) {
+        Objects.requireNonNull(task);
+        final long deadline = System.nanoTime() + Math.max(0,
+                unit.toNanos(delay));
+        //round up, a timer never fires early
+        final long tick = Math.max(this.currentTick + 1,
+                Math.ceilDiv(deadline - this.startNanos,
+                        this.tickNanos));
+
+        final Entry entry = allocate();
+        entry.task = task;
+        entry.tick = tick;
+        if (tick - this.currentTick <= this.buckets.length) {
+            link(entry);
+        } else {
+            offer(entry);
+        }
+        this.size++;
+
+        if (tick < this.armedTick) {
+            arm(tick);
+        }
+        return entry.handle();
+    }
+
+    /**
+     * Cancel a timer.
+     *
+     * @param handle the handle returned when the timer was scheduled.
+     * @return true if the timer was cancelled, false if it already ran or was cancelled before.
+     */
+    public boolean cancel(final long handle) {
+        final Entry entry = lookup(handle);
+        if (entry == null) {
+            return false;
+        }
+        unlink(entry);
+        release(entry);
+        //the armed timer is left as it is, it finds nothing to do and re-arms
+        return true;
+    }
+
+    private void expire() {
+        final long nowTick = (System.nanoTime() - this.startNanos) / this.tickNanos;
+        if (nowTick > this.currentTick) {
+            //collect the handles first, so tasks can cancel and schedule timers freely
+            int nroDue = 0;
+            //all entries in the ring are at most a revolution away from the current tick
+            final long lastTick = Math.min(nowTick,
+                    this.currentTick + this.buckets.length);
+            for (long tick = nextOccupied(this.currentTick + 1,
+                    lastTick); tick >= 0; tick = nextOccupied(tick + 1,
+                    lastTick)) {
+                //the entries of a bucket in the ring all have the same tick
+                final int bucket = (int) (tick & this.mask);
+                for (Entry entry = this.buckets[bucket]; entry != null; entry = entry.next) {
+                    entry.bucket = DUE;
+                    nroDue = addDue(nroDue,
+                            entry);
+                }
+                this.buckets[bucket] = null;
+                this.occupied[bucket >>> 6] &= ~(1L << bucket);
+            }
+            while (this.heapSize > 0 && this.heap[0].tick <= nowTick) {
+                final Entry entry = removeFromHeap(0);
+                entry.bucket = DUE;
+                nroDue = addDue(nroDue,
+                        entry);
+            }
+            this.currentTick = nowTick;
+            //timers that are now less than a revolution away move to the ring
+            while (this.heapSize > 0 && this.heap[0].tick - this.currentTick <= this.buckets.length) {
+                link(removeFromHeap(0));
+            }
+
+            for (int i = 0; i < nroDue; i++) {
+                final Entry entry = lookup(this.due[i]);
+                if (entry == null) {
+                    continue;
+                }
+                final Runnable task = entry.task;
+                unlink(entry);
+                release(entry);
+                try {
+                    task.run();
+                } catch (final Throwable t) {
+                    LOG.error("timer task threw exception",
+                            t);
+                }
+            }
+        }
+        //timers scheduled by the tasks did not arm the timer if it looked armed already
+        armNext();
+    }
+
+    private int addDue(final int nroDue,
+                       final Entry entry) {
+        if (nroDue == this.due.length) {
+            this.due = Arrays.copyOf(this.due,
+                    nroDue * 2);
+        }
+        this.due[nroDue] = entry.handle();
+        return nroDue + 1;
+    }
+
+    // arms the timer for the earliest deadline
+    private void armNext() {
+        if (this.size == 0) {
+            disarm();
+            return;
+        }
+        long tick = nextOccupied(this.currentTick + 1,
+                this.currentTick + this.buckets.length);
+        if (tick < 0 || (this.heapSize > 0 && this.heap[0].tick < tick)) {
+            tick = this.heap[0].tick;
+        }
+        arm(tick);
+    }
+
+    // the first tick from first to last whose bucket is not empty, or -1. At most a revolution is searched.
+    private long nextOccupied(final long first,
+                              final long last) {
+        long tick = first;
+        while (tick <= last) {
+            final int bucket = (int) (tick & this.mask);
+            final long bits = this.occupied[bucket >>> 6] >>> bucket;
+            if (bits != 0) {
+                final long found = tick + Long.numberOfTrailingZeros(bits);
+                return found <= last ? found : -1;
+            }
+            //to the next word, or to the start of the ring if it has less than 64 buckets
+            tick += Math.min(64 - (bucket & 63),
+                    this.buckets.length - bucket);
+        }
+        return -1;
+    }
+
+    private void arm(final long tick) {
+        this.armedTick = tick;
+        //a zero value disarms the timer, so an expired deadline is set to the smallest possible delay
+        final long delay = Math.max(1,
+                this.startNanos + tick * this.tickNanos - System.nanoTime());
+        setTimer(delay);
+    }
+
+    private void disarm() {
+        this.armedTick = Long.MAX_VALUE;
+        setTimer(0);
+    }
+
+    private void setTimer(final long delayNanos) {
+        final MemorySegment interval = itimerspec.it_interval(this.timerSpec);
+        timespec.tv_sec(interval,
+                0);
+        timespec.tv_nsec(interval,
+                0);
+        final MemorySegment value = itimerspec.it_value(this.timerSpec);
+        timespec.tv_sec(value,
+                delayNanos / 1_000_000_000L);
+        timespec.tv_nsec(value,
+                delayNanos % 1_000_000_000L);
+        C.timerfd_settime(this.timerFd,
+                0,
+                this.timerSpec,
+                MemorySegment.NULL);
+    }
+
+    private Entry lookup(final long handle) {
+        final int index = (int) handle;
+        if (index < 0 || index >= this.nroEntries) {
+            return null;
+        }
+        final Entry entry = this.entries[index];
+        return entry.task != null && entry.generation == (int) (handle >>> 32) ? entry : null;
+    }
+
+    private Entry allocate() {
+        Entry entry = this.free;
+        if (entry != null) {
+            this.free = entry.next;
+            return entry;
+        }
+        if (this.nroEntries == this.entries.length) {
+            this.entries = Arrays.copyOf(this.entries,
+                    this.nroEntries * 2);
+        }
+        entry = new Entry(this.nroEntries);
+        this.entries[this.nroEntries++] = entry;
+        return entry;
+    }
+
+    private void link(final Entry entry) {
+        final int bucket = (int) (entry.tick & this.mask);
+        entry.bucket = bucket;
+        entry.prev = null;
+        entry.next = this.buckets[bucket];
+        if (entry.next != null) {
+            entry.next.prev = entry;
+        }
+        this.buckets[bucket] = entry;
+        this.occupied[bucket >>> 6] |= 1L << bucket;
+    }
+
+    private void unlink(final Entry entry) {
+        if (entry.bucket == IN_HEAP) {
+            removeFromHeap(entry.heapIndex);
+        } else if (entry.bucket != DUE) {
+            if (entry.prev != null) {
+                entry.prev.next = entry.next;
+            } else {
+                this.buckets[entry.bucket] = entry.next;
+                if (entry.next == null) {
+                    this.occupied[entry.bucket >>> 6] &= ~(1L << entry.bucket);
+                }
+            }
+            if (entry.next != null) {
+                entry.next.prev = entry.prev;
+            }
+        }
+        this.size--;
+    }
+
+    private void offer(final Entry entry) {
+        if (this.heapSize == this.heap.length) {
+            this.heap = Arrays.copyOf(this.heap,
+                    this.heapSize * 2);
+        }
+        entry.bucket = IN_HEAP;
+        siftUp(this.heapSize++,
+                entry);
+    }
+
+    private Entry removeFromHeap(final int index) {
+        final Entry removed = this.heap[index];
+        final Entry last = this.heap[--this.heapSize];
+        this.heap[this.heapSize] = null;
+        if (index != this.heapSize) {
+            siftDown(index,
+                    last);
+            if (this.heap[index] == last) {
+                siftUp(index,
+                        last);
+            }
+        }
+        return removed;
+    }
+
+    private void siftUp(int index,
+                        final Entry entry) {
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            final Entry parentEntry = this.heap[parent];
+            if (parentEntry.tick <= entry.tick) {
+                break;
+            }
+            this.heap[index] = parentEntry;
+            parentEntry.heapIndex = index;
+            index = parent;
+        }
+        this.heap[index] = entry;
+        entry.heapIndex = index;
+    }
+
+    private void siftDown(int index,
+                          final Entry entry) {
+        final int half = this.heapSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            Entry childEntry = this.heap[child];
+            final int right = child + 1;
+            if (right < this.heapSize && this.heap[right].tick < childEntry.tick) {
+                child = right;
+                childEntry = this.heap[child];
+            }
+            if (entry.tick <= childEntry.tick) {
+                break;
+            }
+            this.heap[index] = childEntry;
+            childEntry.heapIndex = index;
+            index = child;
+        }
+        this.heap[index] = entry;
+        entry.heapIndex = index;
+    }
+
+    private void release(final Entry entry) {
+        entry.task = null;
+        //invalidates outstanding handles
+        if (++entry.generation == 0) {
+            entry.generation = 1;
+        }
+        entry.prev = null;
+        entry.next = this.free;
+        this.free = entry;
+    }
+
+    /**
+     * Cancel all timers and remove the timer source.
+     */
+    @Override
+    public void close() {
+        this.timerSource.remove();
+        C.close(this.timerFd);
+        for (int i = 0; i < this.nroEntries; i++) {
+            this.entries[i].task = null;
+        }
+        Arrays.fill(this.buckets,
+                null);
+        Arrays.fill(this.occupied,
+                0);
+        Arrays.fill(this.heap,
+                null);
+        this.heapSize = 0;
+        this.size = 0;
+    }
+
+    private static final class Entry {
+        private final int index;
+        //starts at 1 so a handle is never 0
+        private int generation = 1;
+        private Runnable task;
+        private long tick;
+        //the bucket in the ring, IN_HEAP or DUE
+        private int bucket;
+        private int heapIndex;
+        private Entry prev;
+        private Entry next;
+
+        Entry(final int index) {
+            this.index = index;
+        }
+
+        long handle() {
+            return ((long) this.generation << 32) | this.index;
+        }
+    }
+}
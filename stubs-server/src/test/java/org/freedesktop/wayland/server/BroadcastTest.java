@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.server;
+
+import org.freedesktop.wayland.util.Arguments;
+import org.freedesktop.wayland.util.Interface;
+import org.freedesktop.wayland.util.Message;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.newsclub.net.unix.AFUNIXSocketChannel;
+import org.newsclub.net.unix.AFUNIXSocketPair;
+import org.newsclub.net.unix.FileDescriptorCast;
+
+import java.io.IOException;
+
+class BroadcastTest {
+
+    private static Client createClient(Display display) throws IOException {
+        AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open();
+        int fd = FileDescriptorCast.using(pair.getFirst().getFileDescriptor()).as(Integer.class);
+        return Client.create(display, fd);
+    }
+
+    @Test
+    public void broadcast_skips_resources_of_older_versions() throws IOException {
+        Display display = Display.create();
+        Client first = createClient(display);
+        Client second = createClient(display);
+        new TestOutputResource(first, 1);
+        new TestOutputResource(first, 2);
+        new TestOutputResource(second, 2);
+
+        try (Broadcast broadcast = new Broadcast(display, TestOutputResource.class)) {
+            Assertions.assertEquals(3, broadcast.post(0, 1, Arguments.create(1).set(0, 60000)));
+            Assertions.assertEquals(2, broadcast.post(1, 2, Arguments.create(1).set(0, 2)));
+            // the clients are cached, a new client must still be found
+            new TestOutputResource(createClient(display), 2);
+            Assertions.assertEquals(3, broadcast.post(1, 2, Arguments.create(1).set(0, 2)));
+        }
+        display.destroy();
+    }
+
+    @Test
+    public void broadcast_to_one_client() throws IOException {
+        Display display = Display.create();
+        Client first = createClient(display);
+        Client second = createClient(display);
+        new TestOutputResource(first, 2);
+        new TestOutputResource(first, 2);
+        new TestOutputResource(second, 2);
+
+        try (Broadcast broadcast = new Broadcast(display, TestOutputResource.class)) {
+            Assertions.assertEquals(2, broadcast.post(first, 0, 1, Arguments.create(1).set(0, 60000)));
+            Assertions.assertEquals(1, broadcast.post(second, 1, 2, Arguments.create(1).set(0, 2)));
+        }
+        display.destroy();
+    }
+
+    @Test
+    public void broadcast_queue_is_counted_by_the_flusher() throws IOException {
+        Display display = Display.create();
+        Client first = createClient(display);
+        Client second = createClient(display);
+        new TestOutputResource(first, 1);
+        new TestOutputResource(second, 1);
+
+        try (EventFlusher flusher = new EventFlusher(display, FlushPolicy.FRAME);
+             Broadcast broadcast = new Broadcast(display, TestOutputResource.class)) {
+            Assertions.assertEquals(2, broadcast.queue(0, 1, Arguments.create(1).set(0, 60000)));
+            // header and one int
+            Assertions.assertEquals(12, flusher.getCounters(first).getPendingBytes());
+            Assertions.assertEquals(1, flusher.getCounters(second).getPendingMessages());
+
+            broadcast.close();
+            Assertions.assertThrows(IllegalStateException.class, () -> broadcast.queue(0, 1, null));
+        }
+        display.destroy();
+    }
+
+    @Interface(name = "test_output",
+            version = 2,
+            events = {
+                    @Message(name = "refresh",
+                            signature = "i",
+                            functionName = "refresh"),
+                    @Message(name = "scale",
+                            signature = "2i",
+                            since = 2,
+                            functionName = "scale")
+            })
+    static class TestOutputResource extends Resource<Object> {
+        TestOutputResource(Client client, int version) {
+            super(client, version, 0, new Object());
+        }
+    }
+}
@@ -68,4 +68,55 @@ class ClientTest {
         Assertions.assertEquals(1, b);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void client_is_cached() throws IOException {
+        AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open();
+        var s1 = pair.getFirst();
+
+        Display display = Display.create();
+        int fd = FileDescriptorCast.using(s1.getFileDescriptor()).as(Integer.class);
+        Client client = Client.create(display, fd);
+
+        Assertions.assertSame(client, Client.get(client.pointer));
+        Assertions.assertSame(client.getCredentials(), client.getCredentials());
+        Assertions.assertEquals(ProcessHandle.current().pid(), client.getCredentials().getPid());
+
+        var key = Client.AttachmentKey.create(String.class, "test");
+        Assertions.assertNull(client.getAttachment(key));
+        client.setAttachment(key, "state");
+        Assertions.assertEquals("state", client.getAttachment(key));
+        Assertions.assertEquals("state", client.computeAttachmentIfAbsent(key, c -> "other"));
+
+        client.register(() -> a++);
+        this.a = 0;
+        client.destroy();
+        Assertions.assertEquals(1, a);
+        Assertions.assertTrue(client.isDestroyed());
+        display.destroy();
+    }
+
+    @Test
+    public void destroyed_client_is_not_reused() throws IOException {
+        AFUNIXSocketPair<AFUNIXSocketChannel> first = AFUNIXSocketPair.open();
+        AFUNIXSocketPair<AFUNIXSocketChannel> second = AFUNIXSocketPair.open();
+
+        Display display = Display.create();
+        Client client = Client.create(display, FileDescriptorCast.using(first.getFirst().getFileDescriptor()).as(Integer.class));
+        var pointer = client.pointer;
+        client.destroy();
+
+        // the resources of a destroyed client still find it until the next idle dispatch
+        Assertions.assertSame(client, Client.get(pointer));
+        Assertions.assertSame(client, display.destroyedClients.get(pointer));
+
+        // a new client usually gets the address of the destroyed one, it must not get its java object
+        Client other = Client.create(display, FileDescriptorCast.using(second.getFirst().getFileDescriptor()).as(Integer.class));
+        Assertions.assertNotSame(client, other);
+        Assertions.assertFalse(other.isDestroyed());
+        Assertions.assertNull(display.destroyedClients.get(other.pointer));
+
+        display.getEventLoop().dispatchIdle();
+        Assertions.assertTrue(display.destroyedClients.isEmpty());
+        display.destroy();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.server;
+
+import org.freedesktop.wayland.util.Arguments;
+import org.freedesktop.wayland.util.Interface;
+import org.freedesktop.wayland.util.Message;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.newsclub.net.unix.AFUNIXSocketChannel;
+import org.newsclub.net.unix.AFUNIXSocketPair;
+import org.newsclub.net.unix.FileDescriptorCast;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+class EventFlusherTest {
+
+    // 8 header + 4 uint + 4 string length + 9 utf-8 bytes and terminating 0, padded to 12
+    private static final int EVENT_SIZE = 28;
+
+    @Test
+    public void frame_policy_flushes_on_frame_boundary() throws IOException {
+        AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open();
+
+        Display display = Display.create();
+        int fd = FileDescriptorCast.using(pair.getFirst().getFileDescriptor()).as(Integer.class);
+        Client client = Client.create(display, fd);
+
+        try (EventFlusher flusher = new EventFlusher(display, FlushPolicy.FRAME)) {
+            Assertions.assertThrows(IllegalStateException.class, () -> new EventFlusher(display, FlushPolicy.FRAME));
+
+            TestEventsResource resource = new TestEventsResource(client);
+            resource.queueEvent(0, Arguments.create(2).set(0, 7).set(1, "héllo!!"));
+            resource.queueEvent(0, Arguments.create(2).set(0, 8).set(1, "héllo!!"));
+
+            EventFlusher.Counters counters = flusher.getCounters(client);
+            Assertions.assertEquals(2, counters.getPendingMessages());
+            Assertions.assertEquals(2 * EVENT_SIZE, counters.getPendingBytes());
+            Assertions.assertEquals(0, counters.getFlushes());
+
+            // an iteration of the event loop does not flush
+            display.getEventLoop().dispatch(0);
+            Assertions.assertEquals(0, counters.getFlushes());
+
+            flusher.frameBoundary();
+            Assertions.assertEquals(1, counters.getFlushes());
+            Assertions.assertEquals(2, counters.getLastFlushMessages());
+            Assertions.assertEquals(2 * EVENT_SIZE, counters.getLastFlushBytes());
+            Assertions.assertEquals(0, counters.getPendingMessages());
+            Assertions.assertEquals(2.0, counters.getMessagesPerFlush());
+
+            // the counted bytes are the bytes on the wire
+            ByteBuffer received = ByteBuffer.allocate(4 * EVENT_SIZE);
+            Assertions.assertEquals(2 * EVENT_SIZE, pair.getSecond().read(received));
+
+            // nothing was sent since, so nothing is flushed
+            flusher.frameBoundary();
+            Assertions.assertEquals(1, counters.getFlushes());
+        }
+        Assertions.assertNull(display.eventFlusher);
+        display.destroy();
+    }
+
+    @Test
+    public void per_iteration_policy_flushes_after_dispatch() throws IOException {
+        AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open();
+
+        Display display = Display.create();
+        int fd = FileDescriptorCast.using(pair.getFirst().getFileDescriptor()).as(Integer.class);
+        Client client = Client.create(display, fd);
+
+        try (EventFlusher flusher = new EventFlusher(display, FlushPolicy.PER_ITERATION)) {
+            TestEventsResource resource = new TestEventsResource(client);
+            resource.postEvent(0, Arguments.create(2).set(0, 7).set(1, "héllo!!"));
+
+            EventFlusher.Counters counters = flusher.getCounters(client);
+            Assertions.assertEquals(1, counters.getPendingMessages());
+
+            // frame boundaries mean nothing to this policy
+            flusher.frameBoundary();
+            Assertions.assertEquals(0, counters.getFlushes());
+
+            display.getEventLoop().dispatch(0);
+            Assertions.assertEquals(1, counters.getFlushes());
+            Assertions.assertEquals(1, counters.getTotalMessages());
+            Assertions.assertEquals(EVENT_SIZE, counters.getTotalBytes());
+            Assertions.assertEquals(0, counters.getPendingMessages());
+        }
+        display.destroy();
+    }
+
+    @Interface(name = "test_events",
+            events = {
+                    @Message(name = "ping",
+                            signature = "us",
+                            functionName = "ping")
+            })
+    static class TestEventsResource extends Resource<Object> {
+        TestEventsResource(Client client) {
+            super(client, 1, 0, new Object());
+        }
+    }
+}
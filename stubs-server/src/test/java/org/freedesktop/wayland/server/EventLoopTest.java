@@ -31,6 +31,7 @@ import org.slf4j.LoggerFactory;
 import sun.misc.Signal;
 
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 
 public class EventLoopTest {
 
@@ -174,4 +175,67 @@ public class EventLoopTest {
         Assertions.assertFalse(DESTROY_A);
         Assertions.assertTrue(DESTROY_B);
     }
+
+    @Test
+    public void test_event_loop_executor_batches() throws InterruptedException {
+        var eventLoop = EventLoop.create();
+        var executor = new EventLoopExecutor(eventLoop,
+                10);
+        var ran = new int[1];
+        var producer = Thread.ofPlatform()
+                .start(() -> {
+                    for (int i = 0; i < 25; i++) {
+                        executor.execute(() -> ran[0]++);
+                    }
+                });
+        producer.join();
+
+        eventLoop.dispatch(100);
+        Assertions.assertEquals(10, ran[0]);
+        eventLoop.dispatch(100);
+        eventLoop.dispatch(100);
+        Assertions.assertEquals(25, ran[0]);
+
+        executor.close();
+        Assertions.assertThrows(RejectedExecutionException.class,
+                () -> executor.execute(() -> ran[0]++));
+        eventLoop.destroy();
+    }
+
+    @Test
+    public void test_event_loop_idle() {
+        var thing = new HandlerDataHolder();
+        var eventLoop = EventLoop.create();
+        eventLoop.addIdle(() -> thing.nCalls += 1);
+        var removed = eventLoop.addIdle(() -> thing.nCalls += 10);
+        removed.remove();
+
+        eventLoop.dispatchIdle();
+        Assertions.assertEquals(1, thing.nCalls);
+        eventLoop.dispatchIdle();
+        Assertions.assertEquals(1, thing.nCalls);
+        eventLoop.destroy();
+    }
+
+    @Test
+    public void test_deferred_work_runs_once_per_iteration() {
+        var display = Display.create();
+        var deferredWork = new DeferredWork(display);
+        var runs = new int[1];
+        var task = deferredWork.register(() -> runs[0]++);
+        task.markDirty();
+        task.markDirty();
+        task.markDirty();
+        Assertions.assertTrue(task.isDirty());
+
+        display.getEventLoop()
+                .dispatchIdle();
+        Assertions.assertEquals(1, runs[0]);
+        Assertions.assertFalse(task.isDirty());
+
+        display.getEventLoop()
+                .dispatchIdle();
+        Assertions.assertEquals(1, runs[0]);
+        display.destroy();
+    }
 }
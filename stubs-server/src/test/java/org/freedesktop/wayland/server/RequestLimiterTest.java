@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.server;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.newsclub.net.unix.AFUNIXSocketChannel;
+import org.newsclub.net.unix.AFUNIXSocketPair;
+import org.newsclub.net.unix.FileDescriptorCast;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+class RequestLimiterTest {
+
+    @Test
+    public void idle_client_is_not_throttled() throws IOException {
+        AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open();
+
+        Display display = Display.create();
+        int fd = FileDescriptorCast.using(pair.getFirst().getFileDescriptor()).as(Integer.class);
+        Client client = Client.create(display, fd);
+
+        RequestLimiter limiter = new RequestLimiter(display);
+        limiter.limitClient(100, 10);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> limiter.limitClient(0, 10));
+        Assertions.assertFalse(limiter.isThrottled(client));
+        limiter.close();
+
+        client.destroy();
+        display.destroy();
+    }
+
+    @Test
+    public void flooding_client_is_throttled_and_resumed() throws IOException {
+        AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open();
+
+        Display display = Display.create();
+        int fd = FileDescriptorCast.using(pair.getFirst().getFileDescriptor()).as(Integer.class);
+        Client client = Client.create(display, fd);
+
+        try (RequestLimiter limiter = new RequestLimiter(display)) {
+            limiter.limitClient(100, 5);
+
+            // wl_display.sync, the callbacks are created by libwayland
+            ByteBuffer requests = ByteBuffer.allocate(20 * 12).order(ByteOrder.nativeOrder());
+            for (int i = 0; i < 20; i++) {
+                requests.putInt(Display.OBJECT_ID).putInt(12 << 16).putInt(2 + i);
+            }
+            requests.flip();
+            pair.getSecond().write(requests);
+            display.getEventLoop().dispatch(0);
+            if (!limiter.isThrottlingSupported()) {
+                // the socket of the client can not be masked, it is disconnected instead
+                Assertions.assertTrue(client.isDestroyed());
+            } else {
+                Assertions.assertTrue(limiter.isThrottled(client));
+
+                // 15 requests over the burst take 150ms to pay back
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+                while (limiter.isThrottled(client) && System.nanoTime() < deadline) {
+                    display.getEventLoop().dispatch(50);
+                }
+                Assertions.assertFalse(limiter.isThrottled(client));
+                Assertions.assertFalse(client.isDestroyed());
+            }
+        }
+        if (!client.isDestroyed()) {
+            client.destroy();
+        }
+        display.destroy();
+    }
+}
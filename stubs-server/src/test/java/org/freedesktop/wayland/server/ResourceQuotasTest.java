@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.server;
+
+import org.freedesktop.wayland.util.Interface;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.newsclub.net.unix.AFUNIXSocketChannel;
+import org.newsclub.net.unix.AFUNIXSocketPair;
+import org.newsclub.net.unix.FileDescriptorCast;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+class ResourceQuotasTest {
+
+    @Test
+    public void shm_quota_is_charged_per_client() throws IOException {
+        AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open();
+
+        Display display = Display.create();
+        int fd = FileDescriptorCast.using(pair.getFirst().getFileDescriptor()).as(Integer.class);
+        Client client = Client.create(display, fd);
+
+        try (ResourceQuotas quotas = new ResourceQuotas(display)) {
+            Assertions.assertThrows(IllegalStateException.class, () -> new ResourceQuotas(display));
+
+            quotas.setShmLimit(4096);
+            Assertions.assertTrue(quotas.chargeShm(client, 3000));
+            Assertions.assertFalse(quotas.chargeShm(client, 2000));
+            Assertions.assertEquals(3000, quotas.getUsage(client).getShmBytes());
+
+            quotas.releaseShm(client, 3000);
+            Assertions.assertEquals(0, quotas.getUsage(client).getShmBytes());
+            Assertions.assertEquals(0, quotas.getUsage(client).getTotal());
+        }
+        Assertions.assertNull(display.resourceQuotas);
+        display.destroy();
+    }
+
+    private static void assertNoMemoryError(AFUNIXSocketChannel channel) throws IOException {
+        ByteBuffer received = ByteBuffer.allocate(64).order(ByteOrder.nativeOrder());
+        Assertions.assertTrue(channel.read(received) >= 8);
+        // wl_display.error
+        Assertions.assertEquals(Display.OBJECT_ID, received.getInt(0));
+        Assertions.assertEquals(0, received.getInt(4) & 0xffff);
+    }
+
+    @Test
+    public void class_limit_posts_no_memory() throws IOException {
+        AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open();
+
+        Display display = Display.create();
+        int fd = FileDescriptorCast.using(pair.getFirst().getFileDescriptor()).as(Integer.class);
+        Client client = Client.create(display, fd);
+
+        try (ResourceQuotas quotas = new ResourceQuotas(display)) {
+            quotas.setLimit(TestRegionResource.class, 2);
+            Assertions.assertEquals(2, quotas.getLimit(TestRegionResource.class));
+
+            TestRegionResource first = new TestRegionResource(client);
+            new TestRegionResource(client);
+            ResourceQuotas.Usage usage = quotas.getUsage(client);
+            Assertions.assertEquals(2, usage.getLive(TestRegionResource.class));
+
+            first.destroy();
+            Assertions.assertEquals(1, usage.getLive(TestRegionResource.class));
+            new TestRegionResource(client);
+            Assertions.assertEquals(2, usage.getTotal());
+
+            new TestRegionResource(client);
+            Assertions.assertEquals(3, usage.getLive(TestRegionResource.class));
+            client.flush();
+            assertNoMemoryError(pair.getSecond());
+        }
+        display.destroy();
+    }
+
+    @Test
+    public void resources_created_by_libwayland_are_counted() throws IOException {
+        AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open();
+
+        Display display = Display.create();
+        int fd = FileDescriptorCast.using(pair.getFirst().getFileDescriptor()).as(Integer.class);
+        Client client = Client.create(display, fd);
+
+        try (ResourceQuotas quotas = new ResourceQuotas(display)) {
+            quotas.setLimit(TestRegistryResource.class, 1);
+            ResourceQuotas.Usage usage = quotas.getUsage(client);
+
+            // wl_display.get_registry, the registry resource is created by libwayland
+            ByteBuffer request = ByteBuffer.allocate(12).order(ByteOrder.nativeOrder());
+            request.putInt(Display.OBJECT_ID).putInt(12 << 16 | 1).putInt(2).flip();
+            pair.getSecond().write(request);
+            display.getEventLoop().dispatch(0);
+            Assertions.assertEquals(1, usage.getLive(TestRegistryResource.class));
+
+            request.clear();
+            request.putInt(Display.OBJECT_ID).putInt(12 << 16 | 1).putInt(3).flip();
+            pair.getSecond().write(request);
+            display.getEventLoop().dispatch(0);
+
+            // the client is disconnected, its resources are counted down
+            Assertions.assertTrue(client.isDestroyed());
+            Assertions.assertEquals(0, usage.getLive(TestRegistryResource.class));
+            assertNoMemoryError(pair.getSecond());
+        }
+        display.destroy();
+    }
+
+    @Interface(name = "test_region")
+    static class TestRegionResource extends Resource<Object> {
+        TestRegionResource(Client client) {
+            super(client, 1, 0, new Object());
+        }
+    }
+
+    // only used to set the limit of the registries libwayland creates
+    @Interface(name = "wl_registry")
+    static class TestRegistryResource extends Resource<Object> {
+        TestRegistryResource(Client client) {
+            super(client, 1, 0, new Object());
+        }
+    }
+}
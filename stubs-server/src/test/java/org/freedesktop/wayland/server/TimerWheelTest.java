@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.server;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class TimerWheelTest {
+
+    private static void dispatchUntilEmpty(EventLoop eventLoop, TimerWheel wheel) {
+        var end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (wheel.size() > 0 && System.nanoTime() < end) {
+            eventLoop.dispatch(50);
+        }
+    }
+
+    @Test
+    public void test_timer_wheel_fires_in_deadline_order() {
+        var eventLoop = EventLoop.create();
+        var wheel = new TimerWheel(eventLoop);
+        List<Integer> fired = new ArrayList<>();
+        wheel.schedule(20, TimeUnit.MILLISECONDS, () -> fired.add(3));
+        wheel.schedule(5, TimeUnit.MILLISECONDS, () -> fired.add(1));
+        // further away than a revolution of the wheel
+        wheel.schedule(TimerWheel.DEFAULT_WHEEL_SIZE + 10, TimeUnit.MILLISECONDS, () -> fired.add(4));
+        wheel.schedule(10, TimeUnit.MILLISECONDS, () -> fired.add(2));
+        Assertions.assertEquals(4, wheel.size());
+
+        dispatchUntilEmpty(eventLoop, wheel);
+        Assertions.assertEquals(List.of(1, 2, 3, 4), fired);
+
+        wheel.close();
+        eventLoop.destroy();
+    }
+
+    @Test
+    public void test_timer_wheel_cancel() {
+        var eventLoop = EventLoop.create();
+        var wheel = new TimerWheel(eventLoop);
+        List<Integer> fired = new ArrayList<>();
+        var handle = wheel.schedule(5, TimeUnit.MILLISECONDS, () -> fired.add(1));
+        Assertions.assertNotEquals(0, handle);
+        Assertions.assertTrue(wheel.cancel(handle));
+        Assertions.assertFalse(wheel.cancel(handle));
+
+        // the entry is reused, the old handle must not cancel the new timer
+        var reused = wheel.schedule(5, TimeUnit.MILLISECONDS, () -> fired.add(2));
+        Assertions.assertEquals((int) handle, (int) reused);
+        Assertions.assertFalse(wheel.cancel(handle));
+
+        dispatchUntilEmpty(eventLoop, wheel);
+        Assertions.assertEquals(List.of(2), fired);
+        Assertions.assertFalse(wheel.cancel(reused));
+
+        wheel.close();
+        eventLoop.destroy();
+    }
+
+    @Test
+    public void test_timer_wheel_sub_millisecond_tick() {
+        var eventLoop = EventLoop.create();
+        var wheel = new TimerWheel(eventLoop, 100, TimeUnit.MICROSECONDS, 1024);
+        var firedAt = new long[1];
+        var start = System.nanoTime();
+        wheel.schedule(300, TimeUnit.MICROSECONDS, () -> firedAt[0] = System.nanoTime());
+
+        dispatchUntilEmpty(eventLoop, wheel);
+        Assertions.assertTrue(firedAt[0] - start >= TimeUnit.MICROSECONDS.toNanos(300));
+
+        wheel.close();
+        eventLoop.destroy();
+    }
+
+    @Test
+    public void test_timer_wheel_far_timers_do_not_wake_up_early() {
+        var eventLoop = EventLoop.create();
+        var wheel = new TimerWheel(eventLoop);
+        // like ping timeouts of many clients, several revolutions of the wheel away
+        for (int i = 0; i < 5000; i++) {
+            wheel.schedule(5000 + i * 5, TimeUnit.MILLISECONDS, () -> Assertions.fail("fired early"));
+        }
+        var fired = new boolean[1];
+        wheel.schedule(20, TimeUnit.MILLISECONDS, () -> fired[0] = true);
+
+        var end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        while (System.nanoTime() < end) {
+            eventLoop.dispatch(50);
+        }
+        Assertions.assertTrue(fired[0]);
+        // only the near timer woke up the loop
+        Assertions.assertEquals(1, wheel.getWakeups());
+        Assertions.assertEquals(5000, wheel.size());
+
+        wheel.close();
+        eventLoop.destroy();
+    }
+}
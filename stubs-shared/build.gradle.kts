@@ -6,4 +6,26 @@ dependencies {
     testImplementation(libs.org.slf4j.slf4j.simple)
 }
 
-description = "Shared stubs for generated wayland bindings"
\ No newline at end of file
+description = "Shared stubs for generated wayland bindings"
+
+// the pixel loops use the Vector API, they fall back to scalar code when the module is not added at runtime.
+// javac warns about every use of an incubating module, without a lint category to turn off just that warning. The
+// Vector API code is kept in its own source set, so the warning is limited to it and the main sources keep all lints.
+val vector: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+}
+tasks.named<JavaCompile>(vector.compileJavaTaskName) {
+    options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
+}
+tasks.jar {
+    from(vector.output)
+}
+tasks.named<Jar>("sourcesJar") {
+    from(vector.allSource)
+}
+sourceSets.test {
+    runtimeClasspath += vector.output
+}
+tasks.withType<Test> {
+    jvmArgs("--add-modules", "jdk.incubator.vector")
+}
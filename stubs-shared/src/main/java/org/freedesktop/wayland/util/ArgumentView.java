@@ -0,0 +1,316 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.util;
+
+import org.freedesktop.wayland.raw.wl_argument;
+import org.freedesktop.wayland.raw.wl_array;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A flyweight view on the native arguments of a message that is being dispatched.
+ * <p>
+ * The {@link Dispatcher} normally converts every argument to a java object before calling the implementation: strings
+ * are copied into a {@link String} and arrays are wrapped in a new {@link WlArray}. An implementation that also
+ * implements {@link Handler} gets the raw arguments first, and can handle a message without any of those allocations,
+ * e.g. by comparing a string argument against a constant with {@link #equalsAscii(int, String)}:
+ * <pre>
+ *   {@code
+ *   class Registry implements WlRegistryEvents, ArgumentView.Handler {
+ *       public boolean handle(WaylandObject target, int opcode, ArgumentView arguments) {
+ *           //wl_registry.global(name, interface, version)
+ *           if (opcode == 0 && arguments.equalsAscii(1, WlShmProxy.INTERFACE_NAME)) {
+ *               bindShm(arguments.getUint(0), arguments.getUint(2));
+ *           }
+ *           return opcode == 0;
+ *       }
+ *       ...
+ *   }
+ *   }
+ * </pre>
+ * A view and all segments obtained from it are only valid for the duration of the {@link Handler#handle} call, and
+ * only on the dispatching thread. The view is cleared when the call returns, and segments returned by
+ * {@link #getString(int)} and {@link #getArray(int)} belong to an arena that is closed then, so using them later fails
+ * with an exception instead of reading memory that libwayland already freed. The arena is only created when such a
+ * segment is handed out, messages handled with the other accessors do not create one.
+ */
+public final class ArgumentView {
+
+    private static final long ARGUMENT_SIZE = wl_argument.layout()
+            .byteSize();
+    private static final int INTERN_CACHE_SIZE = 1024;
+    //direct mapped cache of interned strings, entries are immutable so racy access is safe
+    private static final InternedString[] INTERN_CACHE = new InternedString[INTERN_CACHE_SIZE];
+
+    private MemorySegment arguments = MemorySegment.NULL;
+    private int size;
+    private boolean wrapped;
+    //scope of the segments handed out during the current call, created on first use
+    private Arena arena;
+
+    ArgumentView() {
+    }
+
+    ArgumentView wrap(final MemorySegment arguments,
+                      final int size) {
+        //never handed out, clear() makes it unreachable instead
+        this.arguments = arguments.reinterpret(size * ARGUMENT_SIZE);
+        this.size = size;
+        this.wrapped = true;
+        return this;
+    }
+
+    boolean isWrapped() {
+        return this.wrapped;
+    }
+
+    void clear() {
+        this.arguments = MemorySegment.NULL;
+        this.size = 0;
+        this.wrapped = false;
+        if (this.arena != null) {
+            this.arena.close();
+            this.arena = null;
+        }
+    }
+
+    /**
+     * @return the number of arguments of the message.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param index the argument index.
+     * @return an {@code int} argument.
+     */
+    public int getInt(final int index) {
+        return this.arguments.get(ValueLayout.JAVA_INT,
+                offset(index));
+    }
+
+    /**
+     * @param index the argument index.
+     * @return an {@code uint} argument, as the bits of a java int.
+     */
+    public int getUint(final int index) {
+        return getInt(index);
+    }
+
+    /**
+     * @param index the argument index.
+     * @return a {@code fixed} argument, in its raw {@code wl_fixed} representation.
+     */
+    public int getFixed(final int index) {
+        return getInt(index);
+    }
+
+    /**
+     * @param index the argument index.
+     * @return an {@code fd} argument.
+     */
+    public int getFd(final int index) {
+        return getInt(index);
+    }
+
+    /**
+     * @param index the argument index.
+     * @return the native pointer of an {@code object} argument, or {@link MemorySegment#NULL}.
+     */
+    public MemorySegment getObject(final int index) {
+        return this.arguments.get(ValueLayout.ADDRESS,
+                offset(index));
+    }
+
+    /**
+     * @param index the argument index.
+     * @return true if a nullable string, object or array argument is null.
+     */
+    public boolean isNull(final int index) {
+        return MemorySegment.NULL.equals(getObject(index));
+    }
+
+    /**
+     * The bytes of a {@code string} argument.
+     *
+     * @param index the argument index.
+     * @return the UTF-8 bytes of the string, without the terminating zero, or {@link MemorySegment#NULL} if a nullable
+     * string is null.
+     */
+    public MemorySegment getString(final int index) {
+        final MemorySegment string = string(index);
+        if (string == MemorySegment.NULL) {
+            return MemorySegment.NULL;
+        }
+        return string.reinterpret(arena(),
+                null);
+    }
+
+    /**
+     * Compare a {@code string} argument against an ASCII constant, without copying the argument.
+     *
+     * @param index the argument index.
+     * @param value the ASCII string to compare with.
+     * @return true if the argument is equal to {@code value}, false if it is different or null.
+     */
+    public boolean equalsAscii(final int index,
+                               final String value) {
+        final MemorySegment string = unbounded(index);
+        if (string == MemorySegment.NULL) {
+            return false;
+        }
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (string.get(ValueLayout.JAVA_BYTE,
+                    i) != (byte) value.charAt(i)) {
+                return false;
+            }
+        }
+        return string.get(ValueLayout.JAVA_BYTE,
+                length) == 0;
+    }
+
+    /**
+     * Convert a {@code string} argument to a java string, reusing a previously created string with the same contents.
+     * Repeated strings, like interface names or mime types, are then only allocated once.
+     *
+     * @param index the argument index.
+     * @return the argument as an interned string, or null if a nullable string is null.
+     */
+    public String getInternedString(final int index) {
+        final MemorySegment string = string(index);
+        if (string == MemorySegment.NULL) {
+            return null;
+        }
+        final int length = (int) string.byteSize();
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + string.get(ValueLayout.JAVA_BYTE,
+                    i);
+        }
+        final int slot = (hash ^ (hash >>> 16)) & (INTERN_CACHE_SIZE - 1);
+        final InternedString cached = INTERN_CACHE[slot];
+        if (cached != null && cached.matches(string)) {
+            return cached.value;
+        }
+        final byte[] bytes = string.toArray(ValueLayout.JAVA_BYTE);
+        final String value = new String(bytes,
+                StandardCharsets.UTF_8).intern();
+        INTERN_CACHE[slot] = new InternedString(bytes,
+                value);
+        return value;
+    }
+
+    /**
+     * The contents of an {@code array} argument.
+     *
+     * @param index the argument index.
+     * @return the array data, or {@link MemorySegment#NULL} if a nullable array is null.
+     */
+    public MemorySegment getArray(final int index) {
+        final MemorySegment pointer = getObject(index);
+        if (MemorySegment.NULL.equals(pointer)) {
+            return MemorySegment.NULL;
+        }
+        final MemorySegment array = pointer.reinterpret(wl_array.layout()
+                .byteSize());
+        return wl_array.data(array)
+                .reinterpret(wl_array.size(array),
+                        arena(),
+                        null);
+    }
+
+    // the string argument without its terminating zero, or NULL, only used inside this view
+    private MemorySegment string(final int index) {
+        final MemorySegment string = unbounded(index);
+        if (string == MemorySegment.NULL) {
+            return MemorySegment.NULL;
+        }
+        return string.reinterpret(strlen(string));
+    }
+
+    // the pointer argument, or NULL, only used inside this view
+    private MemorySegment unbounded(final int index) {
+        final MemorySegment pointer = getObject(index);
+        if (MemorySegment.NULL.equals(pointer)) {
+            return MemorySegment.NULL;
+        }
+        return pointer.reinterpret(Long.MAX_VALUE);
+    }
+
+    private Arena arena() {
+        if (this.arena == null) {
+            this.arena = Arena.ofConfined();
+        }
+        return this.arena;
+    }
+
+    private long offset(final int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return index * ARGUMENT_SIZE;
+    }
+
+    private static long strlen(final MemorySegment string) {
+        long length = 0;
+        while (string.get(ValueLayout.JAVA_BYTE,
+                length) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    private record InternedString(byte[] bytes,
+                                  String value) {
+        boolean matches(final MemorySegment string) {
+            if (string.byteSize() != this.bytes.length) {
+                return false;
+            }
+            for (int i = 0; i < this.bytes.length; i++) {
+                if (string.get(ValueLayout.JAVA_BYTE,
+                        i) != this.bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Implemented by implementations that want to handle some messages from their raw arguments.
+     */
+    public interface Handler {
+        /**
+         * Handle a message before its arguments are converted.
+         *
+         * @param target    the proxy or resource the message is for.
+         * @param opcode    the opcode of the message.
+         * @param arguments the raw arguments, only valid during this call.
+         * @return true if the message was handled, false to dispatch it to the regular implementation method.
+         */
+        boolean handle(WaylandObject target,
+                       int opcode,
+                       ArgumentView arguments);
+    }
+}
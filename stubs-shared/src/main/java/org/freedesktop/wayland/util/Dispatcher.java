@@ -22,19 +22,35 @@ package org.freedesktop.wayland.util;
 import org.freedesktop.wayland.raw.wl_dispatcher_func_t;
 
 import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 public final class Dispatcher {
     public static final MemorySegment INSTANCE = wl_dispatcher_func_t.allocate(Dispatcher::invoke, Memory.ARENA_AUTO);
-    private static final Map<Class<?>, Map<Integer, Method>> METHOD_CACHE = new HashMap<>();
-    private static final Map<Class<?>, Constructor<?>> CONSTRUCTOR_CACHE = new HashMap<>();
+    private static final Map<Class<?>, Map<Integer, Method>> METHOD_CACHE = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Constructor<?>> CONSTRUCTOR_CACHE = new ConcurrentHashMap<>();
+    private static final long WL_OBJECT_ID_OFFSET = 2 * ValueLayout.ADDRESS.byteSize();
+    private static final ThreadLocal<ArgumentView> ARGUMENT_VIEW = ThreadLocal.withInitial(ArgumentView::new);
+    //cached in place of the method of messages the implementation is not interested in
+    private static final Method IGNORED;
+
+    static {
+        try {
+            IGNORED = Dispatcher.class.getDeclaredMethod("ignored");
+        } catch (final NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     public static int invoke(final MemorySegment implementation,
                              final MemorySegment wlObject /* wl_proxy or wl_resource */,
@@ -56,6 +72,17 @@ public final class Dispatcher {
                     waylandObject.getImplementation().getClass(),
                     message
             );
+            if (method == IGNORED) {
+                return 0;
+            }
+            if (waylandObject.getImplementation() instanceof final ArgumentView.Handler handler &&
+                    handleRaw(handler,
+                            waylandObject,
+                            opcode,
+                            message,
+                            wlArguments)) {
+                return 0;
+            }
 
             final String signature = message.signature();
             //TODO do something with the version signature? Somehow see which version the implementation exposes and
@@ -80,7 +107,8 @@ public final class Dispatcher {
                         optional = true;
                         continue;
                     }
-                    final Object jarg = fromArgument(arguments,
+                    final Object jarg = fromArgument(waylandObject.getIdTable(),
+                            arguments,
                             argIndex,
                             signatureChar,
                             message.types()[argIndex]);
@@ -118,12 +146,11 @@ public final class Dispatcher {
                               final Class<?> implementationType,
                               final Message message) throws NoSuchMethodException {
 
-        Map<Integer, Method> methodMap = METHOD_CACHE.get(implementationType);
-        if (methodMap == null) {
-            methodMap = new HashMap<>();
-            METHOD_CACHE.put(implementationType,
-                    methodMap);
-        }
+        final Map<Integer, Method> methodMap = METHOD_CACHE.computeIfAbsent(implementationType,
+                type -> {
+                    checkEventInterest(type);
+                    return new ConcurrentHashMap<>();
+                });
 
         final int methodHash = Objects.hash(waylandObjectType,
                 message);
@@ -135,13 +162,87 @@ public final class Dispatcher {
             System.arraycopy(types, 0, argTypes, 1, types.length);
             argTypes[0] = waylandObjectType;
             method = implementationType.getMethod(message.functionName(), argTypes);
-            method.setAccessible(true);
+            if (isIgnored(implementationType,
+                    method)) {
+                method = IGNORED;
+            } else {
+                method.setAccessible(true);
+            }
             methodMap.put(methodHash, method);
         }
         return method;
     }
 
-    private static Object fromArgument(final Arguments arguments,
+    private static boolean handleRaw(final ArgumentView.Handler handler,
+                                     final WaylandObject waylandObject,
+                                     final int opcode,
+                                     final Message message,
+                                     final MemorySegment wlArguments) {
+        final ArgumentView threadView = ARGUMENT_VIEW.get();
+        //a handler can dispatch again on this thread, eg with a roundtrip, the nested call gets its own view
+        final ArgumentView argumentView = threadView.isWrapped() ? new ArgumentView() : threadView;
+        //the view and the segments it handed out are only usable until the handler returns
+        try {
+            return handler.handle(waylandObject,
+                    opcode,
+                    argumentView.wrap(wlArguments,
+                            argumentCount(message.signature())));
+        } finally {
+            argumentView.clear();
+        }
+    }
+
+    private static int argumentCount(final String signature) {
+        int count = 0;
+        for (int i = 0; i < signature.length(); i++) {
+            final char signatureChar = signature.charAt(i);
+            if (signatureChar != '?' && !Character.isDigit(signatureChar)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isIgnored(final Class<?> implementationType,
+                                     final Method method) {
+        if (method.isAnnotationPresent(IgnoredEvent.class)) {
+            return true;
+        }
+        final EventInterest eventInterest = implementationType.getAnnotation(EventInterest.class);
+        return eventInterest != null && !Arrays.asList(eventInterest.value())
+                .contains(method.getName());
+    }
+
+    // a misspelled name in @EventInterest would silently ignore the message it was meant to handle
+    static void checkEventInterest(final Class<?> implementationType) {
+        final EventInterest eventInterest = implementationType.getAnnotation(EventInterest.class);
+        if (eventInterest == null) {
+            return;
+        }
+        final Set<String> messageNames = new HashSet<>();
+        //every event and request method takes the proxy or resource it is for as first argument
+        for (final Method method : implementationType.getMethods()) {
+            final Class<?>[] parameterTypes = method.getParameterTypes();
+            if (parameterTypes.length > 0 && WaylandObject.class.isAssignableFrom(parameterTypes[0])) {
+                messageNames.add(method.getName());
+            }
+        }
+        for (final String name : eventInterest.value()) {
+            if (!messageNames.contains(name)) {
+                throw new IllegalArgumentException(String.format("@EventInterest of %s names unknown message '%s'. "
+                                + "Known messages: %s",
+                        implementationType.getName(),
+                        name,
+                        new TreeSet<>(messageNames)));
+            }
+        }
+    }
+
+    private static void ignored() {
+    }
+
+    private static Object fromArgument(final IdTable<?> idTable,
+                                       final Arguments arguments,
                                        final int index,
                                        final char type,
                                        final Class<?> targetType) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
@@ -165,7 +266,11 @@ public final class Dispatcher {
                 if (MemorySegment.NULL.equals(waylandObjectPointer)) {
                     waylandObject = null;
                 } else {
-                    final WaylandObject cachedObject = ObjectCache.from(waylandObjectPointer);
+                    WaylandObject cachedObject = lookup(idTable,
+                            waylandObjectPointer);
+                    if (cachedObject == null) {
+                        cachedObject = ObjectCache.from(waylandObjectPointer);
+                    }
                     if (cachedObject == null) {
                         waylandObject = reconstruct(waylandObjectPointer,
                                 targetType);
@@ -190,6 +295,25 @@ public final class Dispatcher {
         }
     }
 
+    // find an object in the id table of the receiving connection with a single array read
+    private static WaylandObject lookup(final IdTable<?> idTable,
+                                        final MemorySegment objectPointer) {
+        if (idTable == null) {
+            return null;
+        }
+        //both wl_proxy and wl_resource start with a struct wl_object { interface, implementation, id }
+        final int id = objectPointer.reinterpret(WL_OBJECT_ID_OFFSET + Integer.BYTES)
+                .get(ValueLayout.JAVA_INT,
+                        WL_OBJECT_ID_OFFSET);
+        //the id can be reused by a new object that java code has not seen yet
+        if (idTable.get(id) instanceof final WaylandObject waylandObject &&
+                waylandObject.getPointer()
+                        .address() == objectPointer.address()) {
+            return waylandObject;
+        }
+        return null;
+    }
+
     private static WaylandObject reconstruct(final MemorySegment objectPointer,
                                              final Class<?> targetType) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
         Constructor<?> constructor = CONSTRUCTOR_CACHE.get(targetType);
@@ -25,9 +25,10 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class EnumUtil {
-    private static Map<Class<?>, Map<Integer, Enum<?>>> MAP = new HashMap<>();
+    private static Map<Class<?>, Map<Integer, Enum<?>>> MAP = new ConcurrentHashMap<>();
 
     public static <E extends Enum<E>> void register(Class<E> enumClass) {
         MAP.put(enumClass, (Map<Integer, Enum<?>>) buildEnumMap(enumClass));
@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.util;
+
+import java.lang.annotation.*;
+
+/**
+ * Declares which events or requests an implementation handles.
+ * <p>
+ * The {@link Dispatcher} returns right away for any message that is not listed, before its arguments are decoded. An
+ * implementation still has to implement every method of its interface, but empty methods for messages it does not
+ * care about no longer cost a reflective call and the conversion of strings and arrays:
+ * <pre>
+ *   {@code
+ *   @EventInterest({"mode", "done"})
+ *   class OutputListener implements WlOutputEventsV4 {
+ *       ...
+ *   }
+ *   }
+ * </pre>
+ * The names are the java method names of the messages. They are checked when the first message for the class is
+ * dispatched: a name that is not a message of the implementation makes every dispatch to it fail with an
+ * {@link IllegalArgumentException}. Anonymous classes can not be annotated, use {@link IgnoredEvent} on the individual
+ * methods instead.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Inherited
+public @interface EventInterest {
+    /**
+     * @return the method names of the handled messages.
+     */
+    String[] value();
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+
+/**
+ * Maps the protocol ids of a connection to their java objects.
+ * <p>
+ * Wayland ids are small and dense: ids allocated by the client count up from 1, ids allocated by the server count up
+ * from {@link #SERVER_ID_START}, and both sides reuse freed ids. Each range is backed by an array indexed by id, so a
+ * lookup is a single array read, without a downcall or hashing.
+ * <p>
+ * Lookups can be done from any thread. Updates are serialized.
+ *
+ * @param <T> the type of the objects.
+ */
+public final class IdTable<T> {
+
+    /**
+     * The first id allocated by the server, {@code WL_SERVER_ID_START}.
+     */
+    public static final int SERVER_ID_START = 0xff000000;
+
+    private static final VarHandle ELEMENT = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final int INITIAL_SIZE = 64;
+
+    private volatile Object[] clientObjects = new Object[INITIAL_SIZE];
+    private volatile Object[] serverObjects = new Object[INITIAL_SIZE];
+    //guarded by this
+    private int size;
+
+    /**
+     * Find the object of an id.
+     *
+     * @param id a protocol id.
+     * @return the object, or null if no object has the id.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(final int id) {
+        final Object[] objects;
+        final int index;
+        if (Integer.compareUnsigned(id,
+                SERVER_ID_START) >= 0) {
+            objects = this.serverObjects;
+            index = id - SERVER_ID_START;
+        } else {
+            objects = this.clientObjects;
+            index = id;
+        }
+        return index < objects.length ? (T) ELEMENT.getAcquire(objects,
+                index) : null;
+    }
+
+    /**
+     * Set the object of an id, replacing the object that had the id before.
+     *
+     * @param id     a protocol id, not 0.
+     * @param object the object.
+     */
+    public synchronized void put(final int id,
+                                 final T object) {
+        Objects.requireNonNull(object);
+        if (id == 0) {
+            throw new IllegalArgumentException("0 is not a valid id.");
+        }
+        final boolean server = Integer.compareUnsigned(id,
+                SERVER_ID_START) >= 0;
+        final int index = server ? id - SERVER_ID_START : id;
+        Object[] objects = server ? this.serverObjects : this.clientObjects;
+        if (index >= objects.length) {
+            final Object[] grown = new Object[Math.max(index + 1,
+                    objects.length * 2)];
+            System.arraycopy(objects,
+                    0,
+                    grown,
+                    0,
+                    objects.length);
+            objects = grown;
+            if (server) {
+                this.serverObjects = objects;
+            } else {
+                this.clientObjects = objects;
+            }
+        }
+        if (ELEMENT.getAndSetRelease(objects,
+                index,
+                object) == null) {
+            this.size++;
+        }
+    }
+
+    /**
+     * Clear an id, if it still belongs to an object. Ids are reused as soon as they are freed, so the object that
+     * had the id is checked to not clear an id that was handed out again.
+     *
+     * @param id     a protocol id.
+     * @param object the object that had the id.
+     * @return true if the id was cleared.
+     */
+    public synchronized boolean remove(final int id,
+                                       final T object) {
+        final boolean server = Integer.compareUnsigned(id,
+                SERVER_ID_START) >= 0;
+        final int index = server ? id - SERVER_ID_START : id;
+        final Object[] objects = server ? this.serverObjects : this.clientObjects;
+        if (id == 0 || index >= objects.length) {
+            return false;
+        }
+        if (ELEMENT.compareAndSet(objects,
+                index,
+                object,
+                null)) {
+            this.size--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of ids that have an object.
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * Visit all objects, client allocated ids first, each range in id order. Meant for debugging.
+     *
+     * @param visitor receives every id with its object.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(final Visitor<? super T> visitor) {
+        final Object[] clientObjects = this.clientObjects;
+        for (int i = 1; i < clientObjects.length; i++) {
+            final Object object = ELEMENT.getAcquire(clientObjects,
+                    i);
+            if (object != null) {
+                visitor.visit(i,
+                        (T) object);
+            }
+        }
+        final Object[] serverObjects = this.serverObjects;
+        for (int i = 0; i < serverObjects.length; i++) {
+            final Object object = ELEMENT.getAcquire(serverObjects,
+                    i);
+            if (object != null) {
+                visitor.visit(SERVER_ID_START + i,
+                        (T) object);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("IdTable{");
+        forEach((id, object) -> builder.append(Integer.toUnsignedString(id))
+                .append('=')
+                .append(object)
+                .append(", "));
+        if (builder.charAt(builder.length() - 1) == ' ') {
+            builder.setLength(builder.length() - 2);
+        }
+        return builder.append('}')
+                .toString();
+    }
+
+    @FunctionalInterface
+    public interface Visitor<T> {
+        void visit(int id,
+                   T object);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.util;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks an event or request method that does nothing, so the {@link Dispatcher} can skip the message before its
+ * arguments are decoded.
+ * <pre>
+ *   {@code
+ *   new WlSurfaceEventsV6() {
+ *       @IgnoredEvent
+ *       @Override
+ *       public void preferredBufferScale(WlSurfaceProxy emitter, int factor) {
+ *       }
+ *       ...
+ *   }
+ *   }
+ * </pre>
+ *
+ * @see EventInterest
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface IgnoredEvent {
+}
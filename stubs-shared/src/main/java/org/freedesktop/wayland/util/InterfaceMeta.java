@@ -22,8 +22,8 @@ package org.freedesktop.wayland.util;
 import org.freedesktop.wayland.raw.wl_interface;
 
 import java.lang.foreign.MemorySegment;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Wrapper class for any Java type to get or create a native wayland interface for use with the native wayland
@@ -32,7 +32,7 @@ import java.util.Map;
 public class InterfaceMeta {
 
     public static final InterfaceMeta NO_INTERFACE = new InterfaceMeta(MemorySegment.NULL);
-    private static final Map<Class<?>, InterfaceMeta> INTERFACE_MAP = new HashMap<>();
+    private static final Map<Class<?>, InterfaceMeta> INTERFACE_MAP = new ConcurrentHashMap<>();
 
     public final MemorySegment wlInterfacePointer;
 
@@ -71,7 +71,12 @@ public class InterfaceMeta {
         wl_interface.events(wl_interface_ptr, MessageMeta.initArray(waylandInterface.events(), Memory.ARENA_AUTO));
     }
 
-    protected static InterfaceMeta maybeCreate(Class<?> type) {
+    protected static synchronized InterfaceMeta maybeCreate(Class<?> type) {
+        final InterfaceMeta existing = INTERFACE_MAP.get(type);
+        if (existing != null) {
+            // created by another thread while we were waiting
+            return existing;
+        }
         final Interface waylandInterface = type.getAnnotation(Interface.class);
         if (waylandInterface == null) {
             INTERFACE_MAP.put(type, NO_INTERFACE);
@@ -21,8 +21,8 @@ package org.freedesktop.wayland.util;
 import org.slf4j.LoggerFactory;
 
 import java.lang.foreign.MemorySegment;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A cache for POJOs with a native context.
@@ -32,7 +32,7 @@ import java.util.Map;
 @SuppressWarnings("unchecked")
 public class ObjectCache {
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(ObjectCache.class);
-    private static final Map<MemorySegment, Object> MAPPED_OBJECTS = new HashMap<>();
+    private static final Map<MemorySegment, Object> MAPPED_OBJECTS = new ConcurrentHashMap<>();
 
     /**
      * Retrieve a POJO that is mapped to a native pointer. This method should be used to easily retrieve a POJO with a
@@ -60,10 +60,8 @@ public class ObjectCache {
             LOG.warn("Adding NULL MemorySegment to ObjectCache s={}", pointer);
             return;
         }
-        final Object oldValue = MAPPED_OBJECTS.put(pointer, object);
+        final Object oldValue = MAPPED_OBJECTS.putIfAbsent(pointer, object);
         if (oldValue != null) {
-            //put it back!
-            MAPPED_OBJECTS.put(pointer, oldValue);
             throw new IllegalStateException(String.format("Can not re-map existing pointer. MemorySegment=%s, old value=%s, new value=%s",
                     pointer,
                     oldValue,
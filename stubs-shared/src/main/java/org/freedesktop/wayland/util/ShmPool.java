@@ -22,6 +22,7 @@ import java.nio.ByteOrder;
 public final class ShmPool implements Closeable {
     private int fd;
     private int size;
+    private MemorySegment segment;
     private ByteBuffer buffer;
 
     public ShmPool(final int size) throws IOException {
@@ -29,8 +30,10 @@ public final class ShmPool implements Closeable {
         this.size = size;
         try {
             truncateNative(getFd(), getSize());
-            this.buffer = map(getFd(), getSize());
-        } catch (final IOException e) {
+            this.segment = mapNative(getFd(), getSize());
+            this.buffer = this.segment.asByteBuffer()
+                    .order(ByteOrder.nativeOrder());
+        } catch (final RuntimeException e) {
             closeNative(getFd());
             throw e;
         }
@@ -76,17 +79,11 @@ public final class ShmPool implements Closeable {
         return size;
     }
 
-    private static ByteBuffer map(final int fd, final int size) throws IOException {
-        final ByteBuffer tmpBuff = mapNative(fd, size);
-        tmpBuff.order(ByteOrder.nativeOrder());
-        return tmpBuff;
-    }
-
     private static void closeNative(int fd) {
         ShmUtil.close(fd);
     }
 
-    private static ByteBuffer mapNative(int fd, int size) {
+    private static MemorySegment mapNative(int fd, int size) {
 
         int PROT_READ = 0x01;
         int PROT_WRITE = 0x02;
@@ -103,7 +100,7 @@ public final class ShmPool implements Closeable {
         if (ret.address() == -1) { // MAP_FAILED
             throw new RuntimeException("mmap() failed!");
         }
-        return ret.asSlice(0, size).asByteBuffer();
+        return ret.reinterpret(size);
     }
 
     public int getFileDescriptor() {
@@ -117,19 +114,27 @@ public final class ShmPool implements Closeable {
     @Override
     public void close() throws IOException {
         if (this.buffer != null) {
-            unmapNative(asByteBuffer());
+            ShmUtil.munmap(this.segment, this.segment.byteSize());
             closeNative(getFd());
             this.fd = -1;
             this.size = 0;
+            this.segment = null;
             this.buffer = null;
         }
     }
 
-    private static void unmapNative(ByteBuffer buffer) {
-        buffer.capacity();
+    /**
+     * The mapped memory of this pool. The segment is not bound to an arena: it must not be used after the pool is
+     * closed.
+     *
+     * @return a segment of {@link #getSize()} bytes.
+     */
+    public MemorySegment asSegment() {
+        if (this.segment == null) {
+            throw new IllegalStateException("ShmPool is closed");
+        }
 
-        var ptr = MemorySegment.ofBuffer(buffer);
-        ShmUtil.munmap(ptr, ptr.byteSize());
+        return this.segment;
     }
 
     public ByteBuffer asByteBuffer() {
@@ -28,4 +28,13 @@ public interface WaylandObject {
     Object getImplementation();
 
     MemorySegment getPointer();
+
+    /**
+     * The objects of the connection this object belongs to, by id.
+     *
+     * @return the id table of the connection, or null if the connection does not keep one.
+     */
+    default IdTable<? extends WaylandObject> getIdTable() {
+        return null;
+    }
 }
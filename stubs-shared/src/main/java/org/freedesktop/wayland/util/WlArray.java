@@ -20,6 +20,7 @@ package org.freedesktop.wayland.util;
 import org.freedesktop.wayland.raw.C;
 import org.freedesktop.wayland.raw.wl_array;
 
+import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
 import java.nio.ByteBuffer;
@@ -28,9 +29,49 @@ import java.util.List;
 
 public class WlArray {
     public final MemorySegment arrayPtr;
+    //the memory of a copy, freed by the garbage collector once the copy is no longer reachable
+    private final Arena arena;
 
     public WlArray(MemorySegment arrayPtr) {
+        this(arrayPtr,
+                null);
+    }
+
+    private WlArray(MemorySegment arrayPtr,
+                    Arena arena) {
         this.arrayPtr = arrayPtr;
+        this.arena = arena;
+    }
+
+    /**
+     * Copy this array into memory that is owned by the copy. An array argument of an event is only valid while the
+     * event is dispatched, a copy can be kept for as long as needed. Its memory is freed when the copy becomes
+     * unreachable.
+     *
+     * @return a copy of this array.
+     */
+    public WlArray copy() {
+        final long size = wl_array.size(this.arrayPtr);
+        final Arena arena = Arena.ofAuto();
+        final MemorySegment arrayCopy = arena.allocate(wl_array.layout());
+        final MemorySegment dataCopy = arena.allocate(Math.max(size,
+                1));
+        if (size > 0) {
+            MemorySegment.copy(wl_array.data(this.arrayPtr)
+                            .reinterpret(size),
+                    0,
+                    dataCopy,
+                    0,
+                    size);
+        }
+        wl_array.size(arrayCopy,
+                size);
+        wl_array.alloc(arrayCopy,
+                size);
+        wl_array.data(arrayCopy,
+                dataCopy);
+        return new WlArray(arrayCopy,
+                arena);
     }
 
     public ByteBuffer asByteBuffer() {
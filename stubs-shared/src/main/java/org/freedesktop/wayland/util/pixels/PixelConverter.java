@@ -0,0 +1,171 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.util.pixels;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Converts pixels between {@link PixelFormat}s, for uploading images into shm buffers on the client side and reading
+ * shm buffers in whatever format the client picked on the server side.
+ * <p>
+ * Pixels are converted through {@code ARGB8888}: channels that are narrower are expanded by repeating their high bits,
+ * channels that are wider are truncated. Formats without alpha read as opaque, and are written with their unused bits
+ * set. {@code wl_shm} buffers hold premultiplied alpha, while {@code BufferedImage.TYPE_INT_ARGB} and most image
+ * decoders produce straight alpha, so the conversion can premultiply or unpremultiply in the same pass.
+ * <p>
+ * Like {@link Pixels}, the conversion uses the Vector API if {@code jdk.incubator.vector} is present, and scalar
+ * loops otherwise. Source and destination must not overlap, unless they are the same pixels in formats of the same
+ * size.
+ */
+public final class PixelConverter {
+
+    private PixelConverter() {
+    }
+
+    /**
+     * What to do with the alpha of the pixels while converting.
+     */
+    public enum Alpha {
+        /**
+         * Keep the color channels as they are.
+         */
+        KEEP,
+        /**
+         * Multiply the color channels by the alpha, to turn straight alpha into premultiplied alpha.
+         */
+        PREMULTIPLY,
+        /**
+         * Divide the color channels by the alpha, to turn premultiplied alpha into straight alpha.
+         */
+        UNPREMULTIPLY
+    }
+
+    /**
+     * Convert a rectangle of pixels, keeping the alpha as it is.
+     *
+     * @param src       the source pixels.
+     * @param srcStride the number of bytes between the start of two source rows.
+     * @param srcFormat the format of the source pixels.
+     * @param dst       the destination pixels.
+     * @param dstStride the number of bytes between the start of two destination rows.
+     * @param dstFormat the format of the destination pixels.
+     * @param width     the width of the rectangle.
+     * @param height    the height of the rectangle.
+     */
+    public static void convert(final MemorySegment src,
+                               final int srcStride,
+                               final PixelFormat srcFormat,
+                               final MemorySegment dst,
+                               final int dstStride,
+                               final PixelFormat dstFormat,
+                               final int width,
+                               final int height) {
+        convert(src,
+                srcStride,
+                srcFormat,
+                dst,
+                dstStride,
+                dstFormat,
+                Alpha.KEEP,
+                width,
+                height);
+    }
+
+    /**
+     * Convert a rectangle of pixels.
+     *
+     * @param src       the source pixels.
+     * @param srcStride the number of bytes between the start of two source rows.
+     * @param srcFormat the format of the source pixels.
+     * @param dst       the destination pixels.
+     * @param dstStride the number of bytes between the start of two destination rows.
+     * @param dstFormat the format of the destination pixels.
+     * @param alpha     what to do with the alpha.
+     * @param width     the width of the rectangle.
+     * @param height    the height of the rectangle.
+     */
+    public static void convert(final MemorySegment src,
+                               final int srcStride,
+                               final PixelFormat srcFormat,
+                               final MemorySegment dst,
+                               final int dstStride,
+                               final PixelFormat dstFormat,
+                               final Alpha alpha,
+                               final int width,
+                               final int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        Pixels.OPS.convert(src,
+                0,
+                srcStride,
+                srcFormat,
+                dst,
+                0,
+                dstStride,
+                dstFormat,
+                alpha,
+                width,
+                height);
+    }
+
+    /**
+     * Convert a rectangle of pixels stored in an {@code int[]}, as returned by {@code BufferedImage.getRGB} or found
+     * in the data buffer of an {@code TYPE_INT_*} image.
+     *
+     * @param src       the source pixels.
+     * @param srcOffset the index of the top left source pixel.
+     * @param scanline  the number of elements between the start of two source rows.
+     * @param srcFormat the format of the source pixels, a format of 4 bytes per pixel.
+     * @param dst       the destination pixels.
+     * @param dstStride the number of bytes between the start of two destination rows.
+     * @param dstFormat the format of the destination pixels.
+     * @param alpha     what to do with the alpha.
+     * @param width     the width of the rectangle.
+     * @param height    the height of the rectangle.
+     */
+    public static void convert(final int[] src,
+                               final int srcOffset,
+                               final int scanline,
+                               final PixelFormat srcFormat,
+                               final MemorySegment dst,
+                               final int dstStride,
+                               final PixelFormat dstFormat,
+                               final Alpha alpha,
+                               final int width,
+                               final int height) {
+        if (srcFormat.getBytesPerPixel() != 4) {
+            throw new IllegalArgumentException("Format " + srcFormat + " does not fit an int[]");
+        }
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        Pixels.OPS.convert(src,
+                srcOffset,
+                scanline,
+                srcFormat,
+                dst,
+                0,
+                dstStride,
+                dstFormat,
+                alpha,
+                width,
+                height);
+    }
+}
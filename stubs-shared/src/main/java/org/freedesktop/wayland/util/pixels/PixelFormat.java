@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.util.pixels;
+
+/**
+ * The {@code wl_shm} formats supported by {@link PixelConverter}. Formats are named after their channels from the
+ * most to the least significant bits of a native endian word, like in {@code wl_shm.format}.
+ */
+public enum PixelFormat {
+    ARGB8888(0,
+            4,
+            true),
+    XRGB8888(1,
+            4,
+            false),
+    ABGR8888(0x34324241,
+            4,
+            true),
+    XBGR8888(0x34324258,
+            4,
+            false),
+    RGB565(0x36314752,
+            2,
+            false),
+    ARGB2101010(0x30335241,
+            4,
+            true);
+
+    private final int shmFormat;
+    private final int bytesPerPixel;
+    private final boolean alpha;
+
+    PixelFormat(final int shmFormat,
+                final int bytesPerPixel,
+                final boolean alpha) {
+        this.shmFormat = shmFormat;
+        this.bytesPerPixel = bytesPerPixel;
+        this.alpha = alpha;
+    }
+
+    /**
+     * @param shmFormat a {@code wl_shm.format} value.
+     * @return the matching format.
+     * @throws IllegalArgumentException if the format is not supported.
+     */
+    public static PixelFormat fromShmFormat(final int shmFormat) {
+        for (final PixelFormat format : values()) {
+            if (format.shmFormat == shmFormat) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unsupported shm format 0x%08x",
+                shmFormat));
+    }
+
+    /**
+     * @return the {@code wl_shm.format} value of this format.
+     */
+    public int getShmFormat() {
+        return this.shmFormat;
+    }
+
+    public int getBytesPerPixel() {
+        return this.bytesPerPixel;
+    }
+
+    /**
+     * @return false if the format has no alpha channel and all its pixels are opaque.
+     */
+    public boolean hasAlpha() {
+        return this.alpha;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.util.pixels;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * The pixel loops behind {@link Pixels} and {@link PixelConverter}. Offsets and strides are in bytes, pixels are 32 bit native endian words.
+ */
+interface PixelOps {
+
+    void fill(MemorySegment dst,
+              long offset,
+              int stride,
+              int width,
+              int height,
+              int pixel);
+
+    void blend(MemorySegment src,
+               long srcOffset,
+               int srcStride,
+               MemorySegment dst,
+               long dstOffset,
+               int dstStride,
+               int width,
+               int height);
+
+    void setAlpha(MemorySegment dst,
+                  long offset,
+                  int stride,
+                  int width,
+                  int height);
+
+    void convert(MemorySegment src,
+                 long srcOffset,
+                 int srcStride,
+                 PixelFormat srcFormat,
+                 MemorySegment dst,
+                 long dstOffset,
+                 int dstStride,
+                 PixelFormat dstFormat,
+                 PixelConverter.Alpha alpha,
+                 int width,
+                 int height);
+
+    void convert(int[] src,
+                 int srcIndex,
+                 int scanline,
+                 PixelFormat srcFormat,
+                 MemorySegment dst,
+                 long dstOffset,
+                 int dstStride,
+                 PixelFormat dstFormat,
+                 PixelConverter.Alpha alpha,
+                 int width,
+                 int height);
+}
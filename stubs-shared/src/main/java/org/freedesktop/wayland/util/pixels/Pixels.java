@@ -0,0 +1,240 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.util.pixels;
+
+import org.slf4j.LoggerFactory;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Fill, copy and blend rectangles of 32 bit pixels, as found in {@code XRGB8888} and {@code ARGB8888} shm buffers.
+ * <p>
+ * Pixels are addressed with a stride in bytes and x, y coordinates in pixels, so the same call works on a whole
+ * buffer or on a tile of it. Blending expects premultiplied alpha, like {@code wl_shm} does.
+ * <p>
+ * If the JVM was started with {@code --add-modules jdk.incubator.vector}, the loops use the Vector API. Otherwise, or
+ * if the system property {@code wayland.pixels.scalar} is set to true, plain scalar loops are used.
+ */
+public final class Pixels {
+
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(Pixels.class);
+
+    static final PixelOps OPS = selectOps();
+
+    private Pixels() {
+    }
+
+    private static PixelOps selectOps() {
+        if (!Boolean.getBoolean("wayland.pixels.scalar")) {
+            final PixelOps vectorOps = vectorOps();
+            if (vectorOps != null) {
+                return vectorOps;
+            }
+        }
+        return ScalarPixels.INSTANCE;
+    }
+
+    // the Vector API loops, or null if they can not be used. They are compiled apart from the rest, see VectorPixels.
+    static PixelOps vectorOps() {
+        if (ModuleLayer.boot()
+                .findModule("jdk.incubator.vector")
+                .isEmpty()) {
+            return null;
+        }
+        try {
+            return (PixelOps) MethodHandles.lookup()
+                    .findStatic(Class.forName(Pixels.class.getPackageName() + ".VectorPixels"),
+                            "create",
+                            MethodType.methodType(PixelOps.class))
+                    .invoke();
+        } catch (final Throwable e) {
+            LOG.warn("Vector API not usable, falling back to scalar pixel loops.",
+                    e);
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the Vector API is used.
+     */
+    public static boolean isVectorized() {
+        return !(OPS instanceof ScalarPixels);
+    }
+
+    /**
+     * Set all pixels of a rectangle to the same value.
+     *
+     * @param pixels the pixels.
+     * @param stride the number of bytes between the start of two rows.
+     * @param x      the left edge of the rectangle.
+     * @param y      the top edge of the rectangle.
+     * @param width  the width of the rectangle.
+     * @param height the height of the rectangle.
+     * @param pixel  the new pixel value.
+     */
+    public static void fill(final MemorySegment pixels,
+                            final int stride,
+                            final int x,
+                            final int y,
+                            final int width,
+                            final int height,
+                            final int pixel) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        OPS.fill(pixels,
+                offset(stride,
+                        x,
+                        y),
+                stride,
+                width,
+                height,
+                pixel);
+    }
+
+    /**
+     * Copy a rectangle of pixels. Source and destination must not overlap.
+     *
+     * @param src       the source pixels.
+     * @param srcStride the number of bytes between the start of two source rows.
+     * @param srcX      the left edge of the source rectangle.
+     * @param srcY      the top edge of the source rectangle.
+     * @param dst       the destination pixels.
+     * @param dstStride the number of bytes between the start of two destination rows.
+     * @param dstX      the left edge of the destination rectangle.
+     * @param dstY      the top edge of the destination rectangle.
+     * @param width     the width of the rectangle.
+     * @param height    the height of the rectangle.
+     */
+    public static void blit(final MemorySegment src,
+                            final int srcStride,
+                            final int srcX,
+                            final int srcY,
+                            final MemorySegment dst,
+                            final int dstStride,
+                            final int dstX,
+                            final int dstY,
+                            final int width,
+                            final int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        final long srcOffset = offset(srcStride,
+                srcX,
+                srcY);
+        final long dstOffset = offset(dstStride,
+                dstX,
+                dstY);
+        final long rowSize = width * 4L;
+        if (rowSize == srcStride && rowSize == dstStride) {
+            //whole rows, copy in one go
+            MemorySegment.copy(src,
+                    srcOffset,
+                    dst,
+                    dstOffset,
+                    rowSize * height);
+            return;
+        }
+        for (int row = 0; row < height; row++) {
+            MemorySegment.copy(src,
+                    srcOffset + (long) row * srcStride,
+                    dst,
+                    dstOffset + (long) row * dstStride,
+                    rowSize);
+        }
+    }
+
+    /**
+     * Composite a rectangle of premultiplied {@code ARGB8888} pixels over another rectangle, Porter-Duff over. The
+     * destination can be {@code ARGB8888} or {@code XRGB8888}.
+     *
+     * @param src       the source pixels.
+     * @param srcStride the number of bytes between the start of two source rows.
+     * @param srcX      the left edge of the source rectangle.
+     * @param srcY      the top edge of the source rectangle.
+     * @param dst       the destination pixels.
+     * @param dstStride the number of bytes between the start of two destination rows.
+     * @param dstX      the left edge of the destination rectangle.
+     * @param dstY      the top edge of the destination rectangle.
+     * @param width     the width of the rectangle.
+     * @param height    the height of the rectangle.
+     */
+    public static void blend(final MemorySegment src,
+                             final int srcStride,
+                             final int srcX,
+                             final int srcY,
+                             final MemorySegment dst,
+                             final int dstStride,
+                             final int dstX,
+                             final int dstY,
+                             final int width,
+                             final int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        OPS.blend(src,
+                offset(srcStride,
+                        srcX,
+                        srcY),
+                srcStride,
+                dst,
+                offset(dstStride,
+                        dstX,
+                        dstY),
+                dstStride,
+                width,
+                height);
+    }
+
+    /**
+     * Make a rectangle of pixels opaque, turning {@code XRGB8888} content into valid {@code ARGB8888}.
+     *
+     * @param pixels the pixels.
+     * @param stride the number of bytes between the start of two rows.
+     * @param x      the left edge of the rectangle.
+     * @param y      the top edge of the rectangle.
+     * @param width  the width of the rectangle.
+     * @param height the height of the rectangle.
+     */
+    public static void setOpaque(final MemorySegment pixels,
+                                 final int stride,
+                                 final int x,
+                                 final int y,
+                                 final int width,
+                                 final int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        OPS.setAlpha(pixels,
+                offset(stride,
+                        x,
+                        y),
+                stride,
+                width,
+                height);
+    }
+
+    private static long offset(final int stride,
+                               final int x,
+                               final int y) {
+        return (long) y * stride + x * 4L;
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.util.pixels;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Pixel loops that work on any JVM.
+ */
+final class ScalarPixels implements PixelOps {
+
+    static final ScalarPixels INSTANCE = new ScalarPixels();
+
+    private static final ThreadLocal<int[]> ROW = ThreadLocal.withInitial(() -> new int[0]);
+
+    private ScalarPixels() {
+    }
+
+    @Override
+    public void fill(final MemorySegment dst,
+                     final long offset,
+                     final int stride,
+                     final int width,
+                     final int height,
+                     final int pixel) {
+        for (int y = 0; y < height; y++) {
+            final long row = offset + (long) y * stride;
+            for (int x = 0; x < width; x++) {
+                dst.set(ValueLayout.JAVA_INT,
+                        row + x * 4L,
+                        pixel);
+            }
+        }
+    }
+
+    @Override
+    public void blend(final MemorySegment src,
+                      final long srcOffset,
+                      final int srcStride,
+                      final MemorySegment dst,
+                      final long dstOffset,
+                      final int dstStride,
+                      final int width,
+                      final int height) {
+        for (int y = 0; y < height; y++) {
+            final long srcRow = srcOffset + (long) y * srcStride;
+            final long dstRow = dstOffset + (long) y * dstStride;
+            for (int x = 0; x < width; x++) {
+                final int s = src.get(ValueLayout.JAVA_INT,
+                        srcRow + x * 4L);
+                final long dstPixel = dstRow + x * 4L;
+                dst.set(ValueLayout.JAVA_INT,
+                        dstPixel,
+                        over(s,
+                                dst.get(ValueLayout.JAVA_INT,
+                                        dstPixel)));
+            }
+        }
+    }
+
+    @Override
+    public void setAlpha(final MemorySegment dst,
+                         final long offset,
+                         final int stride,
+                         final int width,
+                         final int height) {
+        for (int y = 0; y < height; y++) {
+            final long row = offset + (long) y * stride;
+            for (int x = 0; x < width; x++) {
+                final long pixel = row + x * 4L;
+                dst.set(ValueLayout.JAVA_INT,
+                        pixel,
+                        dst.get(ValueLayout.JAVA_INT,
+                                pixel) | 0xff000000);
+            }
+        }
+    }
+
+    @Override
+    public void convert(final MemorySegment src,
+                        final long srcOffset,
+                        final int srcStride,
+                        final PixelFormat srcFormat,
+                        final MemorySegment dst,
+                        final long dstOffset,
+                        final int dstStride,
+                        final PixelFormat dstFormat,
+                        final PixelConverter.Alpha alpha,
+                        final int width,
+                        final int height) {
+        final int[] row = row(width);
+        for (int y = 0; y < height; y++) {
+            decodeRow(srcFormat,
+                    src,
+                    srcOffset + (long) y * srcStride,
+                    row,
+                    width);
+            convertRow(row,
+                    width,
+                    alpha);
+            encodeRow(dstFormat,
+                    row,
+                    dst,
+                    dstOffset + (long) y * dstStride,
+                    width);
+        }
+    }
+
+    @Override
+    public void convert(final int[] src,
+                        final int srcIndex,
+                        final int scanline,
+                        final PixelFormat srcFormat,
+                        final MemorySegment dst,
+                        final long dstOffset,
+                        final int dstStride,
+                        final PixelFormat dstFormat,
+                        final PixelConverter.Alpha alpha,
+                        final int width,
+                        final int height) {
+        final int[] row = row(width);
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(src,
+                    srcIndex + y * scanline,
+                    row,
+                    0,
+                    width);
+            decodeRow(srcFormat,
+                    row,
+                    width);
+            convertRow(row,
+                    width,
+                    alpha);
+            encodeRow(dstFormat,
+                    row,
+                    dst,
+                    dstOffset + (long) y * dstStride,
+                    width);
+        }
+    }
+
+    // a row of ARGB8888 pixels to convert through, so the format switches are outside the pixel loops
+    static int[] row(final int width) {
+        int[] row = ROW.get();
+        if (row.length < width) {
+            row = new int[width];
+            ROW.set(row);
+        }
+        return row;
+    }
+
+    private static void decodeRow(final PixelFormat format,
+                                  final MemorySegment src,
+                                  final long offset,
+                                  final int[] row,
+                                  final int width) {
+        if (format.getBytesPerPixel() == 2) {
+            for (int x = 0; x < width; x++) {
+                row[x] = Short.toUnsignedInt(src.get(ValueLayout.JAVA_SHORT,
+                        offset + x * 2L));
+            }
+        } else {
+            MemorySegment.copy(src,
+                    ValueLayout.JAVA_INT,
+                    offset,
+                    row,
+                    0,
+                    width);
+        }
+        decodeRow(format,
+                row,
+                width);
+    }
+
+    private static void decodeRow(final PixelFormat format,
+                                  final int[] row,
+                                  final int width) {
+        switch (format) {
+            case ARGB8888 -> {
+            }
+            case XRGB8888 -> {
+                for (int x = 0; x < width; x++) {
+                    row[x] |= 0xff000000;
+                }
+            }
+            case ABGR8888 -> {
+                for (int x = 0; x < width; x++) {
+                    row[x] = swapRedBlue(row[x]);
+                }
+            }
+            case XBGR8888 -> {
+                for (int x = 0; x < width; x++) {
+                    row[x] = swapRedBlue(row[x]) | 0xff000000;
+                }
+            }
+            case RGB565, ARGB2101010 -> {
+                for (int x = 0; x < width; x++) {
+                    row[x] = decode(format,
+                            row[x]);
+                }
+            }
+        }
+    }
+
+    private static void convertRow(final int[] row,
+                                   final int width,
+                                   final PixelConverter.Alpha alpha) {
+        switch (alpha) {
+            case KEEP -> {
+            }
+            case PREMULTIPLY -> {
+                for (int x = 0; x < width; x++) {
+                    row[x] = premultiply(row[x]);
+                }
+            }
+            case UNPREMULTIPLY -> {
+                for (int x = 0; x < width; x++) {
+                    row[x] = unpremultiply(row[x]);
+                }
+            }
+        }
+    }
+
+    private static void encodeRow(final PixelFormat format,
+                                  final int[] row,
+                                  final MemorySegment dst,
+                                  final long offset,
+                                  final int width) {
+        switch (format) {
+            case ARGB8888 -> {
+            }
+            case XRGB8888 -> {
+                for (int x = 0; x < width; x++) {
+                    row[x] |= 0xff000000;
+                }
+            }
+            case ABGR8888 -> {
+                for (int x = 0; x < width; x++) {
+                    row[x] = swapRedBlue(row[x]);
+                }
+            }
+            case XBGR8888 -> {
+                for (int x = 0; x < width; x++) {
+                    row[x] = swapRedBlue(row[x]) | 0xff000000;
+                }
+            }
+            case RGB565 -> {
+                for (int x = 0; x < width; x++) {
+                    dst.set(ValueLayout.JAVA_SHORT,
+                            offset + x * 2L,
+                            (short) encode(format,
+                                    row[x]));
+                }
+                return;
+            }
+            case ARGB2101010 -> {
+                for (int x = 0; x < width; x++) {
+                    row[x] = encode(format,
+                            row[x]);
+                }
+            }
+        }
+        MemorySegment.copy(row,
+                0,
+                dst,
+                ValueLayout.JAVA_INT,
+                offset,
+                width);
+    }
+
+    /**
+     * Turn a pixel into ARGB8888.
+     */
+    static int decode(final PixelFormat format,
+                      final int pixel) {
+        return switch (format) {
+            case ARGB8888 -> pixel;
+            case XRGB8888 -> pixel | 0xff000000;
+            case ABGR8888 -> swapRedBlue(pixel);
+            case XBGR8888 -> swapRedBlue(pixel) | 0xff000000;
+            case RGB565 -> {
+                final int r = (pixel >>> 11) & 0x1f;
+                final int g = (pixel >>> 5) & 0x3f;
+                final int b = pixel & 0x1f;
+                yield 0xff000000 | ((r << 3 | r >>> 2) << 16) | ((g << 2 | g >>> 4) << 8) | (b << 3 | b >>> 2);
+            }
+            case ARGB2101010 -> ((pixel >>> 30) * 0x55) << 24 |
+                                ((pixel >>> 22) & 0xff) << 16 |
+                                ((pixel >>> 12) & 0xff) << 8 |
+                                ((pixel >>> 2) & 0xff);
+        };
+    }
+
+    /**
+     * Turn an ARGB8888 pixel into another format.
+     */
+    static int encode(final PixelFormat format,
+                      final int argb) {
+        return switch (format) {
+            case ARGB8888 -> argb;
+            case XRGB8888 -> argb | 0xff000000;
+            case ABGR8888 -> swapRedBlue(argb);
+            case XBGR8888 -> swapRedBlue(argb) | 0xff000000;
+            case RGB565 -> (argb >>> 8) & 0xf800 | (argb >>> 5) & 0x07e0 | (argb >>> 3) & 0x001f;
+            case ARGB2101010 -> {
+                //repeat the high bits of a channel in its low bits, so 0xff becomes 0x3ff
+                final int rgb = argb & 0x00ffffff;
+                final int r = rgb >>> 16;
+                final int g = (rgb >>> 8) & 0xff;
+                final int b = rgb & 0xff;
+                yield (argb >>> 30) << 30 |
+                      (r << 2 | r >>> 6) << 20 |
+                      (g << 2 | g >>> 6) << 10 |
+                      (b << 2 | b >>> 6);
+            }
+        };
+    }
+
+    static int swapRedBlue(final int pixel) {
+        return (pixel & 0xff00ff00) | ((pixel >>> 16) & 0xff) | ((pixel & 0xff) << 16);
+    }
+
+    static int premultiply(final int argb) {
+        return (scale(argb,
+                argb >>> 24) & 0x00ffffff) | (argb & 0xff000000);
+    }
+
+    static int unpremultiply(final int argb) {
+        final int alpha = argb >>> 24;
+        if (alpha == 0) {
+            return 0;
+        }
+        if (alpha == 255) {
+            return argb;
+        }
+        //same float math as the vector version, so both give the same result
+        final float factor = 255f / alpha;
+        final int r = Math.min(255,
+                (int) (((argb >>> 16) & 0xff) * factor + 0.5f));
+        final int g = Math.min(255,
+                (int) (((argb >>> 8) & 0xff) * factor + 0.5f));
+        final int b = Math.min(255,
+                (int) ((argb & 0xff) * factor + 0.5f));
+        return alpha << 24 | r << 16 | g << 8 | b;
+    }
+
+    /**
+     * Porter-Duff over of two premultiplied ARGB8888 pixels.
+     */
+    static int over(final int src,
+                    final int dst) {
+        final int inverseAlpha = 255 - (src >>> 24);
+        return src + scale(dst,
+                inverseAlpha);
+    }
+
+    /**
+     * Multiply all four channels of a pixel by {@code factor / 255}, rounded to nearest. Two channels are handled per
+     * multiplication, 0x00ff00ff keeps them 16 bits apart so they can not overflow into each other.
+     */
+    static int scale(final int pixel,
+                     final int factor) {
+        int rb = (pixel & 0x00ff00ff) * factor + 0x00800080;
+        rb = ((rb + ((rb >>> 8) & 0x00ff00ff)) >>> 8) & 0x00ff00ff;
+        int ag = ((pixel >>> 8) & 0x00ff00ff) * factor + 0x00800080;
+        ag = (ag + ((ag >>> 8) & 0x00ff00ff)) & 0xff00ff00;
+        return rb | ag;
+    }
+}
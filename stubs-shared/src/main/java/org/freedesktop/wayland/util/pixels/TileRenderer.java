@@ -0,0 +1,218 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.util.pixels;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Renders a buffer in parallel by splitting it into tiles.
+ * <p>
+ * Each tile is rendered by a {@link Tile} callback on a {@link ForkJoinPool}. Tiles are small enough for their pixels
+ * to stay in the CPU cache while they are rendered, and since tiles do not overlap, the callback needs no
+ * synchronization as long as it only writes inside its tile. {@link #render} returns when all tiles are done. The
+ * pixels must be accessible from the pool threads, so they can not come from a confined arena.
+ * <pre>
+ *   {@code
+ *   renderer.render(buffer.getSegment(), buffer.getStride(), 0, 0, width, height,
+ *           (pixels, stride, x, y, w, h) -> Pixels.fill(pixels, stride, x, y, w, h, 0xff202020));
+ *   }
+ * </pre>
+ */
+public final class TileRenderer {
+
+    /**
+     * The default tile width in pixels. Pixel loops run along rows, so wide tiles waste less time per row.
+     */
+    public static final int DEFAULT_TILE_WIDTH = 512;
+    /**
+     * The default tile height in pixels. A default tile of 32 bit pixels is 32KiB.
+     */
+    public static final int DEFAULT_TILE_HEIGHT = 16;
+
+    //tiles handled by a single task before it stops splitting
+    private static final int TILES_PER_TASK = 2;
+
+    private final ForkJoinPool pool;
+    private final int tileWidth;
+    private final int tileHeight;
+
+    /**
+     * Create a renderer that uses the common pool and the default tile size.
+     */
+    public TileRenderer() {
+        this(ForkJoinPool.commonPool(),
+                DEFAULT_TILE_WIDTH,
+                DEFAULT_TILE_HEIGHT);
+    }
+
+    /**
+     * @param pool       the pool that renders the tiles.
+     * @param tileWidth  the width of a tile in pixels.
+     * @param tileHeight the height of a tile in pixels.
+     */
+    public TileRenderer(final ForkJoinPool pool,
+                        final int tileWidth,
+                        final int tileHeight) {
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("Invalid tile size " + tileWidth + "x" + tileHeight);
+        }
+        this.pool = Objects.requireNonNull(pool);
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    /**
+     * Render a rectangle of a buffer. Tiles are aligned to the rectangle, tiles at its right and bottom edge can be
+     * smaller than the tile size.
+     *
+     * @param pixels the pixels of the buffer.
+     * @param stride the number of bytes between the start of two rows.
+     * @param x      the left edge of the rectangle to render.
+     * @param y      the top edge of the rectangle to render.
+     * @param width  the width of the rectangle to render.
+     * @param height the height of the rectangle to render.
+     * @param tile   renders a single tile.
+     */
+    public void render(final MemorySegment pixels,
+                       final int stride,
+                       final int x,
+                       final int y,
+                       final int width,
+                       final int height,
+                       final Tile tile) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        final int columns = (width + this.tileWidth - 1) / this.tileWidth;
+        final int rows = (height + this.tileHeight - 1) / this.tileHeight;
+        final TileTask task = new TileTask(pixels,
+                stride,
+                x,
+                y,
+                width,
+                height,
+                columns,
+                tile,
+                0,
+                columns * rows);
+        if (columns * rows <= TILES_PER_TASK) {
+            task.compute();
+        } else {
+            this.pool.invoke(task);
+        }
+    }
+
+    /**
+     * Renders a single tile.
+     */
+    @FunctionalInterface
+    public interface Tile {
+        /**
+         * @param pixels the pixels of the whole buffer.
+         * @param stride the number of bytes between the start of two rows.
+         * @param x      the left edge of the tile.
+         * @param y      the top edge of the tile.
+         * @param width  the width of the tile.
+         * @param height the height of the tile.
+         */
+        void render(MemorySegment pixels,
+                    int stride,
+                    int x,
+                    int y,
+                    int width,
+                    int height);
+    }
+
+    private final class TileTask extends RecursiveAction {
+        private final MemorySegment pixels;
+        private final int stride;
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private final int columns;
+        private final Tile tile;
+        //range of tile indices, row major
+        private final int from;
+        private final int to;
+
+        TileTask(final MemorySegment pixels,
+                 final int stride,
+                 final int x,
+                 final int y,
+                 final int width,
+                 final int height,
+                 final int columns,
+                 final Tile tile,
+                 final int from,
+                 final int to) {
+            this.pixels = pixels;
+            this.stride = stride;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.columns = columns;
+            this.tile = tile;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > TILES_PER_TASK) {
+                final int middle = (this.from + this.to) >>> 1;
+                invokeAll(split(this.from,
+                                middle),
+                        split(middle,
+                                this.to));
+                return;
+            }
+            for (int index = this.from; index < this.to; index++) {
+                final int tileX = (index % this.columns) * TileRenderer.this.tileWidth;
+                final int tileY = (index / this.columns) * TileRenderer.this.tileHeight;
+                this.tile.render(this.pixels,
+                        this.stride,
+                        this.x + tileX,
+                        this.y + tileY,
+                        Math.min(TileRenderer.this.tileWidth,
+                                this.width - tileX),
+                        Math.min(TileRenderer.this.tileHeight,
+                                this.height - tileY));
+            }
+        }
+
+        private TileTask split(final int from,
+                               final int to) {
+            return new TileTask(this.pixels,
+                    this.stride,
+                    this.x,
+                    this.y,
+                    this.width,
+                    this.height,
+                    this.columns,
+                    this.tile,
+                    from,
+                    to);
+        }
+    }
+}
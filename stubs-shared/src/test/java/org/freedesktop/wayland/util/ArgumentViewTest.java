@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License, Version 2.0 (the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.freedesktop.wayland.util;
+
+import org.freedesktop.wayland.raw.wl_argument;
+import org.junit.jupiter.api.Assertions;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+class ArgumentViewTest {
+
+    @org.junit.jupiter.api.Test
+    void nullableArguments() {
+        try (final Arena arguments = Arena.ofConfined()) {
+            final MemorySegment wlArguments = wl_argument.allocateArray(2,
+                    arguments);
+            wl_argument.s(wl_argument.asSlice(wlArguments,
+                            0),
+                    arguments.allocateFrom("wl_shm"));
+            wl_argument.s(wl_argument.asSlice(wlArguments,
+                            1),
+                    MemorySegment.NULL);
+
+            final ArgumentView view = new ArgumentView();
+            try {
+                view.wrap(wlArguments,
+                        2);
+                Assertions.assertTrue(view.equalsAscii(0,
+                        "wl_shm"));
+                Assertions.assertFalse(view.equalsAscii(0,
+                        "wl_sh"));
+                Assertions.assertEquals(6,
+                        view.getString(0)
+                                .byteSize());
+                Assertions.assertEquals("wl_shm",
+                        view.getInternedString(0));
+
+                Assertions.assertTrue(view.isNull(1));
+                Assertions.assertFalse(view.equalsAscii(1,
+                        "wl_shm"));
+                Assertions.assertEquals(MemorySegment.NULL,
+                        view.getString(1));
+                Assertions.assertNull(view.getInternedString(1));
+                Assertions.assertEquals(MemorySegment.NULL,
+                        view.getArray(1));
+            } finally {
+                view.clear();
+            }
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    void segmentsDoNotOutliveTheCall() {
+        try (final Arena arguments = Arena.ofConfined()) {
+            final MemorySegment wlArguments = wl_argument.allocateArray(1,
+                    arguments);
+            wl_argument.s(wlArguments,
+                    arguments.allocateFrom("title"));
+
+            final ArgumentView view = new ArgumentView();
+            final MemorySegment string = view.wrap(wlArguments,
+                            1)
+                    .getString(0);
+            view.clear();
+            Assertions.assertThrows(IllegalStateException.class,
+                    () -> string.get(ValueLayout.JAVA_BYTE,
+                            0));
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    void viewIsClearedAfterTheCall() {
+        try (final Arena arguments = Arena.ofConfined()) {
+            final MemorySegment wlArguments = wl_argument.allocateArray(1,
+                    arguments);
+            wl_argument.i(wlArguments,
+                    42);
+
+            final ArgumentView view = new ArgumentView();
+            Assertions.assertEquals(42,
+                    view.wrap(wlArguments,
+                                    1)
+                            .getInt(0));
+            Assertions.assertTrue(view.isWrapped());
+            view.clear();
+            Assertions.assertFalse(view.isWrapped());
+            Assertions.assertThrows(IndexOutOfBoundsException.class,
+                    () -> view.getInt(0));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License, Version 2.0 (the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.freedesktop.wayland.util;
+
+import org.junit.jupiter.api.Assertions;
+
+class DispatcherTest {
+
+    interface OutputEvents {
+        void mode(WaylandObject emitter,
+                  int flags);
+
+        void done(WaylandObject emitter);
+    }
+
+    @EventInterest({"mode", "done"})
+    static class Interested implements OutputEvents {
+        @Override
+        public void mode(final WaylandObject emitter,
+                         final int flags) {
+        }
+
+        @Override
+        public void done(final WaylandObject emitter) {
+        }
+    }
+
+    @EventInterest({"mode", "dnoe"})
+    static class Misspelled extends Interested {
+    }
+
+    // not a message, it does not take the object the message is for
+    @EventInterest("toString")
+    static class NotAMessage extends Interested {
+    }
+
+    @org.junit.jupiter.api.Test
+    void knownNamesAreAccepted() {
+        Assertions.assertDoesNotThrow(() -> Dispatcher.checkEventInterest(Interested.class));
+        Assertions.assertDoesNotThrow(() -> Dispatcher.checkEventInterest(String.class));
+    }
+
+    @org.junit.jupiter.api.Test
+    void unknownNamesAreRejected() {
+        final IllegalArgumentException misspelled = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> Dispatcher.checkEventInterest(Misspelled.class));
+        Assertions.assertTrue(misspelled.getMessage()
+                .contains("'dnoe'"));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> Dispatcher.checkEventInterest(NotAMessage.class));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License, Version 2.0 (the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.freedesktop.wayland.util;
+
+import org.junit.jupiter.api.Assertions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class IdTableTest {
+
+    @org.junit.jupiter.api.Test
+    void putAndGet() {
+        final IdTable<String> idTable = new IdTable<>();
+        idTable.put(1,
+                "display");
+        idTable.put(1000,
+                "surface");
+        idTable.put(IdTable.SERVER_ID_START + 3,
+                "data offer");
+
+        Assertions.assertEquals("display",
+                idTable.get(1));
+        Assertions.assertEquals("surface",
+                idTable.get(1000));
+        Assertions.assertEquals("data offer",
+                idTable.get(IdTable.SERVER_ID_START + 3));
+        Assertions.assertNull(idTable.get(2));
+        Assertions.assertNull(idTable.get(IdTable.SERVER_ID_START));
+        Assertions.assertNull(idTable.get(-1));
+        Assertions.assertEquals(3,
+                idTable.size());
+    }
+
+    @org.junit.jupiter.api.Test
+    void removeChecksObject() {
+        final IdTable<String> idTable = new IdTable<>();
+        idTable.put(5,
+                "old");
+        //the id is reused before the old object is removed
+        idTable.put(5,
+                "new");
+        Assertions.assertFalse(idTable.remove(5,
+                "old"));
+        Assertions.assertEquals("new",
+                idTable.get(5));
+        Assertions.assertTrue(idTable.remove(5,
+                "new"));
+        Assertions.assertNull(idTable.get(5));
+        Assertions.assertEquals(0,
+                idTable.size());
+    }
+
+    @org.junit.jupiter.api.Test
+    void forEach() {
+        final IdTable<String> idTable = new IdTable<>();
+        idTable.put(IdTable.SERVER_ID_START,
+                "c");
+        idTable.put(7,
+                "b");
+        idTable.put(2,
+                "a");
+
+        final List<String> visited = new ArrayList<>();
+        idTable.forEach((id, object) -> visited.add(Integer.toUnsignedString(id) + "=" + object));
+        Assertions.assertEquals(List.of("2=a",
+                        "7=b",
+                        Integer.toUnsignedString(IdTable.SERVER_ID_START) + "=c"),
+                visited);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.util.pixels;
+
+import org.junit.jupiter.api.Assertions;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Random;
+
+class PixelConverterTest {
+
+    @org.junit.jupiter.api.Test
+    void convertKnownPixels() {
+        Assertions.assertEquals(0x800080ff,
+                convert(0x80ff8000,
+                        PixelFormat.ARGB8888,
+                        PixelFormat.ABGR8888,
+                        PixelConverter.Alpha.KEEP));
+        Assertions.assertEquals(0xffff8000,
+                convert(0x00ff8000,
+                        PixelFormat.XRGB8888,
+                        PixelFormat.ARGB8888,
+                        PixelConverter.Alpha.KEEP));
+        Assertions.assertEquals(0xf800,
+                convert(0xffff0000,
+                        PixelFormat.ARGB8888,
+                        PixelFormat.RGB565,
+                        PixelConverter.Alpha.KEEP));
+        Assertions.assertEquals(0xff00ff00,
+                convert(0x07e0,
+                        PixelFormat.RGB565,
+                        PixelFormat.ARGB8888,
+                        PixelConverter.Alpha.KEEP));
+        Assertions.assertEquals(0xc00ffc00,
+                convert(0xff00ff00,
+                        PixelFormat.ARGB8888,
+                        PixelFormat.ARGB2101010,
+                        PixelConverter.Alpha.KEEP));
+        Assertions.assertEquals(0x55ff0000,
+                convert(0x7ff00000,
+                        PixelFormat.ARGB2101010,
+                        PixelFormat.ARGB8888,
+                        PixelConverter.Alpha.KEEP));
+    }
+
+    @org.junit.jupiter.api.Test
+    void premultiply() {
+        Assertions.assertEquals(0x80804000,
+                convert(0x80ff8000,
+                        PixelFormat.ARGB8888,
+                        PixelFormat.ARGB8888,
+                        PixelConverter.Alpha.PREMULTIPLY));
+        Assertions.assertEquals(0x80ff8000,
+                convert(0x80804000,
+                        PixelFormat.ARGB8888,
+                        PixelFormat.ARGB8888,
+                        PixelConverter.Alpha.UNPREMULTIPLY));
+        Assertions.assertEquals(0,
+                convert(0x00ffffff,
+                        PixelFormat.ARGB8888,
+                        PixelFormat.ARGB8888,
+                        PixelConverter.Alpha.UNPREMULTIPLY));
+    }
+
+    @org.junit.jupiter.api.Test
+    void roundTrip() {
+        final Random random = new Random(7);
+        for (final PixelFormat format : new PixelFormat[]{PixelFormat.ARGB8888, PixelFormat.XRGB8888, PixelFormat.ABGR8888, PixelFormat.XBGR8888}) {
+            for (int i = 0; i < 1000; i++) {
+                final int pixel = random.nextInt() | (format.hasAlpha() ? 0 : 0xff000000);
+                Assertions.assertEquals(pixel,
+                        convert(convert(pixel,
+                                        PixelFormat.ARGB8888,
+                                        format,
+                                        PixelConverter.Alpha.KEEP),
+                                format,
+                                PixelFormat.ARGB8888,
+                                PixelConverter.Alpha.KEEP),
+                        format.name());
+            }
+        }
+        for (int pixel = 0; pixel <= 0xffff; pixel++) {
+            Assertions.assertEquals(pixel,
+                    convert(convert(pixel,
+                                    PixelFormat.RGB565,
+                                    PixelFormat.ARGB8888,
+                                    PixelConverter.Alpha.KEEP),
+                            PixelFormat.ARGB8888,
+                            PixelFormat.RGB565,
+                            PixelConverter.Alpha.KEEP));
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    void vectorMatchesScalar() {
+        // odd sizes, so the vector loops also hand rows to the scalar loops
+        final int width = 37;
+        final int height = 3;
+        final int stride = width * 4 + 12;
+        final Random random = new Random(42);
+        final int[] pixels = new int[stride / 4 * height];
+        for (int i = 0; i < pixels.length; i++) {
+            final int alpha = random.nextInt(256);
+            pixels[i] = random.nextInt(4) == 0 ? random.nextInt() : alpha << 24 | (random.nextInt() & 0x00ffffff);
+        }
+
+        try (final Arena arena = Arena.ofConfined()) {
+            final MemorySegment src = arena.allocate((long) stride * height);
+            MemorySegment.copy(pixels,
+                    0,
+                    src,
+                    ValueLayout.JAVA_INT,
+                    0,
+                    pixels.length);
+            final MemorySegment expected = arena.allocate((long) stride * height);
+            final MemorySegment actual = arena.allocate((long) stride * height);
+
+            for (final PixelFormat srcFormat : PixelFormat.values()) {
+                for (final PixelFormat dstFormat : PixelFormat.values()) {
+                    for (final PixelConverter.Alpha alpha : PixelConverter.Alpha.values()) {
+                        final String name = srcFormat + " to " + dstFormat + ", " + alpha;
+                        expected.fill((byte) 0);
+                        actual.fill((byte) 0);
+                        ScalarPixels.INSTANCE.convert(src,
+                                0,
+                                stride,
+                                srcFormat,
+                                expected,
+                                0,
+                                stride,
+                                dstFormat,
+                                alpha,
+                                width,
+                                height);
+                        Pixels.OPS.convert(src,
+                                0,
+                                stride,
+                                srcFormat,
+                                actual,
+                                0,
+                                stride,
+                                dstFormat,
+                                alpha,
+                                width,
+                                height);
+                        Assertions.assertEquals(-1,
+                                expected.mismatch(actual),
+                                name);
+
+                        if (srcFormat.getBytesPerPixel() == 4) {
+                            actual.fill((byte) 0);
+                            PixelConverter.convert(pixels,
+                                    0,
+                                    stride / 4,
+                                    srcFormat,
+                                    actual,
+                                    stride,
+                                    dstFormat,
+                                    alpha,
+                                    width,
+                                    height);
+                            Assertions.assertEquals(-1,
+                                    expected.mismatch(actual),
+                                    name + " from int[]");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static int convert(final int pixel,
+                               final PixelFormat srcFormat,
+                               final PixelFormat dstFormat,
+                               final PixelConverter.Alpha alpha) {
+        try (final Arena arena = Arena.ofConfined()) {
+            final MemorySegment src = arena.allocate(4);
+            final MemorySegment dst = arena.allocate(4);
+            if (srcFormat.getBytesPerPixel() == 2) {
+                src.set(ValueLayout.JAVA_SHORT,
+                        0,
+                        (short) pixel);
+            } else {
+                src.set(ValueLayout.JAVA_INT,
+                        0,
+                        pixel);
+            }
+            PixelConverter.convert(src,
+                    4,
+                    srcFormat,
+                    dst,
+                    4,
+                    dstFormat,
+                    alpha,
+                    1,
+                    1);
+            return dstFormat.getBytesPerPixel() == 2 ? Short.toUnsignedInt(dst.get(ValueLayout.JAVA_SHORT,
+                    0)) : dst.get(ValueLayout.JAVA_INT,
+                    0);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.util.pixels;
+
+import org.junit.jupiter.api.Assertions;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Random;
+
+class PixelsTest {
+
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 6;
+    //padding at the end of every row, pixels there must never be touched
+    private static final int STRIDE = WIDTH * 4 + 20;
+
+    @org.junit.jupiter.api.Test
+    void vectorLoopsAreLoaded() {
+        // the tests run with the incubator module, so the loops from the vector source set must be found
+        Assertions.assertNotNull(Pixels.vectorOps());
+        Assertions.assertTrue(Pixels.isVectorized());
+    }
+
+    @org.junit.jupiter.api.Test
+    void fillOnlyTouchesTheRectangle() {
+        try (final Arena arena = Arena.ofConfined()) {
+            final MemorySegment pixels = arena.allocate((long) STRIDE * HEIGHT);
+            Pixels.fill(pixels,
+                    STRIDE,
+                    3,
+                    1,
+                    33,
+                    4,
+                    0xff102030);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < STRIDE / 4; x++) {
+                    final boolean inside = x >= 3 && x < 36 && y >= 1 && y < 5;
+                    Assertions.assertEquals(inside ? 0xff102030 : 0,
+                            pixel(pixels,
+                                    x,
+                                    y),
+                            x + "," + y);
+                }
+            }
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    void blitCopiesBetweenStrides() {
+        try (final Arena arena = Arena.ofConfined()) {
+            final MemorySegment src = random(arena,
+                    1);
+            final MemorySegment dst = arena.allocate(WIDTH * 4L * HEIGHT);
+            Pixels.blit(src,
+                    STRIDE,
+                    5,
+                    2,
+                    dst,
+                    WIDTH * 4,
+                    1,
+                    0,
+                    17,
+                    3);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    final boolean inside = x >= 1 && x < 18 && y < 3;
+                    Assertions.assertEquals(inside ? pixel(src,
+                                    x + 4,
+                                    y + 2) : 0,
+                            dst.get(ValueLayout.JAVA_INT,
+                                    (y * WIDTH + x) * 4L),
+                            x + "," + y);
+                }
+            }
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    void blendKnownPixels() {
+        Assertions.assertEquals(0xff7f7f7f,
+                blend(0x80000000,
+                        0xffffffff));
+        Assertions.assertEquals(0xff102030,
+                blend(0xff102030,
+                        0xffffffff));
+        Assertions.assertEquals(0xffa0b0c0,
+                blend(0,
+                        0xffa0b0c0));
+        Assertions.assertEquals(0x80402010,
+                blend(0x80402010,
+                        0));
+    }
+
+    @org.junit.jupiter.api.Test
+    void vectorMatchesScalar() {
+        final PixelOps vector = Pixels.vectorOps();
+        Assertions.assertNotNull(vector);
+        try (final Arena arena = Arena.ofConfined()) {
+            final MemorySegment src = random(arena,
+                    2);
+            final MemorySegment background = random(arena,
+                    3);
+            final MemorySegment expected = arena.allocate((long) STRIDE * HEIGHT);
+            final MemorySegment actual = arena.allocate((long) STRIDE * HEIGHT);
+            // every width up to a row, most are not a multiple of the vector lanes, at an unaligned offset
+            for (int width = 1; width <= WIDTH - 3; width++) {
+                final String name = "width " + width;
+
+                expected.copyFrom(background);
+                actual.copyFrom(background);
+                ScalarPixels.INSTANCE.fill(expected,
+                        12,
+                        STRIDE,
+                        width,
+                        HEIGHT,
+                        0x80ff4020);
+                vector.fill(actual,
+                        12,
+                        STRIDE,
+                        width,
+                        HEIGHT,
+                        0x80ff4020);
+                Assertions.assertEquals(-1,
+                        expected.mismatch(actual),
+                        "fill, " + name);
+
+                expected.copyFrom(background);
+                actual.copyFrom(background);
+                ScalarPixels.INSTANCE.blend(src,
+                        4,
+                        STRIDE,
+                        expected,
+                        12,
+                        STRIDE,
+                        width,
+                        HEIGHT);
+                vector.blend(src,
+                        4,
+                        STRIDE,
+                        actual,
+                        12,
+                        STRIDE,
+                        width,
+                        HEIGHT);
+                Assertions.assertEquals(-1,
+                        expected.mismatch(actual),
+                        "blend, " + name);
+
+                expected.copyFrom(background);
+                actual.copyFrom(background);
+                ScalarPixels.INSTANCE.setAlpha(expected,
+                        12,
+                        STRIDE,
+                        width,
+                        HEIGHT);
+                vector.setAlpha(actual,
+                        12,
+                        STRIDE,
+                        width,
+                        HEIGHT);
+                Assertions.assertEquals(-1,
+                        expected.mismatch(actual),
+                        "setAlpha, " + name);
+            }
+        }
+    }
+
+    // premultiplied pixels, alpha is never smaller than a color channel
+    private static MemorySegment random(final Arena arena,
+                                        final long seed) {
+        final Random random = new Random(seed);
+        final MemorySegment pixels = arena.allocate((long) STRIDE * HEIGHT);
+        for (long offset = 0; offset < pixels.byteSize(); offset += 4) {
+            final int alpha = random.nextInt(256);
+            final int red = random.nextInt(alpha + 1);
+            final int green = random.nextInt(alpha + 1);
+            final int blue = random.nextInt(alpha + 1);
+            pixels.set(ValueLayout.JAVA_INT,
+                    offset,
+                    alpha << 24 | red << 16 | green << 8 | blue);
+        }
+        return pixels;
+    }
+
+    private static int pixel(final MemorySegment pixels,
+                             final int x,
+                             final int y) {
+        return pixels.get(ValueLayout.JAVA_INT,
+                (long) y * STRIDE + x * 4L);
+    }
+
+    private static int blend(final int src,
+                             final int dst) {
+        try (final Arena arena = Arena.ofConfined()) {
+            final MemorySegment srcPixel = arena.allocate(4);
+            final MemorySegment dstPixel = arena.allocate(4);
+            srcPixel.set(ValueLayout.JAVA_INT,
+                    0,
+                    src);
+            dstPixel.set(ValueLayout.JAVA_INT,
+                    0,
+                    dst);
+            Pixels.blend(srcPixel,
+                    4,
+                    0,
+                    0,
+                    dstPixel,
+                    4,
+                    0,
+                    0,
+                    1,
+                    1);
+            return dstPixel.get(ValueLayout.JAVA_INT,
+                    0);
+        }
+    }
+}
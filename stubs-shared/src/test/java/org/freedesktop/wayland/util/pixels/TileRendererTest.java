@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.util.pixels;
+
+import org.junit.jupiter.api.Assertions;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+class TileRendererTest {
+
+    @org.junit.jupiter.api.Test
+    void tilesCoverTheRectangleOnce() {
+        final int width = 30;
+        final int height = 12;
+        final TileRenderer renderer = new TileRenderer(ForkJoinPool.commonPool(),
+                7,
+                5);
+        final AtomicIntegerArray covered = new AtomicIntegerArray(width * height);
+        final Set<String> tiles = Collections.synchronizedSet(new HashSet<>());
+        renderer.render(MemorySegment.NULL,
+                0,
+                2,
+                3,
+                width,
+                height,
+                (pixels, stride, x, y, w, h) -> {
+                    tiles.add(x + "," + y + " " + w + "x" + h);
+                    for (int row = y - 3; row < y - 3 + h; row++) {
+                        for (int column = x - 2; column < x - 2 + w; column++) {
+                            covered.incrementAndGet(row * width + column);
+                        }
+                    }
+                });
+
+        for (int i = 0; i < covered.length(); i++) {
+            Assertions.assertEquals(1,
+                    covered.get(i),
+                    "pixel " + i);
+        }
+        // 5 columns and 3 rows, the last column is 2 wide and the last row 2 high
+        Assertions.assertEquals(15,
+                tiles.size());
+        Assertions.assertTrue(tiles.contains("2,3 7x5"));
+        Assertions.assertTrue(tiles.contains("30,3 2x5"));
+        Assertions.assertTrue(tiles.contains("2,13 7x2"));
+        Assertions.assertTrue(tiles.contains("30,13 2x2"));
+    }
+
+    @org.junit.jupiter.api.Test
+    void tiledFillMatchesWholeFill() {
+        final int width = 45;
+        final int height = 21;
+        final int stride = width * 4;
+        final TileRenderer renderer = new TileRenderer(ForkJoinPool.commonPool(),
+                16,
+                4);
+        // the pool threads write the pixels, a confined arena can not be used
+        try (final Arena arena = Arena.ofShared()) {
+            final MemorySegment expected = arena.allocate((long) stride * height);
+            final MemorySegment actual = arena.allocate((long) stride * height);
+            Pixels.fill(expected,
+                    stride,
+                    1,
+                    2,
+                    width - 2,
+                    height - 3,
+                    0xff336699);
+            renderer.render(actual,
+                    stride,
+                    1,
+                    2,
+                    width - 2,
+                    height - 3,
+                    (pixels, tileStride, x, y, w, h) -> Pixels.fill(pixels,
+                            tileStride,
+                            x,
+                            y,
+                            w,
+                            h,
+                            0xff336699));
+            Assertions.assertEquals(-1,
+                    expected.mismatch(actual));
+        }
+    }
+}
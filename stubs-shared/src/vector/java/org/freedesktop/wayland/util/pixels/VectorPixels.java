@@ -0,0 +1,590 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.util.pixels;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * Pixel loops using the Vector API. Only loaded if the {@code jdk.incubator.vector} module is present. Pixels that do
+ * not fill a whole vector at the end of a row are handed to {@link ScalarPixels}.
+ * <p>
+ * This class lives in its own source set, so only its compilation needs the incubator module. {@link Pixels} loads it
+ * by name.
+ */
+final class VectorPixels implements PixelOps {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    //16 bit pixels, as many as there are lanes in SPECIES
+    private static final VectorSpecies<Short> SHORT_SPECIES = VectorSpecies.of(short.class,
+            VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+    private static final ByteOrder ORDER = ByteOrder.nativeOrder();
+
+    private VectorPixels() {
+    }
+
+    static PixelOps create() {
+        return new VectorPixels();
+    }
+
+    @Override
+    public void fill(final MemorySegment dst,
+                     final long offset,
+                     final int stride,
+                     final int width,
+                     final int height,
+                     final int pixel) {
+        final IntVector value = IntVector.broadcast(SPECIES,
+                pixel);
+        final int bound = SPECIES.loopBound(width);
+        for (int y = 0; y < height; y++) {
+            final long row = offset + (long) y * stride;
+            int x = 0;
+            for (; x < bound; x += SPECIES.length()) {
+                value.intoMemorySegment(dst,
+                        row + x * 4L,
+                        ORDER);
+            }
+            ScalarPixels.INSTANCE.fill(dst,
+                    row + x * 4L,
+                    stride,
+                    width - x,
+                    1,
+                    pixel);
+        }
+    }
+
+    @Override
+    public void blend(final MemorySegment src,
+                      final long srcOffset,
+                      final int srcStride,
+                      final MemorySegment dst,
+                      final long dstOffset,
+                      final int dstStride,
+                      final int width,
+                      final int height) {
+        final int bound = SPECIES.loopBound(width);
+        for (int y = 0; y < height; y++) {
+            final long srcRow = srcOffset + (long) y * srcStride;
+            final long dstRow = dstOffset + (long) y * dstStride;
+            int x = 0;
+            for (; x < bound; x += SPECIES.length()) {
+                final IntVector s = IntVector.fromMemorySegment(SPECIES,
+                        src,
+                        srcRow + x * 4L,
+                        ORDER);
+                final IntVector d = IntVector.fromMemorySegment(SPECIES,
+                        dst,
+                        dstRow + x * 4L,
+                        ORDER);
+                final IntVector inverseAlpha = s.lanewise(VectorOperators.LSHR,
+                                24)
+                        .neg()
+                        .add(255);
+                s.add(scale(d,
+                                inverseAlpha))
+                        .intoMemorySegment(dst,
+                                dstRow + x * 4L,
+                                ORDER);
+            }
+            ScalarPixels.INSTANCE.blend(src,
+                    srcRow + x * 4L,
+                    srcStride,
+                    dst,
+                    dstRow + x * 4L,
+                    dstStride,
+                    width - x,
+                    1);
+        }
+    }
+
+    @Override
+    public void setAlpha(final MemorySegment dst,
+                         final long offset,
+                         final int stride,
+                         final int width,
+                         final int height) {
+        final int bound = SPECIES.loopBound(width);
+        for (int y = 0; y < height; y++) {
+            final long row = offset + (long) y * stride;
+            int x = 0;
+            for (; x < bound; x += SPECIES.length()) {
+                IntVector.fromMemorySegment(SPECIES,
+                                dst,
+                                row + x * 4L,
+                                ORDER)
+                        .or(0xff000000)
+                        .intoMemorySegment(dst,
+                                row + x * 4L,
+                                ORDER);
+            }
+            ScalarPixels.INSTANCE.setAlpha(dst,
+                    row + x * 4L,
+                    stride,
+                    width - x,
+                    1);
+        }
+    }
+
+    @Override
+    public void convert(final MemorySegment src,
+                        final long srcOffset,
+                        final int srcStride,
+                        final PixelFormat srcFormat,
+                        final MemorySegment dst,
+                        final long dstOffset,
+                        final int dstStride,
+                        final PixelFormat dstFormat,
+                        final PixelConverter.Alpha alpha,
+                        final int width,
+                        final int height) {
+        final int[] row = ScalarPixels.row(width);
+        for (int y = 0; y < height; y++) {
+            final long srcRow = srcOffset + (long) y * srcStride;
+            if (srcFormat.getBytesPerPixel() == 2) {
+                loadShorts(src,
+                        srcRow,
+                        row,
+                        width);
+            } else {
+                MemorySegment.copy(src,
+                        ValueLayout.JAVA_INT,
+                        srcRow,
+                        row,
+                        0,
+                        width);
+            }
+            convertRow(srcFormat,
+                    row,
+                    width,
+                    dstFormat,
+                    alpha);
+            storeRow(dstFormat,
+                    row,
+                    dst,
+                    dstOffset + (long) y * dstStride,
+                    width);
+        }
+    }
+
+    @Override
+    public void convert(final int[] src,
+                        final int srcIndex,
+                        final int scanline,
+                        final PixelFormat srcFormat,
+                        final MemorySegment dst,
+                        final long dstOffset,
+                        final int dstStride,
+                        final PixelFormat dstFormat,
+                        final PixelConverter.Alpha alpha,
+                        final int width,
+                        final int height) {
+        final int[] row = ScalarPixels.row(width);
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(src,
+                    srcIndex + y * scanline,
+                    row,
+                    0,
+                    width);
+            convertRow(srcFormat,
+                    row,
+                    width,
+                    dstFormat,
+                    alpha);
+            storeRow(dstFormat,
+                    row,
+                    dst,
+                    dstOffset + (long) y * dstStride,
+                    width);
+        }
+    }
+
+    /*
+     * A row is converted in passes over an int[] of ARGB8888 pixels, with one loop per format. A single loop that
+     * switches on the formats for every vector makes C2 merge vectors from different branches, which it can only do
+     * by boxing them.
+     */
+    private static void convertRow(final PixelFormat srcFormat,
+                                   final int[] row,
+                                   final int width,
+                                   final PixelFormat dstFormat,
+                                   final PixelConverter.Alpha alpha) {
+        final int bound = SPECIES.loopBound(width);
+        int x = 0;
+        switch (srcFormat) {
+            case ARGB8888 -> x = bound;
+            case XRGB8888 -> {
+                for (; x < bound; x += SPECIES.length()) {
+                    IntVector.fromArray(SPECIES,
+                                    row,
+                                    x)
+                            .or(0xff000000)
+                            .intoArray(row,
+                                    x);
+                }
+            }
+            case ABGR8888 -> {
+                for (; x < bound; x += SPECIES.length()) {
+                    swapRedBlue(IntVector.fromArray(SPECIES,
+                            row,
+                            x)).intoArray(row,
+                            x);
+                }
+            }
+            case XBGR8888 -> {
+                for (; x < bound; x += SPECIES.length()) {
+                    swapRedBlue(IntVector.fromArray(SPECIES,
+                            row,
+                            x)).or(0xff000000)
+                            .intoArray(row,
+                                    x);
+                }
+            }
+            case RGB565 -> {
+                for (; x < bound; x += SPECIES.length()) {
+                    decodeRgb565(IntVector.fromArray(SPECIES,
+                            row,
+                            x)).intoArray(row,
+                            x);
+                }
+            }
+            case ARGB2101010 -> {
+                for (; x < bound; x += SPECIES.length()) {
+                    decodeArgb2101010(IntVector.fromArray(SPECIES,
+                            row,
+                            x)).intoArray(row,
+                            x);
+                }
+            }
+        }
+        for (; x < width; x++) {
+            row[x] = ScalarPixels.decode(srcFormat,
+                    row[x]);
+        }
+
+        x = 0;
+        switch (alpha) {
+            case KEEP -> x = width;
+            case PREMULTIPLY -> {
+                for (; x < bound; x += SPECIES.length()) {
+                    premultiply(IntVector.fromArray(SPECIES,
+                            row,
+                            x)).intoArray(row,
+                            x);
+                }
+            }
+            case UNPREMULTIPLY -> {
+                for (; x < bound; x += SPECIES.length()) {
+                    unpremultiply(IntVector.fromArray(SPECIES,
+                            row,
+                            x)).intoArray(row,
+                            x);
+                }
+            }
+        }
+        for (; x < width; x++) {
+            row[x] = alpha == PixelConverter.Alpha.PREMULTIPLY ?
+                     ScalarPixels.premultiply(row[x]) :
+                     ScalarPixels.unpremultiply(row[x]);
+        }
+
+        x = 0;
+        switch (dstFormat) {
+            case ARGB8888 -> x = width;
+            case XRGB8888 -> {
+                for (; x < bound; x += SPECIES.length()) {
+                    IntVector.fromArray(SPECIES,
+                                    row,
+                                    x)
+                            .or(0xff000000)
+                            .intoArray(row,
+                                    x);
+                }
+            }
+            case ABGR8888 -> {
+                for (; x < bound; x += SPECIES.length()) {
+                    swapRedBlue(IntVector.fromArray(SPECIES,
+                            row,
+                            x)).intoArray(row,
+                            x);
+                }
+            }
+            case XBGR8888 -> {
+                for (; x < bound; x += SPECIES.length()) {
+                    swapRedBlue(IntVector.fromArray(SPECIES,
+                            row,
+                            x)).or(0xff000000)
+                            .intoArray(row,
+                                    x);
+                }
+            }
+            case RGB565 -> {
+                for (; x < bound; x += SPECIES.length()) {
+                    encodeRgb565(IntVector.fromArray(SPECIES,
+                            row,
+                            x)).intoArray(row,
+                            x);
+                }
+            }
+            case ARGB2101010 -> {
+                for (; x < bound; x += SPECIES.length()) {
+                    encodeArgb2101010(IntVector.fromArray(SPECIES,
+                            row,
+                            x)).intoArray(row,
+                            x);
+                }
+            }
+        }
+        for (; x < width; x++) {
+            row[x] = ScalarPixels.encode(dstFormat,
+                    row[x]);
+        }
+    }
+
+    private static void loadShorts(final MemorySegment src,
+                                   final long offset,
+                                   final int[] row,
+                                   final int width) {
+        final int bound = SPECIES.loopBound(width);
+        int x = 0;
+        for (; x < bound; x += SPECIES.length()) {
+            ((IntVector) ShortVector.fromMemorySegment(SHORT_SPECIES,
+                            src,
+                            offset + x * 2L,
+                            ORDER)
+                    .convertShape(VectorOperators.S2I,
+                            SPECIES,
+                            0)).and(0xffff)
+                    .intoArray(row,
+                            x);
+        }
+        for (; x < width; x++) {
+            row[x] = Short.toUnsignedInt(src.get(ValueLayout.JAVA_SHORT,
+                    offset + x * 2L));
+        }
+    }
+
+    private static void storeRow(final PixelFormat format,
+                                 final int[] row,
+                                 final MemorySegment dst,
+                                 final long offset,
+                                 final int width) {
+        if (format.getBytesPerPixel() == 4) {
+            MemorySegment.copy(row,
+                    0,
+                    dst,
+                    ValueLayout.JAVA_INT,
+                    offset,
+                    width);
+            return;
+        }
+        final int bound = SPECIES.loopBound(width);
+        int x = 0;
+        for (; x < bound; x += SPECIES.length()) {
+            IntVector.fromArray(SPECIES,
+                            row,
+                            x)
+                    .convertShape(VectorOperators.I2S,
+                            SHORT_SPECIES,
+                            0)
+                    .intoMemorySegment(dst,
+                            offset + x * 2L,
+                            ORDER);
+        }
+        for (; x < width; x++) {
+            dst.set(ValueLayout.JAVA_SHORT,
+                    offset + x * 2L,
+                    (short) row[x]);
+        }
+    }
+
+    private static IntVector decodeRgb565(final IntVector pixels) {
+        final IntVector r = pixels.lanewise(VectorOperators.LSHR,
+                        11)
+                .and(0x1f);
+        final IntVector g = pixels.lanewise(VectorOperators.LSHR,
+                        5)
+                .and(0x3f);
+        final IntVector b = pixels.and(0x1f);
+        return r.lanewise(VectorOperators.LSHL,
+                        3)
+                .or(r.lanewise(VectorOperators.LSHR,
+                        2))
+                .lanewise(VectorOperators.LSHL,
+                        16)
+                .or(g.lanewise(VectorOperators.LSHL,
+                                2)
+                        .or(g.lanewise(VectorOperators.LSHR,
+                                4))
+                        .lanewise(VectorOperators.LSHL,
+                                8))
+                .or(b.lanewise(VectorOperators.LSHL,
+                                3)
+                        .or(b.lanewise(VectorOperators.LSHR,
+                                2)))
+                .or(0xff000000);
+    }
+
+    private static IntVector decodeArgb2101010(final IntVector pixels) {
+        return pixels.lanewise(VectorOperators.LSHR,
+                        30)
+                .mul(0x55)
+                .lanewise(VectorOperators.LSHL,
+                        24)
+                .or(pixels.lanewise(VectorOperators.LSHR,
+                                22)
+                        .and(0xff)
+                        .lanewise(VectorOperators.LSHL,
+                                16))
+                .or(pixels.lanewise(VectorOperators.LSHR,
+                                12)
+                        .and(0xff)
+                        .lanewise(VectorOperators.LSHL,
+                                8))
+                .or(pixels.lanewise(VectorOperators.LSHR,
+                                2)
+                        .and(0xff));
+    }
+
+    private static IntVector encodeRgb565(final IntVector argb) {
+        return argb.lanewise(VectorOperators.LSHR,
+                        8)
+                .and(0xf800)
+                .or(argb.lanewise(VectorOperators.LSHR,
+                                5)
+                        .and(0x07e0))
+                .or(argb.lanewise(VectorOperators.LSHR,
+                                3)
+                        .and(0x001f));
+    }
+
+    private static IntVector encodeArgb2101010(final IntVector argb) {
+        final IntVector r = argb.lanewise(VectorOperators.LSHR,
+                        16)
+                .and(0xff);
+        final IntVector g = argb.lanewise(VectorOperators.LSHR,
+                        8)
+                .and(0xff);
+        final IntVector b = argb.and(0xff);
+        return argb.and(0xc0000000)
+                .or(widen(r).lanewise(VectorOperators.LSHL,
+                        20))
+                .or(widen(g).lanewise(VectorOperators.LSHL,
+                        10))
+                .or(widen(b));
+    }
+
+    // 8 bit channel to 10 bit channel
+    private static IntVector widen(final IntVector channel) {
+        return channel.lanewise(VectorOperators.LSHL,
+                        2)
+                .or(channel.lanewise(VectorOperators.LSHR,
+                        6));
+    }
+
+    private static IntVector swapRedBlue(final IntVector pixels) {
+        return pixels.and(0xff00ff00)
+                .or(pixels.lanewise(VectorOperators.LSHR,
+                                16)
+                        .and(0xff))
+                .or(pixels.and(0xff)
+                        .lanewise(VectorOperators.LSHL,
+                                16));
+    }
+
+    private static IntVector premultiply(final IntVector argb) {
+        return scale(argb,
+                argb.lanewise(VectorOperators.LSHR,
+                        24))
+                .and(0x00ffffff)
+                .or(argb.and(0xff000000));
+    }
+
+    private static IntVector unpremultiply(final IntVector argb) {
+        final IntVector alpha = argb.lanewise(VectorOperators.LSHR,
+                24);
+        //same float math as ScalarPixels.unpremultiply, a transparent pixel gives garbage that is masked out below
+        final FloatVector alphaFloat = (FloatVector) alpha.convert(VectorOperators.I2F,
+                0);
+        final FloatVector factor = alphaFloat.broadcast(255f)
+                .div(alphaFloat);
+        final IntVector r = unpremultiply(argb.lanewise(VectorOperators.LSHR,
+                        16)
+                        .and(0xff),
+                factor);
+        final IntVector g = unpremultiply(argb.lanewise(VectorOperators.LSHR,
+                        8)
+                        .and(0xff),
+                factor);
+        final IntVector b = unpremultiply(argb.and(0xff),
+                factor);
+        final VectorMask<Integer> transparent = alpha.eq(0);
+        return alpha.lanewise(VectorOperators.LSHL,
+                        24)
+                .or(r.lanewise(VectorOperators.LSHL,
+                        16))
+                .or(g.lanewise(VectorOperators.LSHL,
+                        8))
+                .or(b)
+                .blend(0,
+                        transparent);
+    }
+
+    private static IntVector unpremultiply(final IntVector channel,
+                                           final FloatVector factor) {
+        return ((IntVector) ((FloatVector) channel.convert(VectorOperators.I2F,
+                0)).mul(factor)
+                .add(0.5f)
+                .convert(VectorOperators.F2I,
+                        0)).min(255);
+    }
+
+    // the lanewise version of ScalarPixels.scale
+    static IntVector scale(final IntVector pixels,
+                           final IntVector factors) {
+        IntVector rb = pixels.and(0x00ff00ff)
+                .mul(factors)
+                .add(0x00800080);
+        rb = rb.add(rb.lanewise(VectorOperators.LSHR,
+                                8)
+                        .and(0x00ff00ff))
+                .lanewise(VectorOperators.LSHR,
+                        8)
+                .and(0x00ff00ff);
+        IntVector ag = pixels.lanewise(VectorOperators.LSHR,
+                        8)
+                .and(0x00ff00ff)
+                .mul(factors)
+                .add(0x00800080);
+        ag = ag.add(ag.lanewise(VectorOperators.LSHR,
+                                8)
+                        .and(0x00ff00ff))
+                .and(0xff00ff00);
+        return rb.or(ag);
+    }
+}
@@ -86,6 +86,10 @@ fun jextractArgsLibC(): List<String> {
         "<unistd.h>",
         "<stdlib.h>",
         "<signal.h>",
+        "<string.h>",
+        "<sys/epoll.h>",
+        "<sys/eventfd.h>",
+        "<sys/timerfd.h>",
     )
     return includes + args + headers
 }
@@ -3,6 +3,9 @@ dependencies {
     api(project(":stubs-client"))
     api(libs.com.github.spotbugs.spotbugs.annotations)
     annotationProcessor(project(":wayland-scanner"))
+    testImplementation(libs.org.junit.jupiter.junit.jupiter)
+    testImplementation(libs.org.junit.platform.junit.platform.launcher)
+    testImplementation(libs.org.slf4j.slf4j.simple)
 }
 
 description = "Java bindings for wayland servers"
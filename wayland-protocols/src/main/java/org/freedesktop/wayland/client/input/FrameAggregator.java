@@ -0,0 +1,162 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.client.input;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+
+/**
+ * Collects input events into pooled frames and delivers them according to a {@link FramePolicy}.
+ *
+ * @param <F> the frame type.
+ */
+abstract class FrameAggregator<F> {
+
+    /**
+     * The default maximum number of completed frames kept for {@link #flush()}.
+     */
+    public static final int DEFAULT_MAX_PENDING_FRAMES = 128;
+
+    private final FramePolicy policy;
+    private final ArrayDeque<F> pool = new ArrayDeque<>();
+    private final ArrayDeque<F> pending = new ArrayDeque<>();
+    //guarded by this
+    private F current;
+    private int maxPendingFrames = DEFAULT_MAX_PENDING_FRAMES;
+
+    FrameAggregator(final FramePolicy policy) {
+        this.policy = Objects.requireNonNull(policy);
+    }
+
+    public FramePolicy getPolicy() {
+        return this.policy;
+    }
+
+    /**
+     * Deliver all completed frames that were kept back by the {@link FramePolicy#QUEUE} or
+     * {@link FramePolicy#COALESCE_MOTION} policy. Frames are delivered on the calling thread, while no new events are
+     * collected.
+     *
+     * @return the number of delivered frames.
+     */
+    public synchronized int flush() {
+        int delivered = 0;
+        F frame;
+        while ((frame = this.pending.pollFirst()) != null) {
+            try {
+                deliver(frame);
+            } finally {
+                recycle(frame);
+            }
+            delivered++;
+        }
+        return delivered;
+    }
+
+    /**
+     * Limit the number of completed frames kept for {@link #flush()}. When an application does not flush, eg because
+     * its window is hidden, the oldest frames are delivered as new frames complete, on the thread that dispatches the
+     * input events, like with {@link FramePolicy#IMMEDIATE}. No frames are dropped, so button and key state stays
+     * consistent.
+     *
+     * @param maxPendingFrames the maximum number of pending frames, at least 1.
+     */
+    public synchronized void setMaxPendingFrames(final int maxPendingFrames) {
+        if (maxPendingFrames < 1) {
+            throw new IllegalArgumentException("At least one frame must be kept.");
+        }
+        this.maxPendingFrames = maxPendingFrames;
+    }
+
+    public synchronized int getMaxPendingFrames() {
+        return this.maxPendingFrames;
+    }
+
+    /**
+     * @return the number of completed frames waiting for {@link #flush()}.
+     */
+    public synchronized int getPendingFrames() {
+        return this.pending.size();
+    }
+
+    // must be called while holding the lock
+    F current() {
+        if (this.current == null) {
+            final F frame = this.pool.pollFirst();
+            this.current = frame == null ? newFrame() : frame;
+        }
+        return this.current;
+    }
+
+    // must be called while holding the lock
+    void completeFrame() {
+        final F frame = this.current;
+        if (frame == null) {
+            //an empty frame, eg a frame event after events we do not track
+            return;
+        }
+        this.current = null;
+
+        if (this.policy == FramePolicy.IMMEDIATE) {
+            try {
+                deliver(frame);
+            } finally {
+                recycle(frame);
+            }
+            return;
+        }
+
+        final F last = this.pending.peekLast();
+        if (this.policy == FramePolicy.COALESCE_MOTION &&
+                last != null &&
+                isMotionOnly(last) &&
+                isMotionOnly(frame)) {
+            mergeMotion(last,
+                    frame);
+            recycle(frame);
+        } else {
+            this.pending.addLast(frame);
+            //the application is not keeping up, hand over the oldest frames instead of growing without bound
+            while (this.pending.size() > this.maxPendingFrames) {
+                final F oldest = this.pending.pollFirst();
+                try {
+                    deliver(oldest);
+                } finally {
+                    recycle(oldest);
+                }
+            }
+        }
+    }
+
+    private void recycle(final F frame) {
+        reset(frame);
+        this.pool.addFirst(frame);
+    }
+
+    abstract F newFrame();
+
+    abstract void reset(F frame);
+
+    abstract boolean isMotionOnly(F frame);
+
+    abstract void mergeMotion(F into,
+                              F from);
+
+    abstract void deliver(F frame);
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.client.input;
+
+/**
+ * How an input frame aggregator delivers completed frames.
+ */
+public enum FramePolicy {
+    /**
+     * Deliver every frame as soon as its {@code frame} event is dispatched.
+     */
+    IMMEDIATE,
+    /**
+     * Keep completed frames until the application calls {@code flush()}, and deliver them all, in order. At most
+     * {@code getMaxPendingFrames()} frames are kept, older frames are delivered when new ones complete.
+     */
+    QUEUE,
+    /**
+     * Like {@link #QUEUE}, but consecutive frames that only contain motion are merged into one, so an application that
+     * is behind only sees the latest position.
+     */
+    COALESCE_MOTION
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.client.input;
+
+import org.freedesktop.wayland.client.WlSurfaceProxy;
+
+import java.util.Arrays;
+
+/**
+ * All {@code wl_pointer} events of one logical pointer frame, as collected by a {@link PointerFrameAggregator}.
+ * <p>
+ * Frames are pooled and reused by the aggregator. A frame is only valid for the duration of the
+ * {@link PointerFrameAggregator.Handler#frame(PointerFrame)} call it is passed to, and must be copied if it is needed
+ * afterwards.
+ * <p>
+ * Which events the frame contains is described by {@link #getMask()}. Coordinates and axis values are kept in the
+ * {@code wl_fixed} representation, use {@link #toFloat(int)} to convert them.
+ */
+public final class PointerFrame {
+
+    public static final int ENTER = 1;
+    public static final int LEAVE = 1 << 1;
+    public static final int MOTION = 1 << 2;
+    public static final int BUTTON = 1 << 3;
+    public static final int AXIS = 1 << 4;
+    public static final int AXIS_SOURCE = 1 << 5;
+    public static final int AXIS_STOP = 1 << 6;
+    public static final int AXIS_DISCRETE = 1 << 7;
+    public static final int AXIS_VALUE120 = 1 << 8;
+    public static final int AXIS_RELATIVE_DIRECTION = 1 << 9;
+
+    /**
+     * The number of scroll axes, see {@code wl_pointer.axis}.
+     */
+    public static final int AXES = 2;
+
+    int mask;
+
+    int enterSerial;
+    WlSurfaceProxy enterSurface;
+    int leaveSerial;
+    WlSurfaceProxy leaveSurface;
+
+    int motionTime;
+    int x;
+    int y;
+    int motionCount;
+
+    int buttonCount;
+    int[] buttonSerials = new int[2];
+    int[] buttonTimes = new int[2];
+    int[] buttons = new int[2];
+    int[] buttonStates = new int[2];
+
+    int axisSource;
+    int axisTime;
+    final int[] axisMasks = new int[AXES];
+    final int[] axisValues = new int[AXES];
+    final int[] axisDiscretes = new int[AXES];
+    final int[] axisValues120 = new int[AXES];
+    final int[] axisRelativeDirections = new int[AXES];
+
+    PointerFrame() {
+    }
+
+    /**
+     * Convert a {@code wl_fixed} value to a float.
+     *
+     * @param fixed the raw fixed point value.
+     * @return the value as a float.
+     */
+    public static float toFloat(final int fixed) {
+        return fixed / 256.0f;
+    }
+
+    /**
+     * @return a bitmask of the event constants of this class, one bit for every type of event in this frame.
+     */
+    public int getMask() {
+        return this.mask;
+    }
+
+    public boolean has(final int event) {
+        return (this.mask & event) != 0;
+    }
+
+    public int getEnterSerial() {
+        return this.enterSerial;
+    }
+
+    public WlSurfaceProxy getEnterSurface() {
+        return this.enterSurface;
+    }
+
+    public int getLeaveSerial() {
+        return this.leaveSerial;
+    }
+
+    public WlSurfaceProxy getLeaveSurface() {
+        return this.leaveSurface;
+    }
+
+    /**
+     * @return the time of the last motion event in this frame.
+     */
+    public int getMotionTime() {
+        return this.motionTime;
+    }
+
+    /**
+     * @return the surface local x coordinate of the last enter or motion event, as a {@code wl_fixed}.
+     */
+    public int getX() {
+        return this.x;
+    }
+
+    /**
+     * @return the surface local y coordinate of the last enter or motion event, as a {@code wl_fixed}.
+     */
+    public int getY() {
+        return this.y;
+    }
+
+    /**
+     * @return how many motion events were merged into this frame, more than 1 if frames were coalesced.
+     */
+    public int getMotionCount() {
+        return this.motionCount;
+    }
+
+    public int getButtonCount() {
+        return this.buttonCount;
+    }
+
+    public int getButtonSerial(final int index) {
+        return this.buttonSerials[index];
+    }
+
+    public int getButtonTime(final int index) {
+        return this.buttonTimes[index];
+    }
+
+    public int getButton(final int index) {
+        return this.buttons[index];
+    }
+
+    public int getButtonState(final int index) {
+        return this.buttonStates[index];
+    }
+
+    public int getAxisSource() {
+        return this.axisSource;
+    }
+
+    public int getAxisTime() {
+        return this.axisTime;
+    }
+
+    /**
+     * @param axis the {@code wl_pointer.axis} value.
+     * @return a bitmask of the axis event constants of this class that were received for the given axis.
+     */
+    public int getAxisMask(final int axis) {
+        return this.axisMasks[axis];
+    }
+
+    /**
+     * @param axis the {@code wl_pointer.axis} value.
+     * @return the sum of all axis values for the given axis in this frame, as a {@code wl_fixed}.
+     */
+    public int getAxisValue(final int axis) {
+        return this.axisValues[axis];
+    }
+
+    public int getAxisDiscrete(final int axis) {
+        return this.axisDiscretes[axis];
+    }
+
+    public int getAxisValue120(final int axis) {
+        return this.axisValues120[axis];
+    }
+
+    public int getAxisRelativeDirection(final int axis) {
+        return this.axisRelativeDirections[axis];
+    }
+
+    void addButton(final int serial,
+                   final int time,
+                   final int button,
+                   final int state) {
+        if (this.buttonCount == this.buttons.length) {
+            final int length = this.buttonCount * 2;
+            this.buttonSerials = Arrays.copyOf(this.buttonSerials,
+                    length);
+            this.buttonTimes = Arrays.copyOf(this.buttonTimes,
+                    length);
+            this.buttons = Arrays.copyOf(this.buttons,
+                    length);
+            this.buttonStates = Arrays.copyOf(this.buttonStates,
+                    length);
+        }
+        this.buttonSerials[this.buttonCount] = serial;
+        this.buttonTimes[this.buttonCount] = time;
+        this.buttons[this.buttonCount] = button;
+        this.buttonStates[this.buttonCount] = state;
+        this.buttonCount++;
+        this.mask |= BUTTON;
+    }
+
+    void addAxisEvent(final int axis,
+                      final int event) {
+        if (axis >= 0 && axis < AXES) {
+            this.axisMasks[axis] |= event;
+        }
+        this.mask |= event;
+    }
+
+    void reset() {
+        this.mask = 0;
+        this.enterSurface = null;
+        this.leaveSurface = null;
+        this.motionCount = 0;
+        this.buttonCount = 0;
+        Arrays.fill(this.axisMasks,
+                0);
+        Arrays.fill(this.axisValues,
+                0);
+        Arrays.fill(this.axisDiscretes,
+                0);
+        Arrays.fill(this.axisValues120,
+                0);
+    }
+
+    @Override
+    public String toString() {
+        return "PointerFrame{" +
+               "mask=" + Integer.toBinaryString(this.mask) +
+               ", x=" + toFloat(this.x) +
+               ", y=" + toFloat(this.y) +
+               ", motionCount=" + this.motionCount +
+               ", buttonCount=" + this.buttonCount +
+               ", axisValues=" + Arrays.toString(this.axisValues) +
+               '}';
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.client.input;
+
+import org.freedesktop.wayland.client.WlPointerEventsV9;
+import org.freedesktop.wayland.client.WlPointerProxy;
+import org.freedesktop.wayland.client.WlSurfaceProxy;
+import org.freedesktop.wayland.util.Fixed;
+
+import javax.annotation.Nonnull;
+import java.util.Objects;
+
+/**
+ * Gathers {@code wl_pointer} events into {@link PointerFrame}s and delivers one callback per logical frame.
+ * <p>
+ * The compositor groups pointer events that belong together, e.g. a diagonal scroll or a motion with a button press,
+ * and terminates each group with a {@code wl_pointer.frame} event. Instead of handling every event separately, use an
+ * aggregator as the pointer listener:
+ * <pre>
+ *   {@code
+ *   PointerFrameAggregator pointerFrames = new PointerFrameAggregator(FramePolicy.COALESCE_MOTION,
+ *                                                                     frame -> handlePointer(frame));
+ *   seatProxy.getPointer(pointerFrames);
+ *   ...
+ *   // once per rendered frame
+ *   pointerFrames.flush();
+ *   }
+ * </pre>
+ * Frames are pooled, so handling pointer input does not allocate frames. Pointers older than version 5 have no
+ * {@code frame} event, every event is then a frame of its own.
+ */
+public class PointerFrameAggregator extends FrameAggregator<PointerFrame> implements WlPointerEventsV9 {
+
+    private final Handler handler;
+
+    /**
+     * @param policy  how completed frames are delivered.
+     * @param handler receives the frames.
+     */
+    public PointerFrameAggregator(final FramePolicy policy,
+                                  final Handler handler) {
+        super(policy);
+        this.handler = Objects.requireNonNull(handler);
+    }
+
+    @Override
+    public synchronized void enter(final WlPointerProxy emitter,
+                                   final int serial,
+                                   @Nonnull final WlSurfaceProxy surface,
+                                   @Nonnull final Fixed surfaceX,
+                                   @Nonnull final Fixed surfaceY) {
+        final PointerFrame frame = current();
+        frame.mask |= PointerFrame.ENTER;
+        frame.enterSerial = serial;
+        frame.enterSurface = surface;
+        frame.x = surfaceX.getRaw();
+        frame.y = surfaceY.getRaw();
+        completeIfUnframed(emitter.getVersion());
+    }
+
+    @Override
+    public synchronized void leave(final WlPointerProxy emitter,
+                                   final int serial,
+                                   @Nonnull final WlSurfaceProxy surface) {
+        final PointerFrame frame = current();
+        frame.mask |= PointerFrame.LEAVE;
+        frame.leaveSerial = serial;
+        frame.leaveSurface = surface;
+        completeIfUnframed(emitter.getVersion());
+    }
+
+    @Override
+    public synchronized void motion(final WlPointerProxy emitter,
+                                    final int time,
+                                    @Nonnull final Fixed surfaceX,
+                                    @Nonnull final Fixed surfaceY) {
+        motion(emitter.getVersion(),
+                time,
+                surfaceX.getRaw(),
+                surfaceY.getRaw());
+    }
+
+    //the event handlers below take the pointer version instead of the proxy, so they can be driven without one
+    synchronized void motion(final int version,
+                             final int time,
+                             final int rawX,
+                             final int rawY) {
+        final PointerFrame frame = current();
+        frame.mask |= PointerFrame.MOTION;
+        frame.motionTime = time;
+        frame.x = rawX;
+        frame.y = rawY;
+        frame.motionCount++;
+        completeIfUnframed(version);
+    }
+
+    @Override
+    public synchronized void button(final WlPointerProxy emitter,
+                                    final int serial,
+                                    final int time,
+                                    final int button,
+                                    final int state) {
+        button(emitter.getVersion(),
+                serial,
+                time,
+                button,
+                state);
+    }
+
+    synchronized void button(final int version,
+                             final int serial,
+                             final int time,
+                             final int button,
+                             final int state) {
+        current().addButton(serial,
+                time,
+                button,
+                state);
+        completeIfUnframed(version);
+    }
+
+    @Override
+    public synchronized void axis(final WlPointerProxy emitter,
+                                  final int time,
+                                  final int axis,
+                                  @Nonnull final Fixed value) {
+        axis(emitter.getVersion(),
+                time,
+                axis,
+                value.getRaw());
+    }
+
+    synchronized void axis(final int version,
+                           final int time,
+                           final int axis,
+                           final int rawValue) {
+        final PointerFrame frame = current();
+        frame.addAxisEvent(axis,
+                PointerFrame.AXIS);
+        frame.axisTime = time;
+        if (axis >= 0 && axis < PointerFrame.AXES) {
+            frame.axisValues[axis] += rawValue;
+        }
+        completeIfUnframed(version);
+    }
+
+    @Override
+    public synchronized void frame(final WlPointerProxy emitter) {
+        completeFrame();
+    }
+
+    @Override
+    public synchronized void axisSource(final WlPointerProxy emitter,
+                                        final int axisSource) {
+        final PointerFrame frame = current();
+        frame.mask |= PointerFrame.AXIS_SOURCE;
+        frame.axisSource = axisSource;
+    }
+
+    @Override
+    public synchronized void axisStop(final WlPointerProxy emitter,
+                                      final int time,
+                                      final int axis) {
+        final PointerFrame frame = current();
+        frame.addAxisEvent(axis,
+                PointerFrame.AXIS_STOP);
+        frame.axisTime = time;
+    }
+
+    @Override
+    public synchronized void axisDiscrete(final WlPointerProxy emitter,
+                                          final int axis,
+                                          final int discrete) {
+        final PointerFrame frame = current();
+        frame.addAxisEvent(axis,
+                PointerFrame.AXIS_DISCRETE);
+        if (axis >= 0 && axis < PointerFrame.AXES) {
+            frame.axisDiscretes[axis] += discrete;
+        }
+    }
+
+    @Override
+    public synchronized void axisValue120(final WlPointerProxy emitter,
+                                          final int axis,
+                                          final int value120) {
+        final PointerFrame frame = current();
+        frame.addAxisEvent(axis,
+                PointerFrame.AXIS_VALUE120);
+        if (axis >= 0 && axis < PointerFrame.AXES) {
+            frame.axisValues120[axis] += value120;
+        }
+    }
+
+    @Override
+    public synchronized void axisRelativeDirection(final WlPointerProxy emitter,
+                                                   final int axis,
+                                                   final int direction) {
+        final PointerFrame frame = current();
+        frame.addAxisEvent(axis,
+                PointerFrame.AXIS_RELATIVE_DIRECTION);
+        if (axis >= 0 && axis < PointerFrame.AXES) {
+            frame.axisRelativeDirections[axis] = direction;
+        }
+    }
+
+    private void completeIfUnframed(final int version) {
+        //wl_pointer.frame was added in version 5
+        if (version < 5) {
+            completeFrame();
+        }
+    }
+
+    @Override
+    PointerFrame newFrame() {
+        return new PointerFrame();
+    }
+
+    @Override
+    void reset(final PointerFrame frame) {
+        frame.reset();
+    }
+
+    @Override
+    boolean isMotionOnly(final PointerFrame frame) {
+        return frame.mask == PointerFrame.MOTION;
+    }
+
+    @Override
+    void mergeMotion(final PointerFrame into,
+                     final PointerFrame from) {
+        //positions are absolute, so the latest one wins
+        into.motionTime = from.motionTime;
+        into.x = from.x;
+        into.y = from.y;
+        into.motionCount += from.motionCount;
+    }
+
+    @Override
+    void deliver(final PointerFrame frame) {
+        this.handler.frame(frame);
+    }
+
+    /**
+     * Receives complete pointer frames.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * @param frame a pooled frame, only valid during this call.
+         */
+        void frame(PointerFrame frame);
+    }
+}
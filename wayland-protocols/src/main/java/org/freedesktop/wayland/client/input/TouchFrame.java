@@ -0,0 +1,225 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.client.input;
+
+import org.freedesktop.wayland.client.WlSurfaceProxy;
+
+import java.util.Arrays;
+
+/**
+ * All {@code wl_touch} events of one logical touch frame, as collected by a {@link TouchFrameAggregator}.
+ * <p>
+ * A frame holds one entry for every touch point that changed in the frame. Frames are pooled and reused by the
+ * aggregator. A frame is only valid for the duration of the {@link TouchFrameAggregator.Handler#frame(TouchFrame)}
+ * call it is passed to, and must be copied if it is needed afterwards.
+ * <p>
+ * Coordinates and shapes are kept in the {@code wl_fixed} representation, use {@link PointerFrame#toFloat(int)} to
+ * convert them.
+ */
+public final class TouchFrame {
+
+    public static final int DOWN = 1;
+    public static final int UP = 1 << 1;
+    public static final int MOTION = 1 << 2;
+    public static final int SHAPE = 1 << 3;
+    public static final int ORIENTATION = 1 << 4;
+
+    boolean cancelled;
+    int pointCount;
+    Point[] points = new Point[4];
+
+    TouchFrame() {
+        for (int i = 0; i < this.points.length; i++) {
+            this.points[i] = new Point();
+        }
+    }
+
+    /**
+     * @return true if the compositor cancelled the touch session, all points of the session are gone.
+     */
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * @return the number of touch points that changed in this frame.
+     */
+    public int getPointCount() {
+        return this.pointCount;
+    }
+
+    /**
+     * @param index a value from 0 to {@link #getPointCount()}
+     * @return the touch point at the given index.
+     */
+    public Point getPoint(final int index) {
+        if (index >= this.pointCount) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return this.points[index];
+    }
+
+    Point point(final int id) {
+        for (int i = 0; i < this.pointCount; i++) {
+            if (this.points[i].id == id) {
+                return this.points[i];
+            }
+        }
+        if (this.pointCount == this.points.length) {
+            this.points = Arrays.copyOf(this.points,
+                    this.pointCount * 2);
+            for (int i = this.pointCount; i < this.points.length; i++) {
+                this.points[i] = new Point();
+            }
+        }
+        final Point point = this.points[this.pointCount++];
+        point.id = id;
+        return point;
+    }
+
+    boolean isMotionOnly() {
+        if (this.cancelled || this.pointCount == 0) {
+            return false;
+        }
+        for (int i = 0; i < this.pointCount; i++) {
+            if (this.points[i].mask != MOTION) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void reset() {
+        for (int i = 0; i < this.pointCount; i++) {
+            this.points[i].reset();
+        }
+        this.pointCount = 0;
+        this.cancelled = false;
+    }
+
+    @Override
+    public String toString() {
+        return "TouchFrame{" +
+               "cancelled=" + this.cancelled +
+               ", points=" + Arrays.toString(Arrays.copyOf(this.points,
+                this.pointCount)) +
+               '}';
+    }
+
+    /**
+     * The changes of a single touch point within a frame.
+     */
+    public static final class Point {
+        int id;
+        int mask;
+        int serial;
+        int time;
+        WlSurfaceProxy surface;
+        int x;
+        int y;
+        int motionCount;
+        int major;
+        int minor;
+        int orientation;
+
+        Point() {
+        }
+
+        public int getId() {
+            return this.id;
+        }
+
+        /**
+         * @return a bitmask of the event constants of {@link TouchFrame}, one bit for every type of event for this
+         * point.
+         */
+        public int getMask() {
+            return this.mask;
+        }
+
+        public boolean has(final int event) {
+            return (this.mask & event) != 0;
+        }
+
+        /**
+         * @return the serial of the down or up event.
+         */
+        public int getSerial() {
+            return this.serial;
+        }
+
+        /**
+         * @return the time of the last down, up or motion event.
+         */
+        public int getTime() {
+            return this.time;
+        }
+
+        /**
+         * @return the surface that was touched, only set for a down event.
+         */
+        public WlSurfaceProxy getSurface() {
+            return this.surface;
+        }
+
+        public int getX() {
+            return this.x;
+        }
+
+        public int getY() {
+            return this.y;
+        }
+
+        /**
+         * @return how many motion events were merged for this point, more than 1 if frames were coalesced.
+         */
+        public int getMotionCount() {
+            return this.motionCount;
+        }
+
+        public int getMajor() {
+            return this.major;
+        }
+
+        public int getMinor() {
+            return this.minor;
+        }
+
+        public int getOrientation() {
+            return this.orientation;
+        }
+
+        void reset() {
+            this.mask = 0;
+            this.surface = null;
+            this.motionCount = 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Point{" +
+                   "id=" + this.id +
+                   ", mask=" + Integer.toBinaryString(this.mask) +
+                   ", x=" + PointerFrame.toFloat(this.x) +
+                   ", y=" + PointerFrame.toFloat(this.y) +
+                   ", motionCount=" + this.motionCount +
+                   '}';
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.client.input;
+
+import org.freedesktop.wayland.client.WlSurfaceProxy;
+import org.freedesktop.wayland.client.WlTouchEventsV9;
+import org.freedesktop.wayland.client.WlTouchProxy;
+import org.freedesktop.wayland.util.Fixed;
+
+import javax.annotation.Nonnull;
+import java.util.Objects;
+
+/**
+ * Gathers {@code wl_touch} events into {@link TouchFrame}s and delivers one callback per logical frame.
+ * <p>
+ * A touch frame holds the changes of all touch points that happened at the same time, as terminated by
+ * {@code wl_touch.frame}. See {@link PointerFrameAggregator} for how frames are delivered. With
+ * {@link FramePolicy#COALESCE_MOTION}, consecutive frames that only move existing points are merged into one.
+ */
+public class TouchFrameAggregator extends FrameAggregator<TouchFrame> implements WlTouchEventsV9 {
+
+    private final Handler handler;
+
+    /**
+     * @param policy  how completed frames are delivered.
+     * @param handler receives the frames.
+     */
+    public TouchFrameAggregator(final FramePolicy policy,
+                                final Handler handler) {
+        super(policy);
+        this.handler = Objects.requireNonNull(handler);
+    }
+
+    @Override
+    public synchronized void down(final WlTouchProxy emitter,
+                                  final int serial,
+                                  final int time,
+                                  @Nonnull final WlSurfaceProxy surface,
+                                  final int id,
+                                  @Nonnull final Fixed x,
+                                  @Nonnull final Fixed y) {
+        final TouchFrame.Point point = current().point(id);
+        point.mask |= TouchFrame.DOWN;
+        point.serial = serial;
+        point.time = time;
+        point.surface = surface;
+        point.x = x.getRaw();
+        point.y = y.getRaw();
+    }
+
+    @Override
+    public synchronized void up(final WlTouchProxy emitter,
+                                final int serial,
+                                final int time,
+                                final int id) {
+        final TouchFrame.Point point = current().point(id);
+        point.mask |= TouchFrame.UP;
+        point.serial = serial;
+        point.time = time;
+    }
+
+    @Override
+    public synchronized void motion(final WlTouchProxy emitter,
+                                    final int time,
+                                    final int id,
+                                    @Nonnull final Fixed x,
+                                    @Nonnull final Fixed y) {
+        final TouchFrame.Point point = current().point(id);
+        point.mask |= TouchFrame.MOTION;
+        point.time = time;
+        point.x = x.getRaw();
+        point.y = y.getRaw();
+        point.motionCount++;
+    }
+
+    @Override
+    public synchronized void frame(final WlTouchProxy emitter) {
+        completeFrame();
+    }
+
+    @Override
+    public synchronized void cancel(final WlTouchProxy emitter) {
+        current().cancelled = true;
+        completeFrame();
+    }
+
+    @Override
+    public synchronized void shape(final WlTouchProxy emitter,
+                                   final int id,
+                                   @Nonnull final Fixed major,
+                                   @Nonnull final Fixed minor) {
+        final TouchFrame.Point point = current().point(id);
+        point.mask |= TouchFrame.SHAPE;
+        point.major = major.getRaw();
+        point.minor = minor.getRaw();
+    }
+
+    @Override
+    public synchronized void orientation(final WlTouchProxy emitter,
+                                         final int id,
+                                         @Nonnull final Fixed orientation) {
+        final TouchFrame.Point point = current().point(id);
+        point.mask |= TouchFrame.ORIENTATION;
+        point.orientation = orientation.getRaw();
+    }
+
+    @Override
+    TouchFrame newFrame() {
+        return new TouchFrame();
+    }
+
+    @Override
+    void reset(final TouchFrame frame) {
+        frame.reset();
+    }
+
+    @Override
+    boolean isMotionOnly(final TouchFrame frame) {
+        return frame.isMotionOnly();
+    }
+
+    @Override
+    void mergeMotion(final TouchFrame into,
+                     final TouchFrame from) {
+        for (int i = 0; i < from.pointCount; i++) {
+            final TouchFrame.Point source = from.points[i];
+            final TouchFrame.Point target = into.point(source.id);
+            target.mask |= TouchFrame.MOTION;
+            target.time = source.time;
+            target.x = source.x;
+            target.y = source.y;
+            target.motionCount += source.motionCount;
+        }
+    }
+
+    @Override
+    void deliver(final TouchFrame frame) {
+        this.handler.frame(frame);
+    }
+
+    /**
+     * Receives complete touch frames.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * @param frame a pooled frame, only valid during this call.
+         */
+        void frame(TouchFrame frame);
+    }
+}
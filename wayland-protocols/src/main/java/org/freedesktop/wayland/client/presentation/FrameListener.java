@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.client.presentation;
+
+/**
+ * Receives frames to render from a {@link FrameScheduler}, and reports on how they were presented.
+ */
+public interface FrameListener {
+
+    /**
+     * Render a frame. Implementations attach a buffer, damage and commit the surface. An implementation that returns
+     * without committing calls {@link FrameScheduler.Frame#skip()}.
+     *
+     * @param frame the frame to render.
+     */
+    void render(FrameScheduler.Frame frame);
+
+    /**
+     * A frame was shown on screen.
+     *
+     * @param frame             the presented frame.
+     * @param presentationNanos the time the frame was shown, as a {@link System#nanoTime()} value.
+     * @param refreshNanos      the refresh interval of the output, or 0 if unknown.
+     * @param flags             the {@code wp_presentation_feedback.kind} flags.
+     */
+    default void presented(final FrameScheduler.Frame frame,
+                           final long presentationNanos,
+                           final long refreshNanos,
+                           final int flags) {
+    }
+
+    /**
+     * A frame was shown after the vblank it was rendered for.
+     *
+     * @param frame         the late frame.
+     * @param missedVblanks how many vblanks the frame missed.
+     */
+    default void late(final FrameScheduler.Frame frame,
+                      final int missedVblanks) {
+    }
+
+    /**
+     * A frame was never shown, because a later frame replaced it.
+     *
+     * @param frame the dropped frame.
+     */
+    default void dropped(final FrameScheduler.Frame frame) {
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.client.presentation;
+
+import org.freedesktop.wayland.client.EventQueue;
+import org.freedesktop.wayland.client.WlOutputProxy;
+import org.freedesktop.wayland.client.WlSurfaceProxy;
+import org.freedesktop.wayland.client.WpPresentationFeedbackEvents;
+import org.freedesktop.wayland.client.WpPresentationFeedbackProxy;
+import org.freedesktop.wayland.client.WpPresentationProxy;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Decides when to render the next frame of a surface.
+ * <p>
+ * A {@code wl_surface.frame} callback tells a client that now is a good time to draw, but not when the result will be
+ * shown. Rendering right away and then waiting for the next vblank adds up to a full refresh interval of latency
+ * between the input used in the frame and the frame reaching the screen. If {@code wp_presentation} is available, this
+ * scheduler learns the refresh interval and the time of the last presentation from its feedback events, predicts the
+ * next vblank, and starts rendering as late as it safely can: the predicted vblank minus an estimate of the render
+ * cost and a safety margin for the compositor. Frames that are presented later than the vblank they targeted, or not
+ * at all, are reported to the {@link FrameListener}.
+ * <p>
+ * Without {@code wp_presentation}, or until the first feedback arrives, frames are rendered as soon as the frame
+ * callback fires, like a plain frame callback loop.
+ * <p>
+ * Rendering always happens on the given executor, so renders never overlap. A render must attach a buffer and commit
+ * the surface: the scheduler requests the frame callback and presentation feedback for the frame before it calls
+ * {@link FrameListener#render(Frame)}, and those only take effect with the next commit. A render that throws, or that
+ * calls {@link Frame#skip()} because it did not commit, gives the frame up: its frame callback and feedback are
+ * ignored when a later commit fires them, and the scheduler does not wait for them before rendering the next frame.
+ * <p>
+ * The frame callback and feedback objects are created from the render thread, through proxy wrappers of the surface
+ * and presentation global that are bound to the given event queue. They are dispatched by whoever dispatches that
+ * queue, typically a queue created with {@link org.freedesktop.wayland.client.Display#createQueue(java.util.concurrent.Executor)}.
+ * Creating them through the original proxies could let their first events be dispatched on the default queue before
+ * their listeners are set.
+ * <p>
+ * Presentation timestamps are compared with {@link System#nanoTime()}, which uses {@code CLOCK_MONOTONIC} on Linux.
+ * If the compositor reports another clock in {@code wp_presentation.clock_id}, no prediction is done.
+ */
+public final class FrameScheduler {
+
+    /**
+     * The clock id of {@code CLOCK_MONOTONIC}.
+     */
+    public static final int CLOCK_MONOTONIC = 1;
+
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(FrameScheduler.class);
+
+    //weight of a new sample in the render cost average
+    private static final double COST_WEIGHT = 0.2;
+
+    private final WlSurfaceProxy surfaceProxy;
+    //wrappers bound to the queue of the scheduler, used to create the frame callback and feedback objects
+    private final WlSurfaceProxy surfaceWrapper;
+    @Nullable
+    private final WpPresentationProxy presentationWrapper;
+    private final ScheduledExecutorService executor;
+    private final FrameListener listener;
+    private final IntConsumer frameDone = callbackData -> frameDone();
+
+    private long marginNanos = TimeUnit.MILLISECONDS.toNanos(1);
+
+    //all fields below are guarded by this
+    private long frameNumber;
+    private long lastPresentationNanos;
+    private long refreshNanos;
+    private long renderCostNanos;
+    private boolean framePending;
+    private boolean renderScheduled;
+    private boolean redrawRequested;
+    private boolean stopped;
+    //frame callbacks of given up frames, they are still requested on the surface and fire with a later commit
+    private int abandonedCallbacks;
+
+    /**
+     * Create a scheduler that renders as soon as the frame callback fires.
+     *
+     * @param surfaceProxy the surface to schedule frames for.
+     * @param queue        the queue that receives the frame callbacks.
+     * @param executor     the executor that runs the renders.
+     * @param listener     renders frames and receives presentation reports.
+     */
+    public FrameScheduler(@Nonnull final WlSurfaceProxy surfaceProxy,
+                          @Nonnull final EventQueue queue,
+                          @Nonnull final ScheduledExecutorService executor,
+                          @Nonnull final FrameListener listener) {
+        this(surfaceProxy,
+                queue,
+                null,
+                CLOCK_MONOTONIC,
+                executor,
+                listener);
+    }
+
+    /**
+     * Create a scheduler that uses presentation feedback to predict the display deadline.
+     *
+     * @param surfaceProxy      the surface to schedule frames for.
+     * @param queue             the queue that receives the frame callbacks and presentation feedback.
+     * @param presentationProxy the bound {@code wp_presentation} global, or null if the compositor does not have one.
+     * @param clockId           the clock id announced by the {@code wp_presentation.clock_id} event.
+     * @param executor          the executor that runs the renders.
+     * @param listener          renders frames and receives presentation reports.
+     */
+    public FrameScheduler(@Nonnull final WlSurfaceProxy surfaceProxy,
+                          @Nonnull final EventQueue queue,
+                          @Nullable final WpPresentationProxy presentationProxy,
+                          final int clockId,
+                          @Nonnull final ScheduledExecutorService executor,
+                          @Nonnull final FrameListener listener) {
+        this.surfaceProxy = Objects.requireNonNull(surfaceProxy);
+        Objects.requireNonNull(queue);
+        this.surfaceWrapper = surfaceProxy.createWrapper(queue);
+        if (presentationProxy != null && clockId != CLOCK_MONOTONIC) {
+            LOG.warn("Presentation clock {} is not CLOCK_MONOTONIC, frames will not be predicted.",
+                    clockId);
+            this.presentationWrapper = null;
+        } else {
+            this.presentationWrapper = presentationProxy == null ? null : presentationProxy.createWrapper(queue);
+        }
+        this.executor = Objects.requireNonNull(executor);
+        this.listener = Objects.requireNonNull(listener);
+    }
+
+    /**
+     * Set how long before the predicted vblank a frame should be committed, to give the compositor time to pick it up.
+     * The default is 1ms.
+     *
+     * @param margin the margin, in units of {@code unit}
+     * @param unit   the unit of {@code margin}
+     */
+    public void setMargin(final long margin,
+                          final TimeUnit unit) {
+        this.marginNanos = unit.toNanos(margin);
+    }
+
+    /**
+     * Request a new frame. If no frame is in flight it is rendered right away, otherwise it is rendered when the
+     * compositor is ready for it. Continuously animating clients call this from every render.
+     */
+    public synchronized void requestFrame() {
+        if (this.stopped) {
+            return;
+        }
+        this.redrawRequested = true;
+        if (!this.framePending && !this.renderScheduled) {
+            scheduleRender(System.nanoTime());
+        }
+    }
+
+    /**
+     * Stop scheduling frames and destroy the proxy wrappers. A render that is already scheduled is skipped. Frame
+     * callbacks and feedback that are still in flight stay on the queue until it is destroyed.
+     */
+    public synchronized void stop() {
+        if (this.stopped) {
+            return;
+        }
+        this.stopped = true;
+        this.surfaceWrapper.destroy();
+        if (this.presentationWrapper != null) {
+            this.presentationWrapper.destroy();
+        }
+    }
+
+    /**
+     * The current estimate of the display refresh interval.
+     *
+     * @return the refresh interval in nanoseconds, or 0 if not known.
+     */
+    public synchronized long getRefreshNanos() {
+        return this.refreshNanos;
+    }
+
+    /**
+     * The current estimate of the time a render takes.
+     *
+     * @return a moving average of the render time in nanoseconds.
+     */
+    public synchronized long getRenderCostNanos() {
+        return this.renderCostNanos;
+    }
+
+    // must be called while holding the lock
+    private void scheduleRender(final long now) {
+        this.redrawRequested = false;
+        this.renderScheduled = true;
+
+        final long target = predictPresentation(now);
+        final long delay = target == 0 ? 0 : target - this.marginNanos - this.renderCostNanos - now;
+        final Frame frame = new Frame(++this.frameNumber,
+                target);
+        if (delay > 0) {
+            this.executor.schedule(() -> render(frame),
+                    delay,
+                    TimeUnit.NANOSECONDS);
+        } else {
+            this.executor.execute(() -> render(frame));
+        }
+    }
+
+    // must be called while holding the lock
+    private long predictPresentation(final long now) {
+        if (this.refreshNanos == 0 || this.lastPresentationNanos == 0) {
+            return 0;
+        }
+        //first vblank we can still make if we start rendering right now
+        final long earliest = now + this.renderCostNanos + this.marginNanos;
+        final long vblanks = Math.max(1,
+                (earliest - this.lastPresentationNanos + this.refreshNanos - 1) / this.refreshNanos);
+        return this.lastPresentationNanos + vblanks * this.refreshNanos;
+    }
+
+    private void render(final Frame frame) {
+        synchronized (this) {
+            this.renderScheduled = false;
+            if (this.stopped) {
+                return;
+            }
+            this.framePending = true;
+            //under the lock, so stop() can not destroy the wrappers while they are used
+            this.surfaceWrapper.frame(this.frameDone);
+            if (this.presentationWrapper != null) {
+                frame.feedback = new Feedback(frame);
+                this.presentationWrapper.feedback(this.surfaceProxy,
+                        frame.feedback);
+            }
+        }
+
+        final long start = System.nanoTime();
+        frame.startNanos = start;
+        boolean rendered = false;
+        try {
+            this.listener.render(frame);
+            rendered = !frame.skipped;
+        } finally {
+            final long cost = System.nanoTime() - start;
+            synchronized (this) {
+                if (rendered) {
+                    this.renderCostNanos = this.renderCostNanos == 0 ?
+                                           cost :
+                                           (long) (this.renderCostNanos + COST_WEIGHT * (cost - this.renderCostNanos));
+                } else {
+                    abandon(frame);
+                }
+            }
+        }
+    }
+
+    // must be called while holding the lock
+    private void abandon(final Frame frame) {
+        //the frame callback can not be destroyed, it is handled natively, so it is ignored when it fires instead
+        this.abandonedCallbacks++;
+        if (frame.feedback != null) {
+            frame.feedback.abandoned = true;
+        }
+        this.framePending = false;
+        if (this.redrawRequested && !this.renderScheduled && !this.stopped) {
+            scheduleRender(System.nanoTime());
+        }
+    }
+
+    private synchronized void frameDone() {
+        //callbacks fire in the order they were requested, so the ones of given up frames come first
+        if (this.abandonedCallbacks > 0) {
+            this.abandonedCallbacks--;
+            return;
+        }
+        this.framePending = false;
+        if (this.redrawRequested && !this.renderScheduled && !this.stopped) {
+            scheduleRender(System.nanoTime());
+        }
+    }
+
+    private void presented(final Frame frame,
+                           final long presentationNanos,
+                           final long refreshNanos,
+                           final int flags) {
+        synchronized (this) {
+            if (presentationNanos > this.lastPresentationNanos) {
+                this.lastPresentationNanos = presentationNanos;
+            }
+            if (refreshNanos != 0) {
+                this.refreshNanos = refreshNanos;
+            }
+        }
+        this.listener.presented(frame,
+                presentationNanos,
+                refreshNanos,
+                flags);
+
+        if (frame.targetNanos != 0 && refreshNanos != 0) {
+            //anything more than half a refresh after the target means we missed it
+            final long lateness = presentationNanos - frame.targetNanos;
+            if (lateness > refreshNanos / 2) {
+                this.listener.late(frame,
+                        (int) ((lateness + refreshNanos / 2) / refreshNanos));
+            }
+        }
+    }
+
+    /**
+     * A frame, as handed to the {@link FrameListener}.
+     */
+    public static final class Frame {
+        private final long number;
+        private final long targetNanos;
+        private volatile long startNanos;
+        private volatile boolean skipped;
+        //only accessed from the render thread
+        @Nullable
+        private Feedback feedback;
+
+        Frame(final long number,
+              final long targetNanos) {
+            this.number = number;
+            this.targetNanos = targetNanos;
+        }
+
+        /**
+         * @return the sequence number of this frame, starting at 1.
+         */
+        public long getNumber() {
+            return this.number;
+        }
+
+        /**
+         * The predicted presentation time of this frame. Animations should be advanced to this time rather than to
+         * the time the render started.
+         *
+         * @return the predicted presentation time as a {@link System#nanoTime()} value, or 0 if no prediction is
+         * available.
+         */
+        public long getTargetNanos() {
+            return this.targetNanos;
+        }
+
+        /**
+         * @return the {@link System#nanoTime()} value at which the render started.
+         */
+        public long getStartNanos() {
+            return this.startNanos;
+        }
+
+        /**
+         * Give this frame up. A render that returns without committing the surface must call this, otherwise the
+         * scheduler waits for a frame callback that only fires with the next commit.
+         */
+        public void skip() {
+            this.skipped = true;
+        }
+
+        @Override
+        public String toString() {
+            return "Frame{" +
+                   "number=" + this.number +
+                   ", targetNanos=" + this.targetNanos +
+                   ", startNanos=" + this.startNanos +
+                   '}';
+        }
+    }
+
+    private final class Feedback implements WpPresentationFeedbackEvents {
+        private final Frame frame;
+        //set from the render thread when the frame is given up, read on the queue
+        private volatile boolean abandoned;
+
+        Feedback(final Frame frame) {
+            this.frame = frame;
+        }
+
+        @Override
+        public void syncOutput(final WpPresentationFeedbackProxy emitter,
+                               @Nonnull final WlOutputProxy output) {
+        }
+
+        @Override
+        public void presented(final WpPresentationFeedbackProxy emitter,
+                              final int tvSecHi,
+                              final int tvSecLo,
+                              final int tvNsec,
+                              final int refresh,
+                              final int seqHi,
+                              final int seqLo,
+                              final int flags) {
+            emitter.destroy();
+            if (this.abandoned) {
+                return;
+            }
+            final long seconds = ((long) tvSecHi << 32) | (tvSecLo & 0xFFFFFFFFL);
+            FrameScheduler.this.presented(this.frame,
+                    TimeUnit.SECONDS.toNanos(seconds) + tvNsec,
+                    refresh & 0xFFFFFFFFL,
+                    flags);
+        }
+
+        @Override
+        public void discarded(final WpPresentationFeedbackProxy emitter) {
+            emitter.destroy();
+            if (this.abandoned) {
+                return;
+            }
+            FrameScheduler.this.listener.dropped(this.frame);
+        }
+    }
+}
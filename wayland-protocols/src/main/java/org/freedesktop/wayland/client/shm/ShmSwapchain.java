@@ -0,0 +1,531 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.client.shm;
+
+import org.freedesktop.wayland.client.RectSet;
+import org.freedesktop.wayland.client.WlBufferEvents;
+import org.freedesktop.wayland.client.WlBufferProxy;
+import org.freedesktop.wayland.client.WlShmPoolEvents;
+import org.freedesktop.wayland.client.WlShmPoolProxy;
+import org.freedesktop.wayland.client.WlShmProxy;
+import org.freedesktop.wayland.util.ShmPool;
+import org.freedesktop.wayland.util.pixels.PixelFormat;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A set of shared memory buffers that a client renders into in turn.
+ * <p>
+ * A buffer is {@link #acquire(int, int) acquired}, painted, attached to a surface and {@link #submit(Buffer, RectSet)
+ * submitted}. It becomes available again when the compositor sends {@code wl_buffer.release}. A buffer that is not
+ * attached after all, eg because the window was closed or resized while painting, is handed back with
+ * {@link #discard(Buffer)}. If all buffers are busy,
+ * the swapchain creates a new one, up to the maximum buffer count, after which {@code acquire} blocks until a buffer is
+ * released. Release events may be dispatched on any thread: released buffers are pushed on a lock-free free list.
+ * Acquiring and submitting must be done by one thread at a time, and never by the thread that dispatches the release
+ * events if {@code acquire} can block.
+ * <p>
+ * Every buffer has its own {@code wl_shm_pool}, rounded up to a size class. When the requested size changes, a
+ * buffer whose pool is large enough is recreated in the same pool, so resizing a window does not allocate new shared
+ * memory for every configure event.
+ * <p>
+ * The swapchain records the damage of every submitted frame, so a buffer that comes back can be brought up to date by
+ * repainting only the area that changed since it was last shown, see {@link Buffer#getAge()} and
+ * {@link #getBufferDamage(Buffer, RectSet)}.
+ */
+public final class ShmSwapchain {
+
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(ShmSwapchain.class);
+
+    //smallest pool size, so small windows do not create a new pool on every resize
+    private static final int MIN_POOL_SIZE = 64 * 1024;
+
+    private static final WlShmPoolEvents POOL_EVENTS = new WlShmPoolEvents() {
+    };
+
+    private final WlShmProxy shmProxy;
+    private final int format;
+    private final int bytesPerPixel;
+    private final int bufferCount;
+    private final int maxBufferCount;
+
+    //head of the free list
+    private final AtomicReference<Buffer> free = new AtomicReference<>();
+    //all buffers, only touched by the acquiring thread
+    private final List<Buffer> buffers = new ArrayList<>();
+    //damage of the last submitted frames, indexed by frame number
+    private final RectSet[] damageHistory;
+
+    @Nullable
+    private volatile Thread waiter;
+    private volatile boolean destroyed;
+    private long frameNumber;
+
+    /**
+     * Create a swapchain that never grows beyond {@code bufferCount} buffers.
+     *
+     * @param shmProxy    the bound {@code wl_shm} global.
+     * @param format      the {@code wl_shm.format} of the buffers, one of the {@link PixelFormat}s.
+     * @param bufferCount the number of buffers, 2 for double buffering, 3 for triple buffering.
+     * @throws IllegalArgumentException if the format is not a supported {@link PixelFormat}.
+     */
+    public ShmSwapchain(@Nonnull final WlShmProxy shmProxy,
+                        final int format,
+                        final int bufferCount) {
+        this(shmProxy,
+                format,
+                bufferCount,
+                bufferCount);
+    }
+
+    /**
+     * Create a swapchain that grows when the compositor holds on to all of its buffers.
+     *
+     * @param shmProxy       the bound {@code wl_shm} global.
+     * @param format         the {@code wl_shm.format} of the buffers, one of the {@link PixelFormat}s.
+     * @param bufferCount    the number of buffers that is normally used.
+     * @param maxBufferCount the number of buffers after which {@link #acquire(int, int)} blocks.
+     * @throws IllegalArgumentException if the format is not a supported {@link PixelFormat}.
+     */
+    public ShmSwapchain(@Nonnull final WlShmProxy shmProxy,
+                        final int format,
+                        final int bufferCount,
+                        final int maxBufferCount) {
+        if (bufferCount < 1 || maxBufferCount < bufferCount) {
+            throw new IllegalArgumentException("Invalid buffer count " + bufferCount + ", max " + maxBufferCount);
+        }
+        this.shmProxy = Objects.requireNonNull(shmProxy);
+        this.format = format;
+        //the stride and size of a buffer depend on the pixel size
+        this.bytesPerPixel = PixelFormat.fromShmFormat(format)
+                .getBytesPerPixel();
+        this.bufferCount = bufferCount;
+        this.maxBufferCount = maxBufferCount;
+        this.damageHistory = new RectSet[maxBufferCount];
+        for (int i = 0; i < maxBufferCount; i++) {
+            this.damageHistory[i] = new RectSet();
+        }
+    }
+
+    /**
+     * Get a buffer to render into, blocking until one is released if all buffers are busy.
+     *
+     * @param width  the width of the buffer in pixels.
+     * @param height the height of the buffer in pixels.
+     * @return a buffer of the requested size.
+     * @throws InterruptedException if the calling thread was interrupted while waiting.
+     * @throws IOException          if the shared memory for a new buffer could not be created.
+     */
+    @Nonnull
+    public Buffer acquire(final int width,
+                          final int height) throws InterruptedException, IOException {
+        return Objects.requireNonNull(acquire(width,
+                height,
+                -1));
+    }
+
+    /**
+     * Get a buffer to render into, waiting a limited time for one to be released if all buffers are busy.
+     *
+     * @param width   the width of the buffer in pixels.
+     * @param height  the height of the buffer in pixels.
+     * @param timeout how long to wait, in units of {@code unit}.
+     * @param unit    the unit of {@code timeout}.
+     * @return a buffer of the requested size, or null if no buffer was released in time.
+     * @throws InterruptedException if the calling thread was interrupted while waiting.
+     * @throws IOException          if the shared memory for a new buffer could not be created.
+     */
+    @Nullable
+    public Buffer acquire(final int width,
+                          final int height,
+                          final long timeout,
+                          final TimeUnit unit) throws InterruptedException, IOException {
+        return acquire(width,
+                height,
+                unit.toNanos(timeout));
+    }
+
+    @Nullable
+    private Buffer acquire(final int width,
+                           final int height,
+                           final long timeoutNanos) throws InterruptedException, IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid buffer size " + width + "x" + height);
+        }
+        if (bufferSize(width,
+                height,
+                this.bytesPerPixel) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Buffer size " + width + "x" + height + " does not fit in a wl_shm_pool");
+        }
+        if (this.destroyed) {
+            throw new IllegalStateException("Swapchain destroyed");
+        }
+
+        Buffer buffer = pop();
+        if (buffer == null && this.buffers.size() < this.maxBufferCount) {
+            if (this.buffers.size() >= this.bufferCount) {
+                LOG.debug("All {} buffers are busy, growing swapchain.",
+                        this.buffers.size());
+            }
+            buffer = new Buffer();
+            this.buffers.add(buffer);
+        }
+        if (buffer == null) {
+            buffer = await(timeoutNanos);
+            if (buffer == null) {
+                return null;
+            }
+        }
+
+        buffer.resize(width,
+                height);
+        buffer.busy = true;
+        return buffer;
+    }
+
+    @Nullable
+    private Buffer await(final long timeoutNanos) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeoutNanos;
+        this.waiter = Thread.currentThread();
+        try {
+            while (true) {
+                //check after publishing the waiter, so a release in between is not missed
+                final Buffer buffer = pop();
+                if (buffer != null) {
+                    return buffer;
+                }
+                if (timeoutNanos < 0) {
+                    LockSupport.park(this);
+                } else {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    LockSupport.parkNanos(this,
+                            remaining);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (this.destroyed) {
+                    throw new IllegalStateException("Swapchain destroyed");
+                }
+            }
+        } finally {
+            this.waiter = null;
+        }
+    }
+
+    /**
+     * Record that a buffer was attached and committed. Call this after the commit, before the buffer can be released.
+     *
+     * @param buffer the submitted buffer.
+     * @param damage the area of the buffer that changed compared to the previous frame, in buffer coordinates.
+     */
+    public void submit(@Nonnull final Buffer buffer,
+                       @Nonnull final RectSet damage) {
+        this.frameNumber++;
+        this.damageHistory[(int) (this.frameNumber % this.damageHistory.length)].set(damage);
+        buffer.frameNumber = this.frameNumber;
+    }
+
+    /**
+     * Hand back a buffer that was acquired but will not be submitted. Its contents are considered unknown, as it may
+     * have been painted partially.
+     *
+     * @param buffer an acquired buffer that was not attached to a surface.
+     */
+    public void discard(@Nonnull final Buffer buffer) {
+        if (!buffer.busy) {
+            throw new IllegalStateException("Buffer is not acquired.");
+        }
+        buffer.frameNumber = 0;
+        buffer.busy = false;
+        push(buffer);
+        if (this.destroyed) {
+            destroyFree();
+            return;
+        }
+        final Thread waiter = this.waiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Set {@code out} to the area of a buffer that is out of date: everything that was damaged by the frames submitted
+     * after this buffer was last submitted, or the whole buffer if its contents are unknown. The caller adds the damage
+     * of the new frame and repaints the result.
+     *
+     * @param buffer an acquired buffer.
+     * @param out    receives the out of date area.
+     * @return {@code out}
+     */
+    public RectSet getBufferDamage(@Nonnull final Buffer buffer,
+                                   @Nonnull final RectSet out) {
+        out.clear();
+        final int age = buffer.getAge();
+        if (age == 0 || age - 1 > this.damageHistory.length) {
+            return out.add(0,
+                    0,
+                    buffer.width,
+                    buffer.height);
+        }
+        for (long frame = buffer.frameNumber + 1; frame <= this.frameNumber; frame++) {
+            out.add(this.damageHistory[(int) (frame % this.damageHistory.length)]);
+        }
+        return out.intersect(0,
+                0,
+                buffer.width,
+                buffer.height);
+    }
+
+    /**
+     * Destroy all buffers. Buffers that are still held by the compositor are destroyed when they are released.
+     */
+    public void destroy() {
+        if (this.destroyed) {
+            return;
+        }
+        this.destroyed = true;
+        final Thread waiter = this.waiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+        destroyFree();
+    }
+
+    private void destroyFree() {
+        Buffer buffer;
+        while ((buffer = pop()) != null) {
+            buffer.destroy();
+        }
+    }
+
+    private void push(final Buffer buffer) {
+        Buffer head;
+        do {
+            head = this.free.get();
+            buffer.next = head;
+        } while (!this.free.compareAndSet(head,
+                buffer));
+    }
+
+    @Nullable
+    private Buffer pop() {
+        Buffer head;
+        do {
+            head = this.free.get();
+            if (head == null) {
+                return null;
+            }
+        } while (!this.free.compareAndSet(head,
+                head.next));
+        head.next = null;
+        return head;
+    }
+
+    // in bytes, wl_shm_pool sizes and strides are signed 32 bit integers so only sizes up to Integer.MAX_VALUE fit
+    static long bufferSize(final int width,
+                           final int height,
+                           final int bytesPerPixel) {
+        return (long) width * bytesPerPixel * height;
+    }
+
+    // the size class of a buffer size, never more than a pool can hold
+    static int poolSize(final long size) {
+        if (size <= MIN_POOL_SIZE) {
+            return MIN_POOL_SIZE;
+        }
+        return (int) Math.min(Long.highestOneBit(size - 1) << 1,
+                Integer.MAX_VALUE);
+    }
+
+    /**
+     * A buffer of a {@link ShmSwapchain}.
+     */
+    public final class Buffer implements WlBufferEvents {
+
+        //next buffer in the free list
+        @Nullable
+        private volatile Buffer next;
+        private volatile boolean busy;
+
+        @Nullable
+        private ShmPool shmPool;
+        @Nullable
+        private WlShmPoolProxy poolProxy;
+        @Nullable
+        private WlBufferProxy bufferProxy;
+        @Nullable
+        private MemorySegment segment;
+        @Nullable
+        private ByteBuffer byteBuffer;
+        private int width;
+        private int height;
+        //the frame this buffer was last submitted in, 0 if its contents are unknown
+        private long frameNumber;
+
+        private Buffer() {
+        }
+
+        // must be called by the acquiring thread while the buffer is not busy
+        private void resize(final int width,
+                            final int height) throws IOException {
+            if (this.bufferProxy != null && this.width == width && this.height == height) {
+                return;
+            }
+            //acquire checked that the size fits in an int
+            final int stride = width * ShmSwapchain.this.bytesPerPixel;
+            final int size = (int) bufferSize(width,
+                    height,
+                    ShmSwapchain.this.bytesPerPixel);
+
+            if (this.bufferProxy != null) {
+                this.bufferProxy.destroy();
+                this.bufferProxy = null;
+            }
+            if (this.shmPool == null || this.shmPool.getSize() < size) {
+                destroyPool();
+                final int poolSize = poolSize(size);
+                this.shmPool = new ShmPool(poolSize);
+                this.poolProxy = ShmSwapchain.this.shmProxy.createPool(POOL_EVENTS,
+                        this.shmPool.getFileDescriptor(),
+                        poolSize);
+            }
+            this.bufferProxy = Objects.requireNonNull(this.poolProxy)
+                    .createBuffer(this,
+                            0,
+                            width,
+                            height,
+                            stride,
+                            ShmSwapchain.this.format);
+            this.segment = this.shmPool.asSegment()
+                    .asSlice(0,
+                            size);
+            this.byteBuffer = this.segment.asByteBuffer()
+                    .order(ByteOrder.nativeOrder());
+            this.width = width;
+            this.height = height;
+            this.frameNumber = 0;
+        }
+
+        @Override
+        public void release(final WlBufferProxy emitter) {
+            if (!this.busy) {
+                return;
+            }
+            this.busy = false;
+            push(this);
+            if (ShmSwapchain.this.destroyed) {
+                destroyFree();
+                return;
+            }
+            final Thread waiter = ShmSwapchain.this.waiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+
+        private void destroy() {
+            if (this.bufferProxy != null) {
+                this.bufferProxy.destroy();
+                this.bufferProxy = null;
+            }
+            destroyPool();
+        }
+
+        private void destroyPool() {
+            if (this.poolProxy != null) {
+                this.poolProxy.destroy();
+                this.poolProxy = null;
+            }
+            if (this.shmPool != null) {
+                try {
+                    this.shmPool.close();
+                } catch (final IOException e) {
+                    LOG.error("Failed to close shm pool.",
+                            e);
+                }
+                this.shmPool = null;
+                this.segment = null;
+                this.byteBuffer = null;
+            }
+        }
+
+        /**
+         * @return the {@code wl_buffer} to attach.
+         */
+        public WlBufferProxy getProxy() {
+            return Objects.requireNonNull(this.bufferProxy);
+        }
+
+        /**
+         * @return the pixels of this buffer, {@link #getStride()} times {@link #getHeight()} bytes.
+         */
+        public MemorySegment getSegment() {
+            return Objects.requireNonNull(this.segment);
+        }
+
+        /**
+         * @return the pixels of this buffer, in native byte order.
+         */
+        public ByteBuffer getByteBuffer() {
+            return Objects.requireNonNull(this.byteBuffer);
+        }
+
+        public int getWidth() {
+            return this.width;
+        }
+
+        public int getHeight() {
+            return this.height;
+        }
+
+        public int getStride() {
+            return this.width * ShmSwapchain.this.bytesPerPixel;
+        }
+
+        /**
+         * The age of the contents of this buffer, as in {@code EGL_EXT_buffer_age}: 1 if it holds the previously
+         * submitted frame, 2 if it holds the frame before that, and so on.
+         *
+         * @return the age of this buffer, or 0 if its contents are unknown and it has to be repainted completely.
+         */
+        public int getAge() {
+            if (this.frameNumber == 0) {
+                return 0;
+            }
+            final long age = ShmSwapchain.this.frameNumber - this.frameNumber + 1;
+            return age > Integer.MAX_VALUE ? 0 : (int) age;
+        }
+    }
+}
@@ -0,0 +1,528 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.server.shm;
+
+import org.freedesktop.wayland.raw.LibWayland;
+import org.freedesktop.wayland.server.DestroyListener;
+import org.freedesktop.wayland.server.EventLoopExecutor;
+import org.freedesktop.wayland.server.ShmBuffer;
+import org.freedesktop.wayland.server.WlBufferResource;
+import org.freedesktop.wayland.util.pixels.PixelConverter;
+import org.freedesktop.wayland.util.pixels.PixelFormat;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Copies the pixels of client {@code wl_shm} buffers into compositor owned {@link Image}s, off the event loop thread.
+ * <p>
+ * Reading a client buffer inside {@code wl_shm_buffer_begin_access} and {@code wl_shm_buffer_end_access} on the event
+ * loop thread stalls every other client for as long as the copy takes. This importer only does the bookkeeping on the
+ * event loop thread: it takes a reference on the pool of the buffer with {@code wl_shm_buffer_ref_pool}, so the client
+ * can not remap it while it is read, and hands the copy or conversion of the damaged rows to a worker executor. When
+ * the copy is done, the pool reference is dropped, {@code wl_buffer.release} is sent and the returned future is
+ * completed, all back on the event loop thread through an {@link EventLoopExecutor}.
+ * <p>
+ * The worker ends its access with {@code wl_shm_buffer_end_access} while the event loop thread waits for it, as that
+ * call posts an error to the client if the client truncated its pool during the copy. The event loop only waits for
+ * that single call.
+ * <p>
+ * An import that changes the size of an image copies into new pixels, which replace the old pixels of the image when
+ * the import completes, so the old pixels can be read until then.
+ * <p>
+ * If the client destroys the buffer while its import is still queued, the import is cancelled. If the copy is already
+ * running, it stops at the next {@value #ROWS_PER_STEP} rows, and the destruction waits for the worker to end its
+ * access, as the buffer is freed right after.
+ * <p>
+ * Except for {@link Image}, all methods of this class must be called on the event loop thread.
+ */
+public final class ShmImporter implements AutoCloseable {
+
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(ShmImporter.class);
+
+    /**
+     * The number of rows that is copied before checking if the import was cancelled.
+     */
+    public static final int ROWS_PER_STEP = 64;
+
+    private final EventLoopExecutor eventLoop;
+    private final Executor workers;
+    private final Set<Job> active = new HashSet<>();
+    private boolean closed;
+
+    /**
+     * Create a new importer.
+     *
+     * @param eventLoop runs the completions on the event loop thread.
+     * @param workers   the executor that copies the pixels.
+     */
+    public ShmImporter(@Nonnull final EventLoopExecutor eventLoop,
+                       @Nonnull final Executor workers) {
+        this.eventLoop = Objects.requireNonNull(eventLoop);
+        this.workers = Objects.requireNonNull(workers);
+    }
+
+    /**
+     * Import the whole buffer into an image.
+     *
+     * @param buffer a {@code wl_shm} buffer.
+     * @param target the image to copy into.
+     * @return a future that is completed on the event loop thread once the buffer is released.
+     * @see #importBuffer(WlBufferResource, Image, int, int)
+     */
+    public CompletableFuture<Image> importBuffer(@Nonnull final WlBufferResource buffer,
+                                                 @Nonnull final Image target) {
+        return importBuffer(buffer,
+                target,
+                0,
+                Integer.MAX_VALUE);
+    }
+
+    /**
+     * Import the damaged rows of a buffer into an image. The rest of the image keeps the pixels of earlier imports,
+     * unless the size of the buffer changed, in which case the whole buffer is imported.
+     * <p>
+     * Imports into the same image run one after the other, in the order they were started. The pixels of the image can
+     * be read on the event loop thread at any time. An import that changes the size of the image copies into new
+     * pixels that replace the old ones when its future completes. Other imports copy the damaged rows in place, so
+     * those rows can show a mix of the old and new content until the future completes.
+     *
+     * @param buffer       a {@code wl_shm} buffer.
+     * @param target       the image to copy into.
+     * @param damageY      the first damaged row.
+     * @param damageHeight the number of damaged rows.
+     * @return a future that is completed on the event loop thread once the buffer is released. It is completed with
+     * a {@link CancellationException} if the buffer was destroyed before it could be read.
+     * @throws IllegalArgumentException if the buffer is not a {@code wl_shm} buffer, or has an unsupported format.
+     */
+    public CompletableFuture<Image> importBuffer(@Nonnull final WlBufferResource buffer,
+                                                 @Nonnull final Image target,
+                                                 final int damageY,
+                                                 final int damageHeight) {
+        if (this.closed) {
+            throw new IllegalStateException("Importer is closed.");
+        }
+        final ShmBuffer shmBuffer = ShmBuffer.get(buffer);
+        if (shmBuffer == null) {
+            throw new IllegalArgumentException("Not a wl_shm buffer.");
+        }
+        final PixelFormat format = PixelFormat.fromShmFormat(shmBuffer.getFormat());
+
+        final Job job = new Job(buffer,
+                shmBuffer,
+                format,
+                target,
+                damageY,
+                damageHeight);
+        buffer.register(job);
+        this.active.add(job);
+        //the tail never completes exceptionally, so a rejected job does not stop the imports after it
+        target.tail = target.tail.thenRunAsync(job,
+                        this.workers)
+                .handle((ignored, error) -> {
+                    if (error != null) {
+                        job.rejected(error);
+                    }
+                    return null;
+                });
+        return job.future;
+    }
+
+    // must be called on the event loop thread
+    private void finish(final Job job) {
+        if (!this.active.remove(job)) {
+            return;
+        }
+        LibWayland.wl_shm_pool_unref(job.pool);
+        if (!job.bufferDestroyed) {
+            job.buffer.unregister(job);
+            job.buffer.release();
+        }
+        //pixels that were replaced by a later size before an import into them completed, nothing reads them
+        if (job.replaced != null && job.replaced != job.target.current) {
+            job.replaced.close();
+        }
+        if (job.failure != null) {
+            job.future.completeExceptionally(job.failure);
+        } else if (job.cancelled) {
+            job.future.completeExceptionally(new CancellationException("Buffer was destroyed before it was read."));
+        } else {
+            job.target.publish(job.storage);
+            job.future.complete(job.target);
+        }
+    }
+
+    /**
+     * Stop importing. Imports that did not start copying yet are cancelled, imports that are copying are stopped at the
+     * next rows. Their buffers are released and their futures completed before this method returns.
+     * <p>
+     * This also completes the imports that could not hand their completion to the {@link EventLoopExecutor} because it
+     * was closed first. Their workers wait until then, so close the importer before its executor.
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        for (final Job job : new ArrayList<>(this.active)) {
+            job.cancel();
+            finish(job);
+        }
+    }
+
+    /**
+     * Compositor owned pixels that client buffers are imported into, usually one per surface.
+     */
+    public static final class Image implements AutoCloseable {
+
+        private final PixelFormat format;
+        private final PixelConverter.Alpha alpha;
+        //the pixels that are read, only replaced on the event loop thread when an import completes
+        private Storage current;
+        //the pixels the next import copies into, only used by the imports, one after the other
+        private Storage latest;
+        //only used on the event loop thread
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+        /**
+         * Create an empty image.
+         *
+         * @param format the format to convert imported pixels to.
+         */
+        public Image(@Nonnull final PixelFormat format) {
+            this(format,
+                    PixelConverter.Alpha.KEEP);
+        }
+
+        /**
+         * Create an empty image.
+         *
+         * @param format the format to convert imported pixels to.
+         * @param alpha  what to do with the alpha of imported pixels.
+         */
+        public Image(@Nonnull final PixelFormat format,
+                     @Nonnull final PixelConverter.Alpha alpha) {
+            this.format = Objects.requireNonNull(format);
+            this.alpha = Objects.requireNonNull(alpha);
+        }
+
+        /**
+         * The pixels of the image. The segment is replaced, and the old segment freed, when an import that changed the
+         * size of the image completes.
+         *
+         * @return a segment of {@link #getStride()} times {@link #getHeight()} bytes.
+         */
+        public MemorySegment getSegment() {
+            return this.current == null ? MemorySegment.NULL : this.current.segment;
+        }
+
+        public PixelFormat getFormat() {
+            return this.format;
+        }
+
+        public int getWidth() {
+            return this.current == null ? 0 : this.current.width;
+        }
+
+        public int getHeight() {
+            return this.current == null ? 0 : this.current.height;
+        }
+
+        public int getStride() {
+            return this.current == null ? 0 : this.current.stride;
+        }
+
+        // called on the event loop thread when an import into the storage completed
+        private void publish(final Storage storage) {
+            if (storage == this.current) {
+                return;
+            }
+            if (this.current != null) {
+                this.current.close();
+            }
+            this.current = storage;
+        }
+
+        /**
+         * Free the pixels. The image must not be used anymore, and no import into it may be running.
+         */
+        @Override
+        public void close() {
+            if (this.latest != null && this.latest != this.current) {
+                this.latest.close();
+            }
+            if (this.current != null) {
+                this.current.close();
+            }
+            this.latest = null;
+            this.current = null;
+        }
+    }
+
+    private static final class Storage {
+        private final Arena arena = Arena.ofShared();
+        private final int width;
+        private final int height;
+        private final int stride;
+        private final MemorySegment segment;
+        //false while rows are copied into it, and after a copy that did not finish
+        private boolean complete;
+
+        Storage(final PixelFormat format,
+                final int width,
+                final int height) {
+            this.width = width;
+            this.height = height;
+            this.stride = width * format.getBytesPerPixel();
+            this.segment = this.arena.allocate((long) this.stride * height,
+                    8);
+        }
+
+        void close() {
+            this.arena.close();
+        }
+    }
+
+    private final class Job implements Runnable, DestroyListener {
+        private static final int QUEUED = 0;
+        private static final int COPYING = 1;
+        private static final int ENDING = 2;
+        private static final int DONE = 3;
+
+        private final WlBufferResource buffer;
+        private final ShmBuffer shmBuffer;
+        private final PixelFormat format;
+        private final Image target;
+        private final int damageY;
+        private final int damageHeight;
+        private final MemorySegment pool;
+        private final MemorySegment data;
+        private final int width;
+        private final int height;
+        private final int stride;
+        private final CompletableFuture<Image> future = new CompletableFuture<>();
+
+        //guarded by this
+        private int state = QUEUED;
+        private boolean cancelled;
+        private boolean loopWaiting;
+        //written by the worker before the job is handed back to the event loop
+        private Throwable failure;
+        private Storage storage;
+        private Storage replaced;
+        //only used on the event loop thread
+        private boolean bufferDestroyed;
+
+        Job(final WlBufferResource buffer,
+            final ShmBuffer shmBuffer,
+            final PixelFormat format,
+            final Image target,
+            final int damageY,
+            final int damageHeight) {
+            this.buffer = buffer;
+            this.shmBuffer = shmBuffer;
+            this.format = format;
+            this.target = target;
+            this.damageY = damageY;
+            this.damageHeight = damageHeight;
+            this.pool = LibWayland.wl_shm_buffer_ref_pool(shmBuffer.pointer);
+            this.data = LibWayland.wl_shm_buffer_get_data(shmBuffer.pointer);
+            this.width = shmBuffer.getWidth();
+            this.height = shmBuffer.getHeight();
+            this.stride = shmBuffer.getStride();
+        }
+
+        @Override
+        public void run() {
+            if (!start()) {
+                try {
+                    ShmImporter.this.eventLoop.execute(() -> finish(this));
+                } catch (final RejectedExecutionException e) {
+                    LOG.warn("event loop executor closed before shm buffer import completed, completing it on close");
+                }
+                return;
+            }
+            this.shmBuffer.beginAccess();
+            try {
+                copy();
+            } catch (final Throwable t) {
+                LOG.error("shm buffer import failed",
+                        t);
+                this.failure = t;
+            } finally {
+                awaitEventLoop();
+                //may post an error to the client, the event loop thread is waiting so it does not race with it
+                this.shmBuffer.endAccess();
+                synchronized (this) {
+                    this.state = DONE;
+                    notifyAll();
+                }
+            }
+        }
+
+        private synchronized boolean start() {
+            if (this.cancelled) {
+                return false;
+            }
+            this.state = COPYING;
+            return true;
+        }
+
+        private synchronized boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        private void copy() {
+            Storage dst = this.target.latest;
+            final boolean resized = dst == null || dst.width != this.width || dst.height != this.height;
+            final boolean full = resized || !dst.complete;
+            if (resized) {
+                //the event loop keeps reading the current pixels until this import completes
+                this.replaced = dst;
+                dst = new Storage(this.target.format,
+                        this.width,
+                        this.height);
+                this.target.latest = dst;
+            }
+            this.storage = dst;
+            dst.complete = false;
+            try (final Arena arena = Arena.ofConfined()) {
+                final MemorySegment src = this.data.reinterpret((long) this.stride * this.height,
+                        arena,
+                        null);
+                final int y0 = full ? 0 : Math.max(0,
+                        this.damageY);
+                final int y1 = full ? this.height : (int) Math.min(this.height,
+                        (long) this.damageY + this.damageHeight);
+                for (int y = y0; y < y1 && !isCancelled(); y += ROWS_PER_STEP) {
+                    PixelConverter.convert(src.asSlice((long) y * this.stride),
+                            this.stride,
+                            this.format,
+                            dst.segment.asSlice((long) y * dst.stride),
+                            dst.stride,
+                            this.target.format,
+                            this.target.alpha,
+                            this.width,
+                            Math.min(ROWS_PER_STEP,
+                                    y1 - y));
+                }
+            }
+            //a copy that stopped early leaves rows behind, the next import copies everything
+            dst.complete = !isCancelled();
+        }
+
+        // asks the event loop thread to wait for the end of the access, and waits until it does
+        private void awaitEventLoop() {
+            synchronized (this) {
+                this.state = ENDING;
+                if (this.loopWaiting) {
+                    return;
+                }
+            }
+            try {
+                ShmImporter.this.eventLoop.execute(() -> {
+                    join();
+                    finish(this);
+                });
+            } catch (final RejectedExecutionException e) {
+                LOG.warn("event loop executor closed before shm buffer import completed, completing it on close");
+            }
+            boolean interrupted = false;
+            synchronized (this) {
+                while (!this.loopWaiting) {
+                    try {
+                        wait();
+                    } catch (final InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread()
+                        .interrupt();
+            }
+        }
+
+        // called on the event loop thread, lets the worker end its access and waits until it did
+        private synchronized void join() {
+            if (this.state == QUEUED) {
+                return;
+            }
+            this.loopWaiting = true;
+            notifyAll();
+            boolean interrupted = false;
+            while (this.state != DONE) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread()
+                        .interrupt();
+            }
+        }
+
+        // the worker executor rejected the job, it never runs
+        private void rejected(final Throwable error) {
+            synchronized (this) {
+                if (this.state != QUEUED) {
+                    return;
+                }
+                this.cancelled = true;
+            }
+            LOG.error("shm buffer import rejected by worker executor",
+                    error);
+            this.failure = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            try {
+                ShmImporter.this.eventLoop.execute(() -> finish(this));
+            } catch (final RejectedExecutionException e) {
+                LOG.warn("event loop executor closed before shm buffer import completed, completing it on close");
+            }
+        }
+
+        // keeps a queued copy from starting, and stops a running copy at the next rows
+        private void cancel() {
+            synchronized (this) {
+                this.cancelled = true;
+            }
+            join();
+        }
+
+        @Override
+        public void handle() {
+            //the buffer resource is being destroyed, its wl_shm_buffer is freed right after this returns
+            this.bufferDestroyed = true;
+            cancel();
+        }
+    }
+}
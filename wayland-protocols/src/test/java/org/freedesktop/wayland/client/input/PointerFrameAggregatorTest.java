@@ -0,0 +1,231 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.client.input;
+
+import org.junit.jupiter.api.Assertions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class PointerFrameAggregatorTest {
+
+    // the frame fields we look at, frames are pooled so they are copied when delivered
+    private record Delivered(int mask,
+                             int x,
+                             int y,
+                             int motionCount,
+                             int buttonCount) {
+    }
+
+    private final List<Delivered> delivered = new ArrayList<>();
+
+    private PointerFrameAggregator aggregator(final FramePolicy policy) {
+        return new PointerFrameAggregator(policy,
+                // the position is only meaningful in frames with motion
+                frame -> this.delivered.add(new Delivered(frame.getMask(),
+                        frame.has(PointerFrame.MOTION) ? frame.getX() : 0,
+                        frame.has(PointerFrame.MOTION) ? frame.getY() : 0,
+                        frame.getMotionCount(),
+                        frame.getButtonCount())));
+    }
+
+    // a pointer that sends wl_pointer.frame
+    private static final int VERSION = 9;
+
+    private static void motion(final PointerFrameAggregator aggregator,
+                               final int x,
+                               final int y) {
+        aggregator.motion(VERSION,
+                0,
+                x,
+                y);
+    }
+
+    private static void button(final PointerFrameAggregator aggregator,
+                               final int button,
+                               final int state) {
+        aggregator.button(VERSION,
+                1,
+                0,
+                button,
+                state);
+    }
+
+    private static void frame(final PointerFrameAggregator aggregator) {
+        aggregator.frame(null);
+    }
+
+    @org.junit.jupiter.api.Test
+    void immediateDeliversOneFramePerFrameEvent() {
+        final PointerFrameAggregator aggregator = aggregator(FramePolicy.IMMEDIATE);
+        motion(aggregator,
+                1,
+                2);
+        button(aggregator,
+                272,
+                1);
+        Assertions.assertTrue(this.delivered.isEmpty());
+
+        frame(aggregator);
+        Assertions.assertEquals(List.of(new Delivered(PointerFrame.MOTION | PointerFrame.BUTTON,
+                        1,
+                        2,
+                        1,
+                        1)),
+                this.delivered);
+
+        // a frame event without any events before it is not a frame
+        frame(aggregator);
+        Assertions.assertEquals(1,
+                this.delivered.size());
+    }
+
+    @org.junit.jupiter.api.Test
+    void queueKeepsFramesUntilFlush() {
+        final PointerFrameAggregator aggregator = aggregator(FramePolicy.QUEUE);
+        motion(aggregator,
+                1,
+                1);
+        frame(aggregator);
+        motion(aggregator,
+                2,
+                2);
+        frame(aggregator);
+
+        Assertions.assertTrue(this.delivered.isEmpty());
+        Assertions.assertEquals(2,
+                aggregator.getPendingFrames());
+        Assertions.assertEquals(2,
+                aggregator.flush());
+        Assertions.assertEquals(List.of(new Delivered(PointerFrame.MOTION,
+                                1,
+                                1,
+                                1,
+                                0),
+                        new Delivered(PointerFrame.MOTION,
+                                2,
+                                2,
+                                1,
+                                0)),
+                this.delivered);
+        Assertions.assertEquals(0,
+                aggregator.getPendingFrames());
+    }
+
+    @org.junit.jupiter.api.Test
+    void coalesceMergesConsecutiveMotion() {
+        final PointerFrameAggregator aggregator = aggregator(FramePolicy.COALESCE_MOTION);
+        for (int i = 1; i <= 3; i++) {
+            motion(aggregator,
+                    i,
+                    10 * i);
+            frame(aggregator);
+        }
+        // a button frame is a boundary, motion after it is not merged into the motion before it
+        button(aggregator,
+                272,
+                1);
+        frame(aggregator);
+        motion(aggregator,
+                7,
+                70);
+        frame(aggregator);
+
+        Assertions.assertEquals(3,
+                aggregator.getPendingFrames());
+        aggregator.flush();
+        Assertions.assertEquals(List.of(new Delivered(PointerFrame.MOTION,
+                                3,
+                                30,
+                                3,
+                                0),
+                        new Delivered(PointerFrame.BUTTON,
+                                0,
+                                0,
+                                0,
+                                1),
+                        new Delivered(PointerFrame.MOTION,
+                                7,
+                                70,
+                                1,
+                                0)),
+                this.delivered);
+    }
+
+    @org.junit.jupiter.api.Test
+    void pendingFramesAreCapped() {
+        final PointerFrameAggregator aggregator = aggregator(FramePolicy.QUEUE);
+        aggregator.setMaxPendingFrames(2);
+        for (int i = 1; i <= 5; i++) {
+            motion(aggregator,
+                    i,
+                    i);
+            frame(aggregator);
+        }
+
+        // the oldest frames were handed over in order, nothing was dropped
+        Assertions.assertEquals(2,
+                aggregator.getPendingFrames());
+        Assertions.assertEquals(3,
+                this.delivered.size());
+        aggregator.flush();
+        Assertions.assertEquals(5,
+                this.delivered.size());
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(i + 1,
+                    this.delivered.get(i)
+                            .x());
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    void everyEventIsAFrameBeforeVersion5() {
+        final PointerFrameAggregator aggregator = aggregator(FramePolicy.IMMEDIATE);
+        aggregator.motion(4,
+                0,
+                1,
+                2);
+        aggregator.button(4,
+                1,
+                0,
+                272,
+                1);
+        aggregator.axis(4,
+                0,
+                0,
+                10);
+
+        Assertions.assertEquals(List.of(new Delivered(PointerFrame.MOTION,
+                                1,
+                                2,
+                                1,
+                                0),
+                        new Delivered(PointerFrame.BUTTON,
+                                0,
+                                0,
+                                0,
+                                1),
+                        new Delivered(PointerFrame.AXIS,
+                                0,
+                                0,
+                                0,
+                                0)),
+                this.delivered);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.client.shm;
+
+import org.junit.jupiter.api.Assertions;
+
+class ShmSwapchainTest {
+
+    @org.junit.jupiter.api.Test
+    void poolSizesAreRoundedUp() {
+        Assertions.assertEquals(64 * 1024,
+                ShmSwapchain.poolSize(1));
+        Assertions.assertEquals(1 << 20,
+                ShmSwapchain.poolSize(1 << 20));
+        Assertions.assertEquals(1 << 21,
+                ShmSwapchain.poolSize((1 << 20) + 1));
+    }
+
+    @org.junit.jupiter.api.Test
+    void largeSizesDoNotOverflow() {
+        // 16384x16384 XRGB8888 is exactly 1GiB, one pixel row more used to overflow the rounded pool size
+        final long size = ShmSwapchain.bufferSize(16384,
+                16385,
+                4);
+        Assertions.assertEquals(16384L * 16385 * 4,
+                size);
+        Assertions.assertEquals(Integer.MAX_VALUE,
+                ShmSwapchain.poolSize(size));
+
+        // stride * height used to wrap around to a small positive size
+        Assertions.assertTrue(ShmSwapchain.bufferSize(40000,
+                40000,
+                4) > Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright © 2015 Erik De Rijcke
+ * Copyright © 2024 Casey Link
+ *
+ * Licensed under the Apache License,Version2.0(the"License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,software
+ * distributed under the License is distributed on an"AS IS"BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.freedesktop.wayland.server.shm;
+
+import org.freedesktop.wayland.raw.LibWayland;
+import org.freedesktop.wayland.server.Client;
+import org.freedesktop.wayland.server.Display;
+import org.freedesktop.wayland.server.EventLoopExecutor;
+import org.freedesktop.wayland.server.WlBufferResource;
+import org.freedesktop.wayland.util.pixels.PixelFormat;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.newsclub.net.unix.AFUNIXSocketChannel;
+import org.newsclub.net.unix.AFUNIXSocketPair;
+import org.newsclub.net.unix.FileDescriptorCast;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class ShmImporterTest {
+
+    private static final int REGISTRY_ID = 2;
+    private static final int SHM_ID = 3;
+    private static final int POOL_ID = 4;
+    private static final int BUFFER_ID = 5;
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 8;
+    private static final int POOL_SIZE = WIDTH * HEIGHT * 4;
+    private static final int WL_SHM_FORMAT_ARGB8888 = 0;
+
+    // a display with wl_shm and a client that talks raw wire protocol over a socket pair
+    private static final class Connection implements AutoCloseable {
+        final Display display = Display.create();
+        final AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open();
+        final Client client;
+        final EventLoopExecutor eventLoop;
+        final ExecutorService worker = Executors.newSingleThreadExecutor();
+        final Path poolFile = Files.createTempFile("shm-importer-test",
+                ".pool");
+        final RandomAccessFile pool = new RandomAccessFile(this.poolFile.toFile(),
+                "rw");
+        final MappedByteBuffer pixels;
+
+        Connection() throws IOException {
+            this.display.initShm();
+            this.client = Client.create(this.display,
+                    FileDescriptorCast.using(this.pair.getFirst()
+                                    .getFileDescriptor())
+                            .as(Integer.class));
+            this.eventLoop = new EventLoopExecutor(this.display);
+            this.pair.getSecond()
+                    .configureBlocking(false);
+            this.pool.setLength(POOL_SIZE);
+            this.pixels = this.pool.getChannel()
+                    .map(FileChannel.MapMode.READ_WRITE,
+                            0,
+                            POOL_SIZE);
+            this.pixels.order(ByteOrder.nativeOrder());
+
+            // wl_display.get_registry, then bind wl_shm
+            send(Display.OBJECT_ID, 1, REGISTRY_ID);
+            int shmName = -1;
+            ByteBuffer events = receive();
+            while (events.remaining() >= 8) {
+                int start = events.position();
+                int objectId = events.getInt();
+                int sizeOpcode = events.getInt();
+                if (objectId == REGISTRY_ID && (sizeOpcode & 0xffff) == 0) {
+                    int name = events.getInt();
+                    byte[] anInterface = new byte[events.getInt() - 1];
+                    events.get(anInterface);
+                    if (new String(anInterface, StandardCharsets.US_ASCII).equals("wl_shm")) {
+                        shmName = name;
+                    }
+                }
+                events.position(start + (sizeOpcode >>> 16));
+            }
+            Assertions.assertNotEquals(-1, shmName);
+            byte[] anInterface = "wl_shm\0\0".getBytes(StandardCharsets.US_ASCII);
+            ByteBuffer bind = ByteBuffer.allocate(32).order(ByteOrder.nativeOrder());
+            bind.putInt(REGISTRY_ID).putInt(32 << 16).putInt(shmName).putInt(7).put(anInterface).putInt(1).putInt(SHM_ID).flip();
+            this.pair.getSecond().write(bind);
+            dispatch();
+
+            // wl_shm.create_pool, the fd goes along with the request
+            this.pair.getSecond().setOutboundFileDescriptors(this.pool.getFD());
+            send(SHM_ID, 0, POOL_ID, POOL_SIZE);
+            createBuffer(BUFFER_ID, WIDTH, HEIGHT);
+        }
+
+        void createBuffer(int id, int width, int height) throws IOException {
+            // wl_shm_pool.create_buffer
+            send(POOL_ID, 0, id, 0, width, height, width * 4, WL_SHM_FORMAT_ARGB8888);
+        }
+
+        WlBufferResource buffer(int id) {
+            MemorySegment resource = LibWayland.wl_client_get_object(this.client.pointer, id);
+            Assertions.assertNotEquals(0, resource.address());
+            return new WlBufferResource(resource);
+        }
+
+        void send(int objectId, int opcode, int... arguments) throws IOException {
+            int size = 8 + arguments.length * 4;
+            ByteBuffer request = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+            request.putInt(objectId).putInt(size << 16 | opcode);
+            for (int argument : arguments) {
+                request.putInt(argument);
+            }
+            request.flip();
+            this.pair.getSecond().write(request);
+            dispatch();
+        }
+
+        void dispatch() {
+            this.display.getEventLoop().dispatch(0);
+            this.display.flushClients();
+        }
+
+        void dispatchUntilDone(CompletableFuture<?> future) {
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+            while (!future.isDone() && System.nanoTime() < end) {
+                this.display.getEventLoop().dispatch(10);
+            }
+            Assertions.assertTrue(future.isDone());
+            this.display.flushClients();
+        }
+
+        ByteBuffer receive() throws IOException {
+            ByteBuffer events = ByteBuffer.allocate(4096).order(ByteOrder.nativeOrder());
+            this.pair.getSecond().read(events);
+            return events.flip();
+        }
+
+        // true if a wl_buffer.release for the buffer is among the events the client received
+        boolean released(int id) throws IOException {
+            ByteBuffer events = receive();
+            boolean released = false;
+            while (events.remaining() >= 8) {
+                int start = events.position();
+                int objectId = events.getInt();
+                int sizeOpcode = events.getInt();
+                released |= objectId == id && (sizeOpcode & 0xffff) == 0;
+                events.position(start + (sizeOpcode >>> 16));
+            }
+            return released;
+        }
+
+        void fill(int y, int height, int base) {
+            for (int row = y; row < y + height; row++) {
+                for (int column = 0; column < WIDTH; column++) {
+                    this.pixels.putInt((row * WIDTH + column) * 4, pixel(base, column, row));
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.worker.shutdown();
+            this.eventLoop.close();
+            this.client.destroy();
+            this.display.destroy();
+            this.pool.close();
+            Files.delete(this.poolFile);
+        }
+    }
+
+    private static int pixel(int base, int column, int row) {
+        return 0xff000000 | base | row << 8 | column;
+    }
+
+    private static void assertRows(ShmImporter.Image image, int y, int height, int base) {
+        for (int row = y; row < y + height; row++) {
+            for (int column = 0; column < image.getWidth(); column++) {
+                Assertions.assertEquals(pixel(base, column, row),
+                        image.getSegment().get(ValueLayout.JAVA_INT, (long) row * image.getStride() + column * 4L),
+                        column + "," + row);
+            }
+        }
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) {
+        Assertions.assertTrue(future.isCompletedExceptionally());
+        return future.handle((ignored, error) -> error).join();
+    }
+
+    @Test
+    public void damaged_rows_are_copied() throws IOException {
+        try (Connection connection = new Connection();
+             ShmImporter importer = new ShmImporter(connection.eventLoop, connection.worker);
+             ShmImporter.Image image = new ShmImporter.Image(PixelFormat.ARGB8888)) {
+            WlBufferResource buffer = connection.buffer(BUFFER_ID);
+            connection.fill(0, HEIGHT, 0x110000);
+            CompletableFuture<ShmImporter.Image> imported = importer.importBuffer(buffer, image);
+            connection.dispatchUntilDone(imported);
+            Assertions.assertSame(image, imported.join());
+            Assertions.assertEquals(WIDTH, image.getWidth());
+            Assertions.assertEquals(HEIGHT, image.getHeight());
+            assertRows(image, 0, HEIGHT, 0x110000);
+
+            // only rows 2 and 3 are damaged, the other changed rows are not copied
+            connection.fill(0, HEIGHT, 0x220000);
+            MemorySegment segment = image.getSegment();
+            imported = importer.importBuffer(buffer, image, 2, 2);
+            connection.dispatchUntilDone(imported);
+            Assertions.assertSame(segment, image.getSegment());
+            assertRows(image, 0, 2, 0x110000);
+            assertRows(image, 2, 2, 0x220000);
+            assertRows(image, 4, HEIGHT - 4, 0x110000);
+        }
+    }
+
+    @Test
+    public void buffer_is_released_after_the_import_completes() throws IOException {
+        try (Connection connection = new Connection()) {
+            List<Runnable> held = new ArrayList<>();
+            try (ShmImporter importer = new ShmImporter(connection.eventLoop, held::add);
+                 ShmImporter.Image image = new ShmImporter.Image(PixelFormat.ARGB8888)) {
+                connection.released(BUFFER_ID);
+                CompletableFuture<ShmImporter.Image> imported = importer.importBuffer(connection.buffer(BUFFER_ID), image);
+                connection.dispatch();
+                Assertions.assertFalse(imported.isDone());
+                Assertions.assertFalse(connection.released(BUFFER_ID));
+
+                held.forEach(connection.worker::execute);
+                connection.dispatchUntilDone(imported);
+                Assertions.assertFalse(imported.isCompletedExceptionally());
+                Assertions.assertTrue(connection.released(BUFFER_ID));
+            }
+        }
+    }
+
+    @Test
+    public void destroying_the_buffer_cancels_its_import() throws IOException {
+        try (Connection connection = new Connection()) {
+            List<Runnable> held = new ArrayList<>();
+            try (ShmImporter importer = new ShmImporter(connection.eventLoop, held::add);
+                 ShmImporter.Image image = new ShmImporter.Image(PixelFormat.ARGB8888)) {
+                CompletableFuture<ShmImporter.Image> imported = importer.importBuffer(connection.buffer(BUFFER_ID), image);
+                // wl_buffer.destroy while the copy is queued
+                connection.send(BUFFER_ID, 0);
+                connection.released(BUFFER_ID);
+
+                held.forEach(connection.worker::execute);
+                connection.dispatchUntilDone(imported);
+                Assertions.assertInstanceOf(CancellationException.class, failure(imported));
+                Assertions.assertFalse(connection.released(BUFFER_ID));
+                Assertions.assertEquals(0, image.getWidth());
+            }
+        }
+    }
+
+    @Test
+    public void close_completes_queued_imports() throws IOException {
+        try (Connection connection = new Connection();
+             ShmImporter.Image image = new ShmImporter.Image(PixelFormat.ARGB8888)) {
+            List<Runnable> held = new ArrayList<>();
+            ShmImporter importer = new ShmImporter(connection.eventLoop, held::add);
+            WlBufferResource buffer = connection.buffer(BUFFER_ID);
+            CompletableFuture<ShmImporter.Image> imported = importer.importBuffer(buffer, image);
+            connection.released(BUFFER_ID);
+
+            importer.close();
+            Assertions.assertInstanceOf(CancellationException.class, failure(imported));
+            connection.display.flushClients();
+            Assertions.assertTrue(connection.released(BUFFER_ID));
+            Assertions.assertThrows(IllegalStateException.class,
+                    () -> importer.importBuffer(buffer, image));
+
+            // the queued copy finds its job cancelled and does nothing
+            held.forEach(connection.worker::execute);
+            connection.worker.shutdown();
+            Assertions.assertDoesNotThrow(() -> connection.worker.awaitTermination(2, TimeUnit.SECONDS));
+            connection.dispatch();
+        }
+    }
+
+    @Test
+    public void resized_image_keeps_its_pixels_until_the_import_completes() throws IOException {
+        try (Connection connection = new Connection()) {
+            List<Runnable> held = new ArrayList<>();
+            try (ShmImporter importer = new ShmImporter(connection.eventLoop, held::add);
+                 ShmImporter.Image image = new ShmImporter.Image(PixelFormat.ARGB8888)) {
+                connection.fill(0, HEIGHT, 0x110000);
+                CompletableFuture<ShmImporter.Image> imported = importer.importBuffer(connection.buffer(BUFFER_ID), image);
+                held.forEach(connection.worker::execute);
+                held.clear();
+                connection.dispatchUntilDone(imported);
+                MemorySegment old = image.getSegment();
+
+                // a buffer half as high over the same pool
+                connection.createBuffer(BUFFER_ID + 1, WIDTH, HEIGHT / 2);
+                connection.fill(0, HEIGHT / 2, 0x220000);
+                imported = importer.importBuffer(connection.buffer(BUFFER_ID + 1), image);
+                held.forEach(connection.worker::execute);
+
+                // the worker copies into new pixels, the old ones stay readable until the event loop completes it
+                Assertions.assertSame(old, image.getSegment());
+                Assertions.assertEquals(HEIGHT, image.getHeight());
+                Assertions.assertTrue(old.scope().isAlive());
+                assertRows(image, 0, HEIGHT, 0x110000);
+
+                connection.dispatchUntilDone(imported);
+                Assertions.assertNotSame(old, image.getSegment());
+                Assertions.assertFalse(old.scope().isAlive());
+                Assertions.assertEquals(HEIGHT / 2, image.getHeight());
+                assertRows(image, 0, HEIGHT / 2, 0x220000);
+            }
+        }
+    }
+
+    @Test
+    public void rejected_import_does_not_stop_later_imports() throws IOException {
+        try (Connection connection = new Connection()) {
+            AtomicBoolean reject = new AtomicBoolean(true);
+            try (ShmImporter importer = new ShmImporter(connection.eventLoop, task -> {
+                if (reject.getAndSet(false)) {
+                    throw new RejectedExecutionException("busy");
+                }
+                connection.worker.execute(task);
+            });
+                 ShmImporter.Image image = new ShmImporter.Image(PixelFormat.ARGB8888)) {
+                WlBufferResource buffer = connection.buffer(BUFFER_ID);
+                connection.released(BUFFER_ID);
+                CompletableFuture<ShmImporter.Image> rejected = importer.importBuffer(buffer, image);
+                connection.dispatchUntilDone(rejected);
+                Assertions.assertInstanceOf(RejectedExecutionException.class, failure(rejected));
+                Assertions.assertTrue(connection.released(BUFFER_ID));
+
+                connection.fill(0, HEIGHT, 0x330000);
+                CompletableFuture<ShmImporter.Image> imported = importer.importBuffer(buffer, image);
+                connection.dispatchUntilDone(imported);
+                Assertions.assertFalse(imported.isCompletedExceptionally());
+                assertRows(image, 0, HEIGHT, 0x330000);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+//Copyright 2015 Erik De Rijcke
+//
+//Licensed under the Apache License,Version2.0(the"License");
+//you may not use this file except in compliance with the License.
+//You may obtain a copy of the License at
+//
+//http://www.apache.org/licenses/LICENSE-2.0
+//
+//Unless required by applicable law or agreed to in writing,software
+//distributed under the License is distributed on an"AS IS"BASIS,
+//WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+//See the License for the specific language governing permissions and
+//limitations under the License.
+package org.freedesktop.wayland.generator.impl;
+
+import com.squareup.javawriter.JavaWriter;
+import org.freedesktop.wayland.client.EventPublisher;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.Modifier;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.EnumSet;
+import java.util.concurrent.Executor;
+
+import static org.freedesktop.wayland.generator.impl.StringUtil.*;
+
+public class EventRecordsWriter {
+
+    private static final String ELEMENT_EVENT = "event";
+    private static final String ATTRIBUTE_NAME = "name";
+    private static final String ATTRIBUTE_VERSION = "version";
+    private static final String ELEMENT_ARG = "arg";
+    private static final String ATTRIBUTE_ALLOW_NULL = "allow-null";
+
+    public void write(final Filer filer,
+                      final String clientPackage,
+                      final String copyright,
+                      final Element interfaceNode) throws IOException {
+        final NodeList eventNodes = interfaceNode.getElementsByTagName(ELEMENT_EVENT);
+        if (eventNodes.getLength() == 0) {
+            return;
+        }
+
+        final String eventType = getJavaTypeNameEvent(clientPackage,
+                interfaceNode);
+        final Writer writer = filer.createSourceFile(eventType)
+                .openWriter();
+        final JavaWriter javaWriter = new JavaWriter(writer);
+
+        //imports
+        javaWriter.emitPackage(clientPackage)
+                .emitImports(Nullable.class,
+                        Nonnull.class)
+                .emitSingleLineComment(copyright.replace("\n",
+                        "\n//"));
+        //type javadoc
+        javaWriter.emitJavadoc(getDoc(interfaceNode)
+                + "\n<p>\nThe events of this interface as records, published by {@link Publisher}."
+                + "\n@see " + EventPublisher.class.getName());
+        //begin type
+        javaWriter.beginType(eventType,
+                "interface",
+                EnumSet.of(Modifier.PUBLIC,
+                        Modifier.SEALED));
+
+        //records
+        for (int i = 0; i < eventNodes.getLength(); i++) {
+            final Element eventElement = (Element) eventNodes.item(i);
+            final NodeList argElements = eventElement.getElementsByTagName(ELEMENT_ARG);
+
+            final StringBuilder components = new StringBuilder();
+            components.append(getJavaTypeNameProxy(clientPackage,
+                            interfaceNode,
+                            1))
+                    .append(" emitter");
+            String javaDoc = getDoc(eventElement);
+            javaDoc += "\n@param emitter The protocol object that emitted the event.";
+            for (int j = 0; j < argElements.getLength(); j++) {
+                final Element argElement = (Element) argElements.item(j);
+                final String[] argumentForProxy = getArgumentForProxy(clientPackage,
+                        argElement);
+                final String name = StringUtil.escapeJavaKeyword(argumentForProxy[1]);
+                components.append(", ")
+                        .append(argumentForProxy[0])
+                        .append(' ')
+                        .append(name);
+                javaDoc += "\n@param " + name + " " + argElement.getAttribute("summary");
+            }
+
+            javaWriter.emitEmptyLine()
+                    .emitJavadoc(javaDoc)
+                    .beginType(getSimpleJavaTypeNameEventRecord(eventElement) + "(" + components + ")",
+                            "record",
+                            EnumSet.noneOf(Modifier.class),
+                            null,
+                            eventType)
+                    .endType();
+        }
+
+        writePublisher(javaWriter,
+                clientPackage,
+                interfaceNode,
+                eventType,
+                eventNodes);
+
+        //end type
+        javaWriter.endType();
+        javaWriter.close();
+    }
+
+    private void writePublisher(final JavaWriter javaWriter,
+                                final String clientPackage,
+                                final Element interfaceNode,
+                                final String eventType,
+                                final NodeList eventNodes) throws IOException {
+        final int maxVersion = Integer.parseInt(interfaceNode.getAttribute(ATTRIBUTE_VERSION));
+
+        javaWriter.emitEmptyLine()
+                .emitJavadoc("Publishes the events of a proxy to subscribers, use it as the implementation of the proxy.")
+                .beginType("Publisher",
+                        "class",
+                        EnumSet.of(Modifier.PUBLIC,
+                                Modifier.STATIC),
+                        EventPublisher.class.getName() + "<" + eventType + ">",
+                        getJavaTypeNameEvents(clientPackage,
+                                interfaceNode,
+                                maxVersion));
+
+        javaWriter.emitEmptyLine()
+                .emitJavadoc("Create a publisher that delivers to subscribers on the common pool, with the default buffer capacity.")
+                .beginConstructor(EnumSet.of(Modifier.PUBLIC))
+                .emitStatement("super()")
+                .endConstructor()
+                .emitEmptyLine()
+                .emitJavadoc("@param executor the executor that delivers events to subscribers."
+                        + "\n@param maxBufferCapacity the maximum number of events buffered for each subscriber.")
+                .beginConstructor(EnumSet.of(Modifier.PUBLIC),
+                        Executor.class.getName(),
+                        "executor",
+                        int.class.getName(),
+                        "maxBufferCapacity")
+                .emitStatement("super(executor, maxBufferCapacity)")
+                .endConstructor();
+
+        for (int i = 0; i < eventNodes.getLength(); i++) {
+            final Element eventElement = (Element) eventNodes.item(i);
+            final NodeList argElements = eventElement.getElementsByTagName(ELEMENT_ARG);
+
+            final String[] args = new String[((argElements.getLength() + 1) * 2)];
+            args[0] = getJavaTypeNameProxy(clientPackage,
+                    interfaceNode,
+                    1);
+            args[1] = "emitter";
+            final StringBuilder values = new StringBuilder("emitter");
+            for (int j = 0; j < argElements.getLength(); j++) {
+                final Element argElement = (Element) argElements.item(j);
+                final boolean allowNull = Boolean.valueOf(argElement.getAttribute(ATTRIBUTE_ALLOW_NULL));
+                final String[] argumentForProxy = getArgumentForProxy(clientPackage,
+                        argElement);
+                final int k = (j + 1) * 2;
+                String argumentType = argumentForProxy[0];
+                if (!StringUtil.isPrimitive(argumentType)) {
+                    argumentType = allowNull ?
+                            "@" + javaWriter.compressType(Nullable.class.getSimpleName()) + " " + argumentType :
+                            "@" + javaWriter.compressType(Nonnull.class.getSimpleName()) + " " + argumentType;
+                }
+                args[k] = argumentType;
+                args[k + 1] = StringUtil.escapeJavaKeyword(argumentForProxy[1]);
+
+                values.append(", ");
+                if (argElement.getAttribute("type")
+                        .equals("array")) {
+                    //array arguments are only valid during dispatch
+                    values.append(allowNull ? args[k + 1] + " == null ? null : " : "")
+                            .append(args[k + 1])
+                            .append(".copy()");
+                } else {
+                    values.append(args[k + 1]);
+                }
+            }
+
+            javaWriter.emitEmptyLine()
+                    .emitAnnotation(Override.class)
+                    .beginMethod("void",
+                            lowerCamelName(eventElement.getAttribute(ATTRIBUTE_NAME)),
+                            EnumSet.of(Modifier.PUBLIC),
+                            args)
+                    .emitStatement("publish(new %s(%s))",
+                            getSimpleJavaTypeNameEventRecord(eventElement),
+                            values)
+                    .endMethod();
+        }
+
+        javaWriter.endType();
+    }
+}
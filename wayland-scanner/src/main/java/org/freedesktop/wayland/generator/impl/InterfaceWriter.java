@@ -119,6 +119,11 @@ public class InterfaceWriter {
                 clientPackage,
                 copyright,
                 interfaceXMLNode);
+
+        writeEventRecords(filer,
+                clientPackage,
+                copyright,
+                interfaceXMLNode);
     }
 
     private void writeEnum(final Writer writer,
@@ -175,4 +180,14 @@ public class InterfaceWriter {
                 copyright,
                 interfaceXMLNode);
     }
+
+    private void writeEventRecords(final Filer filer,
+                                   final String clientPackage,
+                                   final String copyright,
+                                   final Element interfaceXMLNode) throws IOException {
+        new EventRecordsWriter().write(filer,
+                clientPackage,
+                copyright,
+                interfaceXMLNode);
+    }
 }
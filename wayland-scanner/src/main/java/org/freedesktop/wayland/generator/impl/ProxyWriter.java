@@ -15,6 +15,7 @@ package org.freedesktop.wayland.generator.impl;
 
 import com.squareup.javawriter.JavaWriter;
 import org.freedesktop.wayland.client.Display;
+import org.freedesktop.wayland.client.EventQueue;
 import org.freedesktop.wayland.client.Proxy;
 import org.freedesktop.wayland.util.Arguments;
 import org.freedesktop.wayland.util.Interface;
@@ -33,6 +34,7 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.IntConsumer;
 
 import static org.freedesktop.wayland.generator.impl.StringUtil.*;
 
@@ -280,6 +282,31 @@ public class ProxyWriter {
                 }
             }
             javaWriter.endMethod();
+
+            //one-shot callback fast path, eg wl_surface.frame or wl_display.sync
+            if (isCallbackConstructor(argElements)) {
+                javaWriter.emitEmptyLine()
+                        .emitJavadoc(getDoc(requestElement)
+                                + "\n<p>\nThe callback object is handled natively and never exposed as a proxy, so this does not"
+                                + "\nallocate any proxy bookkeeping and the callback needs no explicit destroy."
+                                + "\n@param done Called once with the callback data when the callback is done.")
+                        .beginMethod("void",
+                                lowerCamelName(requestName),
+                                EnumSet.of(Modifier.PUBLIC),
+                                IntConsumer.class.getName(),
+                                "done");
+                if (Integer.parseInt(since) > 1) {
+                    javaWriter.beginControlFlow("if (getVersion() < %s)",
+                                    since)
+                            .emitStatement("throw new UnsupportedOperationException("
+                                            + "\"This object is version \"+getVersion()+\" while version %s is required for this operation.\")",
+                                    since)
+                            .endControlFlow();
+                }
+                javaWriter.emitStatement("marshalCallback(%d, done)",
+                                i)
+                        .endMethod();
+            }
         }
 
         //special case for wl_display proxy
@@ -330,11 +357,40 @@ public class ProxyWriter {
                             EnumSet.of(Modifier.PUBLIC))
                     .emitStatement("throw new UnsupportedOperationException(\"Implementation provided by native library\")")
                     .endMethod();
+            //sync hook used by the asynchronous roundtrip of Display
+            javaWriter.emitEmptyLine()
+                    .emitAnnotation(Override.class)
+                    .beginMethod("void",
+                            "requestSync",
+                            EnumSet.of(Modifier.PROTECTED),
+                            EventQueue.class.getName(),
+                            "queue",
+                            IntConsumer.class.getName(),
+                            "done")
+                    .beginControlFlow("if (queue == null)")
+                    .emitStatement("sync(done)")
+                    .nextControlFlow("else")
+                    .emitStatement("final %s wrapper = createWrapper(queue)",
+                            getSimpleJavaTypeNameProxy(interfaceNode,
+                                    1))
+                    .emitStatement("wrapper.sync(done)")
+                    .emitStatement("wrapper.destroy()")
+                    .endControlFlow()
+                    .endMethod();
         }
         //end class
         javaWriter.endType();
     }
 
+    private boolean isCallbackConstructor(final NodeList argElements) {
+        if (argElements.getLength() != 1) {
+            return false;
+        }
+        final Element argElement = (Element) argElements.item(0);
+        return argElement.getAttribute("type")
+                .equals("new_id") && argElement.getAttribute(ATTRIBUTE_INTERFACE)
+                .equals("wl_callback");
+    }
 
     private String constructMessage(final String clientPackage,
                                     final Element requestElement) throws IOException {
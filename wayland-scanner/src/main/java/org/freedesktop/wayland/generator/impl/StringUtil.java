@@ -198,6 +198,15 @@ public class StringUtil {
         return upperCamelName(interfaceElement.getAttribute(InterfaceWriter.ATTRIBUTE_NAME)) + "Events" + getVersionAppendix(version);
     }
 
+    public static String getJavaTypeNameEvent(final String clientPackage,
+                                              final Element interfaceElement) {
+        return clientPackage + "." + upperCamelName(interfaceElement.getAttribute(InterfaceWriter.ATTRIBUTE_NAME)) + "Event";
+    }
+
+    public static String getSimpleJavaTypeNameEventRecord(final Element eventElement) {
+        return upperCamelName(eventElement.getAttribute("name"));
+    }
+
     public static String[] getArgumentForResource(final String serverPackage,
                                                   final Element argElement) {
         final String[] arg = new String[2];